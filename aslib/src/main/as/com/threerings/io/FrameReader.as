@@ -80,8 +80,12 @@ public class FrameReader extends EventDispatcher
                 // including the length of the bytes used to encode the length.
                 // (I think this is pretty silly).
                 // So for our purposes we subtract 4 bytes so we know how much
-                // more data is in the frame.
-                _length = _socket.readInt() - HEADER_SIZE;
+                // more data is in the frame. The top bits flag frames that carry
+                // chunks of a larger message.
+                var header :int = _socket.readInt();
+                _chunk = (header & CHUNK_FLAG) != 0;
+                _lastChunk = (header & LAST_CHUNK_FLAG) != 0;
+                _length = (header & LENGTH_MASK) - HEADER_SIZE;
                 _curData = new ByteArray();
                 _curData.endian = Endian.BIG_ENDIAN;
             }
@@ -95,13 +99,31 @@ public class FrameReader extends EventDispatcher
             }
 
             if (_length === _curData.length) {
-                // we have now read a complete frame, let us dispatch the data
-                _curData.position = 0; // move the read pointer to the beginning
+                // we have now read a complete frame
+                var frame :ByteArray = _curData;
+                _curData = null; // clear, so we know we need to first read length
+
+                // if it carries a chunk of a larger message, add it to the rest and wait for
+                // the last chunk before dispatching the whole message
+                if (_chunk) {
+                    if (_chunks == null) {
+                        _chunks = new ByteArray();
+                        _chunks.endian = Endian.BIG_ENDIAN;
+                    }
+                    _chunks.writeBytes(frame);
+                    if (!_lastChunk) {
+                        continue;
+                    }
+                    frame = _chunks;
+                    _chunks = null;
+                }
+
+                // let us dispatch the data
+                frame.position = 0; // move the read pointer to the beginning
                 if (ObjectInputStream.DEBUG) {
                     Log.getLog(this).debug("+ FrameAvailable");
                 }
-                dispatchEvent(new FrameAvailableEvent(_curData));
-                _curData = null; // clear, so we know we need to first read length
+                dispatchEvent(new FrameAvailableEvent(frame));
             }
         }
     }
@@ -110,7 +132,19 @@ public class FrameReader extends EventDispatcher
     protected var _curData :ByteArray;
     protected var _length :int;
 
+    /** Whether the frame being read carries a chunk of a larger message, and if so, whether
+     * it's the last. */
+    protected var _chunk :Boolean, _lastChunk :Boolean;
+
+    /** The chunks of the message being reassembled, if any. */
+    protected var _chunks :ByteArray;
+
     /** The number of bytes in the frame header (a 32-bit integer). */
     protected const HEADER_SIZE :int = 4;
+
+    /** Flags in the frame header; see FramingOutputStream.java. */
+    protected const CHUNK_FLAG :int = 0x80000000;
+    protected const LAST_CHUNK_FLAG :int = 0x40000000;
+    protected const LENGTH_MASK :int = 0x3FFFFFFF;
 }
 }
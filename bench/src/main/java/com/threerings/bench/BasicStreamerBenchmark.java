@@ -0,0 +1,126 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Streams the values handled by {@link com.threerings.io.BasicStreamers}: boxed primitives,
+ * strings and arrays of each.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BasicStreamerBenchmark
+{
+    /** The type of value streamed. */
+    @Param({ "Boolean", "Integer", "Long", "Double", "String",
+             "byte[]", "int[]", "long[]", "double[]", "String[]" })
+    public String type;
+
+    @Setup
+    public void setUp ()
+        throws Exception
+    {
+        _fixture = new StreamFixture(createValue(type));
+    }
+
+    @Benchmark
+    public void write (ByteCounter counter)
+        throws Exception
+    {
+        counter.bytes += _fixture.write();
+    }
+
+    @Benchmark
+    public Object read (ByteCounter counter)
+        throws Exception
+    {
+        counter.bytes += _fixture.size();
+        return _fixture.read();
+    }
+
+    /**
+     * Creates a value of the named type. Arrays have {@link #ARRAY_LENGTH} elements.
+     */
+    protected static Object createValue (String type)
+    {
+        int count = ARRAY_LENGTH;
+        if (type.equals("Boolean")) {
+            return Boolean.TRUE;
+        } else if (type.equals("Integer")) {
+            return 123456;
+        } else if (type.equals("Long")) {
+            return 1234567890123L;
+        } else if (type.equals("Double")) {
+            return Math.PI;
+        } else if (type.equals("String")) {
+            return "The quick brown fox jumped over the lazy dog.";
+        } else if (type.equals("byte[]")) {
+            byte[] values = new byte[count];
+            for (int ii = 0; ii < count; ii++) {
+                values[ii] = (byte)ii;
+            }
+            return values;
+        } else if (type.equals("int[]")) {
+            int[] values = new int[count];
+            for (int ii = 0; ii < count; ii++) {
+                values[ii] = ii * ii;
+            }
+            return values;
+        } else if (type.equals("long[]")) {
+            long[] values = new long[count];
+            for (int ii = 0; ii < count; ii++) {
+                values[ii] = 1234567890123L * ii;
+            }
+            return values;
+        } else if (type.equals("double[]")) {
+            double[] values = new double[count];
+            for (int ii = 0; ii < count; ii++) {
+                values[ii] = ii / 3.0;
+            }
+            return values;
+        } else if (type.equals("String[]")) {
+            String[] values = new String[count];
+            for (int ii = 0; ii < count; ii++) {
+                values[ii] = "string" + ii;
+            }
+            return values;
+        }
+        throw new IllegalArgumentException("Unknown type: " + type);
+    }
+
+    protected StreamFixture _fixture;
+
+    /** The number of elements in the arrays we stream. */
+    protected static final int ARRAY_LENGTH = 256;
+}
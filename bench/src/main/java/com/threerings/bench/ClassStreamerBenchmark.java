@@ -0,0 +1,73 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Streams {@link com.threerings.io.SimpleStreamableObject}s by reflection, which is to say via
+ * the class streamer, a small one with three fields and a large one with twenty odd.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ClassStreamerBenchmark
+{
+    /** The size of the object streamed. */
+    @Param({ "small", "large" })
+    public String size;
+
+    @Setup
+    public void setUp ()
+        throws Exception
+    {
+        _fixture = new StreamFixture(
+            size.equals("small") ? Samples.createSmall(1) : Samples.createLarge(1));
+    }
+
+    @Benchmark
+    public void write (ByteCounter counter)
+        throws Exception
+    {
+        counter.bytes += _fixture.write();
+    }
+
+    @Benchmark
+    public Object read (ByteCounter counter)
+        throws Exception
+    {
+        counter.bytes += _fixture.size();
+        return _fixture.read();
+    }
+
+    protected StreamFixture _fixture;
+}
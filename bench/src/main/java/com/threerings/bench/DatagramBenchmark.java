@@ -0,0 +1,134 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Sets;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.threerings.io.UnreliableObjectInputStream;
+import com.threerings.io.UnreliableObjectOutputStream;
+
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.net.EventNotification;
+
+/**
+ * Streams datagrams over {@link UnreliableObjectOutputStream}, as the datagram sequencer does,
+ * both before the receiver has acknowledged the class and intern mappings (so that they must be
+ * repeated in every datagram) and after.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DatagramBenchmark
+{
+    /** Whether the receiver has acknowledged the mappings. */
+    @Param({ "false", "true" })
+    public boolean acknowledged;
+
+    @Setup
+    public void setUp ()
+        throws Exception
+    {
+        _datagram = new EventNotification(
+            new AttributeChangedEvent(1234, "position", Samples.createSmall(1)));
+        _uout = new UnreliableObjectOutputStream(_bout);
+        _uout.setMappedClasses(Sets.<Class<?>>newHashSet());
+        _uout.setMappedInterns(Sets.<String>newHashSet());
+        _uin = new UnreliableObjectInputStream(_source);
+
+        // the first datagram carries the mappings, which the receiver may then acknowledge
+        _source.replay(encode());
+        _uin.readInt();
+        _uin.readInt();
+        _uin.readObject();
+        if (acknowledged) {
+            _uout.noteClassMappingsReceived(_uout.getMappedClasses());
+            if (!_uout.getMappedInterns().isEmpty()) {
+                _uout.noteInternMappingsReceived(_uout.getMappedInterns());
+            }
+        }
+        _data = encode();
+    }
+
+    @Benchmark
+    public void write (ByteCounter counter)
+        throws Exception
+    {
+        counter.bytes += write();
+    }
+
+    @Benchmark
+    public Object read (ByteCounter counter)
+        throws Exception
+    {
+        _source.replay(_data);
+        _uin.readInt(); // sequence number
+        _uin.readInt(); // acknowledgement
+        counter.bytes += _data.length;
+        return _uin.readObject();
+    }
+
+    /**
+     * Writes a datagram and returns its size.
+     */
+    protected int write ()
+        throws Exception
+    {
+        _bout.reset();
+        _uout.writeInt(++_number);
+        _uout.writeInt(0);
+        _uout.getMappedClasses().clear();
+        _uout.getMappedInterns().clear();
+        _uout.writeObject(_datagram);
+        _uout.flush();
+        return _bout.size();
+    }
+
+    protected byte[] encode ()
+        throws Exception
+    {
+        write();
+        return _bout.toByteArray();
+    }
+
+    protected EventNotification _datagram;
+    protected byte[] _data;
+    protected int _number;
+
+    protected ByteArrayOutputStream _bout = new ByteArrayOutputStream();
+    protected UnreliableObjectOutputStream _uout;
+
+    protected ReplayInputStream _source = new ReplayInputStream();
+    protected UnreliableObjectInputStream _uin;
+}
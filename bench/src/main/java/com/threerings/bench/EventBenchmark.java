@@ -0,0 +1,78 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.threerings.presents.dobj.DEvent;
+import com.threerings.presents.net.EventNotification;
+
+/**
+ * Streams an {@link EventNotification} wrapping each sort of {@link DEvent}, which is how nearly
+ * all of the traffic from server to client is sent.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EventBenchmark
+{
+    /** The sort of event notified, as named by {@link Samples#createEvent}. */
+    @Param({ "AttributeChanged", "ElementUpdated", "EntryAdded", "EntryRemoved", "EntryUpdated",
+             "InvocationNotification", "InvocationRequest", "InvocationResponse", "Message",
+             "ObjectAdded", "ObjectRemoved", "ObjectDestroyed", "ReleaseLock", "ServerMessage",
+             "Compound" })
+    public String event;
+
+    @Setup
+    public void setUp ()
+        throws Exception
+    {
+        _fixture = new StreamFixture(new EventNotification(Samples.createEvent(event)));
+    }
+
+    @Benchmark
+    public void write (ByteCounter counter)
+        throws Exception
+    {
+        counter.bytes += _fixture.write();
+    }
+
+    @Benchmark
+    public Object read (ByteCounter counter)
+        throws Exception
+    {
+        counter.bytes += _fixture.size();
+        return _fixture.read();
+    }
+
+    protected StreamFixture _fixture;
+}
@@ -0,0 +1,152 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.threerings.io.FramedInputStream;
+import com.threerings.io.FramingOutputStream;
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.net.EventNotification;
+
+/**
+ * Frames messages with a {@link FramingOutputStream} and decodes them from a channel with a
+ * {@link FramedInputStream}, as a connection does, for messages of various sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FrameBenchmark
+{
+    /** The number of bytes of payload in the framed message. */
+    @Param({ "16", "1024", "65536" })
+    public int payload;
+
+    @Setup
+    public void setUp ()
+        throws Exception
+    {
+        _message = new EventNotification(
+            new AttributeChangedEvent(1234, "data", new byte[payload]));
+        _oout = new ObjectOutputStream(_fout);
+        _oin = new ObjectInputStream(_fin);
+
+        // send one frame through to establish the mappings, then keep the next
+        _frame = copy(frame());
+        read(new ByteCounter());
+        _frame = copy(frame());
+    }
+
+    @Benchmark
+    public void write (ByteCounter counter)
+        throws Exception
+    {
+        counter.bytes += frame().remaining();
+    }
+
+    @Benchmark
+    public Object read (ByteCounter counter)
+        throws Exception
+    {
+        _frame.rewind();
+        _channel.frame = _frame;
+        while (!_fin.readFrame(_channel)) {
+            // keep reading until we have the whole frame
+        }
+        counter.bytes += _frame.limit();
+        return _oin.readObject();
+    }
+
+    /**
+     * Frames our message and returns the framed bytes.
+     */
+    protected ByteBuffer frame ()
+        throws Exception
+    {
+        _fout.resetFrame();
+        _oout.writeObject(_message);
+        _oout.flush();
+        return _fout.frameAndReturnBuffer();
+    }
+
+    protected static ByteBuffer copy (ByteBuffer buffer)
+    {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer).flip();
+        return copy;
+    }
+
+    /** Supplies the bytes of a single frame. */
+    protected static class FrameChannel
+        implements ReadableByteChannel
+    {
+        /** The frame yet to be read. */
+        public ByteBuffer frame;
+
+        // from interface ReadableByteChannel
+        public int read (ByteBuffer dst)
+        {
+            int count = Math.min(dst.remaining(), frame.remaining());
+            ByteBuffer src = frame.duplicate();
+            src.limit(src.position() + count);
+            dst.put(src);
+            frame.position(frame.position() + count);
+            return count;
+        }
+
+        // from interface Channel
+        public boolean isOpen ()
+        {
+            return true;
+        }
+
+        // from interface Channel
+        public void close ()
+        {
+        }
+    }
+
+    protected EventNotification _message;
+    protected ByteBuffer _frame;
+
+    protected FramingOutputStream _fout = new FramingOutputStream();
+    protected ObjectOutputStream _oout;
+
+    protected FrameChannel _channel = new FrameChannel();
+    protected FramedInputStream _fin = new FramedInputStream();
+    protected ObjectInputStream _oin;
+}
@@ -0,0 +1,72 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.bench;
+
+import java.util.Collection;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+/**
+ * Runs the benchmarks (all of them, or those selected by the usual JMH command line arguments)
+ * and then summarizes the bytes per operation of each, which JMH itself reports only as a rate.
+ * Usage: <code>java -jar bench/target/benchmarks.jar [JMH options] [benchmark regexps]</code>.
+ */
+public class IoBenchmarks
+{
+    public static void main (String[] args)
+        throws Exception
+    {
+        Collection<RunResult> results = new Runner(new CommandLineOptions(args)).run();
+
+        System.out.println();
+        System.out.println(String.format("%-60s %12s %12s", "Benchmark", "ops/s", "bytes/op"));
+        for (RunResult result : results) {
+            Result<?> ops = result.getPrimaryResult();
+            Result<?> bytes = result.getSecondaryResults().get("bytes");
+            if (bytes == null || ops.getScore() == 0) {
+                continue;
+            }
+            System.out.println(String.format("%-60s %12.0f %12.1f", describe(result.getParams()),
+                ops.getScore(), bytes.getScore() / ops.getScore()));
+        }
+    }
+
+    /**
+     * Returns the short name of a benchmark, followed by its parameters.
+     */
+    protected static String describe (BenchmarkParams params)
+    {
+        // strip the package from the benchmark's full name, leaving Class.method
+        String name = params.getBenchmark();
+        int cidx = name.lastIndexOf('.', name.lastIndexOf('.') - 1);
+        StringBuilder buf = new StringBuilder(name.substring(cidx + 1));
+        for (String key : params.getParamsKeys()) {
+            buf.append(" ").append(key).append("=").append(params.getParam(key));
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,241 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.bench;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.io.SimpleStreamableObject;
+
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.dobj.CompoundEvent;
+import com.threerings.presents.dobj.DEvent;
+import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.DObjectManager;
+import com.threerings.presents.dobj.DSet;
+import com.threerings.presents.dobj.ElementUpdatedEvent;
+import com.threerings.presents.dobj.EntryAddedEvent;
+import com.threerings.presents.dobj.EntryRemovedEvent;
+import com.threerings.presents.dobj.EntryUpdatedEvent;
+import com.threerings.presents.dobj.InvocationNotificationEvent;
+import com.threerings.presents.dobj.InvocationRequestEvent;
+import com.threerings.presents.dobj.InvocationResponseEvent;
+import com.threerings.presents.dobj.MessageEvent;
+import com.threerings.presents.dobj.ObjectAddedEvent;
+import com.threerings.presents.dobj.ObjectDestroyedEvent;
+import com.threerings.presents.dobj.ObjectRemovedEvent;
+import com.threerings.presents.dobj.ReleaseLockEvent;
+import com.threerings.presents.dobj.ServerMessageEvent;
+import com.threerings.presents.dobj.Subscriber;
+
+/**
+ * The objects streamed by the benchmarks.
+ */
+public class Samples
+{
+    /** A streamable with a handful of fields, the size of a typical attribute value. */
+    public static class Small extends SimpleStreamableObject
+    {
+        public int id;
+        public String name;
+        public boolean active;
+    }
+
+    /** A streamable with many fields of many types, the size of a typical game record. */
+    public static class Large extends SimpleStreamableObject
+    {
+        public int id;
+        public long created;
+        public String name;
+        public String description;
+        public byte level;
+        public short rank;
+        public char grade;
+        public float x, y, heading;
+        public double score;
+        public boolean active, hidden;
+        public Integer owner;
+        public int[] items;
+        public byte[] state;
+        public String[] tags;
+        public Small primary;
+        public Small[] members;
+        public List<Small> recent;
+    }
+
+    /** A distributed set entry. */
+    public static class Item extends SimpleStreamableObject
+        implements DSet.Entry
+    {
+        public int itemId;
+        public String name;
+        public int count;
+
+        // from interface DSet.Entry
+        public Comparable<?> getKey ()
+        {
+            return itemId;
+        }
+    }
+
+    public static Small createSmall (int id)
+    {
+        Small small = new Small();
+        small.id = id;
+        small.name = "small" + id;
+        small.active = (id % 2) == 0;
+        return small;
+    }
+
+    public static Large createLarge (int id)
+    {
+        Large large = new Large();
+        large.id = id;
+        large.created = 1234567890123L + id;
+        large.name = "large" + id;
+        large.description = "A large streamable object with a description of modest length.";
+        large.level = 12;
+        large.rank = 1234;
+        large.grade = 'B';
+        large.x = 10.5f;
+        large.y = -3.25f;
+        large.heading = 1.57f;
+        large.score = 98765.4321;
+        large.active = true;
+        large.owner = 42;
+        large.items = new int[] { 1, 1000, 100000, 10000000, -1 };
+        large.state = new byte[64];
+        large.tags = new String[] { "red", "green", "blue" };
+        large.primary = createSmall(id);
+        large.members = new Small[] { createSmall(1), createSmall(2), createSmall(3) };
+        large.recent = Lists.newArrayList(createSmall(4), createSmall(5));
+        return large;
+    }
+
+    public static Item createItem (int id)
+    {
+        Item item = new Item();
+        item.itemId = id;
+        item.name = "item" + id;
+        item.count = id % 100;
+        return item;
+    }
+
+    /** A distributed set that doesn't complain about being as large as we make it. */
+    public static class ItemSet extends DSet<Item>
+    {
+        public ItemSet (int size)
+        {
+            for (int ii = 0; ii < size; ii++) {
+                add(createItem(ii));
+            }
+        }
+
+        public ItemSet ()
+        {
+        }
+
+        @Override
+        protected int getWarningSize ()
+        {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Creates a typical instance of the named event: the name of its class less "Event".
+     */
+    public static DEvent createEvent (String name)
+    {
+        int oid = 1234;
+        Object[] args = { 42, "hello" };
+        if (name.equals("AttributeChanged")) {
+            return new AttributeChangedEvent(oid, "small", createSmall(1));
+        } else if (name.equals("ElementUpdated")) {
+            return new ElementUpdatedEvent(oid, "scores", 100, 3);
+        } else if (name.equals("EntryAdded")) {
+            return new EntryAddedEvent<Item>(oid, "items", createItem(1));
+        } else if (name.equals("EntryRemoved")) {
+            return new EntryRemovedEvent<Item>(oid, "items", 1);
+        } else if (name.equals("EntryUpdated")) {
+            return new EntryUpdatedEvent<Item>(oid, "items", createItem(1));
+        } else if (name.equals("InvocationNotification")) {
+            return new InvocationNotificationEvent(oid, (short)1, 2, args);
+        } else if (name.equals("InvocationRequest")) {
+            return new InvocationRequestEvent(oid, 1, 2, args);
+        } else if (name.equals("InvocationResponse")) {
+            return new InvocationResponseEvent(oid, 1, 2, args);
+        } else if (name.equals("Message")) {
+            return new MessageEvent(oid, "chat", args);
+        } else if (name.equals("ObjectAdded")) {
+            return new ObjectAddedEvent(oid, "occupants", 5678);
+        } else if (name.equals("ObjectRemoved")) {
+            return new ObjectRemovedEvent(oid, "occupants", 5678);
+        } else if (name.equals("ObjectDestroyed")) {
+            return new ObjectDestroyedEvent(oid);
+        } else if (name.equals("ReleaseLock")) {
+            return new ReleaseLockEvent(oid, "lock");
+        } else if (name.equals("ServerMessage")) {
+            return new ServerMessageEvent(oid, "chat", args);
+        } else if (name.equals("Compound")) {
+            CompoundEvent event = new CompoundEvent(new DObject(), new NullObjectManager());
+            event.postEvent(createEvent("AttributeChanged"));
+            event.postEvent(createEvent("EntryUpdated"));
+            event.postEvent(createEvent("Message"));
+            return event;
+        }
+        throw new IllegalArgumentException("Unknown event: " + name);
+    }
+
+    /** Lets us create compound events, which insist on having an object manager. */
+    protected static class NullObjectManager
+        implements DObjectManager
+    {
+        // from interface DObjectManager
+        public boolean isManager (DObject object)
+        {
+            return false;
+        }
+
+        // from interface DObjectManager
+        public <T extends DObject> void subscribeToObject (int oid, Subscriber<T> target)
+        {
+        }
+
+        // from interface DObjectManager
+        public <T extends DObject> void unsubscribeFromObject (int oid, Subscriber<T> target)
+        {
+        }
+
+        // from interface DObjectManager
+        public void postEvent (DEvent event)
+        {
+        }
+
+        // from interface DObjectManager
+        public void removedLastSubscriber (DObject obj, boolean deathWish)
+        {
+        }
+    }
+}
@@ -0,0 +1,97 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+/**
+ * Streams an object as it would be streamed on an established connection: over the same pair of
+ * object streams each time, so that the class and intern mappings are written only once.
+ */
+public class StreamFixture
+{
+    /**
+     * Creates a fixture for the supplied object, which is written and read once to establish the
+     * mappings and then encoded again for use by {@link #read}.
+     */
+    public StreamFixture (Object value)
+        throws IOException, ClassNotFoundException
+    {
+        _value = value;
+        _oout = new ObjectOutputStream(_bout);
+        _oin = new ObjectInputStream(_source);
+        _source.replay(encode());
+        _oin.readObject();
+        _data = encode();
+    }
+
+    /**
+     * Returns the number of bytes in the steady state encoding of our object.
+     */
+    public int size ()
+    {
+        return _data.length;
+    }
+
+    /**
+     * Writes our object and returns the number of bytes written.
+     */
+    public int write ()
+        throws IOException
+    {
+        _bout.reset();
+        _oout.writeObject(_value);
+        _oout.flush();
+        return _bout.size();
+    }
+
+    /**
+     * Reads our object from its steady state encoding.
+     */
+    public Object read ()
+        throws IOException, ClassNotFoundException
+    {
+        _source.replay(_data);
+        return _oin.readObject();
+    }
+
+    protected byte[] encode ()
+        throws IOException
+    {
+        write();
+        return _bout.toByteArray();
+    }
+
+    protected Object _value;
+    protected byte[] _data;
+
+    protected ByteArrayOutputStream _bout = new ByteArrayOutputStream();
+    protected ObjectOutputStream _oout;
+
+    protected ReplayInputStream _source = new ReplayInputStream();
+    protected ObjectInputStream _oin;
+}
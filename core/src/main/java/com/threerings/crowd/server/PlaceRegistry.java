@@ -24,6 +24,7 @@ package com.threerings.crowd.server;
 import java.util.Iterator;
 import java.util.List;
 
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Singleton;
@@ -35,6 +36,7 @@ import com.samskivert.util.Lifecycle;
 import com.threerings.presents.dobj.RootDObjectManager;
 import com.threerings.presents.server.InvocationException;
 import com.threerings.presents.server.InvocationManager;
+import com.threerings.presents.server.PresentsDObjectMgr;
 
 import com.threerings.crowd.data.PlaceConfig;
 import com.threerings.crowd.data.PlaceObject;
@@ -71,7 +73,9 @@ public class PlaceRegistry
      */
     public PlaceManager getPlaceManager (int placeOid)
     {
-        return _pmgrs.get(placeOid);
+        synchronized (_pmgrs) {
+            return _pmgrs.get(placeOid);
+        }
     }
 
     /**
@@ -131,7 +135,7 @@ public class PlaceRegistry
      */
     public Iterator<PlaceObject> enumeratePlaces ()
     {
-        final Iterator<PlaceManager> itr = _pmgrs.values().iterator();
+        final Iterator<PlaceManager> itr = enumeratePlaceManagers();
         return new Iterator<PlaceObject>() {
             public boolean hasNext () {
                 return itr.hasNext();
@@ -152,7 +156,10 @@ public class PlaceRegistry
      */
     public Iterator<PlaceManager> enumeratePlaceManagers ()
     {
-        return _pmgrs.values().iterator();
+        // places may come and go on other event loops, so we iterate over a snapshot
+        synchronized (_pmgrs) {
+            return Lists.newArrayList(_pmgrs.values()).iterator();
+        }
     }
 
     // from interface Lifecycle.ShutdownComponent
@@ -173,8 +180,69 @@ public class PlaceRegistry
      * Creates a place manager using the supplied config, injects dependencies into and registers
      * the supplied list of delegates, runs the supplied pre-startup hook and finally returns it.
      */
-    protected PlaceManager createPlace (PlaceConfig config, List<PlaceManagerDelegate> delegates,
-                                        PreStartupHook hook)
+    protected PlaceManager createPlace (
+        final PlaceConfig config, final List<PlaceManagerDelegate> delegates,
+        final PreStartupHook hook)
+        throws InstantiationException, InvocationException
+    {
+        if (!(_omgr instanceof PresentsDObjectMgr)) {
+            return createPlaceInGroup(config, delegates, hook);
+        }
+        // if we have but one event loop, or we're creating this place from a place on another
+        // loop, we create it right here
+        PresentsDObjectMgr omgr = (PresentsDObjectMgr)_omgr;
+        if (omgr.getEventLoopCount() == 1 || omgr.getCurrentAffinityGroup() != 0) {
+            return createPlaceInGroup(config, delegates, hook);
+        }
+
+        // otherwise we create it in the affinity group that we select for it, so that the place
+        // and the objects created by its manager are processed together on one event loop
+        int group = selectAffinityGroup(config);
+        if (group == 0) {
+            return createPlaceInGroup(config, delegates, hook);
+        }
+        final PlaceManager[] pmgr = new PlaceManager[1];
+        final Exception[] error = new Exception[1];
+        omgr.runInGroup(group, new Runnable() {
+            public void run () {
+                try {
+                    pmgr[0] = createPlaceInGroup(config, delegates, hook);
+                } catch (InstantiationException ie) {
+                    error[0] = ie;
+                } catch (InvocationException ie) {
+                    error[0] = ie;
+                }
+            }
+        });
+        if (error[0] instanceof InstantiationException) {
+            throw (InstantiationException)error[0];
+        } else if (error[0] instanceof InvocationException) {
+            throw (InvocationException)error[0];
+        }
+        return pmgr[0];
+    }
+
+    /**
+     * Selects the affinity group (the event loop) in which to create the place described by the
+     * supplied config. This is only called if the object manager has more than one event loop.
+     *
+     * <p> This returns the main group, zero, because the {@link LocationManager} and
+     * {@link BodyManager} read and modify places and their managers directly, from the main loop,
+     * when bodies enter and leave them or update their occupant info. A server may return another
+     * group (say, via {@link PresentsDObjectMgr#assignAffinityGroup}) for places that those
+     * services never touch, or whose entry points it routes to the place's loop itself.
+     */
+    protected int selectAffinityGroup (PlaceConfig config)
+    {
+        return 0;
+    }
+
+    /**
+     * Does the actual work of {@link #createPlace(PlaceConfig,List,PreStartupHook)} in the
+     * affinity group of the calling code.
+     */
+    protected PlaceManager createPlaceInGroup (
+        PlaceConfig config, List<PlaceManagerDelegate> delegates, PreStartupHook hook)
         throws InstantiationException, InvocationException
     {
         PlaceManager pmgr = null;
@@ -212,7 +280,9 @@ public class PlaceRegistry
         _omgr.registerObject(plobj);
 
         // stick the manager into our table
-        _pmgrs.put(plobj.getOid(), pmgr);
+        synchronized (_pmgrs) {
+            _pmgrs.put(plobj.getOid(), pmgr);
+        }
 
         // start the place manager up with the newly created place object
         try {
@@ -257,7 +327,11 @@ public class PlaceRegistry
     {
         int ploid = pmgr.getPlaceObject().getOid();
         // remove it from the table
-        if (_pmgrs.remove(ploid) == null) {
+        PlaceManager omgr;
+        synchronized (_pmgrs) {
+            omgr = _pmgrs.remove(ploid);
+        }
+        if (omgr == null) {
             log.warning("Requested to unmap unmapped place manager", "pmgr", pmgr);
 
 //         } else {
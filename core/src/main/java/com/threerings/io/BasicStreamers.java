@@ -164,14 +164,14 @@ public class BasicStreamers
         public Object createObject (ObjectInputStream in)
             throws IOException
         {
-            return Integer.valueOf(in.readInt());
+            return Integer.valueOf(in.readCompactInt());
         }
 
         @Override
         public void writeObject (Object object, ObjectOutputStream out, boolean useWriter)
             throws IOException
         {
-            out.writeInt(((Integer)object).intValue());
+            out.writeCompactInt(((Integer)object).intValue());
         }
     }
 
@@ -182,14 +182,14 @@ public class BasicStreamers
         public Object createObject (ObjectInputStream in)
             throws IOException
         {
-            return Long.valueOf(in.readLong());
+            return Long.valueOf(in.readCompactLong());
         }
 
         @Override
         public void writeObject (Object object, ObjectOutputStream out, boolean useWriter)
             throws IOException
         {
-            out.writeLong(((Long)object).longValue());
+            out.writeCompactLong(((Long)object).longValue());
         }
     }
 
@@ -254,14 +254,14 @@ public class BasicStreamers
         public Object createObject (ObjectInputStream in)
             throws IOException
         {
-            return in.readUTF();
+            return in.readString();
         }
 
         @Override
         public void writeObject (Object object, ObjectOutputStream out, boolean useWriter)
             throws IOException
         {
-            out.writeUTF((String)object);
+            out.writeString((String)object);
         }
     }
 
@@ -461,7 +461,7 @@ public class BasicStreamers
         public Object createObject (ObjectInputStream in)
             throws IOException, ClassNotFoundException
         {
-            int size = in.readInt();
+            int size = in.readLength();
             Collection<Object> coll = createCollection(size);
             for (int ii = 0; ii < size; ii++) {
                 coll.add(in.readObject());
@@ -474,7 +474,7 @@ public class BasicStreamers
             throws IOException
         {
             Collection<?> coll = (Collection<?>)object;
-            out.writeInt(coll.size());
+            out.writeLength(coll.size());
             for (Object o : coll) {
                 out.writeObject(o);
             }
@@ -530,7 +530,7 @@ public class BasicStreamers
         public Object createObject (ObjectInputStream in)
             throws IOException, ClassNotFoundException
         {
-            int size = in.readInt();
+            int size = in.readLength();
             Map<Object, Object> map = createMap(size);
             for (int ii = 0; ii < size; ii++) {
                 map.put(in.readObject(), in.readObject());
@@ -543,7 +543,7 @@ public class BasicStreamers
             throws IOException
         {
             Map<?, ?> map = (Map<?, ?>)object;
-            out.writeInt(map.size());
+            out.writeLength(map.size());
             for (Map.Entry<?, ?> entry : map.entrySet()) {
                 out.writeObject(entry.getKey());
                 out.writeObject(entry.getValue());
@@ -566,10 +566,10 @@ public class BasicStreamers
         public Object createObject (ObjectInputStream in)
             throws IOException, ClassNotFoundException
         {
-            int size = in.readInt();
+            int size = in.readLength();
             Multiset<Object> set = createMultiset(size);
             for (int ii = 0; ii < size; ii++) {
-                set.add(in.readObject(), in.readInt());
+                set.add(in.readObject(), in.readLength());
             }
             return set;
         }
@@ -583,10 +583,10 @@ public class BasicStreamers
             @SuppressWarnings("unchecked")
             Multiset<Object> set = (Multiset<Object>)object;
             Set<Multiset.Entry<Object>> entrySet = set.entrySet();
-            out.writeInt(entrySet.size());
+            out.writeLength(entrySet.size());
             for (Multiset.Entry<Object> entry : entrySet) {
                 out.writeObject(entry.getElement());
-                out.writeInt(entry.getCount());
+                out.writeLength(entry.getCount());
             }
         }
 
@@ -602,7 +602,7 @@ public class BasicStreamers
     public static boolean[] readBooleanArray (ObjectInputStream ins)
         throws IOException
     {
-        boolean[] value = new boolean[ins.readInt()];
+        boolean[] value = new boolean[ins.readLength()];
         int ecount = value.length;
         for (int ii = 0; ii < ecount; ii++) {
             value[ii] = ins.readBoolean();
@@ -613,7 +613,7 @@ public class BasicStreamers
     public static byte[] readByteArray (ObjectInputStream ins)
         throws IOException
     {
-        byte[] value = new byte[ins.readInt()];
+        byte[] value = new byte[ins.readLength()];
         int remain = value.length, offset = 0, read;
         while (remain > 0) {
             if ((read = ins.read(value, offset, remain)) > 0) {
@@ -629,73 +629,55 @@ public class BasicStreamers
     public static short[] readShortArray (ObjectInputStream ins)
         throws IOException
     {
-        short[] value = new short[ins.readInt()];
-        int ecount = value.length;
-        for (int ii = 0; ii < ecount; ii++) {
-            value[ii] = ins.readShort();
-        }
+        short[] value = new short[ins.readLength()];
+        ins.readShorts(value);
         return value;
     }
 
     public static char[] readCharArray (ObjectInputStream ins)
         throws IOException
     {
-        char[] value = new char[ins.readInt()];
-        int ecount = value.length;
-        for (int ii = 0; ii < ecount; ii++) {
-            value[ii] = ins.readChar();
-        }
+        char[] value = new char[ins.readLength()];
+        ins.readChars(value);
         return value;
     }
 
     public static int[] readIntArray (ObjectInputStream ins)
         throws IOException
     {
-        int[] value = new int[ins.readInt()];
-        int ecount = value.length;
-        for (int ii = 0; ii < ecount; ii++) {
-            value[ii] = ins.readInt();
-        }
+        int[] value = new int[ins.readLength()];
+        ins.readCompactInts(value);
         return value;
     }
 
     public static long[] readLongArray (ObjectInputStream ins)
         throws IOException
     {
-        long[] value = new long[ins.readInt()];
-        int ecount = value.length;
-        for (int ii = 0; ii < ecount; ii++) {
-            value[ii] = ins.readLong();
-        }
+        long[] value = new long[ins.readLength()];
+        ins.readCompactLongs(value);
         return value;
     }
 
     public static float[] readFloatArray (ObjectInputStream ins)
         throws IOException
     {
-        float[] value = new float[ins.readInt()];
-        int ecount = value.length;
-        for (int ii = 0; ii < ecount; ii++) {
-            value[ii] = ins.readFloat();
-        }
+        float[] value = new float[ins.readLength()];
+        ins.readFloats(value);
         return value;
     }
 
     public static double[] readDoubleArray (ObjectInputStream ins)
         throws IOException
     {
-        double[] value = new double[ins.readInt()];
-        int ecount = value.length;
-        for (int ii = 0; ii < ecount; ii++) {
-            value[ii] = ins.readDouble();
-        }
+        double[] value = new double[ins.readLength()];
+        ins.readDoubles(value);
         return value;
     }
 
     public static Object[] readObjectArray (ObjectInputStream ins)
         throws IOException, ClassNotFoundException
     {
-        Object[] value = new Object[ins.readInt()];
+        Object[] value = new Object[ins.readLength()];
         int ecount = value.length;
         for (int ii = 0; ii < ecount; ii++) {
             value[ii] = ins.readObject();
@@ -707,7 +689,7 @@ public class BasicStreamers
         throws IOException
     {
         int ecount = value.length;
-        out.writeInt(ecount);
+        out.writeLength(ecount);
         for (int ii = 0; ii < ecount; ii++) {
             out.writeBoolean(value[ii]);
         }
@@ -717,7 +699,7 @@ public class BasicStreamers
         throws IOException
     {
         int ecount = value.length;
-        out.writeInt(ecount);
+        out.writeLength(ecount);
         out.write(value);
     }
 
@@ -725,7 +707,7 @@ public class BasicStreamers
         throws IOException
     {
         int ecount = value.length;
-        out.writeInt(ecount);
+        out.writeLength(ecount);
         for (int ii = 0; ii < ecount; ii++) {
             out.writeChar(value[ii]);
         }
@@ -735,7 +717,7 @@ public class BasicStreamers
         throws IOException
     {
         int ecount = value.length;
-        out.writeInt(ecount);
+        out.writeLength(ecount);
         for (int ii = 0; ii < ecount; ii++) {
             out.writeShort(value[ii]);
         }
@@ -744,20 +726,17 @@ public class BasicStreamers
     public static void writeIntArray (ObjectOutputStream out, int[] value)
         throws IOException
     {
-        int ecount = value.length;
-        out.writeInt(ecount);
-        for (int ii = 0; ii < ecount; ii++) {
-            out.writeInt(value[ii]);
-        }
+        out.writeLength(value.length);
+        out.writeCompactInts(value, 0, value.length);
     }
 
     public static void writeLongArray (ObjectOutputStream out, long[] value)
         throws IOException
     {
         int ecount = value.length;
-        out.writeInt(ecount);
+        out.writeLength(ecount);
         for (int ii = 0; ii < ecount; ii++) {
-            out.writeLong(value[ii]);
+            out.writeCompactLong(value[ii]);
         }
     }
 
@@ -765,7 +744,7 @@ public class BasicStreamers
         throws IOException
     {
         int ecount = value.length;
-        out.writeInt(ecount);
+        out.writeLength(ecount);
         for (int ii = 0; ii < ecount; ii++) {
             out.writeFloat(value[ii]);
         }
@@ -775,7 +754,7 @@ public class BasicStreamers
         throws IOException
     {
         int ecount = value.length;
-        out.writeInt(ecount);
+        out.writeLength(ecount);
         for (int ii = 0; ii < ecount; ii++) {
             out.writeDouble(value[ii]);
         }
@@ -785,7 +764,7 @@ public class BasicStreamers
         throws IOException
     {
         int ecount = value.length;
-        out.writeInt(ecount);
+        out.writeLength(ecount);
         for (int ii = 0; ii < ecount; ii++) {
             out.writeObject(value[ii]);
         }
@@ -32,6 +32,7 @@ import java.nio.InvalidMarkException;
  * Reads input from a {@link ByteBuffer}.
  */
 public class ByteBufferInputStream extends InputStream
+    implements ByteBufferSource
 {
     /**
      * Creates a new input stream to read from the specified buffer.
@@ -0,0 +1,39 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Implemented by input streams that serve their data from a {@link ByteBuffer}. An {@link
+ * ObjectInputStream} reading from such a stream reads multibyte values and arrays straight from
+ * the buffer, rather than through the stream a byte at a time.
+ */
+public interface ByteBufferSource
+{
+    /**
+     * Returns the buffer from which this stream's data is currently being served, positioned at
+     * the next byte to be read and limited to the data available. Anything read from the buffer
+     * is consumed just as if it had been read from the stream.
+     */
+    ByteBuffer getBuffer ();
+}
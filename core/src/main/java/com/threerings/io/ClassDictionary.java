@@ -0,0 +1,145 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+import java.util.List;
+import java.util.Map;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Assigns fixed codes to a set of well-known classes, so that a stream configured with the same
+ * dictionary on both ends need never transmit those classes' names. Other classes are mapped to
+ * codes as they are first streamed, as usual. A dictionary is normally generated at build time
+ * from all of an application's {@link Streamable} classes (by the <code>genclassdict</code> Ant
+ * task), and the two ends of a connection check that they are using the same dictionary by
+ * comparing {@link #getVersion versions}.
+ *
+ * <p> Dictionary codes occupy the top of the range of class codes, so when a dictionary is in use
+ * a stream may map at most {@link #FIRST_CODE}-1 other classes.
+ */
+public class ClassDictionary
+{
+    /** The maximum number of classes in a dictionary. */
+    public static final int MAX_SIZE = 4096;
+
+    /** The code assigned to the first class in a dictionary. */
+    public static final short FIRST_CODE = (short)(Short.MAX_VALUE - MAX_SIZE + 1);
+
+    /**
+     * Loads a dictionary from the supplied stream, which contains one class name per line. Blank
+     * lines and lines starting with <code>#</code> are ignored. The stream is not closed.
+     */
+    public static ClassDictionary load (InputStream in)
+        throws IOException
+    {
+        BufferedReader bin = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        List<String> names = Lists.newArrayList();
+        for (String line; (line = bin.readLine()) != null; ) {
+            line = line.trim();
+            if (line.length() > 0 && !line.startsWith("#")) {
+                names.add(line);
+            }
+        }
+        return new ClassDictionary(names);
+    }
+
+    /**
+     * Creates a dictionary that assigns codes to the named classes, in order.
+     *
+     * @exception IllegalArgumentException if there are too many classes or duplicate classes.
+     */
+    public ClassDictionary (List<String> classNames)
+    {
+        if (classNames.size() > MAX_SIZE) {
+            throw new IllegalArgumentException(
+                "Too many classes for dictionary [count=" + classNames.size() + "]");
+        }
+        _names = ImmutableList.copyOf(classNames);
+        for (int ii = 0, nn = _names.size(); ii < nn; ii++) {
+            if (_codes.put(_names.get(ii), (short)(FIRST_CODE + ii)) != null) {
+                throw new IllegalArgumentException(
+                    "Duplicate class in dictionary [class=" + _names.get(ii) + "]");
+            }
+        }
+        // the version is derived from the names (List.hashCode and String.hashCode are both well
+        // defined), never zero, which means "no dictionary"
+        int version = _names.hashCode();
+        _version = (version == 0) ? 1 : version;
+    }
+
+    /**
+     * Returns a value that identifies the contents of this dictionary.
+     */
+    public int getVersion ()
+    {
+        return _version;
+    }
+
+    /**
+     * Returns the number of classes in this dictionary.
+     */
+    public int size ()
+    {
+        return _names.size();
+    }
+
+    /**
+     * Returns the code assigned to the named class, or zero if it's not in this dictionary.
+     */
+    public short getCode (String className)
+    {
+        Short code = _codes.get(className);
+        return (code == null) ? 0 : code;
+    }
+
+    /**
+     * Returns the name of the class assigned the supplied code, or null if no class was.
+     */
+    public String getClassName (short code)
+    {
+        int index = code - FIRST_CODE;
+        return (index >= 0 && index < _names.size()) ? _names.get(index) : null;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "[version=" + _version + ", size=" + _names.size() + "]";
+    }
+
+    /** The names of our classes, in code order. */
+    protected final List<String> _names;
+
+    /** The codes assigned to our classes. */
+    protected final Map<String, Short> _codes = Maps.newHashMap();
+
+    /** Our version. */
+    protected final int _version;
+}
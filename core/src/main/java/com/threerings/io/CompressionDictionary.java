@@ -0,0 +1,282 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A block of data that is typical of the frames sent over a connection (class names, strings and
+ * so forth that appear again and again), with which the compression of a connection's frames is
+ * primed, so that even the first frames compress well. A dictionary is trained from captured
+ * traffic (see {@link #train}), and the two ends of a connection check that they are using the
+ * same dictionary by comparing {@link #getVersion versions}.
+ */
+public class CompressionDictionary
+{
+    /** The maximum size of a dictionary, in bytes. */
+    public static final int MAX_SIZE = FrameCodec.WINDOW_SIZE;
+
+    /**
+     * Loads a dictionary from the supplied stream, which contains nothing but the dictionary data.
+     * The stream is not closed.
+     */
+    public static CompressionDictionary load (InputStream in)
+        throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        for (int got; (got = in.read(buf)) != -1; ) {
+            bout.write(buf, 0, got);
+        }
+        return new CompressionDictionary(bout.toByteArray());
+    }
+
+    /**
+     * Reads the payloads of the frames in a capture of the data sent over a connection (that is,
+     * the data written by a {@link FramingOutputStream}), for use in training a dictionary.
+     * Compressed frames are skipped. The stream is not closed.
+     */
+    public static List<byte[]> readFrames (InputStream in)
+        throws IOException
+    {
+        DataInputStream din = new DataInputStream(in);
+        List<byte[]> frames = Lists.newArrayList();
+        while (true) {
+            int header;
+            try {
+                header = din.readInt();
+            } catch (EOFException eofe) {
+                return frames;
+            }
+            byte[] payload = new byte[(header & FramingOutputStream.LENGTH_MASK) -
+                                      FramingOutputStream.HEADER_SIZE];
+            din.readFully(payload);
+            if ((header & FramingOutputStream.COMPRESSED_FLAG) == 0) {
+                frames.add(payload);
+            }
+        }
+    }
+
+    /**
+     * Creates a dictionary of (at most) the specified size from the strings that occur most often
+     * in the supplied samples of the frames sent over a connection.
+     */
+    public static CompressionDictionary train (List<byte[]> samples, int size)
+    {
+        size = Math.min(size, MAX_SIZE);
+
+        // count the occurrences of every short string in the samples
+        Map<Long, Integer> counts = Maps.newHashMap();
+        for (byte[] sample : samples) {
+            for (int ii = 0; ii + GRAM_LENGTH <= sample.length; ii++) {
+                Long gram = getGram(sample, ii);
+                Integer count = counts.get(gram);
+                counts.put(gram, (count == null) ? 1 : (count + 1));
+            }
+        }
+
+        // consider overlapping segments of each sample, starting with those that contain the most
+        // frequently occurring strings
+        PriorityQueue<Segment> queue = new PriorityQueue<Segment>();
+        for (byte[] sample : samples) {
+            for (int ii = 0; ii + GRAM_LENGTH <= sample.length; ii += SEGMENT_LENGTH/4) {
+                Segment seg = new Segment(sample, ii, Math.min(SEGMENT_LENGTH, sample.length - ii));
+                if ((seg.score = seg.score(counts)) > 0) {
+                    queue.add(seg);
+                }
+            }
+        }
+
+        // take the best segments until we run out of space, rescoring each as we go because the
+        // strings in the segments that we've taken no longer count
+        List<Segment> chosen = Lists.newArrayList();
+        for (int total = 0; total < size && !queue.isEmpty(); ) {
+            Segment seg = queue.poll();
+            int score = seg.score(counts);
+            if (!queue.isEmpty() && score < queue.peek().score) {
+                if ((seg.score = score) > 0) {
+                    queue.add(seg);
+                }
+                continue;
+            }
+            if (score == 0) {
+                break;
+            }
+            chosen.add(seg);
+            total += seg.length;
+            for (int ii = seg.offset, ll = seg.offset + seg.length - GRAM_LENGTH; ii <= ll; ii++) {
+                counts.remove(getGram(seg.data, ii));
+            }
+        }
+
+        // the best segments go last, nearest to the data being compressed, where they remain in
+        // the compression window the longest
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        for (int ii = chosen.size() - 1; ii >= 0; ii--) {
+            Segment seg = chosen.get(ii);
+            bout.write(seg.data, seg.offset, seg.length);
+        }
+        byte[] data = bout.toByteArray();
+        return new CompressionDictionary(
+            (data.length > size) ? copyTail(data, size) : data);
+    }
+
+    /**
+     * Creates a dictionary with the supplied data.
+     *
+     * @exception IllegalArgumentException if there is more than {@link #MAX_SIZE} bytes of data.
+     */
+    public CompressionDictionary (byte[] data)
+    {
+        if (data.length > MAX_SIZE) {
+            throw new IllegalArgumentException(
+                "Too much data for dictionary [size=" + data.length + "]");
+        }
+        _data = data.clone();
+        // the version is derived from the data, never zero, which means "no dictionary"
+        int version = Arrays.hashCode(_data);
+        _version = (version == 0) ? 1 : version;
+    }
+
+    /**
+     * Returns a value that identifies the contents of this dictionary.
+     */
+    public int getVersion ()
+    {
+        return _version;
+    }
+
+    /**
+     * Returns the number of bytes in this dictionary.
+     */
+    public int size ()
+    {
+        return _data.length;
+    }
+
+    /**
+     * Returns a copy of our data, as would be read by {@link #load}.
+     */
+    public byte[] getData ()
+    {
+        return _data.clone();
+    }
+
+    /**
+     * Copies our data into the supplied array at the specified offset.
+     */
+    public void copyData (byte[] dest, int offset)
+    {
+        System.arraycopy(_data, 0, dest, offset, _data.length);
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "[version=" + _version + ", size=" + _data.length + "]";
+    }
+
+    /** A candidate for inclusion in a dictionary being trained. */
+    protected static class Segment
+        implements Comparable<Segment>
+    {
+        public final byte[] data;
+        public final int offset;
+        public final int length;
+        public int score;
+
+        public Segment (byte[] data, int offset, int length)
+        {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Sums the counts of the strings in this segment that occur more than once.
+         */
+        public int score (Map<Long, Integer> counts)
+        {
+            int score = 0;
+            for (int ii = offset, ll = offset + length - GRAM_LENGTH; ii <= ll; ii++) {
+                Integer count = counts.get(getGram(data, ii));
+                if (count != null && count > 1) {
+                    score += count;
+                }
+            }
+            return score;
+        }
+
+        // from interface Comparable<Segment>
+        public int compareTo (Segment other)
+        {
+            // highest score first
+            return (other.score < score) ? -1 : ((other.score == score) ? 0 : 1);
+        }
+    }
+
+    /**
+     * Returns the string of {@link #GRAM_LENGTH} bytes at the specified offset, packed into a long.
+     */
+    protected static Long getGram (byte[] data, int offset)
+    {
+        long gram = 0;
+        for (int ii = 0; ii < GRAM_LENGTH; ii++) {
+            gram = (gram << 8) | (data[offset + ii] & 0xFF);
+        }
+        return gram;
+    }
+
+    /**
+     * Returns the last <code>length</code> bytes of the supplied array.
+     */
+    protected static byte[] copyTail (byte[] data, int length)
+    {
+        byte[] tail = new byte[length];
+        System.arraycopy(data, data.length - length, tail, 0, length);
+        return tail;
+    }
+
+    /** Our data. */
+    protected final byte[] _data;
+
+    /** Our version. */
+    protected final int _version;
+
+    /** The length of the strings counted when training a dictionary. */
+    protected static final int GRAM_LENGTH = 8;
+
+    /** The length of the segments of sample data from which a dictionary is assembled. */
+    protected static final int SEGMENT_LENGTH = 64;
+}
@@ -0,0 +1,242 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+import java.util.List;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * An object encoded once in a form that can then be written to any number of {@link
+ * ObjectOutputStream}s, which would otherwise each have to encode it anew because each identifies
+ * classes and pooled strings with its own codes. The encoding leaves a gap wherever a class or
+ * pooled string is referenced, which is filled in with the appropriate code as the encoding is
+ * written to each stream (as is any string that an adaptive stream might have learned).
+ */
+public class EncodedObject
+{
+    /**
+     * Encodes the supplied object.
+     */
+    public EncodedObject (Object object)
+        throws IOException
+    {
+        this(object, false);
+    }
+
+    /**
+     * Encodes the supplied object, for writing to streams that are (or are not) compact.
+     *
+     * @see ObjectOutputStream#setCompact
+     */
+    public EncodedObject (Object object, boolean compact)
+        throws IOException
+    {
+        this(object, compact, false);
+    }
+
+    /**
+     * Encodes the supplied object, for writing to streams that are (or are not) compact and
+     * adaptive.
+     *
+     * @see ObjectOutputStream#setCompact
+     * @see ObjectOutputStream#setAdaptiveInterning
+     */
+    public EncodedObject (Object object, boolean compact, boolean adaptive)
+        throws IOException
+    {
+        this(object, compact, adaptive, false);
+    }
+
+    /**
+     * Encodes the supplied object, for writing to streams that are (or are not) compact, adaptive
+     * and field indexing.
+     *
+     * @see ObjectOutputStream#setCompact
+     * @see ObjectOutputStream#setAdaptiveInterning
+     * @see ObjectOutputStream#setFieldIndexing
+     */
+    public EncodedObject (Object object, boolean compact, boolean adaptive, boolean indexing)
+        throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        Recorder recorder = new Recorder(bout);
+        recorder.setCompact(compact);
+        recorder.setAdaptiveInterning(adaptive);
+        recorder.setFieldIndexing(indexing);
+        recorder.writeObject(object);
+        recorder.flush();
+
+        _compact = compact;
+        _adaptive = adaptive;
+        _indexing = indexing;
+        _data = bout.toByteArray();
+        _refs = recorder.refs.toArray();
+        _offsets = new int[_refs.length];
+        for (int ii = 0; ii < _offsets.length; ii++) {
+            _offsets[ii] = recorder.offsets.get(ii);
+        }
+    }
+
+    /**
+     * Writes our object to the supplied stream, exactly as {@link ObjectOutputStream#writeObject}
+     * would have, provided that the stream has already assigned codes to all of the classes and
+     * pooled strings that our object references (and is compact, adaptive and field indexing if
+     * and only if our encoding is).
+     * Otherwise nothing is written, and the object must be written the usual way (which will
+     * assign the codes, so that this will succeed next time).
+     *
+     * @return true if the object was written, false if it was not.
+     */
+    public boolean writeTo (ObjectOutputStream out)
+        throws IOException
+    {
+        if (out.isCompact() != _compact || out.isAdaptiveInterning() != _adaptive ||
+            out.isFieldIndexing() != _indexing) {
+            return false;
+        }
+        int count = _refs.length;
+        short[] codes = new short[count];
+        for (int ii = 0; ii < count; ii++) {
+            Object ref = _refs[ii];
+            if (ref instanceof LearnableString) {
+                continue; // these are written however the stream sees fit
+            }
+            codes[ii] = (ref instanceof String) ?
+                out.getInternCode((String)ref) : out.getClassCode((Class<?>)ref);
+            if (codes[ii] == 0) {
+                return false;
+            }
+        }
+
+        int pos = 0;
+        for (int ii = 0; ii < count; ii++) {
+            out.write(_data, pos, _offsets[ii] - pos);
+            if (_refs[ii] instanceof LearnableString) {
+                out.writeString(((LearnableString)_refs[ii]).value);
+            } else {
+                out.writeShort(codes[ii]);
+            }
+            pos = _offsets[ii];
+        }
+        out.write(_data, pos, _data.length - pos);
+        return true;
+    }
+
+    /**
+     * Returns the number of bytes in our encoding, not counting the class and intern codes.
+     */
+    public int size ()
+    {
+        return _data.length;
+    }
+
+    /** Encodes an object, noting where each class and intern code would be written rather than
+     * writing it. */
+    protected static class Recorder extends ObjectOutputStream
+    {
+        /** The classes and pooled strings referenced by the object, in order. */
+        public List<Object> refs = Lists.newArrayList();
+
+        /** The offset in the encoded data at which each reference's code belongs. */
+        public List<Integer> offsets = Lists.newArrayList();
+
+        public Recorder (ByteArrayOutputStream target)
+        {
+            super(target);
+        }
+
+        @Override
+        protected void writeNewClassMapping (ClassMapping cmap)
+        {
+            noteRef(cmap.sclass);
+        }
+
+        @Override
+        protected void writeExistingClassMapping (ClassMapping cmap)
+        {
+            noteRef(cmap.sclass);
+        }
+
+        @Override
+        protected void writeNewInternMapping (short code, String value)
+        {
+            noteRef(value);
+        }
+
+        @Override
+        protected void writeExistingInternMapping (short code, String value)
+        {
+            noteRef(value);
+        }
+
+        @Override
+        public void writeString (String value)
+            throws IOException
+        {
+            if (isAdaptiveInterning()) {
+                noteRef(new LearnableString(value));
+            } else {
+                super.writeString(value);
+            }
+        }
+
+        protected void noteRef (Object ref)
+        {
+            refs.add(ref);
+            offsets.add(size());
+        }
+    }
+
+    /** A string written to an adaptive stream, which may or may not be written as a code. */
+    protected static class LearnableString
+    {
+        /** The string. */
+        public final String value;
+
+        public LearnableString (String value)
+        {
+            this.value = value;
+        }
+    }
+
+    /** Whether our encoding is compact. */
+    protected boolean _compact;
+
+    /** Whether our encoding is for adaptive streams. */
+    protected boolean _adaptive;
+
+    /** Whether our encoding is for field indexing streams. */
+    protected boolean _indexing;
+
+    /** Our encoding, less class and intern codes. */
+    protected byte[] _data;
+
+    /** The classes (and pooled and learnable strings) whose codes belong in our encoding. */
+    protected Object[] _refs;
+
+    /** The offsets in our encoding at which each of our references' codes belong. */
+    protected int[] _offsets;
+}
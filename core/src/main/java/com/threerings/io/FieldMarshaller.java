@@ -136,7 +136,7 @@ public abstract class FieldMarshaller
             }
         }
 
-        return fm;
+        return (fm == null) ? null : accessDirectly(field, fm);
     }
 
     /**
@@ -174,6 +174,24 @@ public abstract class FieldMarshaller
         }
     }
 
+    /**
+     * Returns a marshaller that streams the supplied field without going through reflection, if
+     * the VM allows it, otherwise the supplied reflective marshaller.
+     */
+    protected static FieldMarshaller accessDirectly (Field field, FieldMarshaller fm)
+    {
+        if (_directAccess) {
+            try {
+                return UnsafeFieldMarshaller.create(field, fm);
+            } catch (LinkageError le) {
+                log.info("Direct field access unavailable, streaming fields via reflection.",
+                         "error", le);
+                _directAccess = false;
+            }
+        }
+        return fm;
+    }
+
     /**
      * Used to marshall and unmarshall classes for which we have a basic {@link Streamer}.
      */
@@ -328,24 +346,24 @@ public abstract class FieldMarshaller
             @Override
             public void readField (Field field, Object target, ObjectInputStream in)
                 throws Exception {
-                field.setInt(target, in.readInt());
+                field.setInt(target, in.readCompactInt());
             }
             @Override
             public void writeField (Field field, Object source, ObjectOutputStream out)
                 throws Exception {
-                out.writeInt(field.getInt(source));
+                out.writeCompactInt(field.getInt(source));
             }
         });
         marshallers.put(Long.TYPE, new FieldMarshaller("long") {
             @Override
             public void readField (Field field, Object target, ObjectInputStream in)
                 throws Exception {
-                field.setLong(target, in.readLong());
+                field.setLong(target, in.readCompactLong());
             }
             @Override
             public void writeField (Field field, Object source, ObjectOutputStream out)
                 throws Exception {
-                out.writeLong(field.getLong(source));
+                out.writeCompactLong(field.getLong(source));
             }
         });
         marshallers.put(Float.TYPE, new FieldMarshaller("float") {
@@ -413,6 +431,9 @@ public abstract class FieldMarshaller
     /** The field marshaller for pooled strings. */
     protected static FieldMarshaller _internMarshaller;
 
+    /** Cleared if we discover that we're on a VM that can't do {@link UnsafeFieldMarshaller}. */
+    protected static boolean _directAccess = true;
+
     /** Defines the signature to a custom field reader method. */
     protected static final Class<?>[] READER_ARGS = { ObjectInputStream.class };
 
@@ -0,0 +1,89 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+/**
+ * The basis of the {@link FrameCompressor} and {@link FrameDecompressor}, which compress the
+ * frames sent over a connection in a simple LZ77 format. Matches may refer to anything in the
+ * last {@link #WINDOW_SIZE} bytes of the frames that came before (and to the dictionary with which
+ * the window is primed), so both ends must process the same frames in the same order.
+ *
+ * <p> A compressed frame's payload contains its uncompressed length (as a variable-length
+ * integer), followed by a series of sequences. Each sequence is a token byte (whose high four bits
+ * hold the number of literal bytes that follow and whose low four bits hold the length of the
+ * match, less {@link #MIN_MATCH}, either of which is continued in bytes that follow if it is 15),
+ * the literal bytes, and then the two byte distance back to the match. The last sequence has no
+ * match.
+ */
+public abstract class FrameCodec
+{
+    /** The number of bytes of previous frames to which a frame may refer. */
+    public static final int WINDOW_SIZE = 32 * 1024;
+
+    /**
+     * Creates a codec whose window is primed with the supplied dictionary, which may be null.
+     */
+    protected FrameCodec (CompressionDictionary dictionary)
+    {
+        _window = new byte[2 * WINDOW_SIZE];
+        if (dictionary != null) {
+            dictionary.copyData(_window, 0);
+            _pos = dictionary.size();
+        }
+    }
+
+    /**
+     * Makes room at the end of our window for the specified number of bytes, keeping the last
+     * {@link #WINDOW_SIZE} bytes of what's there (which may move to the beginning of the window).
+     *
+     * @return the number of bytes by which the data in the window moved.
+     */
+    protected int makeRoom (int bytes)
+    {
+        if (_pos + bytes <= _window.length) {
+            return 0;
+        }
+        int keep = Math.min(_pos, WINDOW_SIZE), shift = _pos - keep;
+        // we grow to accommodate a huge frame, but shrink back down again afterwards
+        int size = Math.max(2 * WINDOW_SIZE, keep + bytes);
+        byte[] window = (size == _window.length) ? _window : new byte[size];
+        System.arraycopy(_window, shift, window, 0, keep);
+        _window = window;
+        _pos = keep;
+        return shift;
+    }
+
+    /** The data of previous frames, followed by the data of the current frame. */
+    protected byte[] _window;
+
+    /** The position in the window just past the data of the most recent frame. */
+    protected int _pos;
+
+    /** The shortest match we encode. */
+    protected static final int MIN_MATCH = 4;
+
+    /** The farthest back a match may be. */
+    protected static final int MAX_DISTANCE = 0xFFFF;
+
+    /** The value of a length in a token that indicates that the length continues. */
+    protected static final int LENGTH_CONTINUES = 15;
+}
@@ -0,0 +1,189 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+import java.util.Arrays;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses the frames sent over a connection, for decompression by a {@link FrameDecompressor}
+ * (see {@link FrameCodec} for the format). Frames that are not compressed do not enter into the
+ * compression of those that are, but those that are must be delivered in the order in which they
+ * were compressed.
+ *
+ * <p><em>Note:</em> A compressor is not thread safe.
+ */
+public class FrameCompressor extends FrameCodec
+{
+    /**
+     * Creates a compressor primed with the supplied dictionary, which may be null.
+     */
+    public FrameCompressor (CompressionDictionary dictionary)
+    {
+        super(dictionary);
+        Arrays.fill(_table, -1);
+        for (int ii = 0; ii + MIN_MATCH <= _pos; ii++) {
+            _table[hash(getInt(_window, ii))] = ii;
+        }
+    }
+
+    /**
+     * Compresses the supplied frame, as returned by {@link
+     * FramingOutputStream#frameAndReturnBuffer}, consuming its data.
+     *
+     * @return a buffer containing the compressed frame, with {@link
+     * FramingOutputStream#COMPRESSED_FLAG} set in its header. The buffer is reused by the next
+     * call to this method.
+     */
+    public ByteBuffer compressFrame (ByteBuffer frame)
+    {
+        // copy the frame's payload into our window
+        int length = frame.remaining() - FramingOutputStream.HEADER_SIZE;
+        frame.position(frame.position() + FramingOutputStream.HEADER_SIZE);
+        int shift = makeRoom(length);
+        if (shift > 0) {
+            for (int ii = 0; ii < _table.length; ii++) {
+                _table[ii] = Math.max(_table[ii] - shift, -1);
+            }
+        }
+        int start = _pos;
+        frame.get(_window, start, length);
+        _pos += length;
+
+        // make sure we can accommodate the worst case, in which nothing matches
+        int worst = FramingOutputStream.HEADER_SIZE + 5 + length + length/255 + 1;
+        if (_out.length < worst) {
+            _out = new byte[Math.max(worst, _out.length * 2)];
+            _outbuf = ByteBuffer.wrap(_out);
+        }
+        int op = putVarInt(FramingOutputStream.HEADER_SIZE, length);
+        op = compress(start, _pos, op);
+
+        _outbuf.clear();
+        _outbuf.putInt(0, op | FramingOutputStream.COMPRESSED_FLAG);
+        _outbuf.limit(op);
+        return _outbuf;
+    }
+
+    /**
+     * Compresses the data in our window between the specified positions into our output buffer,
+     * starting at the specified position.
+     *
+     * @return the position in our output buffer just past the compressed data.
+     */
+    protected int compress (int start, int end, int op)
+    {
+        byte[] window = _window;
+        int anchor = start;
+        for (int ip = start, limit = end - MIN_MATCH; ip <= limit; ) {
+            int value = getInt(window, ip), hash = hash(value);
+            int ref = _table[hash];
+            _table[hash] = ip;
+            if (ref < 0 || ip - ref > MAX_DISTANCE || getInt(window, ref) != value) {
+                ip++;
+                continue;
+            }
+            int length = MIN_MATCH;
+            while (ip + length < end && window[ref + length] == window[ip + length]) {
+                length++;
+            }
+            op = putSequence(op, anchor, ip - anchor, length);
+            int distance = ip - ref;
+            _out[op++] = (byte)(distance >>> 8);
+            _out[op++] = (byte)distance;
+            if (length - MIN_MATCH >= LENGTH_CONTINUES) {
+                op = putLength(op, length - MIN_MATCH - LENGTH_CONTINUES);
+            }
+            ip += length;
+            anchor = ip;
+        }
+        return putSequence(op, anchor, end - anchor, MIN_MATCH);
+    }
+
+    /**
+     * Writes a sequence's token and literals (the caller writes its match, if it has one).
+     */
+    protected int putSequence (int op, int anchor, int literals, int length)
+    {
+        _out[op++] = (byte)((Math.min(literals, LENGTH_CONTINUES) << 4) |
+                            Math.min(length - MIN_MATCH, LENGTH_CONTINUES));
+        if (literals >= LENGTH_CONTINUES) {
+            op = putLength(op, literals - LENGTH_CONTINUES);
+        }
+        System.arraycopy(_window, anchor, _out, op, literals);
+        return op + literals;
+    }
+
+    /**
+     * Writes the continuation of a length.
+     */
+    protected int putLength (int op, int length)
+    {
+        for (; length >= 255; length -= 255) {
+            _out[op++] = (byte)255;
+        }
+        _out[op++] = (byte)length;
+        return op;
+    }
+
+    /**
+     * Writes an unsigned value seven bits at a time.
+     */
+    protected int putVarInt (int op, int value)
+    {
+        for (; (value & ~0x7F) != 0; value >>>= 7) {
+            _out[op++] = (byte)((value & 0x7F) | 0x80);
+        }
+        _out[op++] = (byte)value;
+        return op;
+    }
+
+    /**
+     * Returns the four bytes at the specified position.
+     */
+    protected static int getInt (byte[] data, int pos)
+    {
+        return ((data[pos] & 0xFF) << 24) | ((data[pos+1] & 0xFF) << 16) |
+            ((data[pos+2] & 0xFF) << 8) | (data[pos+3] & 0xFF);
+    }
+
+    /**
+     * Hashes four bytes into an index into our table.
+     */
+    protected static int hash (int value)
+    {
+        return (value * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    /** The position in our window at which each hash of four bytes was last seen, or -1. */
+    protected int[] _table = new int[1 << HASH_BITS];
+
+    /** The buffer into which we compress frames. */
+    protected byte[] _out = new byte[1024];
+
+    /** Wraps {@link #_out}. */
+    protected ByteBuffer _outbuf = ByteBuffer.wrap(_out);
+
+    /** The number of bits in our hashes. */
+    protected static final int HASH_BITS = 13;
+}
@@ -0,0 +1,151 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+import java.io.IOException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decompresses the frames compressed by a {@link FrameCompressor}, which must be supplied in the
+ * order in which they were compressed.
+ *
+ * <p><em>Note:</em> A decompressor is not thread safe.
+ */
+public class FrameDecompressor extends FrameCodec
+{
+    /** The largest frame we'll decompress, in bytes. */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Creates a decompressor primed with the supplied dictionary, which must be the one with
+     * which the compressor was primed.
+     */
+    public FrameDecompressor (CompressionDictionary dictionary)
+    {
+        super(dictionary);
+    }
+
+    /**
+     * Decompresses the supplied compressed frame payload, consuming it.
+     *
+     * @return a buffer containing the decompressed data, which remains valid until the next call
+     * to this method.
+     */
+    public ByteBuffer decompress (ByteBuffer src)
+        throws IOException
+    {
+        try {
+            int length = getVarInt(src);
+            if (length < 0 || length > MAX_FRAME_SIZE) {
+                throw new IOException("Compressed frame too large [length=" + length + "]");
+            }
+            makeRoom(length);
+            byte[] window = _window;
+            int start = _pos, end = start + length, op = start;
+            while (true) {
+                int token = src.get() & 0xFF;
+                int literals = token >>> 4;
+                if (literals == LENGTH_CONTINUES) {
+                    literals += getLength(src);
+                }
+                if (literals > end - op) {
+                    throw malformed("literals overrun");
+                }
+                src.get(window, op, literals);
+                op += literals;
+                if (!src.hasRemaining()) {
+                    break;
+                }
+
+                int distance = ((src.get() & 0xFF) << 8) | (src.get() & 0xFF);
+                int mlength = token & 0xF;
+                if (mlength == LENGTH_CONTINUES) {
+                    mlength += getLength(src);
+                }
+                mlength += MIN_MATCH;
+                int ref = op - distance;
+                if (distance == 0 || ref < 0 || mlength > end - op) {
+                    throw malformed("bad match");
+                }
+                if (distance >= mlength) {
+                    System.arraycopy(window, ref, window, op, mlength);
+                } else {
+                    // the match overlaps the data it produces, so must be copied a byte at a time
+                    for (int ii = 0; ii < mlength; ii++) {
+                        window[op + ii] = window[ref + ii];
+                    }
+                }
+                op += mlength;
+            }
+            if (op != end) {
+                throw malformed("length mismatch");
+            }
+            _pos = end;
+            return ByteBuffer.wrap(window, start, length).slice();
+
+        } catch (BufferUnderflowException bue) {
+            throw malformed("truncated");
+        }
+    }
+
+    /**
+     * Reads the continuation of a length.
+     */
+    protected static int getLength (ByteBuffer src)
+        throws IOException
+    {
+        int length = 0, b;
+        while ((b = src.get() & 0xFF) == 255) {
+            if ((length += 255) > MAX_FRAME_SIZE) {
+                throw malformed("length overrun");
+            }
+        }
+        return length + b;
+    }
+
+    /**
+     * Reads an unsigned value written seven bits at a time.
+     */
+    protected static int getVarInt (ByteBuffer src)
+        throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = src.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw malformed("bad length");
+    }
+
+    /**
+     * Creates the exception that reports a malformed frame.
+     */
+    protected static IOException malformed (String problem)
+    {
+        return new IOException("Malformed compressed frame [problem=" + problem + "]");
+    }
+}
@@ -45,6 +45,16 @@ import java.nio.channels.ReadableByteChannel;
  * single frame at a time, so any data left over from a previous frame
  * will disappear when <code>readFrame()</code> is called again.
  *
+ * <p>A message that was too large to send in a single frame may arrive
+ * as a series of chunk frames (see {@link FramingOutputStream#CHUNK_FLAG}),
+ * between which other frames may arrive. The chunks are collected as
+ * they arrive and the reassembled message is served up as a single frame
+ * once its last chunk has been read.
+ *
+ * <p>Frames (or chunked messages) that were compressed by a {@link
+ * FrameCompressor} are decompressed before they are served up, once the
+ * stream has been configured with a decompressor.
+ *
  * <p><em>Note:</em> The framing input stream does not synchronize reads
  * from its internal buffer. It is intended to only be accessed from a
  * single thread.
@@ -54,6 +64,7 @@ import java.nio.channels.ReadableByteChannel;
  * <code>InputStream</code> for its lifetime.
  */
 public class FramedInputStream extends InputStream
+    implements ByteBufferSource
 {
     /**
      * Creates a new framed input stream.
@@ -61,6 +72,16 @@ public class FramedInputStream extends InputStream
     public FramedInputStream ()
     {
         _buffer = ByteBuffer.allocate(INITIAL_BUFFER_CAPACITY);
+        _current = _buffer;
+    }
+
+    /**
+     * Configures the decompressor with which we decompress compressed frames.
+     * Our frames must not be compressed until this is done.
+     */
+    public void setDecompressor (FrameDecompressor decompressor)
+    {
+        _decompressor = decompressor;
     }
 
     /**
@@ -80,19 +101,12 @@ public class FramedInputStream extends InputStream
         throws IOException
     {
         // flush data from any previous frame from the buffer
-        if (_buffer.limit() == _length) {
-            // this will remove the old frame's bytes from the buffer,
-            // shift our old data to the start of the buffer, position the
-            // buffer appropriately for appending new data onto the end of
-            // our existing data, and set the limit to the capacity
-            _buffer.limit(_have);
-            _buffer.position(_length);
-            _buffer.compact();
-            _have -= _length;
-
-            // we may have picked up the next frame in a previous read, so
-            // try decoding the length straight away
-            _length = decodeLength();
+        if (_served) {
+            discardFrame();
+        } else if (_reassembled) {
+            _chunks.clear();
+            _current = _buffer;
+            _reassembled = false;
         }
 
         // we may already have the next frame entirely in the buffer from
@@ -142,9 +156,30 @@ public class FramedInputStream extends InputStream
         return checkForCompleteFrame();
     }
 
+    /**
+     * Removes the current frame's bytes from the buffer.
+     */
+    protected final void discardFrame ()
+    {
+        // this will remove the old frame's bytes from the buffer, shift our
+        // old data to the start of the buffer, position the buffer
+        // appropriately for appending new data onto the end of our existing
+        // data, and set the limit to the capacity
+        _buffer.limit(_have);
+        _buffer.position(_length);
+        _buffer.compact();
+        _have -= _length;
+        _served = false;
+
+        // we may have picked up the next frame in a previous read, so try
+        // decoding the length straight away
+        _length = decodeLength();
+    }
+
     /**
      * Decodes and returns the length of the current frame from the buffer
-     * if possible. Returns -1 otherwise.
+     * if possible (noting its chunk flags in {@link #_flags}). Returns -1
+     * otherwise.
      */
     protected final int decodeLength ()
     {
@@ -162,24 +197,81 @@ public class FramedInputStream extends InputStream
         length += (_buffer.get() & 0xFF);
         _buffer.position(_have);
 
-        return length;
+        _flags = length & ~FramingOutputStream.LENGTH_MASK;
+        return length & FramingOutputStream.LENGTH_MASK;
     }
 
     /**
      * Returns true if a complete frame is in the buffer, false otherwise.
      * If a complete frame is in the buffer, the buffer will be prepared
-     * to deliver that frame via our {@link InputStream} interface.
+     * to deliver that frame via our {@link InputStream} interface. Any
+     * complete chunk frames are absorbed into the message being
+     * reassembled, which is prepared for delivery in the same way once
+     * its last chunk is absorbed.
      */
     protected final boolean checkForCompleteFrame ()
+        throws IOException
     {
-        if (_length == -1 || _have < _length) {
-            return false;
+        while (_length != -1 && _have >= _length) {
+            if ((_flags & FramingOutputStream.CHUNK_FLAG) == 0) {
+                // prepare the buffer such that this frame can be read
+                _buffer.position(HEADER_SIZE);
+                _buffer.limit(_length);
+                _current = decompress(_buffer, _flags);
+                _served = true;
+                return true;
+            }
+
+            // add this chunk to the message we're reassembling
+            boolean last = (_flags & FramingOutputStream.LAST_CHUNK_FLAG) != 0;
+            int flags = _flags;
+            int size = _length - HEADER_SIZE;
+            if (_chunks == null) {
+                _chunks = ByteBuffer.allocate(Math.max(size, INITIAL_BUFFER_CAPACITY));
+            } else if (_chunks.remaining() < size) {
+                int capacity = _chunks.capacity();
+                while (capacity - _chunks.position() < size) {
+                    capacity <<= 1;
+                }
+                ByteBuffer chunks = ByteBuffer.allocate(capacity);
+                chunks.put((ByteBuffer)_chunks.flip());
+                _chunks = chunks;
+            }
+            _buffer.position(HEADER_SIZE);
+            _buffer.limit(_length);
+            _chunks.put(_buffer);
+            discardFrame();
+
+            if (last) {
+                _chunks.flip();
+                _current = decompress(_chunks, flags);
+                _reassembled = true;
+                return true;
+            }
         }
+        return false;
+    }
 
-        // prepare the buffer such that this frame can be read
-        _buffer.position(HEADER_SIZE);
-        _buffer.limit(_length);
-        return true;
+    // from interface ByteBufferSource
+    public ByteBuffer getBuffer ()
+    {
+        return _current;
+    }
+
+    /**
+     * Returns the supplied frame data, or its decompressed form if the
+     * supplied frame flags indicate that it's compressed.
+     */
+    protected ByteBuffer decompress (ByteBuffer data, int flags)
+        throws IOException
+    {
+        if ((flags & FramingOutputStream.COMPRESSED_FLAG) == 0) {
+            return data;
+        }
+        if (_decompressor == null) {
+            throw new IOException("Received compressed frame without a decompressor");
+        }
+        return _decompressor.decompress(data);
     }
 
     /**
@@ -196,7 +288,7 @@ public class FramedInputStream extends InputStream
     @Override
     public int read ()
     {
-        return (_buffer.remaining() > 0) ? (_buffer.get() & 0xFF) : -1;
+        return (_current.remaining() > 0) ? (_current.get() & 0xFF) : -1;
     }
 
     /**
@@ -234,11 +326,11 @@ public class FramedInputStream extends InputStream
 
         // trim the amount to be read to what is available; if they wanted
         // bytes and we have none, return -1 to indicate EOF
-        if ((len = Math.min(len, _buffer.remaining())) == 0) {
+        if ((len = Math.min(len, _current.remaining())) == 0) {
             return -1;
         }
 
-        _buffer.get(b, off, len);
+        _current.get(b, off, len);
         return len;
     }
 
@@ -270,7 +362,7 @@ public class FramedInputStream extends InputStream
     @Override
     public int available ()
     {
-        return _buffer.remaining();
+        return _current.remaining();
     }
 
     /**
@@ -299,21 +391,41 @@ public class FramedInputStream extends InputStream
     public void reset ()
     {
         // position our buffer at the beginning of the frame data
-        _buffer.position(HEADER_SIZE);
+        _current.position((_current == _buffer) ? HEADER_SIZE : 0);
     }
 
     /** The buffer in which we maintain our frame data. */
     protected ByteBuffer _buffer;
 
+    /** The buffer from which the current frame is being served: either
+     * {@link #_buffer} or, for a reassembled message, {@link #_chunks}. */
+    protected ByteBuffer _current;
+
+    /** The chunks of a message that arrived in chunks, or null. */
+    protected ByteBuffer _chunks;
+
+    /** Whether the current frame is a message reassembled from chunks. */
+    protected boolean _reassembled;
+
+    /** Decompresses our compressed frames, or null. */
+    protected FrameDecompressor _decompressor;
+
     /** The length of the current frame being read. */
     protected int _length = -1;
 
+    /** The chunk flags of the current frame being read. */
+    protected int _flags;
+
+    /** Whether the current frame in the buffer has been served up, and
+     * is thus to be discarded on the next call to {@link #readFrame}. */
+    protected boolean _served;
+
     /** The number of bytes total that we have in our buffer (these bytes
      * may comprise more than one frame. */
     protected int _have = 0;
 
     /** The size of the frame header (a 32-bit integer). */
-    protected static final int HEADER_SIZE = 4;
+    protected static final int HEADER_SIZE = FramingOutputStream.HEADER_SIZE;
 
     /** The default initial size of the internal buffer. */
     protected static final int INITIAL_BUFFER_CAPACITY = 32;
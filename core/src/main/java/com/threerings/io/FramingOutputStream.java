@@ -39,6 +39,32 @@ import java.nio.ByteBuffer;
  */
 public class FramingOutputStream extends ByteBufferOutputStream
 {
+    /** The size of the frame header (a 32-bit integer). */
+    public static final int HEADER_SIZE = 4;
+
+    /** Set in the header of a frame that contains one chunk of a message that was too large to
+     * send in a single frame. The remaining bits contain the length of the chunk frame, and a
+     * {@link FramedInputStream} reassembles the chunks into the original message. */
+    public static final int CHUNK_FLAG = 0x80000000;
+
+    /** Set in the header of the frame that contains the last chunk of a message. */
+    public static final int LAST_CHUNK_FLAG = 0x40000000;
+
+    /** Set in the header of a frame whose payload was compressed by a {@link FrameCompressor}.
+     * If a compressed message is sent in chunks, each chunk has this set. */
+    public static final int COMPRESSED_FLAG = 0x20000000;
+
+    /** Masks the length bits of a frame header. */
+    public static final int LENGTH_MASK = ~(CHUNK_FLAG | LAST_CHUNK_FLAG | COMPRESSED_FLAG);
+
+    /**
+     * Returns the header for a chunk frame of the specified length (including the header).
+     */
+    public static int chunkHeader (int length, boolean last)
+    {
+        return length | CHUNK_FLAG | (last ? LAST_CHUNK_FLAG : 0);
+    }
+
     public FramingOutputStream ()
     {
         _buffer.put(HEADER_PAD);
@@ -89,5 +115,5 @@ public class FramingOutputStream extends ByteBufferOutputStream
 
     /** We pad the beginning of our buffer so that we can write the frame
      * length when the time comes. */
-    protected static final byte[] HEADER_PAD = new byte[4];
+    protected static final byte[] HEADER_PAD = new byte[HEADER_SIZE];
 }
@@ -0,0 +1,147 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+import java.io.IOException;
+
+import com.google.common.base.Objects;
+
+import static com.threerings.NaryaLog.log;
+
+/**
+ * The base class for streamers that are generated at build time (by the <code>genstreamer</code>
+ * Ant task) for specific {@link Streamable} classes. These read and write the fields of their
+ * class directly rather than by reflection, but stream exactly the same data as the reflective
+ * streamer would. A generated streamer is named per {@link Streamer#getGeneratedStreamerName},
+ * and is found and used automatically when its class is first streamed.
+ */
+public abstract class GeneratedStreamer extends Streamer
+{
+    /**
+     * Returns the names of the fields streamed by this streamer, in the order they are streamed.
+     */
+    public String[] getFieldNames ()
+    {
+        return _fieldNames;
+    }
+
+    /**
+     * Returns the {@link Streamer#getSchemaHash schema hash} of our class as it stood when this
+     * streamer was generated.
+     */
+    public long getSchemaHash ()
+    {
+        return _schemaHash;
+    }
+
+    /**
+     * Creates a streamer for the specified class, which streams the named fields in order.
+     *
+     * @param schemaHash the {@link Streamer#getSchemaHash schema hash} of the class from which
+     * the streamer was generated.
+     */
+    protected GeneratedStreamer (Class<?> target, long schemaHash, String... fieldNames)
+    {
+        _target = target;
+        _schemaHash = schemaHash;
+        _fieldNames = fieldNames;
+    }
+
+    /**
+     * Returns true if the supplied stream has data remaining for the named field. Data will be
+     * missing if it was written by an older version of our class, which lacked the field.
+     */
+    protected boolean hasField (ObjectInputStream in, String field)
+        throws IOException
+    {
+        if (in.available() > 0) {
+            return true;
+        }
+        log.info("Streamed instance missing field (probably newly added)",
+                 "class", _target.getName(), "field", field);
+        return false;
+    }
+
+    /**
+     * Wraps an unexpected failure (a null {@link java.util.Date} field, say) in the same sort of
+     * exception that the reflective streamer reports.
+     */
+    protected IOException failure (String action, RuntimeException cause)
+    {
+        String errmsg = "Failure " + action + " streamable fields [class=" +
+            _target.getName() + "]";
+        return (IOException) new IOException(errmsg).initCause(cause);
+    }
+
+    @Override
+    protected Objects.ToStringHelper toStringHelper ()
+    {
+        return super.toStringHelper()
+            .add("target", _target.getName())
+            .add("fcount", _fieldNames.length);
+    }
+
+    /**
+     * Returns the basic streamer used for fields of the supplied type.
+     */
+    protected static Streamer getBasicStreamer (Class<?> type)
+    {
+        return BasicStreamers.BSTREAMERS.get(type);
+    }
+
+    /**
+     * Writes a possibly null value of a type handled by a basic streamer.
+     */
+    protected static void writeBasic (Streamer streamer, Object value, ObjectOutputStream out)
+        throws IOException
+    {
+        if (value == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            streamer.writeObject(value, out, true);
+        }
+    }
+
+    /**
+     * Reads a possibly null value of a type handled by a basic streamer.
+     */
+    protected static Object readBasic (Streamer streamer, ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        Object value = streamer.createObject(in);
+        streamer.readObject(value, in, true);
+        return value;
+    }
+
+    /** The class that we stream. */
+    protected final Class<?> _target;
+
+    /** The schema hash of our class when we were generated. */
+    protected final long _schemaHash;
+
+    /** The names of the fields that we stream. */
+    protected final String[] _fieldNames;
+}
@@ -30,6 +30,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
@@ -47,10 +50,15 @@ public class ObjectInputStream extends DataInputStream
 {
     /**
      * Constructs an object input stream which will read its data from the supplied source stream.
+     * If the source is a {@link ByteBufferSource}, integers, longs and arrays are read directly
+     * from its buffer.
      */
     public ObjectInputStream (InputStream source)
     {
         super(source);
+        if (source instanceof ByteBufferSource) {
+            _source = (ByteBufferSource)source;
+        }
     }
 
     /**
@@ -74,6 +82,288 @@ public class ObjectInputStream extends DataInputStream
         _translations.put(oldname, newname);
     }
 
+    /**
+     * Configures this stream to recognize the fixed codes assigned to classes by the supplied
+     * dictionary, should the writer of the stream use them. Classes are otherwise mapped as usual.
+     */
+    public void setClassDictionary (ClassDictionary dictionary)
+    {
+        _dictionary = dictionary;
+        _dictmap = null;
+    }
+
+    /**
+     * Configures this stream to read the strings written by an {@link
+     * ObjectOutputStream#setAdaptiveInterning adaptive} stream.
+     */
+    public void setAdaptiveInterning (boolean adaptive)
+    {
+        _adaptive = adaptive;
+    }
+
+    /**
+     * Returns true if this stream reads the strings written by an adaptive stream.
+     */
+    public boolean isAdaptiveInterning ()
+    {
+        return _adaptive;
+    }
+
+    /**
+     * Configures this stream to read the field indices written by an {@link
+     * ObjectOutputStream#setFieldIndexing indexing} stream.
+     */
+    public void setFieldIndexing (boolean indexing)
+    {
+        _fieldIndexing = indexing;
+    }
+
+    /**
+     * Returns true if this stream reads distributed object fields identified by index.
+     */
+    public boolean isFieldIndexing ()
+    {
+        return _fieldIndexing;
+    }
+
+    /**
+     * Configures this stream to read integers, longs and lengths in the compact encoding written
+     * by a compact {@link ObjectOutputStream}.
+     */
+    public void setCompact (boolean compact)
+    {
+        _compact = compact;
+    }
+
+    /**
+     * Returns true if this stream reads integers, longs and lengths in their compact encoding.
+     */
+    public boolean isCompact ()
+    {
+        return _compact;
+    }
+
+    /**
+     * Reads an integer written by {@link ObjectOutputStream#writeCompactInt}.
+     */
+    public int readCompactInt ()
+        throws IOException
+    {
+        if (!_compact) {
+            ByteBuffer buf = getBuffer(4);
+            return (buf == null) ? readInt() : buf.getInt();
+        }
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a long written by {@link ObjectOutputStream#writeCompactLong}.
+     */
+    public long readCompactLong ()
+        throws IOException
+    {
+        if (!_compact) {
+            ByteBuffer buf = getBuffer(8);
+            return (buf == null) ? readLong() : buf.getLong();
+        }
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a length written by {@link ObjectOutputStream#writeLength}.
+     */
+    public int readLength ()
+        throws IOException
+    {
+        if (_compact) {
+            return readVarInt();
+        }
+        ByteBuffer buf = getBuffer(4);
+        return (buf == null) ? readInt() : buf.getInt();
+    }
+
+    /**
+     * Fills the supplied array with integers read as by {@link #readCompactInt}.
+     */
+    public void readCompactInts (int[] values)
+        throws IOException
+    {
+        readCompactInts(values, 0, values.length);
+    }
+
+    /**
+     * Fills the specified range of the supplied array with integers read as by {@link
+     * #readCompactInt}.
+     */
+    public void readCompactInts (int[] values, int offset, int length)
+        throws IOException
+    {
+        ByteBuffer buf = _compact ? null : getBuffer(length * 4L);
+        if (buf == null) {
+            for (int ii = offset, ll = offset + length; ii < ll; ii++) {
+                values[ii] = readCompactInt();
+            }
+        } else {
+            buf.asIntBuffer().get(values, offset, length);
+            skipBuffer(buf, length * 4);
+        }
+    }
+
+    /**
+     * Fills the supplied array with longs read as by {@link #readCompactLong}.
+     */
+    public void readCompactLongs (long[] values)
+        throws IOException
+    {
+        ByteBuffer buf = _compact ? null : getBuffer(values.length * 8L);
+        if (buf == null) {
+            for (int ii = 0; ii < values.length; ii++) {
+                values[ii] = readCompactLong();
+            }
+        } else {
+            buf.asLongBuffer().get(values);
+            skipBuffer(buf, values.length * 8);
+        }
+    }
+
+    /**
+     * Fills the supplied array with shorts read as by {@link #readShort}.
+     */
+    public void readShorts (short[] values)
+        throws IOException
+    {
+        ByteBuffer buf = getBuffer(values.length * 2L);
+        if (buf == null) {
+            for (int ii = 0; ii < values.length; ii++) {
+                values[ii] = readShort();
+            }
+        } else {
+            buf.asShortBuffer().get(values);
+            skipBuffer(buf, values.length * 2);
+        }
+    }
+
+    /**
+     * Fills the supplied array with chars read as by {@link #readChar}.
+     */
+    public void readChars (char[] values)
+        throws IOException
+    {
+        ByteBuffer buf = getBuffer(values.length * 2L);
+        if (buf == null) {
+            for (int ii = 0; ii < values.length; ii++) {
+                values[ii] = readChar();
+            }
+        } else {
+            buf.asCharBuffer().get(values);
+            skipBuffer(buf, values.length * 2);
+        }
+    }
+
+    /**
+     * Fills the supplied array with floats read as by {@link #readFloat}.
+     */
+    public void readFloats (float[] values)
+        throws IOException
+    {
+        ByteBuffer buf = getBuffer(values.length * 4L);
+        if (buf == null) {
+            for (int ii = 0; ii < values.length; ii++) {
+                values[ii] = readFloat();
+            }
+        } else {
+            buf.asFloatBuffer().get(values);
+            skipBuffer(buf, values.length * 4);
+        }
+    }
+
+    /**
+     * Fills the supplied array with doubles read as by {@link #readDouble}.
+     */
+    public void readDoubles (double[] values)
+        throws IOException
+    {
+        ByteBuffer buf = getBuffer(values.length * 8L);
+        if (buf == null) {
+            for (int ii = 0; ii < values.length; ii++) {
+                values[ii] = readDouble();
+            }
+        } else {
+            buf.asDoubleBuffer().get(values);
+            skipBuffer(buf, values.length * 8);
+        }
+    }
+
+    /**
+     * Reads an unsigned value written seven bits at a time.
+     */
+    protected int readVarInt ()
+        throws IOException
+    {
+        ByteBuffer buf = getBuffer(5);
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = (buf == null) ? readUnsignedByte() : (buf.get() & 0xFF);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length int");
+    }
+
+    /**
+     * Reads an unsigned long value written seven bits at a time.
+     */
+    protected long readVarLong ()
+        throws IOException
+    {
+        ByteBuffer buf = getBuffer(10);
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = (buf == null) ? readUnsignedByte() : (buf.get() & 0xFF);
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length long");
+    }
+
+    /**
+     * Returns our source's buffer if we have one (in big-endian order) and it holds at least the
+     * specified number of bytes, or null if the bytes must be read through the stream (which will
+     * report any shortfall).
+     */
+    protected ByteBuffer getBuffer (long bytes)
+    {
+        if (_source == null) {
+            return null;
+        }
+        ByteBuffer buf = _source.getBuffer();
+        return (buf.remaining() >= bytes && buf.order() == ByteOrder.BIG_ENDIAN) ? buf : null;
+    }
+
+    /**
+     * Advances the supplied buffer past data that was read from a view of it.
+     */
+    protected static void skipBuffer (ByteBuffer buf, int bytes)
+    {
+        buf.position(buf.position() + bytes);
+    }
+
+    /**
+     * Reads a class or intern code.
+     */
+    protected short readCode ()
+        throws IOException
+    {
+        ByteBuffer buf = getBuffer(2);
+        return (buf == null) ? readShort() : buf.getShort();
+    }
+
     /**
      * Reads a {@link Streamable} instance or one of the supported object types from the input
      * stream.
@@ -110,6 +400,31 @@ public class ObjectInputStream extends DataInputStream
      */
     public String readIntern ()
         throws IOException
+    {
+        // read in the intern code for this instance; a zero code indicates a null value
+        short code = readCode();
+        return (code == 0) ? null : readIntern(code);
+    }
+
+    /**
+     * Reads a string written by {@link ObjectOutputStream#writeString}.
+     */
+    public String readString ()
+        throws IOException
+    {
+        if (!_adaptive) {
+            return readUTF();
+        }
+        // a zero code indicates a string that was not learned, which follows
+        short code = readCode();
+        return (code == 0) ? readUTF() : readIntern(code);
+    }
+
+    /**
+     * Reads the rest of the pooled string value identified by the supplied (non-zero) code.
+     */
+    protected String readIntern (short code)
+        throws IOException
     {
         // create our intern map if necessary
         if (_internmap == null) {
@@ -118,15 +433,8 @@ public class ObjectInputStream extends DataInputStream
             _internmap.add(null);
         }
 
-        // read in the intern code for this instance
-        short code = readShort();
-
-        // a zero code indicates a null value
-        if (code == 0) {
-            return null;
-
         // if the code is negative, that means that we've never seen if before and value follows
-        } else if (code < 0) {
+        if (code < 0) {
             // first swap the code into positive-land
             code *= -1;
 
@@ -160,7 +468,12 @@ public class ObjectInputStream extends DataInputStream
     protected void mapIntern (short code, String value)
         throws IOException
     {
-        _internmap.add(code, value);
+        // an adaptive stream may reassign the code of a string that it has forgotten
+        if (code < _internmap.size()) {
+            _internmap.set(code, value);
+        } else {
+            _internmap.add(code, value);
+        }
     }
 
     /**
@@ -179,7 +492,7 @@ public class ObjectInputStream extends DataInputStream
         }
 
         // read in the class code for this instance
-        short code = readShort();
+        short code = readCode();
 
         // a zero code indicates a null value
         if (code == 0) {
@@ -207,6 +520,9 @@ public class ObjectInputStream extends DataInputStream
 
         } else {
             ClassMapping cmap = (code < _classmap.size()) ? _classmap.get(code) : null;
+            if (cmap == null && _dictionary != null) {
+                cmap = getDictionaryMapping(code);
+            }
 
             // sanity check
             if (cmap == null) {
@@ -222,6 +538,33 @@ public class ObjectInputStream extends DataInputStream
         }
     }
 
+    /**
+     * Returns the mapping for the class assigned the supplied code by our dictionary, resolving
+     * the class if this is the first time it has been read, or null if no class has that code.
+     */
+    protected ClassMapping getDictionaryMapping (short code)
+        throws IOException, ClassNotFoundException
+    {
+        String cname = _dictionary.getClassName(code);
+        if (cname == null) {
+            return null;
+        }
+        if (_dictmap == null) {
+            _dictmap = new ClassMapping[_dictionary.size()];
+        }
+        int index = code - ClassDictionary.FIRST_CODE;
+        if (_dictmap[index] == null) {
+            if (_translations != null) {
+                String tname = _translations.get(cname);
+                if (tname != null) {
+                    cname = tname;
+                }
+            }
+            _dictmap[index] = createClassMapping(code, cname);
+        }
+        return _dictmap[index];
+    }
+
     /**
      * Creates, adds, and returns the class mapping for the specified code and class name.
      */
@@ -354,6 +697,24 @@ public class ObjectInputStream extends DataInputStream
     /** An optional set of class name translations to use when unserializing objects. */
     protected Map<String, String> _translations;
 
+    /** Assigns fixed codes to well-known classes, or null. */
+    protected ClassDictionary _dictionary;
+
+    /** The mappings for the classes in our dictionary, resolved as they are first read. */
+    protected ClassMapping[] _dictmap;
+
+    /** Whether we read integers, longs and lengths in their compact encoding. */
+    protected boolean _compact;
+
+    /** Whether we read strings mapped by an adaptive stream. */
+    protected boolean _adaptive;
+
+    /** Whether we read distributed object fields identified by index. */
+    protected boolean _fieldIndexing;
+
+    /** The source from whose buffer we read directly, or null. */
+    protected ByteBufferSource _source;
+
     /** Used to activate verbose debug logging. */
     protected static final boolean STREAM_DEBUG = false;
 }
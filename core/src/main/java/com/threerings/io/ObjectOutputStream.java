@@ -21,7 +21,10 @@
 
 package com.threerings.io;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
@@ -30,6 +33,9 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.samskivert.util.LRUHashMap;
 
 import static com.threerings.NaryaLog.log;
 
@@ -61,6 +67,123 @@ public class ObjectOutputStream extends DataOutputStream
         _translations.put(className, streamedName);
     }
 
+    /**
+     * Configures this stream to identify the classes in the supplied dictionary by their fixed
+     * codes rather than mapping them as they are first written. This must only be done if the
+     * reader of the stream is using the same dictionary.
+     */
+    public void setClassDictionary (ClassDictionary dictionary)
+    {
+        _dictionary = dictionary;
+    }
+
+    /**
+     * Configures this stream to write integers, longs and lengths in a variable-length encoding
+     * that takes fewer bytes for small values (see {@link #writeCompactInt}). This must only be
+     * done if the reader of the stream is doing the same.
+     */
+    public void setCompact (boolean compact)
+    {
+        _compact = compact;
+    }
+
+    /**
+     * Returns true if this stream writes integers, longs and lengths in a compact encoding.
+     */
+    public boolean isCompact ()
+    {
+        return _compact;
+    }
+
+    /**
+     * Configures this stream to learn which strings it writes (via {@link #writeString}) are
+     * repeated, and to map those to codes as if they were pooled strings. A string is learned the
+     * second time it is seen in short order, and once a limited number of strings are learned,
+     * the least recently used one gives up its code to the next. This must only be done if the
+     * reader of the stream is doing the same.
+     */
+    public void setAdaptiveInterning (boolean adaptive)
+    {
+        _adaptive = adaptive;
+    }
+
+    /**
+     * Returns true if this stream learns and maps the strings it writes.
+     */
+    public boolean isAdaptiveInterning ()
+    {
+        return _adaptive;
+    }
+
+    /**
+     * Configures this stream to identify the fields of distributed objects by their index rather
+     * than their name, where the writer of an object knows that the reader can map the index back
+     * to a field. This must only be done if the reader of the stream is doing the same.
+     */
+    public void setFieldIndexing (boolean indexing)
+    {
+        _fieldIndexing = indexing;
+    }
+
+    /**
+     * Returns true if this stream identifies distributed object fields by index.
+     */
+    public boolean isFieldIndexing ()
+    {
+        return _fieldIndexing;
+    }
+
+    /**
+     * Notes that the supplied key (a class, say) has been described to the reader of this stream,
+     * so that the description need not be repeated.
+     *
+     * @return true if this is the first time the key has been noted, false if it was described
+     * previously.
+     */
+    public boolean noteDescribed (Object key)
+    {
+        if (_described == null) {
+            _described = Sets.newHashSet();
+        }
+        return _described.add(key);
+    }
+
+    /**
+     * Returns the number of class and intern mappings, and {@link #noteDescribed descriptions},
+     * that have been written to this stream. Anything written after a mapping can only be read by
+     * a stream that has read the mapping.
+     */
+    public int getMappingCount ()
+    {
+        return (_nextClassCode - 1) + (_nextInternCode - 1) + _remappedInterns +
+            ((_described == null) ? 0 : _described.size());
+    }
+
+    /**
+     * Returns the code by which the supplied class is identified on this stream (which may have
+     * been assigned by our dictionary), or zero if it has yet to be written to the stream.
+     */
+    public short getClassCode (Class<?> sclass)
+    {
+        ClassMapping cmap = (_classmap == null) ? null : _classmap.get(sclass);
+        return (cmap == null) ? getDictionaryCode(sclass) : cmap.code;
+    }
+
+    /**
+     * Returns the code by which the supplied pooled string is identified on this stream, or zero
+     * if it has yet to be written to the stream.
+     */
+    public short getInternCode (String value)
+    {
+        Short code = (_internmap == null) ? null : _internmap.get(value);
+        if (code == null) {
+            return 0;
+        }
+        // the caller may hang on to the code, so the string must not be forgotten
+        pinLearnedString(value);
+        return code;
+    }
+
     /**
      * Writes a {@link Streamable} instance or one of the support object types to the output
      * stream.
@@ -116,10 +239,113 @@ public class ObjectOutputStream extends DataOutputStream
             writeNewInternMapping(code, value);
 
         } else {
+            pinLearnedString(value);
             writeExistingInternMapping(code, value);
         }
     }
 
+    /**
+     * Writes a string. If this stream is {@link #setAdaptiveInterning adaptive}, the string is
+     * written as a pooled string if it has been learned (which it may be right now), and as a
+     * zero code followed by its value otherwise. If not, it is simply written as by {@link
+     * #writeUTF}.
+     */
+    public void writeString (String value)
+        throws IOException
+    {
+        if (!_adaptive) {
+            writeUTF(value);
+            return;
+        }
+
+        Short code = (_internmap == null) ? null : _internmap.get(value);
+        if (code != null) {
+            if (_learned != null) {
+                _learned.get(value); // note that it was used
+            }
+            writeExistingInternMapping(code, value);
+
+        } else if (shouldLearn(value)) {
+            code = learnString(value);
+            if (ObjectInputStream.STREAM_DEBUG) {
+                log.info(hashCode() + ": Learned string", "code", code, "value", value);
+            }
+            writeNewInternMapping(code, value);
+
+        } else {
+            writeShort(0);
+            writeUTF(value);
+        }
+    }
+
+    /**
+     * Returns true if the supplied string, which has not been mapped, should be mapped now.
+     */
+    protected boolean shouldLearn (String value)
+    {
+        if (value.length() == 0 || value.length() > MAX_LEARNED_LENGTH) {
+            return false;
+        }
+        if (_learned == null) {
+            _learned = new LinkedHashMap<String, Short>(16, 0.75f, true);
+            _sighted = new LRUHashMap<String, Boolean>(MAX_SIGHTED_STRINGS);
+        }
+        boolean full = (_learned.size() >= MAX_LEARNED_STRINGS ||
+                        _nextInternCode == Short.MAX_VALUE);
+        if (full && (_learned.isEmpty() || !canRemapInterns())) {
+            return false;
+        }
+        // a string is learned the second time we see it (if we haven't forgotten the first)
+        if (_sighted.remove(value) == null) {
+            _sighted.put(value, Boolean.TRUE);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Maps the supplied string to a new code, or to the code of the least recently used learned
+     * string if we have learned all that we can.
+     */
+    protected Short learnString (String value)
+    {
+        if (_internmap == null) {
+            _internmap = Maps.newHashMap();
+        }
+        Short code;
+        if (_learned.size() < MAX_LEARNED_STRINGS && _nextInternCode < Short.MAX_VALUE) {
+            code = createInternMapping(_nextInternCode++);
+        } else {
+            Iterator<Map.Entry<String, Short>> iter = _learned.entrySet().iterator();
+            Map.Entry<String, Short> eldest = iter.next();
+            iter.remove();
+            _internmap.remove(eldest.getKey());
+            code = createInternMapping((short)Math.abs(eldest.getValue()));
+            _remappedInterns++;
+        }
+        _internmap.put(value, code);
+        _learned.put(value, code);
+        return code;
+    }
+
+    /**
+     * Makes sure that the supplied string, if it was learned, keeps its code for good.
+     */
+    protected void pinLearnedString (String value)
+    {
+        if (_learned != null) {
+            _learned.remove(value);
+        }
+    }
+
+    /**
+     * Returns true if a code that has been assigned to a string may be reassigned to another.
+     */
+    protected boolean canRemapInterns ()
+    {
+        return true;
+    }
+
     /**
      * Creates and returns a new intern mapping.
      */
@@ -157,6 +383,89 @@ public class ObjectOutputStream extends DataOutputStream
         writeUTF(value);
     }
 
+    /**
+     * Writes an integer that is likely to be small. If this stream is compact, it is zig-zag
+     * encoded (so that small negative values are small too) and written in seven bit groups, in
+     * one to five bytes, otherwise it is written as by {@link #writeInt}.
+     */
+    public void writeCompactInt (int value)
+        throws IOException
+    {
+        if (_compact) {
+            writeVarInt((value << 1) ^ (value >> 31));
+        } else {
+            writeInt(value);
+        }
+    }
+
+    /**
+     * Writes the specified range of the supplied array as by {@link #writeCompactInt}.
+     */
+    public void writeCompactInts (int[] values, int offset, int length)
+        throws IOException
+    {
+        for (int ii = offset, ll = offset + length; ii < ll; ii++) {
+            writeCompactInt(values[ii]);
+        }
+    }
+
+    /**
+     * Writes a long that is likely to be small. If this stream is compact, it is encoded as by
+     * {@link #writeCompactInt}, in one to ten bytes, otherwise it is written as by {@link
+     * #writeLong}.
+     */
+    public void writeCompactLong (long value)
+        throws IOException
+    {
+        if (_compact) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        } else {
+            writeLong(value);
+        }
+    }
+
+    /**
+     * Writes the length of an array or the size of a collection. If this stream is compact, it is
+     * written in seven bit groups, in one to five bytes, otherwise it is written as by {@link
+     * #writeInt}.
+     */
+    public void writeLength (int length)
+        throws IOException
+    {
+        if (_compact) {
+            writeVarInt(length);
+        } else {
+            writeInt(length);
+        }
+    }
+
+    /**
+     * Writes an unsigned value seven bits at a time, least significant group first, setting the
+     * high bit of every byte but the last.
+     */
+    protected void writeVarInt (int value)
+        throws IOException
+    {
+        while ((value & ~0x7F) != 0) {
+            write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        write(value);
+    }
+
+    /**
+     * Writes an unsigned long value as by {@link #writeVarInt}.
+     */
+    protected void writeVarLong (long value)
+        throws IOException
+    {
+        while ((value & ~0x7FL) != 0) {
+            write((int)(value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        write((int)value);
+    }
+
     /**
      * Retrieves or creates the class mapping for the supplied class, writes it out to the stream,
      * and returns a reference to it.
@@ -182,6 +491,15 @@ public class ObjectOutputStream extends DataOutputStream
                 return cmap;
             }
 
+            // if the class is in our dictionary, the reader already knows its code
+            short code = getDictionaryCode(sclass);
+            if (code != 0) {
+                cmap = new ClassMapping(code, sclass, Streamer.getStreamer(sclass));
+                _classmap.put(sclass, cmap);
+                writeExistingClassMapping(cmap);
+                return cmap;
+            }
+
             // create a streamer instance and assign a code to this class
             Streamer streamer = Streamer.getStreamer(sclass);
             // we specifically do not inline the getStreamer() call into the ClassMapping
@@ -195,7 +513,8 @@ public class ObjectOutputStream extends DataOutputStream
             _classmap.put(sclass, cmap);
 
             // make sure we didn't blow past our maximum class count
-            if (_nextClassCode <= 0) {
+            if (_nextClassCode <= 0 ||
+                    (_dictionary != null && _nextClassCode > ClassDictionary.FIRST_CODE)) {
                 throw new RuntimeException("Too many unique classes written to ObjectOutputStream");
             }
             writeNewClassMapping(cmap);
@@ -206,6 +525,20 @@ public class ObjectOutputStream extends DataOutputStream
         return cmap;
     }
 
+    /**
+     * Returns the code assigned to the supplied class by our dictionary, or zero.
+     */
+    protected short getDictionaryCode (Class<?> sclass)
+    {
+        if (_dictionary == null) {
+            return 0;
+        }
+        // a translated class must be mapped the usual way, so that its translation is sent
+        String cname = sclass.getName();
+        return (_translations != null && _translations.containsKey(cname)) ?
+            0 : _dictionary.getCode(cname);
+    }
+
     /**
      * Creates and returns a new class mapping.
      */
@@ -299,6 +632,21 @@ public class ObjectOutputStream extends DataOutputStream
         _streamer.writeObject(_current, this, false);
     }
 
+    /**
+     * Writes the instance data of the supplied object in place of that of the object currently
+     * being written, as {@link #defaultWriteObject} would. The substitute must be of the same
+     * class as the current object (a modified clone, say).
+     */
+    public void defaultWriteObject (Object substitute)
+        throws IOException
+    {
+        // sanity check
+        if (_current == null || substitute.getClass() != _current.getClass()) {
+            throw new RuntimeException("defaultWriteObject() called illegally.");
+        }
+        _streamer.writeObject(substitute, this, false);
+    }
+
     /**
      * Write a string encoded as real UTF-8 (rather than the modified format handled by
      * {link #writeUTF}).
@@ -334,6 +682,20 @@ public class ObjectOutputStream extends DataOutputStream
     /** A counter used to assign codes to pooled strings. */
     protected short _nextInternCode = 1;
 
+    /** Whether we learn and map the strings we write. */
+    protected boolean _adaptive;
+
+    /** The strings that we've learned, and that have not since been written as pooled strings,
+     * in order of use (least recent first), or null. */
+    protected LinkedHashMap<String, Short> _learned;
+
+    /** Strings we've seen once recently, which will be learned if we see them again. */
+    protected LRUHashMap<String, Boolean> _sighted;
+
+    /** The number of times that a pooled string's code has been reassigned to a newly learned
+     * string. */
+    protected int _remappedInterns;
+
     /** The object currently being written to the stream. */
     protected Object _current;
 
@@ -342,4 +704,25 @@ public class ObjectOutputStream extends DataOutputStream
 
     /** An optional set of class name translations to use when serializing objects. */
     protected Map<String, String> _translations;
+
+    /** Assigns fixed codes to well-known classes, or null. */
+    protected ClassDictionary _dictionary;
+
+    /** Whether we write integers, longs and lengths in their compact encoding. */
+    protected boolean _compact;
+
+    /** Whether we identify distributed object fields by index. */
+    protected boolean _fieldIndexing;
+
+    /** The keys that have been described to our reader, or null. */
+    protected Set<Object> _described;
+
+    /** The maximum number of strings that we keep learned at any one time. */
+    protected static final int MAX_LEARNED_STRINGS = 1024;
+
+    /** The maximum length of a learned string. */
+    protected static final int MAX_LEARNED_LENGTH = 128;
+
+    /** The number of strings that we remember having seen once. */
+    protected static final int MAX_SIGHTED_STRINGS = 4 * MAX_LEARNED_STRINGS;
 }
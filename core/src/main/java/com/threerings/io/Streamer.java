@@ -115,6 +115,72 @@ public abstract class Streamer
         return null;
     }
 
+    /**
+     * Returns the fields of the supplied class that are streamed by its reflective streamer, in
+     * the order in which they are streamed.
+     */
+    public static Field[] getStreamedFields (Class<?> target)
+    {
+        // reflect on all the object's fields
+        List<Field> fields = Lists.newArrayList();
+        // this will read all non-static, non-transient fields into our fields list
+        ClassUtil.getFields(target, fields);
+
+        // Checks whether or not we should stream the fields in alphabetical order.
+        // This ensures cross-JVM compatibility since Class.getDeclaredFields() does not
+        // define an order. Due to legacy issues, this is not used by default.
+        if (SORT_FIELDS) {
+            QuickSort.sort(fields, FIELD_NAME_ORDER);
+        }
+
+        // remove all marked with NotStreamable, and if we're a streamable closure, remove any
+        // anonymous enclosing class reference
+        Predicate<Field> filter = Streamable.Closure.class.isAssignableFrom(target) ?
+            IS_STREAMCLOSURE : IS_STREAMABLE;
+        return Iterables.toArray(Iterables.filter(fields, filter), Field.class);
+    }
+
+    /**
+     * Returns a hash of everything about the supplied class that determines how its reflective
+     * streamer streams it: the names, types and interning of its streamed fields, in order, and
+     * whether it has custom reader and writer methods. A streamer generated from the class
+     * records this, so that it can be ignored if the class has since changed.
+     */
+    public static long getSchemaHash (Class<?> target)
+    {
+        StringBuilder schema = new StringBuilder();
+        for (Field field : getStreamedFields(target)) {
+            schema.append(field.getName()).append(' ').append(field.getType().getName());
+            if (field.isAnnotationPresent(Intern.class)) {
+                schema.append(" @Intern");
+            }
+            schema.append(';');
+        }
+        schema.append(hasMethod(target, READER_METHOD_NAME, READER_ARGS) ? 'r' : '-');
+        schema.append(hasMethod(target, WRITER_METHOD_NAME, WRITER_ARGS) ? 'w' : '-');
+
+        // a 64-bit FNV-1a hash, which is defined the same everywhere (as is String.hashCode()),
+        // but far less likely to match by accident
+        long hash = 0xcbf29ce484222325L;
+        for (int ii = 0, ll = schema.length(); ii < ll; ii++) {
+            hash = (hash ^ schema.charAt(ii)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the name of the class generated at build time to stream the named class, which
+     * will be used in place of the reflective streamer if it exists. This keeps the
+     * <code>$</code> of a nested class's binary name, so that (say) the streamers for
+     * <code>Foo$Bar</code> and <code>Foo_Bar</code> are distinct.
+     *
+     * @see GeneratedStreamer
+     */
+    public static String getGeneratedStreamerName (String className)
+    {
+        return className + "_Streamer";
+    }
+
     /**
      * Obtains a {@link Streamer} that can be used to read and write objects of the specified
      * target class. {@link Streamer} instances are shared among all {@link ObjectInputStream}s and
@@ -293,6 +359,12 @@ public abstract class Streamer
             }
         }
 
+        // use the streamer generated at build time, if there is one
+        Streamer generated = loadGeneratedStreamer(target);
+        if (generated != null) {
+            return generated;
+        }
+
         // create Streamers for other types
         Method reader = null;
         Method writer = null;
@@ -315,6 +387,66 @@ public abstract class Streamer
         }
     }
 
+    /**
+     * Loads and instantiates the generated streamer for the supplied class, if one exists and was
+     * generated from the class as it currently stands.
+     */
+    protected static Streamer loadGeneratedStreamer (Class<?> target)
+    {
+        ClassLoader loader = target.getClassLoader();
+        if (IGNORE_GENERATED || loader == null) {
+            return null;
+        }
+
+        Class<?> sclass;
+        try {
+            sclass = loader.loadClass(getGeneratedStreamerName(target.getName()));
+        } catch (ClassNotFoundException cnfe) {
+            return null; // no problem, we'll stream it reflectively
+        }
+
+        GeneratedStreamer streamer;
+        try {
+            streamer = (GeneratedStreamer)sclass.getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            log.warning("Failed to instantiate generated streamer", "class", target.getName(), e);
+            return null;
+        }
+        if (streamer._target != target) {
+            log.warning("Ignoring generated streamer for another class", "class", target.getName(),
+                        "streamer", sclass.getName(), "target", streamer._target.getName());
+            return null;
+        }
+
+        // if the class has changed since its streamer was generated, the streamer would put the
+        // wrong things on the wire, so make sure that isn't the case
+        if (streamer.getSchemaHash() != getSchemaHash(target)) {
+            Field[] fields = getStreamedFields(target);
+            String[] names = new String[fields.length];
+            for (int ii = 0; ii < fields.length; ii++) {
+                names[ii] = fields[ii].getName();
+            }
+            log.warning("Ignoring out of date generated streamer", "class", target.getName(),
+                        "fields", names, "generated", streamer.getFieldNames());
+            return null;
+        }
+        return streamer;
+    }
+
+    /**
+     * Returns true if the supplied class has a public method with the specified name and
+     * arguments.
+     */
+    protected static boolean hasMethod (Class<?> target, String name, Class<?>[] args)
+    {
+        try {
+            target.getMethod(name, args);
+            return true;
+        } catch (NoSuchMethodException nsme) {
+            return false;
+        }
+    }
+
     /**
      * A streamer that streams the fields of a class.
      */
@@ -449,23 +581,7 @@ public abstract class Streamer
          */
         protected FieldMarshaller[] createMarshallers ()
         {
-            // reflect on all the object's fields
-            List<Field> fields = Lists.newArrayList();
-            // this will read all non-static, non-transient fields into our fields list
-            ClassUtil.getFields(_target, fields);
-
-            // Checks whether or not we should stream the fields in alphabetical order.
-            // This ensures cross-JVM compatibility since Class.getDeclaredFields() does not
-            // define an order. Due to legacy issues, this is not used by default.
-            if (SORT_FIELDS) {
-                QuickSort.sort(fields, FIELD_NAME_ORDER);
-            }
-
-            // remove all marked with NotStreamable, and if we're a streamable closure, remove any
-            // anonymous enclosing class reference
-            Predicate<Field> filter = Streamable.Closure.class.isAssignableFrom(_target) ?
-                IS_STREAMCLOSURE : IS_STREAMABLE;
-            _fields = Iterables.toArray(Iterables.filter(fields, filter), Field.class);
+            _fields = getStreamedFields(_target);
             int fcount = _fields.length;
 
             // obtain field marshallers for all of our fields
@@ -639,7 +755,7 @@ public abstract class Streamer
             throws IOException
         {
             int length = Array.getLength(object);
-            out.writeInt(length);
+            out.writeLength(length);
             // write each array element with its own class identifier
             // because it could be any derived class of the array element type
             for (int ii = 0; ii < length; ii++) {
@@ -651,7 +767,7 @@ public abstract class Streamer
         public Object createObject (ObjectInputStream in)
             throws IOException, ClassNotFoundException
         {
-            int length = in.readInt();
+            int length = in.readLength();
             if (ObjectInputStream.STREAM_DEBUG) {
                 log.info(in.hashCode() + ": Creating array '" +
                     _componentType.getName() + "[" + length + "]'.");
@@ -700,7 +816,7 @@ public abstract class Streamer
             throws IOException
         {
             int length = Array.getLength(object);
-            out.writeInt(length);
+            out.writeLength(length);
             // The component class is final, we can be sure that all instances in the array will
             // be of the same class and thus can serialize things more efficiently.
             // Compute a mask indicating which elements are null and which are populated
@@ -954,14 +1070,14 @@ public abstract class Streamer
         protected void writeCode (ObjectOutputStream out, int code)
             throws IOException
         {
-            out.writeInt(code);
+            out.writeCompactInt(code);
         }
 
         @Override
         protected int readCode (ObjectInputStream in)
             throws IOException
         {
-            return in.readInt();
+            return in.readCompactInt();
         }
     } // end: static class IntOrdEnumStreamer
 
@@ -982,6 +1098,10 @@ public abstract class Streamer
     protected static final boolean SORT_FIELDS =
         Boolean.getBoolean("com.threerings.io.streamFieldsAlphabetically");
 
+    /** Should we ignore streamers generated at build time? */
+    protected static final boolean IGNORE_GENERATED =
+        Boolean.getBoolean("com.threerings.io.ignoreGeneratedStreamers");
+
     /** Our policy on handling enum classes. */
     protected static final EnumPolicy ENUM_POLICY = EnumPolicy.create();
 
@@ -123,6 +123,13 @@ public class UnreliableObjectOutputStream extends ObjectOutputStream
         }
     }
 
+    @Override
+    protected boolean canRemapInterns ()
+    {
+        // a datagram that remapped a code might be lost while the old mapping was still in use
+        return false;
+    }
+
     @Override
     protected Short createInternMapping (short code)
     {
@@ -0,0 +1,239 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.io;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import java.util.Date;
+
+import static com.threerings.NaryaLog.log;
+
+/**
+ * A field marshaller bound to a single field, which it reads and writes directly at its offset in
+ * the object, with primitive-typed calls, rather than via {@link Field#get} and friends (which
+ * check access and box primitives on every call). These stream exactly the same data as the
+ * reflective marshallers that they replace, which remain in use where we cannot do this.
+ */
+abstract class UnsafeFieldMarshaller extends FieldMarshaller
+{
+    /**
+     * Returns a marshaller that streams the supplied field as does the supplied (reflective)
+     * marshaller, but without reflection, or the reflective marshaller itself if direct access is
+     * not available for the field.
+     */
+    public static FieldMarshaller create (Field field, FieldMarshaller reflective)
+    {
+        // volatile fields need volatile accesses, which we leave to reflection
+        if (UNSAFE == null || Modifier.isVolatile(field.getModifiers())) {
+            return reflective;
+        }
+
+        long offset = UNSAFE.objectFieldOffset(field);
+        Class<?> ftype = field.getType();
+        if (ftype == Boolean.TYPE) {
+            return new UnsafeFieldMarshaller("boolean", offset) {
+                @Override public void readField (Field field, Object target, ObjectInputStream in)
+                    throws Exception {
+                    UNSAFE.putBoolean(target, _offset, in.readBoolean());
+                }
+                @Override public void writeField (Field field, Object src, ObjectOutputStream out)
+                    throws Exception {
+                    out.writeBoolean(UNSAFE.getBoolean(src, _offset));
+                }
+            };
+        } else if (ftype == Byte.TYPE) {
+            return new UnsafeFieldMarshaller("byte", offset) {
+                @Override public void readField (Field field, Object target, ObjectInputStream in)
+                    throws Exception {
+                    UNSAFE.putByte(target, _offset, in.readByte());
+                }
+                @Override public void writeField (Field field, Object src, ObjectOutputStream out)
+                    throws Exception {
+                    out.writeByte(UNSAFE.getByte(src, _offset));
+                }
+            };
+        } else if (ftype == Character.TYPE) {
+            return new UnsafeFieldMarshaller("char", offset) {
+                @Override public void readField (Field field, Object target, ObjectInputStream in)
+                    throws Exception {
+                    UNSAFE.putChar(target, _offset, in.readChar());
+                }
+                @Override public void writeField (Field field, Object src, ObjectOutputStream out)
+                    throws Exception {
+                    out.writeChar(UNSAFE.getChar(src, _offset));
+                }
+            };
+        } else if (ftype == Short.TYPE) {
+            return new UnsafeFieldMarshaller("short", offset) {
+                @Override public void readField (Field field, Object target, ObjectInputStream in)
+                    throws Exception {
+                    UNSAFE.putShort(target, _offset, in.readShort());
+                }
+                @Override public void writeField (Field field, Object src, ObjectOutputStream out)
+                    throws Exception {
+                    out.writeShort(UNSAFE.getShort(src, _offset));
+                }
+            };
+        } else if (ftype == Integer.TYPE) {
+            return new UnsafeFieldMarshaller("int", offset) {
+                @Override public void readField (Field field, Object target, ObjectInputStream in)
+                    throws Exception {
+                    UNSAFE.putInt(target, _offset, in.readCompactInt());
+                }
+                @Override public void writeField (Field field, Object src, ObjectOutputStream out)
+                    throws Exception {
+                    out.writeCompactInt(UNSAFE.getInt(src, _offset));
+                }
+            };
+        } else if (ftype == Long.TYPE) {
+            return new UnsafeFieldMarshaller("long", offset) {
+                @Override public void readField (Field field, Object target, ObjectInputStream in)
+                    throws Exception {
+                    UNSAFE.putLong(target, _offset, in.readCompactLong());
+                }
+                @Override public void writeField (Field field, Object src, ObjectOutputStream out)
+                    throws Exception {
+                    out.writeCompactLong(UNSAFE.getLong(src, _offset));
+                }
+            };
+        } else if (ftype == Float.TYPE) {
+            return new UnsafeFieldMarshaller("float", offset) {
+                @Override public void readField (Field field, Object target, ObjectInputStream in)
+                    throws Exception {
+                    UNSAFE.putFloat(target, _offset, in.readFloat());
+                }
+                @Override public void writeField (Field field, Object src, ObjectOutputStream out)
+                    throws Exception {
+                    out.writeFloat(UNSAFE.getFloat(src, _offset));
+                }
+            };
+        } else if (ftype == Double.TYPE) {
+            return new UnsafeFieldMarshaller("double", offset) {
+                @Override public void readField (Field field, Object target, ObjectInputStream in)
+                    throws Exception {
+                    UNSAFE.putDouble(target, _offset, in.readDouble());
+                }
+                @Override public void writeField (Field field, Object src, ObjectOutputStream out)
+                    throws Exception {
+                    out.writeDouble(UNSAFE.getDouble(src, _offset));
+                }
+            };
+        } else if (ftype == Date.class) {
+            return new UnsafeFieldMarshaller("Date", offset) {
+                @Override public void readField (Field field, Object target, ObjectInputStream in)
+                    throws Exception {
+                    UNSAFE.putObject(target, _offset, new Date(in.readLong()));
+                }
+                @Override public void writeField (Field field, Object src, ObjectOutputStream out)
+                    throws Exception {
+                    out.writeLong(((Date)UNSAFE.getObject(src, _offset)).getTime());
+                }
+            };
+        } else if (reflective == _internMarshaller) {
+            return new UnsafeFieldMarshaller("intern", offset) {
+                @Override public void readField (Field field, Object target, ObjectInputStream in)
+                    throws Exception {
+                    UNSAFE.putObject(target, _offset, in.readIntern());
+                }
+                @Override public void writeField (Field field, Object src, ObjectOutputStream out)
+                    throws Exception {
+                    out.writeIntern((String)UNSAFE.getObject(src, _offset));
+                }
+            };
+        } else if (reflective == _marshallers.get(Streamable.class)) {
+            return new UnsafeFieldMarshaller("Generic", offset) {
+                @Override public void readField (Field field, Object target, ObjectInputStream in)
+                    throws Exception {
+                    UNSAFE.putObject(target, _offset, in.readObject());
+                }
+                @Override public void writeField (Field field, Object src, ObjectOutputStream out)
+                    throws Exception {
+                    out.writeObject(UNSAFE.getObject(src, _offset));
+                }
+            };
+        } else if (reflective instanceof StreamerMarshaller) {
+            final Streamer streamer = ((StreamerMarshaller)reflective)._streamer;
+            return new UnsafeFieldMarshaller(streamer.toString(), offset) {
+                @Override public void readField (Field field, Object target, ObjectInputStream in)
+                    throws Exception {
+                    Object value = null;
+                    if (in.readBoolean()) {
+                        value = streamer.createObject(in);
+                        streamer.readObject(value, in, true);
+                    }
+                    UNSAFE.putObject(target, _offset, value);
+                }
+                @Override public void writeField (Field field, Object src, ObjectOutputStream out)
+                    throws Exception {
+                    Object value = UNSAFE.getObject(src, _offset);
+                    if (value == null) {
+                        out.writeBoolean(false);
+                    } else {
+                        out.writeBoolean(true);
+                        streamer.writeObject(value, out, true);
+                    }
+                }
+            };
+        }
+
+        // anything else (custom field accessors) we leave alone
+        return reflective;
+    }
+
+    protected UnsafeFieldMarshaller (String type, long offset)
+    {
+        super("unsafe " + type);
+        _offset = offset;
+    }
+
+    /**
+     * Obtains the unsafe instance, if we're allowed to have it. This looks the class up by name
+     * and leaves its type to be inferred so that {@link #UNSAFE} is our only mention of it.
+     */
+    @SuppressWarnings("unchecked")
+    protected static <T> T findUnsafe ()
+    {
+        if (Boolean.getBoolean("com.threerings.io.reflectiveFields")) {
+            return null;
+        }
+        try {
+            Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (T)field.get(null);
+        } catch (Throwable t) {
+            log.info("Direct field access unavailable, streaming fields via reflection.",
+                     "error", t);
+            return null;
+        }
+    }
+
+    /** The offset of our field in the objects that contain it. */
+    protected final long _offset;
+
+    /** Used to access fields directly, or null if we're not allowed to. This internal API is the
+     * only way to access fields without reflection on our Java 5 target, and this is our only
+     * mention of it, so this is the only place that we need suppress the warning about it. */
+    @SuppressWarnings("sunapi")
+    protected static final sun.misc.Unsafe UNSAFE = findUnsafe();
+}
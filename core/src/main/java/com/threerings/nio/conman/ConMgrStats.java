@@ -44,6 +44,34 @@ public class ConMgrStats
     /** The overflow queue size. This is a snapshot at the time the stats are requested. */
     public int overQueueSize;
 
+    /** The number of bytes in the overflow queues, including those held back from paused
+     * connections. This is a snapshot at the time the stats are requested. */
+    public long overflowBytes;
+
+    /** The number of unreliable messages discarded from overflow queues since the server started
+     * up. */
+    public long overflowDrops;
+
+    /** The number of times a connection has been paused because its overflow queue was over its
+     * limits since the server started up. */
+    public int overflowPauses;
+
+    /** The number of connections disconnected because their overflow queue was over its limits
+     * since the server started up. */
+    public int overflowDisconnects;
+
+    /** The number of pooled outgoing message frames that are in use. This is a snapshot at the
+     * time the stats are requested. */
+    public int framesInUse;
+
+    /** The number of bytes of direct memory held for pooled outgoing message frames. This is a
+     * snapshot at the time the stats are requested. */
+    public long frameSlabBytes;
+
+    /** The number of times a reactor thread has been woken out of its select() to handle newly
+     * queued messages or actions since the server started up. */
+    public long wakeups;
+
     /** The number of raw network events (sockets reporting ACCEPT or READY). */
     public long eventCount;
 
@@ -68,6 +96,23 @@ public class ConMgrStats
     /** The number of messages written since the server started up. */
     public long msgsOut;
 
+    /** The number of socket writes avoided by gathering several messages into a single write
+     * since the server started up. */
+    public long writesSaved;
+
+    /** The distribution of the time between messages being queued up for delivery and their
+     * being written, across all connections since the server started up. See {@link
+     * WriteStats#latency}. */
+    public long[] writeLatency;
+
+    /** The distribution of the number of bytes accepted by each socket write, across all
+     * connections since the server started up. See {@link WriteStats#sizes}. */
+    public long[] writeSizes;
+
+    /** The distribution of the time for which overflow queues existed before being drained, across
+     * all connections since the server started up. See {@link WriteStats#dwell}. */
+    public long[] overflowDwell;
+
     @Override
     public String toString ()
     {
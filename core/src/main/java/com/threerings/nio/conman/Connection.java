@@ -51,6 +51,7 @@ public abstract class Connection implements NetEventHandler
         _channel = channel;
         _lastEvent = createStamp;
         _connectionId = ++_lastConnectionId;
+        _reactor = cmgr._primary;
     }
 
     /**
@@ -78,6 +79,24 @@ public abstract class Connection implements NetEventHandler
         return (_channel == null) ? null : _channel.socket().getInetAddress();
     }
 
+    /**
+     * Returns true if the connection manager is holding back the messages sent to this
+     * connection until it works through its backlog of unwritten messages.
+     */
+    public boolean isOutputPaused ()
+    {
+        return _outputPaused;
+    }
+
+    /**
+     * Returns the distributions of the latency and size of the writes made to this connection.
+     * These are updated by the connection manager, so a caller sees a slightly stale picture.
+     */
+    public WriteStats getWriteStats ()
+    {
+        return _writeStats;
+    }
+
     /**
      * Returns true if this connection is closed.
      */
@@ -192,8 +211,17 @@ public abstract class Connection implements NetEventHandler
     protected ConnectionManager _cmgr;
     protected SocketChannel _channel;
 
+    /** The reactor on whose thread our network I/O is performed. */
+    protected ConnectionManager.Reactor _reactor;
+
+    /** Set while our overflow queue is over its limits and new messages are being held back. */
+    protected volatile boolean _outputPaused;
+
     protected long _lastEvent;
 
+    /** Maintained by our reactor as it writes our messages. */
+    protected WriteStats _writeStats = new WriteStats();
+
     protected int _connectionId;
 
     /** The last connection id assigned. */
@@ -22,7 +22,11 @@
 package com.threerings.nio.conman;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -32,12 +36,11 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
-import com.samskivert.util.IntMap;
-import com.samskivert.util.IntMaps;
 import com.samskivert.util.Lifecycle;
 import com.samskivert.util.LoopingThread;
 import com.samskivert.util.Queue;
@@ -54,7 +57,14 @@ import static com.threerings.NaryaLog.log;
  *
  * ConnectionManager doesn't directly accept TCP connections; it expects
  * {@link ServerSocketChannelAcceptor} or an external entity to do so and call its
- * {@link #handleAcceptedSocket} method
+ * {@link #handleAcceptedSocket} method.<p>
+ *
+ * By default all network I/O happens on the connection manager thread. If
+ * <code>presents.net.reactorCount</code> is configured to be greater than one, additional
+ * selector threads are started and accepted sockets are spread round-robin across them. Each
+ * connection thereafter does all of its reading and writing on the {@link Reactor} to which it
+ * was assigned. Listening sockets, datagrams and outgoing connections remain on the connection
+ * manager thread.
  */
 public abstract class ConnectionManager extends LoopingThread
     implements Lifecycle.ShutdownComponent
@@ -67,7 +77,8 @@ public abstract class ConnectionManager extends LoopingThread
     {
         super("ConnectionManager");
         cycle.addComponent(this);
-        _selector = Selector.open();
+        _primary = new Reactor(0, Selector.open());
+        _reactors = new Reactor[] { _primary };
         _idleTime = idleTime;
     }
 
@@ -83,34 +94,34 @@ public abstract class ConnectionManager extends LoopingThread
     }
 
     /**
-     * Returns our current runtime statistics. <em>Note:</em> don't call this method <em>too</em>
-     * frequently as it is synchronized and will contend with the network I/O thread.
+     * Returns our current runtime statistics. These are summed from the statistics maintained by
+     * each of our reactors without taking any locks, so they may be a hair out of date, but
+     * calling this won't hold up the network I/O threads.
      */
-    public synchronized ConMgrStats getStats ()
+    public ConMgrStats getStats ()
     {
-        // fill in our snapshot values
-        _stats.connectionCount = _connections.size();
-        _stats.handlerCount = _handlers.size();
-        _stats.deathQueueSize = _deathq.size();
-        _stats.outQueueSize = _outq.size();
-        if (_oflowqs.size() > 0) {
-            _stats.overQueueSize = 0;
-            for (OverflowQueue oq : _oflowqs.values()) {
-                _stats.overQueueSize += oq.size();
-            }
+        ConMgrStats stats = createStats();
+        stats.connectionCount = _connections.size();
+        stats.framesInUse = _framePool.getFramesInUse();
+        stats.frameSlabBytes = _framePool.getSlabBytes();
+        for (Reactor reactor : _reactors) {
+            stats.handlerCount += reactor.handlers.size();
+            stats.deathQueueSize += reactor.deathq.size();
+            stats.outQueueSize += reactor.outq.size();
+            reactor.stats.addTo(stats);
         }
-        return _stats.clone();
+        return stats;
     }
 
     /**
-     * Registers <code>ops</code> on <code>chan</code> on this manager's selector and hooks
-     * <code>netEventHandler</code> up to receive events whenever the selection occurs.
+     * Registers <code>ops</code> on <code>chan</code> on this manager's (primary) selector and
+     * hooks <code>netEventHandler</code> up to receive events whenever the selection occurs.
      */
     public SelectionKey register (SelectableChannel chan, int ops, NetEventHandler netEventHandler)
         throws IOException
     {
-        SelectionKey key = chan.register(_selector, ops);
-        _handlers.put(key, netEventHandler);
+        SelectionKey key = chan.register(_primary.selector, ops);
+        _primary.addHandler(key, netEventHandler);
         return key;
     }
 
@@ -125,26 +136,55 @@ public abstract class ConnectionManager extends LoopingThread
     }
 
     /**
-     * Queues a connection up to be closed on the conmgr thread.
+     * Queues a connection up to be closed on the thread of the reactor that manages it, and wakes
+     * that reactor up to do so.
      */
     public void closeConnection (Connection conn)
     {
-        _deathq.append(conn);
+        conn._reactor.deathq.append(conn);
+        conn._reactor.wakeup();
+    }
+
+    /**
+     * Runs the supplied action on the thread of the reactor that manages the specified
+     * connection. If we are already on that thread, the action is run immediately, otherwise it
+     * is queued up and the reactor is woken up to run it.
+     */
+    public void invokeOnReactor (Connection conn, Runnable action)
+    {
+        conn._reactor.invoke(action);
     }
 
     @Override // from LoopingThread
     protected void willStart ()
     {
         super.willStart();
+        _framePool.setTrackLeaks(_trackFrameLeaks);
 
-        _selectorSelector = new SelectorIterable(
-            _selector, _selectLoopTime, new SelectorIterable.SelectFailureHandler() {
-            public void handleSelectFailure (Exception e) {
-                log.error("One of our selectors crapped out completely.  " +
-                          "Shutting down the connection manager.", e);
-                shutdown();
+        // create our additional reactors, if we've been configured to use any
+        Reactor[] reactors = new Reactor[Math.max(_reactorCount, 1)];
+        reactors[0] = _primary;
+        int count = 1;
+        for (; count < reactors.length; count++) {
+            try {
+                reactors[count] = new Reactor(count, Selector.open());
+            } catch (IOException ioe) {
+                log.warning("Failed to open reactor selector, running with fewer reactors.",
+                            "wanted", reactors.length, "got", count, ioe);
+                break;
             }
-        });
+        }
+        if (count < reactors.length) {
+            Reactor[] nreactors = new Reactor[count];
+            System.arraycopy(reactors, 0, nreactors, 0, count);
+            reactors = nreactors;
+        }
+        _reactors = reactors;
+
+        _primary.willStart(Thread.currentThread());
+        for (int ii = 1; ii < _reactors.length; ii++) {
+            new ReactorThread(_reactors[ii]).start();
+        }
     }
 
     @Override // from LoopingThread
@@ -159,24 +199,11 @@ public abstract class ConnectionManager extends LoopingThread
             _lastDebugStamp = iterStamp;
         }
 
-        // close any connections that have been queued up to die
-        Connection dconn;
-        while ((dconn = _deathq.getNonBlocking()) != null) {
-            // it's possible that we caught an EOF trying to read from this connection even after
-            // it was queued up for death, so let's avoid trying to close it twice
-            if (!dconn.isClosed()) {
-                dconn.close();
-            }
-        }
-
-        // close connections that have had no network traffic for too long
-        long idleStamp = iterStamp - _idleTime;
-        for (NetEventHandler handler : _handlers.values()) {
-            if (handler.checkIdle(idleStamp)) {
-                // this will queue the connection for closure on our next tick
-                handler.becameIdle();
-            }
-        }
+        // run any actions that were queued up for the primary reactor, close any connections that
+        // have been queued up to die and those that have had no network traffic for too long
+        _primary.runActions();
+        _primary.closeDeadConnections();
+        _primary.closeIdleConnections(iterStamp);
 
         // send any messages that are waiting on the outgoing overflow and message queues
         sendOutgoingMessages(iterStamp);
@@ -192,6 +219,12 @@ public abstract class ConnectionManager extends LoopingThread
         if (DEBUG_REPORT && generateDebugReport) {
             log.info("CONMGR status " + getStats());
         }
+
+        // if we're debugging frame leaks, periodically report frames that are hanging around
+        if (_framePool.isTrackingLeaks() && iterStamp - _lastLeakCheck > LEAK_CHECK_INTERVAL) {
+            _lastLeakCheck = iterStamp;
+            _framePool.reportLeaks(LEAK_CHECK_INTERVAL);
+        }
     }
 
     protected void handleIncoming (long iterStamp)
@@ -210,223 +243,294 @@ public abstract class ConnectionManager extends LoopingThread
      */
     protected abstract void handleAcceptedSocket (SocketChannel channel);
 
-    protected void handleAcceptedSocket (SocketChannel channel, Connection conn)
+    protected void handleAcceptedSocket (final SocketChannel channel, final Connection conn)
     {
         try {
             // create a new authing connection object to manage the authentication of this client
-            // connection and register it with our selection set
+            // connection and assign it to one of our reactors
             channel.configureBlocking(false);
             conn.init(this, channel, System.currentTimeMillis());
-            conn.selkey = register(channel, SelectionKey.OP_READ, conn);
-            synchronized (this) {
-                _stats.connects++;
-            }
+            conn._reactor = nextReactor();
 
         } catch (IOException ioe) {
             // no need to generate a warning because this happens in the normal course of events
             log.info("Failure accepting new connection: " + ioe);
-            // make sure we don't leak a socket if something went awry
-            try {
-                channel.socket().close();
-            } catch (IOException ioe2) {
-                log.warning("Failed closing aborted connection: " + ioe2);
-            }
+            closeAbortedSocket(channel);
+            return;
         }
+
+        // registering a channel with a selector blocks while that selector is selecting, so we
+        // have the reactor's own thread do it
+        final Reactor reactor = conn._reactor;
+        reactor.invoke(new Runnable() {
+            public void run () {
+                try {
+                    conn.selkey = channel.register(reactor.selector, SelectionKey.OP_READ);
+                    reactor.addHandler(conn.selkey, conn);
+                    reactor.stats.connects.incrementAndGet();
+                } catch (IOException ioe) {
+                    log.info("Failure registering new connection: " + ioe);
+                    closeAbortedSocket(channel);
+                }
+            }
+        });
     }
 
     /**
-     * Checks for any network events on our set of sockets and passes those events down to their
-     * associated {@link NetEventHandler}s for processing.
+     * Returns the reactor to which the next accepted connection should be assigned. This is only
+     * called on the conmgr thread.
      */
-    protected void processIncomingEvents (long iterStamp)
+    protected Reactor nextReactor ()
     {
-        // process those events
-        long bytesIn = 0, msgsIn = 0, eventCount = 0;
-        for (SelectionKey selkey : _selectorSelector) {
-            eventCount++;
-            NetEventHandler handler = null;
-            try {
-                handler = _handlers.get(selkey);
-                if (handler == null) {
-                    log.warning("Received network event for unknown handler",
-                                "key", selkey, "ops", selkey.readyOps());
-                    // request that this key be removed from our selection set, which normally
-                    // happens automatically but for some reason didn't
-                    selkey.cancel();
-                    continue;
-                }
-
-//                 log.info("Got event", "selkey", selkey, "handler", handler);
+        Reactor[] reactors = _reactors;
+        return reactors[(_nextReactor++ & Integer.MAX_VALUE) % reactors.length];
+    }
 
-                int got = handler.handleEvent(iterStamp);
-                if (got != 0) {
-                    bytesIn += got;
-                    // we know that the handlers only report having read bytes when they have a
-                    // whole message, so we can count thusly
-                    msgsIn++;
+    /**
+     * Adds a frame to a connection's list of queued frames, ahead of any frames at the end of the
+     * list that it may pass by virtue of its priority.
+     *
+     * @return the index at which the frame was added.
+     */
+    protected static int insertFrame (List<Frame> frames, Frame frame)
+    {
+        int idx = frames.size();
+        if (!frame.isBarrier()) {
+            int priority = frame.getPriority();
+            while (idx > 0) {
+                Frame prev = frames.get(idx-1);
+                if (prev.isBarrier() || prev.getPriority() >= priority) {
+                    break;
                 }
+                idx--;
+            }
+        }
+        frames.add(idx, frame);
+        return idx;
+    }
 
-            } catch (Exception e) {
-                log.warning("Error processing network data: " + handler + ".", e);
+    /**
+     * Returns the time at which the supplied handler should next be checked for idleness.
+     * Connections become idle a fixed time after their last network event, other handlers are
+     * simply checked once per idle period.
+     */
+    protected long getIdleDeadline (NetEventHandler handler, long now)
+    {
+        if (handler instanceof Connection) {
+            return ((Connection)handler)._lastEvent + _idleTime;
+        }
+        return now + _idleTime;
+    }
 
-                // if you freak out here, you go straight in the can
-                if (handler != null && handler instanceof Connection) {
-                    closeConnection((Connection)handler);
-                }
-            }
+    /**
+     * Closes a socket whose connection could not be set up, so that we don't leak it.
+     */
+    protected void closeAbortedSocket (SocketChannel channel)
+    {
+        try {
+            channel.socket().close();
+        } catch (IOException ioe) {
+            log.warning("Failed closing aborted connection: " + ioe);
         }
+    }
 
-        synchronized (this) {
-            // update our stats
-            _stats.eventCount += eventCount;
-            _stats.bytesIn += bytesIn;
-            _stats.msgsIn += msgsIn;
+    /**
+     * Replaces <code>oconn</code> with <code>nconn</code> as the handler for its socket, on the
+     * same reactor and with the same overflow queue. This must be called on the thread of the
+     * reactor that manages <code>oconn</code>.
+     */
+    protected void replaceConnection (Connection oconn, Connection nconn)
+    {
+        Reactor reactor = oconn._reactor;
+        nconn._reactor = reactor;
+        nconn.selkey = oconn.selkey;
+        reactor.addHandler(nconn.selkey, nconn);
+        OverflowQueue oflowHandler = reactor.oflowqs.remove(oconn);
+        if (oflowHandler != null) {
+            oflowHandler.conn = nconn;
+            nconn._outputPaused = oconn._outputPaused;
+            reactor.oflowqs.put(nconn, oflowHandler);
         }
     }
 
     /**
-     * Writes all queued overflow and normal messages to their respective sockets. Connections that
-     * already have established overflow queues will have their messages appended to their overflow
-     * queue instead so that they are delivered in the proper order.
+     * Checks for any network events on the primary selector and passes those events down to their
+     * associated {@link NetEventHandler}s for processing.
+     */
+    protected void processIncomingEvents (long iterStamp)
+    {
+        _primary.processIncomingEvents(iterStamp);
+    }
+
+    /**
+     * Writes all queued overflow and normal messages for the primary reactor to their respective
+     * sockets.
      */
     protected void sendOutgoingMessages (long iterStamp)
     {
-        // first attempt to send any messages waiting on the overflow queues
-        if (_oflowqs.size() > 0) {
-            // do this on a snapshot as a network failure writing oflow queue messages will result
-            // in the queue being removed from _oflowqs via the connectionFailed() code path
-            for (OverflowQueue oq : _oflowqs.values().toArray(new OverflowQueue[_oflowqs.size()])) {
-                try {
-                    // try writing the messages in this overflow queue
-                    if (oq.writeOverflowMessages(iterStamp)) {
-                        // if they were all written, we can remove it
-                        _oflowqs.remove(oq.conn);
-                    }
+        _primary.sendOutgoingMessages(iterStamp);
+    }
 
-                } catch (IOException ioe) {
-                    oq.conn.networkFailure(ioe);
-                }
-            }
-        }
+    /**
+     * Queues a framed message for delivery to the specified connection and wakes up the thread
+     * that manages it so that it is written promptly rather than on the next select timeout. The
+     * connection manager takes over the caller's reference to the frame.
+     */
+    protected void postMessage (Connection conn, Frame frame)
+    {
+        conn._reactor.postMessage(conn, frame);
+    }
 
-        // then send any new messages
-        Tuple<Connection, byte[]> tup;
-        while ((tup = _outq.getNonBlocking()) != null) {
-            Connection conn = tup.left;
+    /**
+     * Queues an unpooled framed message for delivery to the specified connection.
+     */
+    protected void postMessage (Connection conn, byte[] data)
+    {
+        postMessage(conn, Frame.wrap(data));
+    }
 
-            // if an overflow queue exists for this client, go ahead and slap the message on there
-            // because we can't send it until all other messages in their queue have gone out
-            OverflowQueue oqueue = _oflowqs.get(conn);
-            if (oqueue != null) {
-                int size = oqueue.size();
-                if ((size > 500) && (size % 50 == 0)) {
-                    log.warning("Aiya, big overflow queue for " + conn + "", "size", size,
-                                "bytes", tup.right.length);
-                }
-                oqueue.add(tup.right);
-                continue;
-            }
+    /**
+     * Wakes the conmgr thread out of its select() so that it will promptly write any newly queued
+     * outgoing data.
+     */
+    protected void wakeup ()
+    {
+        _primary.wakeup();
+    }
 
-            // otherwise write the message out to the client directly
-            writeMessage(conn, tup.right, _oflowHandler);
-        }
+    /**
+     * Creates the object into which a snapshot of our statistics is summed by {@link #getStats}.
+     */
+    protected ConMgrStats createStats ()
+    {
+        return new ConMgrStats();
     }
 
     /**
-     * Writes a message out to a connection, passing the buck to the partial write handler if the
-     * entire message could not be written.
+     * Called by {@link Reactor#writeMessages} and friends when they write data over the network.
+     * This is called on the thread of the connection's reactor.
      *
-     * @return true if the message was fully written, false if it was partially written (in which
-     * case the partial message handler will have been invoked).
+     * @param buffers the number of buffers handed to the write call, all but one of which would
+     * have needed a write of their own were they not gathered.
      */
-    protected boolean writeMessage (Connection conn, byte[] data, PartialWriteHandler pwh)
+    protected void noteWrite (Connection conn, int msgs, int bytes, int buffers)
     {
-        // if the connection to which this message is destined is closed, drop the message and move
-        // along quietly; this is perfectly legal, a user can logoff whenever they like, even if we
-        // still have things to tell them; such is life in a fully asynchronous distributed system
-        if (conn.isClosed()) {
-            return true;
+        ReactorStats stats = conn._reactor.stats;
+        stats.msgsOut.addAndGet(msgs);
+        stats.bytesOut.addAndGet(bytes);
+        if (buffers > 1) {
+            stats.writesSaved.addAndGet(buffers - 1);
         }
+        stats.writes.noteWrite(bytes);
+        conn._writeStats.noteWrite(bytes);
+    }
 
-        // if this is an asynchronous close request, queue the connection up for death
-        if (data == ASYNC_CLOSE_REQUEST) {
-            closeConnection(conn);
-            return true;
+    /**
+     * Called when the last byte of a message has been written to a connection, to note how long
+     * it waited to get there. This is called on the thread of the connection's reactor.
+     */
+    protected void noteDelivered (Connection conn, Frame frame, long now)
+    {
+        long queued = frame.getQueued();
+        if (queued > 0) {
+            conn._reactor.stats.writes.noteLatency(now - queued);
+            conn._writeStats.noteLatency(now - queued);
         }
+    }
 
-        // sanity check the message size
-        if (data.length > 1024 * 1024) {
-            log.warning("Refusing to write very large message", "conn", conn, "size", data.length);
-            return true;
-        }
+    /**
+     * Posts a fake message to this connection's outgoing message queue that will cause the
+     * connection to be closed when this message is reached. This is only used by outgoing
+     * connections to ensure that they finish sending their queued outgoing messages before closing
+     * their connection. Incoming connections tend only to be closed at the request of the client
+     * or in case of delinquincy. In neither circumstance do we need to flush the client's outgoing
+     * queue before closing.
+     */
+    protected void postAsyncClose (Connection conn)
+    {
+        postMessage(conn, new CloseRequest());
+    }
 
-        // expand our output buffer if needed to accomodate this message
-        if (data.length > _outbuf.capacity()) {
-            // increase the buffer size in large increments
-            int ncapacity = Math.max(_outbuf.capacity() << 1, data.length);
-            log.info("Expanding output buffer size", "nsize", ncapacity);
-            _outbuf = ByteBuffer.allocateDirect(ncapacity);
+    /**
+     * Applies our limits to a connection's overflow queue, consulting the {@link OverflowPolicy}
+     * if it is over them. This is called on the thread of the connection's reactor.
+     */
+    protected void checkOverflow (OverflowQueue oq, long now)
+    {
+        Connection conn = oq.conn;
+
+        // the messages held back from a paused connection are subject to the same limits, and as
+        // pausing was its last resort, a connection that exceeds them is disconnected
+        if (conn.isOutputPaused()) {
+            long held = oq.getHeldBytes(), heldAge = oq.getHeldAge(now);
+            if (held > _overflowByteLimit || heldAge > _overflowAgeLimit) {
+                disconnectOverflowed(oq, held, heldAge);
+                return;
+            }
         }
 
-        boolean fully = true;
-        try {
-//             log.info("Writing " + data.length + " byte message to " + conn + ".");
-
-            // first copy the data into our "direct" output buffer
-            _outbuf.put(data);
-            _outbuf.flip();
-
-            // if the connection to which we're writing is not yet ready, the whole message is
-            // "leftover", so we pass it to the partial write handler
-            SocketChannel sochan = conn.getChannel();
-            if (sochan.isConnectionPending()) {
-                pwh.handlePartialWrite(conn, _outbuf);
-                return false;
+        long bytes = oq.getBytes(), age = oq.getAge(now);
+        if (bytes <= _overflowByteLimit && age <= _overflowAgeLimit) {
+            // let a paused connection resume once it has worked through half of its backlog
+            if (conn.isOutputPaused() &&
+                bytes <= _overflowByteLimit/2 && age <= _overflowAgeLimit/2) {
+                setOutputPaused(conn, false);
             }
+            return;
+        }
 
-            // then write the data to the socket
-            int wrote = sochan.write(_outbuf);
-            noteWrite(1, wrote);
-
-            // if we didn't write our entire message, deal with the leftover bytes
-            if (_outbuf.remaining() > 0) {
-                fully = false;
-                pwh.handlePartialWrite(conn, _outbuf);
+        boolean hopeless = (bytes > 2L*_overflowByteLimit || age > 2*_overflowAgeLimit);
+        OverflowPolicy.Action action =
+            _overflowPolicy.overflowed(conn, bytes, age, oq.getDroppableCount(), hopeless);
+        switch (action) {
+        case DROP_UNRELIABLE:
+            conn._reactor.stats.overflowDrops.addAndGet(oq.dropUnreliable());
+            break;
+
+        case PAUSE:
+            if (!conn.isOutputPaused()) {
+                log.info("Pausing backed up connection", "conn", conn, "bytes", bytes, "age", age);
+                setOutputPaused(conn, true);
             }
+            break;
 
-        } catch (NotYetConnectedException nyce) {
-            // this should be caught by isConnectionPending() but awesomely it's not
-            pwh.handlePartialWrite(conn, _outbuf);
-            return false;
-
-        } catch (IOException ioe) {
-            conn.networkFailure(ioe); // instruct the connection to deal with its failure
+        case DISCONNECT:
+            disconnectOverflowed(oq, bytes, age);
+            break;
 
-        } finally {
-            _outbuf.clear();
+        default:
+            break;
         }
-
-        return fully;
     }
 
-    /** Called by {@link #writeMessage} and friends when they write data over the network. */
-    protected synchronized void noteWrite (int msgs, int bytes)
+    /**
+     * Disconnects a connection that is too far behind in reading its messages.
+     */
+    protected void disconnectOverflowed (OverflowQueue oq, long bytes, long age)
     {
-        _stats.msgsOut += msgs;
-        _stats.bytesOut += bytes;
+        Connection conn = oq.conn;
+        log.warning("Disconnecting backed up connection", "conn", conn, "bytes", bytes,
+                    "age", age, "queue", oq, "writes", conn.getWriteStats());
+        conn._reactor.stats.overflowDisconnects.incrementAndGet();
+        conn.networkFailure(new IOException("Overflow queue limits exceeded"));
     }
 
     /**
-     * Posts a fake message to this connection's outgoing message queue that will cause the
-     * connection to be closed when this message is reached. This is only used by outgoing
-     * connections to ensure that they finish sending their queued outgoing messages before closing
-     * their connection. Incoming connections tend only to be closed at the request of the client
-     * or in case of delinquincy. In neither circumstance do we need to flush the client's outgoing
-     * queue before closing.
+     * Pauses or resumes the sending of messages to a connection whose overflow queue has crossed
+     * its limits. When a connection is resumed, the messages held back while it was paused are
+     * put back on its overflow queue.
      */
-    protected void postAsyncClose (Connection conn)
+    protected void setOutputPaused (Connection conn, boolean paused)
     {
-        _outq.append(Tuple.newTuple(conn, ASYNC_CLOSE_REQUEST));
+        conn._outputPaused = paused;
+        if (paused) {
+            conn._reactor.stats.overflowPauses.incrementAndGet();
+        } else {
+            OverflowQueue oq = conn._reactor.oflowqs.get(conn);
+            if (oq != null) {
+                oq.releaseHeld();
+            }
+        }
     }
 
     /**
@@ -434,14 +538,8 @@ public abstract class ConnectionManager extends LoopingThread
      */
     protected void connectionFailed (Connection conn, IOException ioe)
     {
-        // remove this connection from our mappings (it is automatically removed from the Selector
-        // when the socket is closed)
-        _handlers.remove(conn.selkey);
-        _connections.remove(conn.getConnectionId());
-        _oflowqs.remove(conn);
-        synchronized (this) {
-            _stats.disconnects++;
-        }
+        forgetConnection(conn);
+        conn._reactor.stats.disconnects.incrementAndGet();
     }
 
     /**
@@ -449,13 +547,34 @@ public abstract class ConnectionManager extends LoopingThread
      */
     protected void connectionClosed (Connection conn)
     {
-        // remove this connection from our mappings (it is automatically removed from the Selector
-        // when the socket is closed)
-        _handlers.remove(conn.selkey);
+        forgetConnection(conn);
+        conn._reactor.stats.closes.incrementAndGet();
+    }
+
+    /**
+     * Removes a failed or closed connection from our mappings (it is automatically removed from
+     * the Selector when the socket is closed).
+     */
+    protected void forgetConnection (final Connection conn)
+    {
         _connections.remove(conn.getConnectionId());
-        _oflowqs.remove(conn);
-        synchronized (this) {
-            _stats.closes++;
+        final Reactor reactor = conn._reactor;
+        reactor.invoke(new Runnable() {
+            public void run () {
+                reactor.removeHandler(conn.selkey);
+                OverflowQueue oqueue = reactor.oflowqs.remove(conn);
+                if (oqueue != null) {
+                    oqueue.release();
+                }
+            }
+        });
+    }
+
+    @Override // from LoopingThread
+    protected void kick ()
+    {
+        for (Reactor reactor : _reactors) {
+            reactor.selector.wakeup();
         }
     }
 
@@ -471,10 +590,16 @@ public abstract class ConnectionManager extends LoopingThread
     {
         // take one last crack at the outgoing message queue
         sendOutgoingMessages(System.currentTimeMillis());
+        _primary.reportUndelivered();
 
-        // report if there's anything left on the outgoing message queue
-        if (_outq.size() > 0) {
-            log.warning("Connection Manager failed to deliver " + _outq.size() + " message(s).");
+        // wait for our other reactors to do the same
+        for (ReactorThread thread : _reactorThreads) {
+            thread.reactor.selector.wakeup();
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                log.warning("Interrupted waiting for reactor to exit", "reactor", thread.reactor);
+            }
         }
 
         // run our on-exit handler if we have one
@@ -487,10 +612,563 @@ public abstract class ConnectionManager extends LoopingThread
         }
     }
 
-    /** Used to handle partial writes in {@link ConnectionManager#writeMessage}. */
+    /**
+     * Handles the network I/O for a subset of our connections using its own selector. The primary
+     * reactor is driven by the conmgr thread itself, the others by {@link ReactorThread}s. All of
+     * the state herein is only accessed by the reactor's thread, except for the queues which may
+     * be appended to from anywhere.
+     */
+    protected class Reactor
+    {
+        /** The selector on which our connections are registered. */
+        public final Selector selector;
+
+        /** Maps selection keys to network event handlers. */
+        public final Map<SelectionKey, NetEventHandler> handlers = Maps.newHashMap();
+
+        /** Overflow queues for those of our connections that have them. */
+        public final Map<Connection, OverflowQueue> oflowqs = Maps.newHashMap();
+
+        /** Connections queued up to be closed. */
+        public final Queue<Connection> deathq = Queue.newQueue();
+
+        /** Framed messages waiting to be written. */
+        public final Queue<Tuple<Connection, Frame>> outq = Queue.newQueue();
+
+        /** Actions waiting to be run on our thread. */
+        public final Queue<Runnable> actionq = Queue.newQueue();
+
+        /** Our share of the connection manager's statistics. */
+        public final ReactorStats stats = new ReactorStats();
+
+        public Reactor (int index, Selector selector)
+        {
+            _index = index;
+            this.selector = selector;
+        }
+
+        /**
+         * Prepares this reactor for operation on the supplied thread.
+         */
+        public void willStart (Thread owner)
+        {
+            _owner = owner;
+            selectorSelector = new SelectorIterable(
+                selector, _selectLoopTime, new SelectorIterable.SelectFailureHandler() {
+                public void handleSelectFailure (Exception e) {
+                    log.error("One of our selectors crapped out completely.  " +
+                              "Shutting down the connection manager.", e);
+                    shutdown();
+                }
+            });
+        }
+
+        /**
+         * Performs one pass of network I/O. This is only used by secondary reactors, the primary
+         * reactor is driven by {@link ConnectionManager#iterate}.
+         */
+        public void iterate (long iterStamp)
+        {
+            runActions();
+            closeDeadConnections();
+            closeIdleConnections(iterStamp);
+            sendOutgoingMessages(iterStamp);
+            if (ConnectionManager.super.isRunning()) {
+                processIncomingEvents(iterStamp);
+            }
+        }
+
+        /**
+         * Runs the supplied action on our thread, immediately if we're already on it.
+         */
+        public void invoke (Runnable action)
+        {
+            if (Thread.currentThread() == _owner) {
+                action.run();
+            } else {
+                actionq.append(action);
+                wakeup();
+            }
+        }
+
+        /**
+         * Runs any actions that have been queued up for this reactor.
+         */
+        public void runActions ()
+        {
+            Runnable action;
+            while ((action = actionq.getNonBlocking()) != null) {
+                try {
+                    action.run();
+                } catch (Exception e) {
+                    log.warning("Reactor action failed", "reactor", this, "action", action, e);
+                }
+            }
+        }
+
+        /**
+         * Closes any connections that have been queued up to die.
+         */
+        public void closeDeadConnections ()
+        {
+            Connection dconn;
+            while ((dconn = deathq.getNonBlocking()) != null) {
+                // it's possible that we caught an EOF trying to read from this connection even
+                // after it was queued up for death, so let's avoid trying to close it twice
+                if (!dconn.isClosed()) {
+                    dconn.close();
+                }
+            }
+        }
+
+        /**
+         * Maps the supplied handler to the supplied key and schedules its first idleness check.
+         */
+        public void addHandler (SelectionKey key, NetEventHandler handler)
+        {
+            NetEventHandler ohandler = handlers.put(key, handler);
+            if (ohandler != null && ohandler != handler) {
+                _idlers.cancel(ohandler);
+            }
+            _idlers.schedule(handler, getIdleDeadline(handler, System.currentTimeMillis()));
+        }
+
+        /**
+         * Removes the handler mapped to the supplied key, if any.
+         */
+        public NetEventHandler removeHandler (SelectionKey key)
+        {
+            NetEventHandler handler = handlers.remove(key);
+            if (handler != null) {
+                _idlers.cancel(handler);
+            }
+            return handler;
+        }
+
+        /**
+         * Closes connections that have had no network traffic for too long. Traffic doesn't
+         * touch the idle wheel, so only handlers whose deadlines have come due are checked, and
+         * those that turn out to have been active in the meantime are rescheduled.
+         */
+        public void closeIdleConnections (long iterStamp)
+        {
+            _idlers.expire(iterStamp, _expired);
+            if (_expired.isEmpty()) {
+                return;
+            }
+
+            long idleStamp = iterStamp - _idleTime;
+            for (int ii = 0, nn = _expired.size(); ii < nn; ii++) {
+                NetEventHandler handler = _expired.get(ii);
+                if (handler.checkIdle(idleStamp)) {
+                    // this will queue the connection for closure on our next tick; we check again
+                    // later in case it somehow lingers
+                    handler.becameIdle();
+                    _idlers.schedule(handler, iterStamp + _idleTime);
+                } else {
+                    _idlers.schedule(handler, getIdleDeadline(handler, iterStamp));
+                }
+            }
+            _expired.clear();
+        }
+
+        /**
+         * Checks for any network events on our set of sockets and passes those events down to
+         * their associated {@link NetEventHandler}s for processing.
+         */
+        public void processIncomingEvents (long iterStamp)
+        {
+            // process those events
+            long bytesIn = 0, msgsIn = 0, eventCount = 0;
+            for (SelectionKey selkey : selectorSelector) {
+                eventCount++;
+                NetEventHandler handler = null;
+                try {
+                    handler = handlers.get(selkey);
+                    if (handler == null) {
+                        log.warning("Received network event for unknown handler",
+                                    "key", selkey, "ops", selkey.readyOps());
+                        // request that this key be removed from our selection set, which normally
+                        // happens automatically but for some reason didn't
+                        selkey.cancel();
+                        continue;
+                    }
+
+                    int got = handler.handleEvent(iterStamp);
+                    if (got != 0) {
+                        bytesIn += got;
+                        // we know that the handlers only report having read bytes when they have
+                        // a whole message, so we can count thusly
+                        msgsIn++;
+                    }
+
+                } catch (Exception e) {
+                    log.warning("Error processing network data: " + handler + ".", e);
+
+                    // if you freak out here, you go straight in the can
+                    if (handler != null && handler instanceof Connection) {
+                        closeConnection((Connection)handler);
+                    }
+                }
+            }
+
+            // update our stats
+            stats.eventCount.addAndGet(eventCount);
+            stats.bytesIn.addAndGet(bytesIn);
+            stats.msgsIn.addAndGet(msgsIn);
+        }
+
+        /**
+         * Writes all queued overflow and normal messages to their respective sockets. Connections
+         * that already have established overflow queues will have their messages appended to
+         * their overflow queue instead so that they are delivered in the proper order.
+         */
+        public void sendOutgoingMessages (long iterStamp)
+        {
+            // we're about to drain the outgoing queues, so any post that comes in after this point
+            // needs to wake us up again
+            _wakeupPending.set(false);
+
+            // first attempt to send any messages waiting on the overflow queues
+            if (oflowqs.size() > 0) {
+                // do this on a snapshot as a network failure writing oflow queue messages will
+                // result in the queue being removed from oflowqs via the connectionFailed() path
+                OverflowQueue[] oqs = oflowqs.values().toArray(new OverflowQueue[oflowqs.size()]);
+                for (OverflowQueue oq : oqs) {
+                    try {
+                        // try writing the messages in this overflow queue; if they were all
+                        // written and the connection was paused, resume it, which puts any
+                        // messages held back in the meanwhile on the queue, and try those too
+                        boolean written = oq.writeOverflowMessages(iterStamp);
+                        if (written && oq.conn.isOutputPaused()) {
+                            setOutputPaused(oq.conn, false);
+                            written = oq.writeOverflowMessages(iterStamp);
+                        }
+                        if (written) {
+                            // if they were all written, we can remove it
+                            oflowqs.remove(oq.conn);
+                            stats.writes.noteDwell(oq.getDwell(iterStamp));
+                            oq.conn._writeStats.noteDwell(oq.getDwell(iterStamp));
+                            continue;
+                        }
+
+                    } catch (IOException ioe) {
+                        oq.conn.networkFailure(ioe);
+                        continue;
+                    }
+
+                    // make sure this connection isn't too far behind
+                    checkOverflow(oq, iterStamp);
+                }
+            }
+
+            // then sort any new messages into per-connection lists so that each connection's
+            // messages can go out in as few writes as possible
+            Tuple<Connection, Frame> tup;
+            while ((tup = outq.getNonBlocking()) != null) {
+                Connection conn = tup.left;
+
+                // if an overflow queue exists for this client, go ahead and slap the message on
+                // there because we can't send it until all other messages in their queue have
+                // gone out (or hold it back from the queue if the client has been paused)
+                OverflowQueue oqueue = oflowqs.get(conn);
+                if (oqueue != null) {
+                    int size = oqueue.size();
+                    if ((size > 500) && (size % 50 == 0)) {
+                        log.warning("Aiya, big overflow queue for " + conn + "", "size", size,
+                                    "bytes", tup.right.size());
+                    }
+                    if (conn.isOutputPaused()) {
+                        oqueue.hold(tup.right, iterStamp);
+                    } else {
+                        oqueue.append(tup.right, iterStamp);
+                    }
+                    continue;
+                }
+
+                List<Frame> frames = _pending.get(conn);
+                if (frames == null) {
+                    _pending.put(conn, frames = Lists.newArrayList());
+                }
+                insertFrame(frames, tup.right);
+            }
+
+            // now write each connection's messages out to the client directly
+            if (_pending.size() > 0) {
+                for (Map.Entry<Connection, List<Frame>> entry : _pending.entrySet()) {
+                    Connection conn = entry.getKey();
+                    List<Frame> frames = entry.getValue();
+                    if (!writeMessages(conn, frames, _oflowHandler)) {
+                        // the partially written message started an overflow queue; the rest of
+                        // the messages go on after it
+                        oflowqs.get(conn).appendAll(frames, iterStamp);
+                    }
+                }
+                _pending.clear();
+            }
+
+            // note the state of our overflow queues for anyone that wants a snapshot
+            int overQueueSize = 0;
+            long overflowBytes = 0;
+            for (OverflowQueue oq : oflowqs.values()) {
+                overQueueSize += oq.size();
+                overflowBytes += oq.getBytes() + oq.getHeldBytes();
+            }
+            stats.overQueueSize = overQueueSize;
+            stats.overflowBytes = overflowBytes;
+        }
+
+        /**
+         * Queues a framed message for delivery and wakes up our thread.
+         */
+        public void postMessage (Connection conn, Frame frame)
+        {
+            frame.setQueued(System.currentTimeMillis());
+            outq.append(Tuple.newTuple(conn, frame));
+            wakeup();
+        }
+
+        /**
+         * Wakes our thread out of its select() so that it will promptly write any newly queued
+         * outgoing data or run any newly queued actions. Calls made before the thread has had a
+         * chance to drain its queues are coalesced into a single wakeup.
+         */
+        public void wakeup ()
+        {
+            if (_wakeupPending.compareAndSet(false, true)) {
+                stats.wakeups.incrementAndGet();
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Writes messages out to a connection, gathering as many of them into each write as fit
+         * in our byte budget. Messages are removed from the list (and released) as they are
+         * written. If the connection does not accept all of the data, the partially written
+         * message is passed to the partial write handler and the messages after it are left in
+         * the list.
+         *
+         * @return true if all of the messages were fully written (or dropped because the
+         * connection is closed), false if a message was partially written.
+         */
+        public boolean writeMessages (Connection conn, List<Frame> frames, PartialWriteHandler pwh)
+        {
+            // if the connection to which these messages are destined is closed, drop them and move
+            // along quietly; this is perfectly legal, a user can logoff whenever they like, even
+            // if we still have things to tell them; such is life in a fully asynchronous
+            // distributed system
+            int consumed = 0, count = frames.size();
+            while (consumed < count && !conn.isClosed()) {
+                // gather up as many messages as fit in our budget (but always at least one)
+                int nbufs = 0, bytes = 0;
+                while (consumed < count) {
+                    Frame frame = frames.get(consumed);
+
+                    // if this is an asynchronous close request, queue the connection up for
+                    // death; that won't happen until after the messages before it are written
+                    if (frame instanceof CloseRequest) {
+                        closeConnection(conn);
+                        frame.release();
+                        consumed++;
+                        continue;
+                    }
+
+                    int size = frame.size();
+                    if (nbufs > 0 && bytes + size > _gatherBudget) {
+                        break;
+                    }
+                    if (nbufs == _gatherbufs.length) {
+                        Frame[] nframes = new Frame[nbufs * 2];
+                        System.arraycopy(_gatherframes, 0, nframes, 0, nbufs);
+                        _gatherframes = nframes;
+                        ByteBuffer[] nbuffers = new ByteBuffer[nbufs * 2];
+                        System.arraycopy(_gatherbufs, 0, nbuffers, 0, nbufs);
+                        _gatherbufs = nbuffers;
+                    }
+                    _gatherframes[nbufs] = frame;
+                    _gatherbufs[nbufs++] = frame.buffer();
+                    bytes += size;
+                    consumed++;
+                }
+                if (nbufs == 0) {
+                    break;
+                }
+
+                // write the lot and find the first message that didn't fully make it out; if the
+                // connection to which we're writing is not yet ready, they're all "leftover"
+                int written = 0;
+                try {
+                    SocketChannel sochan = conn.getChannel();
+                    if (!sochan.isConnectionPending()) {
+                        long wrote = sochan.write(_gatherbufs, 0, nbufs);
+                        long now = System.currentTimeMillis();
+                        while (written < nbufs && !_gatherbufs[written].hasRemaining()) {
+                            noteDelivered(conn, _gatherframes[written], now);
+                            _gatherframes[written++].release();
+                        }
+                        noteWrite(conn, written, (int)wrote, nbufs);
+                    }
+
+                } catch (NotYetConnectedException nyce) {
+                    // this should be caught by isConnectionPending() but awesomely it's not
+
+                } catch (IOException ioe) {
+                    for (int ii = written; ii < nbufs; ii++) {
+                        _gatherframes[ii].release();
+                    }
+                    clearGathered(nbufs);
+                    // the failure may release what's left in the list (if it's an overflow
+                    // queue), so take out what we've dealt with first
+                    frames.subList(0, consumed).clear();
+                    conn.networkFailure(ioe); // instruct the connection to deal with its failure
+                    for (Frame frame : frames) {
+                        frame.release();
+                    }
+                    frames.clear();
+                    return true;
+                }
+
+                if (written < nbufs) {
+                    // hand off the partial message and leave the unwritten ones in the list
+                    pwh.handlePartialWrite(conn, _gatherframes[written], _gatherbufs[written]);
+                    List<Frame> unwritten = Lists.newArrayList();
+                    for (int ii = written + 1; ii < nbufs; ii++) {
+                        unwritten.add(_gatherframes[ii]);
+                    }
+                    frames.subList(0, consumed).clear();
+                    frames.addAll(0, unwritten);
+                    clearGathered(nbufs);
+                    return false;
+                }
+                clearGathered(nbufs);
+            }
+
+            // release anything we're dropping on the floor
+            for (int ii = consumed; ii < count; ii++) {
+                frames.get(ii).release();
+            }
+            frames.clear();
+            return true;
+        }
+
+        /**
+         * Clears out our references to the frames and buffers used in a gathered write.
+         */
+        protected void clearGathered (int nbufs)
+        {
+            Arrays.fill(_gatherframes, 0, nbufs, null);
+            Arrays.fill(_gatherbufs, 0, nbufs, null);
+        }
+
+        /**
+         * Logs a warning if there are messages left on our outgoing queue.
+         */
+        public void reportUndelivered ()
+        {
+            if (outq.size() > 0) {
+                log.warning("Connection Manager failed to deliver " + outq.size() + " message(s).",
+                            "reactor", _index);
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return "Reactor-" + _index;
+        }
+
+        /** Iterates over the ready keys on our selector. */
+        protected SelectorIterable selectorSelector;
+
+        /** New messages for each connection, collected by {@link #sendOutgoingMessages}. */
+        protected Map<Connection, List<Frame>> _pending = Maps.newLinkedHashMap();
+
+        /** Holds the frames being gathered into a write and the buffers handed to the write. */
+        protected Frame[] _gatherframes = new Frame[16];
+        protected ByteBuffer[] _gatherbufs = new ByteBuffer[16];
+
+        /** Used to create an overflow queue on the first partial write. */
+        protected PartialWriteHandler _oflowHandler = new PartialWriteHandler() {
+            public void handlePartialWrite (Connection conn, Frame frame, ByteBuffer msgbuf) {
+                // if we couldn't write all the data for this message, we'll need to establish an
+                // overflow queue
+                oflowqs.put(conn, new OverflowQueue(conn, frame, msgbuf));
+            }
+        };
+
+        /** Our index in {@link ConnectionManager#_reactors}. */
+        protected final int _index;
+
+        /** The thread on which this reactor runs. */
+        protected volatile Thread _owner;
+
+        /** Set when a wakeup has been requested that our thread has not yet acted upon. */
+        protected AtomicBoolean _wakeupPending = new AtomicBoolean();
+
+        /** Our handlers, hashed by the time at which they will next need checking for idleness. */
+        protected TimingWheel<NetEventHandler> _idlers =
+            new TimingWheel<NetEventHandler>(IDLE_TICK, IDLE_SLOTS);
+
+        /** Used to collect handlers whose idleness checks have come due. */
+        protected List<NetEventHandler> _expired = Lists.newArrayList();
+    }
+
+    /**
+     * Drives a secondary {@link Reactor}. It runs for as long as the connection manager does.
+     */
+    protected class ReactorThread extends LoopingThread
+    {
+        public final Reactor reactor;
+
+        public ReactorThread (Reactor reactor)
+        {
+            super("ConnectionManager." + reactor);
+            this.reactor = reactor;
+            _reactorThreads.add(this);
+        }
+
+        @Override // from LoopingThread
+        public boolean isRunning ()
+        {
+            return ConnectionManager.this.isRunning();
+        }
+
+        @Override // from LoopingThread
+        protected void willStart ()
+        {
+            reactor.willStart(this);
+        }
+
+        @Override // from LoopingThread
+        protected void iterate ()
+        {
+            reactor.iterate(System.currentTimeMillis());
+        }
+
+        @Override // from LoopingThread
+        protected void handleIterateFailure (Exception e)
+        {
+            log.warning("Reactor iterate() uncaught exception.", "reactor", reactor, e);
+        }
+
+        @Override // from LoopingThread
+        protected void didShutdown ()
+        {
+            // take one last crack at the outgoing message queue
+            reactor.runActions();
+            reactor.sendOutgoingMessages(System.currentTimeMillis());
+            reactor.reportUndelivered();
+        }
+    }
+
+    /** Used to handle partial writes in {@link Reactor#writeMessages}. */
     protected static interface PartialWriteHandler
     {
-        void handlePartialWrite (Connection conn, ByteBuffer buffer);
+        /**
+         * Takes over the supplied frame, of which only part (the remaining bytes in
+         * <code>buffer</code>) was written.
+         */
+        void handlePartialWrite (Connection conn, Frame frame, ByteBuffer buffer);
     }
 
     /**
@@ -502,7 +1180,7 @@ public abstract class ConnectionManager extends LoopingThread
      * the client and propagate that information up to the higher levels so that further messages
      * are not queued up for the unresponsive client.
      */
-    protected class OverflowQueue extends ArrayList<byte[]>
+    protected class OverflowQueue extends ArrayList<Frame>
         implements PartialWriteHandler
     {
         /** The connection for which we're managing overflow. */
@@ -512,15 +1190,150 @@ public abstract class ConnectionManager extends LoopingThread
          * Creates a new overflow queue for the supplied connection and with the supplied initial
          * partial message.
          */
-        public OverflowQueue (Connection conn, ByteBuffer message)
+        public OverflowQueue (Connection conn, Frame frame, ByteBuffer message)
         {
             this.conn = conn;
             // set up our initial _partial buffer
-            handlePartialWrite(conn, message);
+            _created = System.currentTimeMillis();
+            _stamps.add(getStamp(frame, _created));
+            handlePartialWrite(conn, frame, message);
+            _bytes = message.remaining();
+        }
+
+        /**
+         * Adds a message to this queue, ahead of any lower priority messages that it may pass.
+         *
+         * @param stamp the time to use as the message's queued time if it was not stamped with
+         * one when it was posted.
+         */
+        public void append (Frame frame, long stamp)
+        {
+            stamp = getStamp(frame, stamp);
+            int idx = insertFrame(this, frame);
+            int offset = (_partialFrame == null) ? 0 : 1;
+            if (idx + offset < _stamps.size()) {
+                // a message that jumps the queue takes on the stamp of the one it displaced so
+                // that the head of the queue remains its oldest message
+                stamp = Math.min(stamp, _stamps.get(idx + offset));
+            }
+            _stamps.add(idx + offset, stamp);
+            _bytes += frame.size();
+        }
+
+        /**
+         * Adds messages to this queue, see {@link #append}.
+         */
+        public void appendAll (List<Frame> frames, long stamp)
+        {
+            for (int ii = 0, ll = frames.size(); ii < ll; ii++) {
+                append(frames.get(ii), stamp);
+            }
+        }
+
+        /**
+         * Holds a message back from this queue while our connection is paused. Held messages are
+         * not written (nor dropped) until they are put on the queue by {@link #releaseHeld}.
+         */
+        public void hold (Frame frame, long stamp)
+        {
+            _held.add(frame);
+            _heldStamps.add(getStamp(frame, stamp));
+            _heldBytes += frame.size();
+        }
+
+        /**
+         * Puts the messages held back from this queue on it, in the order in which they arrived.
+         */
+        public void releaseHeld ()
+        {
+            for (int ii = 0, ll = _held.size(); ii < ll; ii++) {
+                append(_held.get(ii), _heldStamps.get(ii));
+            }
+            _held.clear();
+            _heldStamps.clear();
+            _heldBytes = 0;
+        }
+
+        /**
+         * Returns the number of bytes held back from this queue.
+         */
+        public long getHeldBytes ()
+        {
+            return _heldBytes;
+        }
+
+        /**
+         * Returns the number of milliseconds for which the oldest message held back from this
+         * queue has been waiting to be written.
+         */
+        public long getHeldAge (long now)
+        {
+            return _heldStamps.isEmpty() ? 0 : (now - _heldStamps.get(0));
         }
 
         /**
-         * Called each time through the {@link ConnectionManager#iterate} loop, this attempts to
+         * Returns the number of milliseconds since this queue was created.
+         */
+        public long getDwell (long now)
+        {
+            return now - _created;
+        }
+
+        /**
+         * Returns the number of bytes waiting to be written.
+         */
+        public long getBytes ()
+        {
+            return _bytes;
+        }
+
+        /**
+         * Returns the number of milliseconds for which the oldest message in this queue has been
+         * waiting to be written.
+         */
+        public long getAge (long now)
+        {
+            return _stamps.isEmpty() ? 0 : (now - _stamps.get(0));
+        }
+
+        /**
+         * Returns the number of messages in this queue that may be discarded.
+         */
+        public int getDroppableCount ()
+        {
+            int count = 0;
+            for (int ii = 0, ll = size(); ii < ll; ii++) {
+                if (get(ii).isDroppable()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Discards (and releases) any messages in this queue that may be discarded, save for the
+         * partially written message, which the client is already in the middle of receiving.
+         *
+         * @return the number of messages discarded.
+         */
+        public int dropUnreliable ()
+        {
+            int offset = (_partialFrame == null) ? 0 : 1, dropped = 0;
+            for (int ii = size() - 1; ii >= 0; ii--) {
+                Frame frame = get(ii);
+                if (frame.isDroppable()) {
+                    remove(ii);
+                    _stamps.remove(ii + offset);
+                    _bytes -= frame.size();
+                    frame.release();
+                    dropped++;
+                }
+            }
+            return dropped;
+        }
+
+        /**
+         * Called each time through the {@link Reactor#sendOutgoingMessages} loop, this attempts to
          * send any remaining partial message and all subsequent messages in the overflow queue.
          *
          * @return true if all messages in this queue were successfully sent, false if there
@@ -545,10 +1358,15 @@ public abstract class ConnectionManager extends LoopingThread
 
                 // write all we can of our partial buffer
                 int wrote = sochan.write(_partial);
-                noteWrite(0, wrote);
+                noteWrite(conn, 0, wrote, 1);
+                _bytes -= wrote;
 
                 if (_partial.remaining() == 0) {
+                    noteDelivered(conn, _partialFrame, System.currentTimeMillis());
+                    _partialFrame.release();
+                    _partialFrame = null;
                     _partial = null;
+                    _stamps.remove(0);
                     _partials++;
                 } else {
 //                     log.info("Still going", "conn", conn, "wrote", wrote,
@@ -557,88 +1375,232 @@ public abstract class ConnectionManager extends LoopingThread
                 }
             }
 
-            while (size() > 0) {
-                byte[] data = remove(0);
-                // if any of these messages are partially written, we have to stop and wait for the
-                // next tick
-                _msgs++;
-                if (!writeMessage(conn, data, this)) {
-                    return false;
-                }
+            // if any of these messages are partially written, we have to stop and wait for the
+            // next tick
+            int size = size();
+            boolean fully = conn._reactor.writeMessages(conn, this, this);
+            _msgs += size - size();
+
+            // forget the stamps of the messages that went out and recount what remains
+            int remain = size() + ((_partialFrame == null) ? 0 : 1);
+            _stamps.subList(0, _stamps.size() - remain).clear();
+            _bytes = (_partial == null) ? 0 : _partial.remaining();
+            for (int ii = 0, ll = size(); ii < ll; ii++) {
+                _bytes += get(ii).size();
             }
+            return fully;
+        }
 
-            return true;
+        /**
+         * Releases the frames in this queue, which is being discarded.
+         */
+        public void release ()
+        {
+            if (_partialFrame != null) {
+                _partialFrame.release();
+                _partialFrame = null;
+                _partial = null;
+            }
+            for (Frame frame : this) {
+                frame.release();
+            }
+            clear();
+            _stamps.clear();
+            _bytes = 0;
+            for (Frame frame : _held) {
+                frame.release();
+            }
+            _held.clear();
+            _heldStamps.clear();
+            _heldBytes = 0;
+        }
+
+        /**
+         * Returns the time at which the supplied message was posted for delivery, or the supplied
+         * time if it was not stamped, so that the age of this queue counts the time that messages
+         * spent waiting to be written before they were moved into it.
+         */
+        protected long getStamp (Frame frame, long now)
+        {
+            long queued = frame.getQueued();
+            return (queued > 0) ? queued : now;
         }
 
         // documentation inherited
-        public void handlePartialWrite (Connection wconn, ByteBuffer buffer)
+        public void handlePartialWrite (Connection wconn, Frame frame, ByteBuffer buffer)
         {
-            // set up our _partial buffer
-            _partial = ByteBuffer.allocateDirect(buffer.remaining());
-            _partial.put(buffer);
-            _partial.flip();
+            // hang on to the frame and our position in it until the rest can be written
+            _partialFrame = frame;
+            _partial = buffer;
         }
 
         @Override
         public String toString ()
         {
-            return "[conn=" + conn + ", partials=" + _partials + ", msgs=" + _msgs + "]";
+            return "[conn=" + conn + ", partials=" + _partials + ", msgs=" + _msgs +
+                ", bytes=" + _bytes + ", held=" + _held.size() + ", heldBytes=" + _heldBytes +
+                "]";
         }
 
-        /** The remains of a message that was only partially written on its first attempt. */
+        /** A message that was only partially written on its first attempt, and a view of the
+         * part that remains to be written. */
+        protected Frame _partialFrame;
         protected ByteBuffer _partial;
 
+        /** The time at which each message in this queue (starting with the partially written
+         * message) was queued up for delivery. */
+        protected ArrayList<Long> _stamps = Lists.newArrayList();
+
+        /** The number of bytes waiting to be written. */
+        protected long _bytes;
+
+        /** The messages held back from this queue while our connection is paused, the times at
+         * which they were queued up for delivery, and their total size. */
+        protected ArrayList<Frame> _held = Lists.newArrayList();
+        protected ArrayList<Long> _heldStamps = Lists.newArrayList();
+        protected long _heldBytes;
+
+        /** The time at which this queue was created. */
+        protected long _created;
+
         /** A couple of counters. */
         protected int _msgs, _partials;
     }
 
-    /** Used to create an overflow queue on the first partial write. */
-    protected PartialWriteHandler _oflowHandler = new PartialWriteHandler() {
-        public void handlePartialWrite (Connection conn, ByteBuffer msgbuf) {
-            // if we couldn't write all the data for this message, we'll need to establish an
-            // overflow queue
-            _oflowqs.put(conn, new OverflowQueue(conn, msgbuf));
+    /**
+     * A fake message that causes its connection to be closed when it is reached, see {@link
+     * #postAsyncClose}. Each close gets its own, as it is queued and released like any other
+     * frame.
+     */
+    protected static class CloseRequest extends Frame
+    {
+        public CloseRequest ()
+        {
+            super(null, ByteBuffer.allocate(0));
+            setBarrier(true);
         }
-    };
+    }
 
-    protected Selector _selector;
-    protected SelectorIterable _selectorSelector;
+    /**
+     * The statistics maintained by a single reactor, which are summed up by {@link #getStats}.
+     * Most of these are only updated on the reactor's thread, but closes and failures may be
+     * reported from elsewhere, so the counters are atomic rather than being guarded by a lock
+     * that the reactor would have to share with every caller of {@link #getStats}.
+     */
+    protected static class ReactorStats
+    {
+        public final AtomicLong eventCount = new AtomicLong();
+        public final AtomicLong connects = new AtomicLong();
+        public final AtomicLong disconnects = new AtomicLong();
+        public final AtomicLong closes = new AtomicLong();
+        public final AtomicLong bytesIn = new AtomicLong();
+        public final AtomicLong bytesOut = new AtomicLong();
+        public final AtomicLong msgsIn = new AtomicLong();
+        public final AtomicLong msgsOut = new AtomicLong();
+        public final AtomicLong writesSaved = new AtomicLong();
+        public final AtomicLong overflowDrops = new AtomicLong();
+        public final AtomicLong overflowPauses = new AtomicLong();
+        public final AtomicLong overflowDisconnects = new AtomicLong();
+        public final AtomicLong wakeups = new AtomicLong();
+
+        /** The number of messages and bytes in our overflow queues as of our last pass (the byte
+         * count includes messages held back from paused connections). */
+        public volatile int overQueueSize;
+        public volatile long overflowBytes;
+
+        /** The distributions of the writes made to all of our connections. */
+        public final WriteStats writes = new WriteStats();
 
-    /** Maps selection keys to network event handlers. */
-    protected Map<SelectionKey, NetEventHandler> _handlers = Maps.newHashMap();
+        /**
+         * Adds our statistics to those in the supplied snapshot.
+         */
+        public void addTo (ConMgrStats stats)
+        {
+            stats.eventCount += eventCount.get();
+            stats.connects += (int)connects.get();
+            stats.disconnects += (int)disconnects.get();
+            stats.closes += (int)closes.get();
+            stats.bytesIn += bytesIn.get();
+            stats.bytesOut += bytesOut.get();
+            stats.msgsIn += msgsIn.get();
+            stats.msgsOut += msgsOut.get();
+            stats.writesSaved += writesSaved.get();
+            stats.overflowDrops += overflowDrops.get();
+            stats.overflowPauses += (int)overflowPauses.get();
+            stats.overflowDisconnects += (int)overflowDisconnects.get();
+            stats.wakeups += wakeups.get();
+            stats.overQueueSize += overQueueSize;
+            stats.overflowBytes += overflowBytes;
+            stats.writeLatency = WriteStats.sum(stats.writeLatency, writes.latency);
+            stats.writeSizes = WriteStats.sum(stats.writeSizes, writes.sizes);
+            stats.overflowDwell = WriteStats.sum(stats.overflowDwell, writes.dwell);
+        }
+    }
 
-    /** Connections mapped by identifier. */
-    protected IntMap<Connection> _connections = IntMaps.newHashIntMap();
+    /** The reactor driven by the conmgr thread itself. */
+    protected final Reactor _primary;
 
-    protected Queue<Connection> _deathq = Queue.newQueue();
-    protected Queue<SocketChannel> _acceptedq = Queue.newQueue();
+    /** All of our reactors, the primary being the first. */
+    protected volatile Reactor[] _reactors;
 
-    protected Queue<Tuple<Connection, byte[]>> _outq = Queue.newQueue();
+    /** The threads driving our secondary reactors. */
+    protected List<ReactorThread> _reactorThreads = Lists.newArrayList();
 
-    protected ByteBuffer _outbuf = ByteBuffer.allocateDirect(64 * 1024);
+    /** Used to assign accepted connections to reactors round-robin. */
+    protected int _nextReactor;
 
-    protected Map<Connection, OverflowQueue> _oflowqs = Maps.newHashMap();
+    /** Connections mapped by identifier. */
+    protected Map<Integer, Connection> _connections = Maps.newConcurrentMap();
 
-    /** Our current runtime stats. */
-    protected ConMgrStats _stats = new ConMgrStats();
+    protected Queue<SocketChannel> _acceptedq = Queue.newQueue();
 
     /** Used to periodically report connection manager activity when in debug mode. */
     protected long _lastDebugStamp;
 
+    /** Provides the buffers in which outgoing messages are framed. */
+    protected FramePool _framePool = new FramePool();
+
+    /** The last time we checked our frame pool for leaks. */
+    protected long _lastLeakCheck;
+
     /** A runnable to execute when the connection manager thread exits. */
     protected volatile Runnable _onExit;
 
     /** Duration in milliseconds for which we wait for network events before checking our running
-     * flag to see if we should still be running. We don't want to loop too tightly, but we need to
-     * make sure we don't sit around listening for incoming network events too long when there are
-     * outgoing messages in the queue. */
+     * flag to see if we should still be running. We don't want to loop too tightly, but posting
+     * outgoing messages wakes us from the select, so they need not wait for this to expire. */
     @Inject(optional=true) @Named("presents.net.selectLoopTime")
     protected int _selectLoopTime = 100;
 
-    protected final long _idleTime;
+    /** The total number of selector threads on which to perform network I/O, including the
+     * conmgr thread itself. */
+    @Inject(optional=true) @Named("presents.net.reactorCount")
+    protected int _reactorCount = 1;
+
+    /** Whether or not to track the origin of every pooled frame so that those that are never
+     * released can be reported. This is expensive and should only be enabled when debugging. */
+    @Inject(optional=true) @Named("presents.net.trackFrameLeaks")
+    protected boolean _trackFrameLeaks;
+
+    /** The number of bytes that may pile up in a connection's overflow queue before we consult
+     * our {@link OverflowPolicy}. */
+    @Inject(optional=true) @Named("presents.net.overflowByteLimit")
+    protected int _overflowByteLimit = 8 * 1024 * 1024;
 
-    /** Used to denote asynchronous close requests. */
-    protected static final byte[] ASYNC_CLOSE_REQUEST = new byte[0];
+    /** The number of milliseconds that a message may wait in a connection's overflow queue before
+     * we consult our {@link OverflowPolicy}. */
+    @Inject(optional=true) @Named("presents.net.overflowAgeLimit")
+    protected long _overflowAgeLimit = 60 * 1000L;
+
+    /** Decides what to do with connections that exceed the above limits. */
+    @Inject(optional=true) protected OverflowPolicy _overflowPolicy = OverflowPolicy.DEFAULT;
+
+    /** The maximum number of bytes of a connection's queued messages that we'll try to send in a
+     * single write. */
+    @Inject(optional=true) @Named("presents.net.gatherBudget")
+    protected int _gatherBudget = 64 * 1024;
+
+    protected final long _idleTime;
 
     /** Whether or not debug reporting is activated .*/
     protected static final boolean DEBUG_REPORT = false;
@@ -646,6 +1608,15 @@ public abstract class ConnectionManager extends LoopingThread
     /** Report our activity every 30 seconds. */
     protected static final long DEBUG_REPORT_INTERVAL = 30*1000L;
 
+    /** The granularity with which we check for idle connections. */
+    protected static final long IDLE_TICK = 1000L;
+
+    /** The number of ticks covered by one revolution of our idle wheels. */
+    protected static final int IDLE_SLOTS = 256;
+
+    /** When tracking frame leaks, report frames outstanding for longer than a minute. */
+    protected static final long LEAK_CHECK_INTERVAL = 60*1000L;
+
     /** The number of milliseconds beyond the ping interval that we allow a client's network
      * connection to be idle before we forcibly disconnect them. */
     protected static final long LATENCY_GRACE = 30 * 1000L;
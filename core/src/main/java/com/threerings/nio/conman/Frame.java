@@ -0,0 +1,209 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.nio.conman;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.nio.ByteBuffer;
+
+import static com.threerings.NaryaLog.log;
+
+/**
+ * A framed outgoing message on its way to the network. Frames are usually obtained from a
+ * {@link FramePool} and are reference counted: whoever obtains or {@link #retain}s a frame must
+ * {@link #release} it when they are done with it, at which point its buffer goes back to the pool.
+ * A frame may be written to any number of connections at once, each write obtains its own view of
+ * the data via {@link #buffer}.
+ */
+public class Frame
+{
+    /** The priority of most frames. */
+    public static final int NORMAL_PRIORITY = 0;
+
+    /** The priority of control and response frames, which may be sent ahead of queued frames of
+     * normal priority. */
+    public static final int HIGH_PRIORITY = 1;
+
+    /**
+     * Creates an unpooled frame containing the supplied (already framed) data.
+     */
+    public static Frame wrap (byte[] data)
+    {
+        return new Frame(null, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Returns the number of bytes in this frame.
+     */
+    public int size ()
+    {
+        return _data.limit();
+    }
+
+    /**
+     * Returns a new view of this frame's data, positioned at its start.
+     */
+    public ByteBuffer buffer ()
+    {
+        return _data.duplicate();
+    }
+
+    /**
+     * Notes whether this frame contains a message that was sent with an unreliable transport hint
+     * and may therefore be discarded if the connection to which it is destined is backed up.
+     *
+     * @return this frame, for convenience.
+     */
+    public Frame setDroppable (boolean droppable)
+    {
+        _droppable = droppable;
+        return this;
+    }
+
+    /**
+     * Returns true if this frame may be discarded rather than delivered to a backed up connection.
+     */
+    public boolean isDroppable ()
+    {
+        return _droppable && !_barrier;
+    }
+
+    /**
+     * Sets the priority of this frame. A frame is sent ahead of any frames of lower priority that
+     * are queued up for its connection, but never ahead of frames of the same or higher priority,
+     * nor ahead of a {@link #setBarrier barrier}.
+     *
+     * @return this frame, for convenience.
+     */
+    public Frame setPriority (int priority)
+    {
+        _priority = priority;
+        return this;
+    }
+
+    /**
+     * Returns the priority of this frame.
+     */
+    public int getPriority ()
+    {
+        return _priority;
+    }
+
+    /**
+     * Notes whether frames that follow this one depend on it having been received first (because
+     * it establishes state on the stream, like class mappings). A barrier is never dropped and is
+     * never passed by a higher priority frame, nor does it pass any frames itself.
+     *
+     * @return this frame, for convenience.
+     */
+    public Frame setBarrier (boolean barrier)
+    {
+        _barrier = barrier;
+        return this;
+    }
+
+    /**
+     * Returns true if this frame must stay behind the frames queued ahead of it, and ahead of
+     * those queued after it.
+     */
+    public boolean isBarrier ()
+    {
+        return _barrier;
+    }
+
+    /**
+     * Notes the time at which this frame was (most recently) queued up for delivery.
+     */
+    public void setQueued (long stamp)
+    {
+        _queued = stamp;
+    }
+
+    /**
+     * Returns the time at which this frame was (most recently) queued up for delivery.
+     */
+    public long getQueued ()
+    {
+        return _queued;
+    }
+
+    /**
+     * Notes an additional reference to this frame, which must be matched by a call to {@link
+     * #release}.
+     *
+     * @return this frame, for convenience.
+     */
+    public Frame retain ()
+    {
+        _refs.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Releases a reference to this frame, returning its buffer to the pool if it was the last.
+     */
+    public void release ()
+    {
+        int refs = _refs.decrementAndGet();
+        if (refs == 0) {
+            if (_pool != null) {
+                _pool.recycle(this);
+            }
+        } else if (refs < 0) {
+            log.warning("Frame released too many times", "frame", this, new Exception());
+        }
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "[size=" + size() + ", refs=" + _refs.get() + "]";
+    }
+
+    protected Frame (FramePool pool, ByteBuffer data)
+    {
+        _pool = pool;
+        _data = data;
+    }
+
+    /** The pool to which we return our buffer, or null. */
+    protected final FramePool _pool;
+
+    /** Our data, from position zero to the limit. */
+    protected final ByteBuffer _data;
+
+    /** Whether or not we may be discarded when our connection is backed up. */
+    protected volatile boolean _droppable;
+
+    /** Our priority, see {@link #setPriority}. */
+    protected volatile int _priority = NORMAL_PRIORITY;
+
+    /** Whether or not we're a barrier, see {@link #setBarrier}. */
+    protected volatile boolean _barrier;
+
+    /** When we were queued up for delivery, see {@link #setQueued}. */
+    protected volatile long _queued;
+
+    /** The number of outstanding references to this frame. */
+    protected final AtomicInteger _refs = new AtomicInteger(1);
+}
@@ -0,0 +1,255 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.nio.conman;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.Tuple;
+
+import static com.threerings.NaryaLog.log;
+
+/**
+ * Hands out {@link Frame}s backed by direct buffers carved out of large slabs, recycling them
+ * when they are released. Buffers come in a handful of power-of-four size classes; frames that
+ * are too big for the largest class get an unpooled heap buffer of their own. Frames may be
+ * obtained and released from any thread.
+ */
+public class FramePool
+{
+    /**
+     * Creates a frame pool with the default size classes.
+     */
+    public FramePool ()
+    {
+        for (int size = MIN_CHUNK_SIZE; size <= MAX_CHUNK_SIZE; size <<= 2) {
+            _classes.add(new SizeClass(size));
+        }
+    }
+
+    /**
+     * Creates a frame containing a copy of the remaining bytes in the supplied buffer. The
+     * caller owns the frame and must {@link Frame#release} it (usually by handing it off to the
+     * connection manager, which will release it once it has been written).
+     */
+    public Frame copyOf (ByteBuffer data)
+    {
+        int size = data.remaining();
+        SizeClass sclass = getSizeClass(size);
+        if (sclass == null) {
+            // frames too big to pool get a buffer of their own
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.put(data);
+            buffer.flip();
+            return new Frame(null, buffer);
+        }
+
+        ByteBuffer buffer = sclass.take();
+        buffer.put(data);
+        buffer.flip();
+        Frame frame = new Frame(this, buffer);
+        _inUse.incrementAndGet();
+        if (_trackLeaks) {
+            synchronized (_outstanding) {
+                _outstanding.put(frame, Tuple.newTuple(System.currentTimeMillis(),
+                                                       new Exception("Frame allocated here")));
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Enables or disables tracking where each outstanding frame was obtained, so that frames that
+     * are never released can be reported by {@link #reportLeaks}. This is expensive and is only
+     * intended for debugging.
+     */
+    public void setTrackLeaks (boolean trackLeaks)
+    {
+        _trackLeaks = trackLeaks;
+    }
+
+    /**
+     * Returns true if we're tracking outstanding frames.
+     */
+    public boolean isTrackingLeaks ()
+    {
+        return _trackLeaks;
+    }
+
+    /**
+     * Logs a warning for each tracked frame that was obtained more than <code>maxAge</code>
+     * milliseconds ago and has yet to be released.
+     *
+     * @return the number of such frames.
+     */
+    public int reportLeaks (long maxAge)
+    {
+        long now = System.currentTimeMillis();
+        int leaks = 0;
+        synchronized (_outstanding) {
+            for (Map.Entry<Frame, Tuple<Long, Exception>> entry : _outstanding.entrySet()) {
+                long age = now - entry.getValue().left;
+                if (age > maxAge) {
+                    if (leaks++ < MAX_LEAK_REPORTS) {
+                        log.warning("Frame not released", "frame", entry.getKey(), "age", age,
+                                    entry.getValue().right);
+                    }
+                }
+            }
+        }
+        if (leaks > MAX_LEAK_REPORTS) {
+            log.warning("Additional frames not released", "count", leaks - MAX_LEAK_REPORTS);
+        }
+        return leaks;
+    }
+
+    /**
+     * Returns the number of pooled frames that have been obtained but not yet released.
+     */
+    public int getFramesInUse ()
+    {
+        return _inUse.get();
+    }
+
+    /**
+     * Returns the number of bytes of slab memory in the chunks that we are holding on to or have
+     * handed out. Chunks that we let go of are no longer counted, though the memory of their slab
+     * is only reclaimed once none of its chunks remain in use.
+     */
+    public long getSlabBytes ()
+    {
+        return _slabBytes.get();
+    }
+
+    /**
+     * Called by a pooled frame when its last reference is released.
+     */
+    protected void recycle (Frame frame)
+    {
+        _inUse.decrementAndGet();
+        if (_trackLeaks) {
+            synchronized (_outstanding) {
+                _outstanding.remove(frame);
+            }
+        }
+        getSizeClass(frame._data.capacity()).give(frame._data);
+    }
+
+    /**
+     * Returns the smallest size class that holds frames of the specified size, or null if it is
+     * too big for all of them.
+     */
+    protected SizeClass getSizeClass (int size)
+    {
+        for (int ii = 0, ll = _classes.size(); ii < ll; ii++) {
+            SizeClass sclass = _classes.get(ii);
+            if (size <= sclass.chunkSize) {
+                return sclass;
+            }
+        }
+        return null;
+    }
+
+    /** Manages the free chunks of a particular size. */
+    protected class SizeClass
+    {
+        /** The size of each of our chunks. */
+        public final int chunkSize;
+
+        public SizeClass (int chunkSize)
+        {
+            this.chunkSize = chunkSize;
+            _maxFree = Math.max(MAX_FREE_BYTES / chunkSize, 1);
+        }
+
+        /**
+         * Returns a cleared chunk, carving up a new slab if we have none free.
+         */
+        public synchronized ByteBuffer take ()
+        {
+            if (_free.isEmpty()) {
+                int slabSize = Math.max(SLAB_SIZE, chunkSize);
+                ByteBuffer slab = ByteBuffer.allocateDirect(slabSize);
+                _slabBytes.addAndGet(slabSize);
+                for (int pos = 0; pos < slabSize; pos += chunkSize) {
+                    slab.limit(pos + chunkSize).position(pos);
+                    _free.add(slab.slice());
+                }
+            }
+            ByteBuffer chunk = _free.remove(_free.size() - 1);
+            chunk.clear();
+            return chunk;
+        }
+
+        /**
+         * Returns a chunk to our free list, or lets it go if we already have plenty.
+         */
+        public synchronized void give (ByteBuffer chunk)
+        {
+            if (_free.size() < _maxFree) {
+                _free.add(chunk);
+            } else {
+                _slabBytes.addAndGet(-chunkSize);
+            }
+        }
+
+        protected ArrayList<ByteBuffer> _free = Lists.newArrayList();
+        protected final int _maxFree;
+    }
+
+    /** Our size classes, smallest first. */
+    protected ArrayList<SizeClass> _classes = Lists.newArrayList();
+
+    /** The number of pooled frames that are in use. */
+    protected AtomicInteger _inUse = new AtomicInteger();
+
+    /** The number of bytes of slab memory in chunks that are free or in use, see {@link
+     * #getSlabBytes}. */
+    protected AtomicLong _slabBytes = new AtomicLong();
+
+    /** Whether or not we're tracking outstanding frames. */
+    protected volatile boolean _trackLeaks;
+
+    /** Where and when each outstanding frame was obtained, if we're tracking them. */
+    protected Map<Frame, Tuple<Long, Exception>> _outstanding =
+        new IdentityHashMap<Frame, Tuple<Long, Exception>>();
+
+    /** The smallest and largest chunk sizes. */
+    protected static final int MIN_CHUNK_SIZE = 256, MAX_CHUNK_SIZE = 256 * 1024;
+
+    /** The size of the slabs from which chunks are carved. */
+    protected static final int SLAB_SIZE = 256 * 1024;
+
+    /** The number of bytes of free chunks we'll hold on to in each size class. */
+    protected static final int MAX_FREE_BYTES = 4 * 1024 * 1024;
+
+    /** The most leaked frames we'll log individually in one report. */
+    protected static final int MAX_LEAK_REPORTS = 10;
+}
@@ -0,0 +1,89 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.nio.conman;
+
+/**
+ * Decides what to do about a connection that is not reading its messages as fast as we are
+ * sending them. This is consulted, on the thread of the connection's reactor, each time through
+ * the select loop that its overflow queue is over the configured byte or age limits. A queue
+ * that is over twice either limit is reported as hopeless, and the standard policies disconnect
+ * such a connection whatever else they might have done.
+ */
+public interface OverflowPolicy
+{
+    /** The ways in which the connection manager can respond to a backed up connection. */
+    public enum Action {
+        /** Leave the connection alone for now. */
+        NONE,
+        /** Discard queued messages that were sent with an unreliable transport hint. */
+        DROP_UNRELIABLE,
+        /** Hold new messages back from the connection's queue until the queue drains. Held
+         * messages are subject to the same limits, beyond which the connection is disconnected. */
+        PAUSE,
+        /** Disconnect the connection. */
+        DISCONNECT
+    }
+
+    /** Disconnects backed up connections straight away. */
+    public static final OverflowPolicy DISCONNECT = new OverflowPolicy() {
+        public Action overflowed (
+            Connection conn, long bytes, long age, int droppable, boolean hopeless) {
+            return Action.DISCONNECT;
+        }
+    };
+
+    /** Discards unreliable messages to backed up connections, disconnecting them if there are
+     * none to discard or they are hopelessly backed up. */
+    public static final OverflowPolicy DROP_UNRELIABLE = new OverflowPolicy() {
+        public Action overflowed (
+            Connection conn, long bytes, long age, int droppable, boolean hopeless) {
+            return (droppable > 0 && !hopeless) ? Action.DROP_UNRELIABLE : Action.DISCONNECT;
+        }
+    };
+
+    /** Discards unreliable messages to backed up connections and, if that isn't enough, pauses
+     * them until they drain, disconnecting them if they are hopelessly backed up. */
+    public static final OverflowPolicy DEFAULT = new OverflowPolicy() {
+        public Action overflowed (
+            Connection conn, long bytes, long age, int droppable, boolean hopeless) {
+            if (hopeless) {
+                return Action.DISCONNECT;
+            }
+            if (droppable > 0) {
+                return Action.DROP_UNRELIABLE;
+            }
+            return conn.isOutputPaused() ? Action.NONE : Action.PAUSE;
+        }
+    };
+
+    /**
+     * Called when the specified connection's overflow queue is over its limits.
+     *
+     * @param bytes the number of bytes waiting to be written to the connection.
+     * @param age the number of milliseconds for which the oldest of those has been waiting.
+     * @param droppable the number of waiting messages that may be discarded.
+     * @param hopeless true if the queue is over twice the byte or age limit, which a connection
+     * that is merely slow (rather than dead or malicious) is unlikely to reach.
+     */
+    Action overflowed (Connection conn, long bytes, long age, int droppable, boolean hopeless);
+}
@@ -0,0 +1,164 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.nio.conman;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A hashed timing wheel: items are scheduled to come due at some time and are hashed by that time
+ * into one of a fixed number of slots, each of which covers one tick. Scheduling, rescheduling
+ * and cancelling are constant time, and expiring only examines the slots for the ticks that have
+ * passed since the last expiry. Items due more than a revolution of the wheel in the future
+ * simply stay in their slot until a later revolution.
+ *
+ * <p><em>Note:</em> this is not thread safe.
+ */
+public class TimingWheel<T>
+{
+    /**
+     * Creates a timing wheel with the specified tick duration and number of slots.
+     */
+    public TimingWheel (long tickMillis, int slotCount)
+    {
+        _tickMillis = tickMillis;
+        @SuppressWarnings("unchecked") ArrayList<Entry<T>>[] slots = new ArrayList[slotCount];
+        _slots = slots;
+        for (int ii = 0; ii < slotCount; ii++) {
+            _slots[ii] = Lists.newArrayList();
+        }
+    }
+
+    /**
+     * Schedules the supplied item to come due at the specified time, replacing any existing
+     * schedule for the item.
+     */
+    public void schedule (T item, long deadline)
+    {
+        Entry<T> entry = _entries.get(item);
+        if (entry == null) {
+            _entries.put(item, entry = new Entry<T>(item));
+        } else {
+            unslot(entry);
+        }
+        entry.deadline = deadline;
+
+        // items that are already due go in the next slot to be expired
+        long tick = Math.max(deadline / _tickMillis, _cursor);
+        entry.slot = (int)(tick % _slots.length);
+        ArrayList<Entry<T>> slot = _slots[entry.slot];
+        entry.index = slot.size();
+        slot.add(entry);
+    }
+
+    /**
+     * Removes the supplied item from the wheel.
+     *
+     * @return true if the item was scheduled, false if not.
+     */
+    public boolean cancel (T item)
+    {
+        Entry<T> entry = _entries.remove(item);
+        if (entry == null) {
+            return false;
+        }
+        unslot(entry);
+        return true;
+    }
+
+    /**
+     * Removes all items that are due as of the specified time from the wheel and adds them to the
+     * supplied collection.
+     */
+    public void expire (long now, Collection<? super T> into)
+    {
+        // there's no need to go around more than once (and the first time through, items may
+        // have been scheduled into any slot)
+        long tick = now / _tickMillis;
+        long from = Math.max(_cursor, tick - _slots.length + 1);
+        for (long tt = from; tt <= tick; tt++) {
+            ArrayList<Entry<T>> slot = _slots[(int)(tt % _slots.length)];
+            for (int ii = slot.size() - 1; ii >= 0; ii--) {
+                Entry<T> entry = slot.get(ii);
+                if (entry.deadline <= now) {
+                    _entries.remove(entry.item);
+                    unslot(entry);
+                    into.add(entry.item);
+                }
+            }
+        }
+
+        // anything scheduled from here on for a time that has passed goes in the current slot
+        _cursor = tick;
+    }
+
+    /**
+     * Returns the number of items on the wheel.
+     */
+    public int size ()
+    {
+        return _entries.size();
+    }
+
+    /**
+     * Removes an entry from its slot by swapping the slot's last entry into its place.
+     */
+    protected void unslot (Entry<T> entry)
+    {
+        ArrayList<Entry<T>> slot = _slots[entry.slot];
+        Entry<T> last = slot.remove(slot.size() - 1);
+        if (last != entry) {
+            slot.set(entry.index, last);
+            last.index = entry.index;
+        }
+    }
+
+    /** Tracks the schedule of a single item. */
+    protected static class Entry<T>
+    {
+        public final T item;
+        public long deadline;
+        public int slot, index;
+
+        public Entry (T item)
+        {
+            this.item = item;
+        }
+    }
+
+    /** The duration of each tick. */
+    protected final long _tickMillis;
+
+    /** Our slots, one per tick, which we go around and around. */
+    protected final ArrayList<Entry<T>>[] _slots;
+
+    /** The entry for each scheduled item. */
+    protected Map<T, Entry<T>> _entries = new IdentityHashMap<T, Entry<T>>();
+
+    /** The last tick that we expired, or -1 if we've yet to expire anything. */
+    protected long _cursor = -1;
+}
@@ -0,0 +1,145 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.nio.conman;
+
+import com.samskivert.util.StringUtil;
+
+/**
+ * Tracks the distribution of write latency, write size and overflow dwell time for a connection,
+ * or for all of the connections on a reactor. These are only updated by the thread of the reactor
+ * that performs the writes; anyone else may read them, but will see a slightly stale picture.
+ */
+public class WriteStats
+{
+    /** The width (in milliseconds) of each {@link #latency} bucket. */
+    public static final int LATENCY_BUCKET = 10;
+
+    /** The width (in bytes) of each {@link #sizes} bucket. */
+    public static final int SIZE_BUCKET = 4096;
+
+    /** The width (in milliseconds) of each {@link #dwell} bucket. */
+    public static final int DWELL_BUCKET = 500;
+
+    /** The number of buckets in each histogram, the last of which collects everything too large
+     * for the others. */
+    public static final int BUCKETS = 16;
+
+    /** The number of milliseconds between a message being queued for delivery and its last byte
+     * being written to the socket. */
+    public final long[] latency = new long[BUCKETS];
+
+    /** The number of bytes accepted by the socket in each write. */
+    public final long[] sizes = new long[BUCKETS];
+
+    /** The number of milliseconds for which an overflow queue existed before it was drained. */
+    public final long[] dwell = new long[BUCKETS];
+
+    /**
+     * Notes that a message was fully written the specified number of milliseconds after it was
+     * queued up for delivery.
+     */
+    public void noteLatency (long millis)
+    {
+        latency[bucket(millis, LATENCY_BUCKET)]++;
+    }
+
+    /**
+     * Notes that a socket accepted the specified number of bytes in a single write.
+     */
+    public void noteWrite (long bytes)
+    {
+        sizes[bucket(bytes, SIZE_BUCKET)]++;
+    }
+
+    /**
+     * Notes that an overflow queue was drained the specified number of milliseconds after it was
+     * created.
+     */
+    public void noteDwell (long millis)
+    {
+        dwell[bucket(millis, DWELL_BUCKET)]++;
+    }
+
+    /**
+     * Returns the (upper bound of the) value below which the specified fraction of the values in
+     * the supplied histogram fall, or zero if the histogram is empty.
+     */
+    public static long percentile (long[] buckets, int width, double fraction)
+    {
+        long total = 0;
+        for (long count : buckets) {
+            total += count;
+        }
+        long seen = 0, target = (long)Math.ceil(total * fraction);
+        for (int ii = 0; ii < buckets.length && total > 0; ii++) {
+            seen += buckets[ii];
+            if (seen >= target) {
+                return (ii + 1L) * width;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the counts in <code>from</code> to those in <code>into</code>, creating the latter if
+     * it is null.
+     *
+     * @return the (possibly newly created) summed histogram.
+     */
+    public static long[] sum (long[] into, long[] from)
+    {
+        if (into == null) {
+            into = new long[from.length];
+        }
+        for (int ii = 0; ii < from.length; ii++) {
+            into[ii] += from[ii];
+        }
+        return into;
+    }
+
+    /**
+     * Returns the counts in <code>now</code> less those in <code>then</code>, which may be null.
+     */
+    public static long[] diff (long[] now, long[] then)
+    {
+        long[] diff = now.clone();
+        if (then != null) {
+            for (int ii = 0; ii < diff.length; ii++) {
+                diff[ii] -= then[ii];
+            }
+        }
+        return diff;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "[latency=" + StringUtil.toString(latency) + ", sizes=" +
+            StringUtil.toString(sizes) + ", dwell=" + StringUtil.toString(dwell) + "]";
+    }
+
+    protected static int bucket (long value, int width)
+    {
+        return (int)Math.max(0, Math.min(value / width, BUCKETS - 1));
+    }
+}
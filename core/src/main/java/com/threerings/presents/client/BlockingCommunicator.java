@@ -42,6 +42,9 @@ import com.samskivert.util.StringUtil;
 import com.samskivert.util.Throttle;
 import com.threerings.io.ByteBufferInputStream;
 import com.threerings.io.ByteBufferOutputStream;
+import com.threerings.io.ClassDictionary;
+import com.threerings.io.CompressionDictionary;
+import com.threerings.io.FrameDecompressor;
 import com.threerings.io.FramedInputStream;
 import com.threerings.io.FramingOutputStream;
 import com.threerings.io.ObjectInputStream;
@@ -633,7 +636,7 @@ public class BlockingCommunicator extends Communicator
                                     _client.getCredentials(), _client.getVersion(),
                                     _client.getBootGroups(), _client.requireSecureAuth(),
                                     pkcreds, (SecureResponse)response);
-                        sendMessage(areq);
+                        sendMessage(noteStreamOptions(areq));
                         _client.setSecret(areq.getSecret());
 
                         // now wait for the auth response
@@ -643,15 +646,25 @@ public class BlockingCommunicator extends Communicator
 
                 } else {
                     // construct an auth request and send it
-                    sendMessage(AESAuthRequest.createAuthRequest(
+                    sendMessage(noteStreamOptions(AESAuthRequest.createAuthRequest(
                                 _client.getCredentials(), _client.getVersion(),
-                                _client.getBootGroups(), _client.requireSecureAuth()));
+                                _client.getBootGroups(), _client.requireSecureAuth())));
 
 
                     // now wait for the auth response
                     log.debug("Waiting for auth response.");
                     response = (AuthResponse)receiveMessage();
                 }
+                // a server that agreed to compact encoding, adaptive interning, field indexing or
+                // compression uses it for everything that follows
+                _oin.setCompact(response.getCompactEncoding());
+                _oin.setAdaptiveInterning(response.getAdaptiveInterning());
+                _oin.setFieldIndexing(response.getFieldIndexing());
+                if (response.getCompression()) {
+                    _fin.setDecompressor(new FrameDecompressor(
+                        (response.getCompressionDictionary() == 0) ?
+                        null : _client.getCompressionDictionary()));
+                }
                 gotAuthResponse(response);
 
 
@@ -685,9 +698,31 @@ public class BlockingCommunicator extends Communicator
             // create our object input and output streams
             _oin = new ClientObjectInputStream(_client, _fin);
             _oin.setClassLoader(_loader);
+            _oin.setClassDictionary(_client.getClassDictionary());
             _oout = new ObjectOutputStream(_fout);
         }
 
+        /**
+         * Tells the server which class dictionary we can read, if any, whether we'd like compact
+         * encoding, adaptive interning, field indexing and compression (and with which
+         * dictionary), and that we can reassemble chunked messages.
+         */
+        protected AuthRequest noteStreamOptions (AuthRequest areq)
+        {
+            ClassDictionary dictionary = _client.getClassDictionary();
+            if (dictionary != null) {
+                areq.setClassDictionary(dictionary.getVersion());
+            }
+            areq.setCompactEncoding(_client.getCompactEncoding());
+            areq.setAdaptiveInterning(_client.getAdaptiveInterning());
+            areq.setFieldIndexing(_client.getFieldIndexing());
+            // our framed input stream can always reassemble chunked messages
+            areq.setChunking(true);
+            CompressionDictionary cdict = _client.getCompressionDictionary();
+            areq.setCompression(_client.getCompression(), (cdict == null) ? 0 : cdict.getVersion());
+            return areq;
+        }
+
         // now that we're authenticated, we manage the reading half of things by continuously
         // reading messages from the socket and processing them
         @Override
@@ -846,6 +881,8 @@ public class BlockingCommunicator extends Communicator
             ByteBufferInputStream bin = new ByteBufferInputStream(_buf);
             UnreliableObjectInputStream uin = new UnreliableObjectInputStream(bin);
             uin.setClassLoader(_loader);
+            uin.setClassDictionary(_client.getClassDictionary());
+            uin.setAdaptiveInterning(_oin.isAdaptiveInterning());
 
             // create the datagram sequencer
             _sequencer = new DatagramSequencer(uin, _uout);
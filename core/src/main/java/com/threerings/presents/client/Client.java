@@ -33,6 +33,9 @@ import com.samskivert.util.RunQueue;
 import com.samskivert.util.StringUtil;
 import com.samskivert.util.Throttle;
 
+import com.threerings.io.ClassDictionary;
+import com.threerings.io.CompressionDictionary;
+
 import com.threerings.presents.data.AuthCodes;
 import com.threerings.presents.data.ClientObject;
 import com.threerings.presents.data.InvocationCodes;
@@ -285,6 +288,120 @@ public class Client
         _version = version;
     }
 
+    /**
+     * Returns the class dictionary with which this client reads the classes it is sent, or null.
+     */
+    public ClassDictionary getClassDictionary ()
+    {
+        return _classDictionary;
+    }
+
+    /**
+     * Configures the client with a dictionary of well-known classes. If the server has the same
+     * dictionary, it will identify those classes by their fixed codes rather than sending their
+     * names. This must be done before logging on.
+     */
+    public void setClassDictionary (ClassDictionary dictionary)
+    {
+        _classDictionary = dictionary;
+    }
+
+    /**
+     * Returns true if this client asks to be sent integers and lengths in their compact encoding.
+     */
+    public boolean getCompactEncoding ()
+    {
+        return _compactEncoding;
+    }
+
+    /**
+     * Configures the client to ask to be sent integers and lengths in their compact encoding,
+     * which takes less bandwidth for the small values that make up most of what we're sent. The
+     * server decides whether to honor the request. This must be done before logging on.
+     */
+    public void setCompactEncoding (boolean compact)
+    {
+        _compactEncoding = compact;
+    }
+
+    /**
+     * Returns true if this client asks for the strings it is sent to be adaptively interned.
+     */
+    public boolean getAdaptiveInterning ()
+    {
+        return _adaptiveInterning;
+    }
+
+    /**
+     * Configures the client to ask for the strings it is sent to be mapped to codes as the server
+     * learns which are repeated (names, bundles and the like), rather than being sent in full
+     * every time. The server decides whether to honor the request. This must be done before
+     * logging on.
+     */
+    public void setAdaptiveInterning (boolean adaptive)
+    {
+        _adaptiveInterning = adaptive;
+    }
+
+    /**
+     * Returns true if this client asks for the fields named by the events it is sent to be
+     * identified by index.
+     */
+    public boolean getFieldIndexing ()
+    {
+        return _fieldIndexing;
+    }
+
+    /**
+     * Configures the client to ask for the fields named by the events it is sent (attribute
+     * changes, set updates and the like) to be identified by a compact index into the fields of
+     * the target object rather than by name. The server describes each class's fields when an
+     * object of that class is first sent, so that the indices can be mapped to this client's
+     * fields even if the class differs. The server decides whether to honor the request. This must
+     * be done before logging on.
+     */
+    public void setFieldIndexing (boolean indexing)
+    {
+        _fieldIndexing = indexing;
+    }
+
+    /**
+     * Returns true if this client asks for the frames it is sent to be compressed.
+     */
+    public boolean getCompression ()
+    {
+        return _compression;
+    }
+
+    /**
+     * Configures the client to ask for the frames it is sent to be compressed. The server decides
+     * whether to honor the request. This must be done before logging on.
+     */
+    public void setCompression (boolean compression)
+    {
+        _compression = compression;
+    }
+
+    /**
+     * Returns the dictionary with which the compression of the frames this client is sent is
+     * primed, or null.
+     */
+    public CompressionDictionary getCompressionDictionary ()
+    {
+        return _compressionDictionary;
+    }
+
+    /**
+     * Configures the client with a dictionary of data typical of what it is sent. If the server
+     * compresses the frames it sends and has the same dictionary, it primes their compression
+     * with it, which greatly improves the compression of small frames. This must be done before
+     * logging on.
+     */
+    public void setCompressionDictionary (CompressionDictionary dictionary)
+    {
+        _compressionDictionary = dictionary;
+    }
+
     /**
      * Configures the client with a custom class loader which will be used when reading objects off
      * of the network.
@@ -1046,6 +1163,24 @@ public class Client
     /** The version string reported to the server at auth time. */
     protected String _version = "";
 
+    /** The dictionary of well-known classes reported to the server at auth time, or null. */
+    protected ClassDictionary _classDictionary;
+
+    /** Whether we ask to be sent integers and lengths in their compact encoding. */
+    protected boolean _compactEncoding;
+
+    /** Whether we ask for the strings we're sent to be adaptively interned. */
+    protected boolean _adaptiveInterning;
+
+    /** Whether we ask for the fields named by the events we're sent to be indexed. */
+    protected boolean _fieldIndexing;
+
+    /** Whether we ask for the frames we're sent to be compressed. */
+    protected boolean _compression;
+
+    /** The dictionary of compression data reported to the server at auth time, or null. */
+    protected CompressionDictionary _compressionDictionary;
+
     /** An entity that gives us the ability to process events on the main client thread. */
     protected RunQueue _runQueue;
 
@@ -22,9 +22,11 @@
 package com.threerings.presents.client;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import java.awt.event.KeyEvent;
 
@@ -42,6 +44,7 @@ import com.threerings.presents.dobj.CompoundEvent;
 import com.threerings.presents.dobj.DEvent;
 import com.threerings.presents.dobj.DObject;
 import com.threerings.presents.dobj.DObjectManager;
+import com.threerings.presents.dobj.NamedEvent;
 import com.threerings.presents.dobj.ObjectAccessException;
 import com.threerings.presents.dobj.ObjectDestroyedEvent;
 import com.threerings.presents.dobj.Subscriber;
@@ -253,6 +256,7 @@ public class ClientDObjectMgr
         _client.getRunQueue().postRunnable(new Runnable() {
             public void run () {
                 _ocache.clear();
+                _indices.clear();
             }
         });
     }
@@ -288,6 +292,14 @@ public class ClientDObjectMgr
             return;
         }
 
+        // an event read from a field indexing stream identifies its field by the index of that
+        // field on the server, which we map to our own before anything else looks at the event
+        if (!resolveFields(target, event)) {
+            log.warning("Unable to resolve indexed field of event", "event", event,
+                        "target", target);
+            return;
+        }
+
         // because we might be acting as a proxy for a remote server, we may need to fiddle with
         // this event before we dispatch it
         _client.convertFromRemote(target, event);
@@ -343,6 +355,48 @@ public class ClientDObjectMgr
         }
     }
 
+    /**
+     * Resolves the indexed fields of the supplied event (or of the events it contains), returning
+     * false if any could not be resolved.
+     */
+    protected boolean resolveFields (DObject target, DEvent event)
+    {
+        if (event instanceof CompoundEvent) {
+            for (DEvent sevent : ((CompoundEvent)event).getEvents()) {
+                if (!resolveFields(target, sevent)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (!(event instanceof NamedEvent) || !((NamedEvent)event).isIndexed()) {
+            return true;
+        }
+        Class<?> tclass = target.getClass();
+        int[] indices = _indices.get(tclass);
+        if (indices == null && !_indices.containsKey(tclass)) {
+            return false; // the server never described this class's fields
+        }
+        return ((NamedEvent)event).resolveField(target, indices);
+    }
+
+    /**
+     * Maps the index of each of the supplied server field names to the index of the same field
+     * of the supplied object, or returns null if the two are indexed identically.
+     */
+    protected int[] mapFields (DObject obj, String[] names)
+    {
+        String[] local = obj.getFieldNames();
+        if (Arrays.equals(local, names)) {
+            return null;
+        }
+        int[] indices = new int[names.length];
+        for (int ii = 0; ii < names.length; ii++) {
+            indices[ii] = Math.max(Arrays.binarySearch(local, names[ii]), -1);
+        }
+        return indices;
+    }
+
     /**
      * Registers this object in our proxy cache and notifies the subscribers that were waiting for
      * subscription to this object.
@@ -353,6 +407,12 @@ public class ClientDObjectMgr
         T obj = orsp.getObject();
         obj.setManager(this);
 
+        // note the server's description of its class's fields, if we were sent one
+        String[] names = orsp.getFieldNames();
+        if (names != null) {
+            _indices.put(obj.getClass(), mapFields(obj, names));
+        }
+
         // stick the object into the proxy object table
         _ocache.put(obj.getOid(), obj);
 
@@ -555,6 +615,10 @@ public class ClientDObjectMgr
     /** All of the distributed objects that are active on this client. */
     protected HashIntMap<DObject> _ocache = new HashIntMap<DObject>();
 
+    /** Maps the field indices of the server's classes to those of ours, for each class that the
+     * server has described (null for those indexed identically). */
+    protected Map<Class<?>, int[]> _indices = Maps.newHashMap();
+
     /** Objects that have been marked for death. */
     protected HashIntMap<DObject> _dead = new HashIntMap<DObject>();
 
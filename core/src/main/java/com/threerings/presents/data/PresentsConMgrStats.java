@@ -34,6 +34,21 @@ public class PresentsConMgrStats extends ConMgrStats
      * are requested. */
     public int authQueueSize;
 
+    /** The number of connections with messages waiting to be encoded. This is a snapshot at the
+     * time the stats are requested. */
+    public int encodeQueueSize;
+
+    /** The number of messages written from an encoding shared with other connections, rather
+     * than being encoded specifically for their connection, since the server started up. */
+    public long sharedEncodes;
+
+    /** The number of bytes in frames that were compressed since the server started up, before
+     * compression. */
+    public long compressedBytesIn;
+
+    /** The number of bytes to which those frames were compressed. */
+    public long compressedBytesOut;
+
     @Override // from Object
     public PresentsConMgrStats clone ()
     {
@@ -55,7 +55,7 @@ public class AttributeChangedEvent extends NamedEvent
      */
     public Object getValue ()
     {
-        return _value;
+        return (_unboxed == null) ? _value : box(_bits);
     }
 
     /**
@@ -63,7 +63,7 @@ public class AttributeChangedEvent extends NamedEvent
      */
     public Object getOldValue ()
     {
-        return _oldValue;
+        return (_oldValue == UNBOXED_OLD_VALUE) ? box(_oldBits) : _oldValue;
     }
 
     /**
@@ -90,7 +90,7 @@ public class AttributeChangedEvent extends NamedEvent
      */
     public int getIntValue ()
     {
-        return ((Integer)_value).intValue();
+        return (_unboxed == Integer.TYPE) ? (int)_bits : ((Integer)_value).intValue();
     }
 
     /**
@@ -99,7 +99,7 @@ public class AttributeChangedEvent extends NamedEvent
      */
     public long getLongValue ()
     {
-        return ((Long)_value).longValue();
+        return (_unboxed == Long.TYPE) ? _bits : ((Long)_value).longValue();
     }
 
     /**
@@ -108,7 +108,8 @@ public class AttributeChangedEvent extends NamedEvent
      */
     public float getFloatValue ()
     {
-        return ((Float)_value).floatValue();
+        return (_unboxed == Float.TYPE) ?
+            Float.intBitsToFloat((int)_bits) : ((Float)_value).floatValue();
     }
 
     /**
@@ -120,6 +121,15 @@ public class AttributeChangedEvent extends NamedEvent
         return ((Double)_value).doubleValue();
     }
 
+    /**
+     * Returns the new value of the attribute as a boolean. This will fail if the attribute in
+     * question is not a boolean.
+     */
+    public boolean getBooleanValue ()
+    {
+        return (_unboxed == Boolean.TYPE) ? (_bits != 0) : ((Boolean)_value).booleanValue();
+    }
+
     @Override
     public boolean alreadyApplied ()
     {
@@ -133,9 +143,10 @@ public class AttributeChangedEvent extends NamedEvent
         throws ObjectAccessException
     {
         // if we're not already applied, grab the previous value and apply the attribute change
+        Accessor acc = getAccessor(target);
         if (!alreadyApplied()) {
-            _oldValue = target.getAttribute(_name);
-            Object value = _value;
+            _oldValue = acc.get(target);
+            Object value = getValue();
             if (value != null) {
                 Class<?> vclass = value.getClass();
                 if (vclass.isPrimitive()) {
@@ -151,7 +162,7 @@ public class AttributeChangedEvent extends NamedEvent
                 }
             }
             // pass the new value on to the object
-            target.setAttribute(_name, value);
+            acc.set(target, value);
         }
         return true;
     }
@@ -170,7 +181,7 @@ public class AttributeChangedEvent extends NamedEvent
         buf.append("CHANGE:");
         super.toString(buf);
         buf.append(", value=");
-        StringUtil.toString(buf, _value);
+        StringUtil.toString(buf, getValue());
     }
 
     protected AttributeChangedEvent setOldValue (Object oldValue)
@@ -179,6 +190,65 @@ public class AttributeChangedEvent extends NamedEvent
         return this;
     }
 
+    /**
+     * Configures this event (which must have been constructed with a null value) with the new and
+     * old values of an already applied change to a primitive attribute, which are held unboxed
+     * unless they are asked for as objects.
+     *
+     * @param type the primitive type of the attribute: <code>int</code>, <code>long</code>,
+     * <code>float</code> or <code>boolean</code>.
+     * @param value the new value, widened to a long (floats by way of their bits, booleans as one
+     * or zero).
+     * @param oldValue the old value, likewise.
+     */
+    protected AttributeChangedEvent setUnboxed (Class<?> type, long value, long oldValue)
+    {
+        _unboxed = type;
+        _bits = value;
+        _oldBits = oldValue;
+        _oldValue = UNBOXED_OLD_VALUE;
+        return this;
+    }
+
+    @Override
+    protected NamedEvent getStreamedForm (boolean indexed)
+    {
+        NamedEvent streamed = super.getStreamedForm(indexed);
+        if (_unboxed != null) {
+            // we're streamed exactly as if we'd been constructed with a boxed value
+            if (streamed == this) {
+                streamed = copy();
+            }
+            ((AttributeChangedEvent)streamed)._value = getValue();
+        }
+        return streamed;
+    }
+
+    /**
+     * Boxes the supplied unboxed value.
+     */
+    protected Object box (long bits)
+    {
+        if (_unboxed == Integer.TYPE) {
+            return Integer.valueOf((int)bits);
+        } else if (_unboxed == Long.TYPE) {
+            return Long.valueOf(bits);
+        } else if (_unboxed == Float.TYPE) {
+            return Float.valueOf(Float.intBitsToFloat((int)bits));
+        } else {
+            return Boolean.valueOf(bits != 0);
+        }
+    }
+
     protected Object _value;
     protected transient Object _oldValue = UNSET_OLD_VALUE;
+
+    /** The primitive type of our values, if they are held unboxed, otherwise null. */
+    protected transient Class<?> _unboxed;
+
+    /** Our new and old values, if they are held unboxed. */
+    protected transient long _bits, _oldBits;
+
+    /** Stands in for an old value that is held unboxed. */
+    protected static final Object UNBOXED_OLD_VALUE = new Object();
 }
@@ -0,0 +1,35 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.presents.dobj;
+
+/**
+ * A listener that also implements this interface will, on a server that is configured to coalesce
+ * events, be notified of attribute and element changes only after the server has had a chance to
+ * drop those that are superseded by a later change to the same field (or element) of the same
+ * object, just as they are dropped before being sent to clients. It thus hears of fewer changes,
+ * and hears of them slightly later. The old value reported by a change is the value that preceded
+ * that change, which may not be the value reported by the last change the listener heard of.
+ */
+public interface CoalescedListener extends ChangeListener
+{
+}
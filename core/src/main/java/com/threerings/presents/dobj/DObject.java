@@ -406,6 +406,27 @@ public class DObject
      * @param event the event that was just applied.
      */
     public void notifyListeners (DEvent event)
+    {
+        notifyListeners(event, true, false);
+    }
+
+    /**
+     * Dispatches an event notification to just those listeners that do, or do not, implement
+     * {@link CoalescedListener}. This is used by a server that coalesces events to hold events
+     * back from coalesced listeners until it knows that they have not been superseded.
+     *
+     * @param event the event that was applied.
+     * @param coalesced whether to notify the coalesced listeners or all of the others.
+     */
+    public void notifyListeners (DEvent event, boolean coalesced)
+    {
+        notifyListeners(event, false, coalesced);
+    }
+
+    /**
+     * Dispatches an event notification to all of our listeners or those of one kind.
+     */
+    protected void notifyListeners (DEvent event, boolean all, boolean coalesced)
     {
         if (_listeners == null) {
             return;
@@ -422,6 +443,9 @@ public class DObject
                     continue;
                 }
             }
+            if (!all && (listener instanceof CoalescedListener) != coalesced) {
+                continue;
+            }
 
             try {
                 // do any event specific notifications
@@ -494,6 +518,18 @@ public class DObject
         return getAccessor(name).get(this);
     }
 
+    /**
+     * Returns the names of this object's distributed fields, in the order of their indices.
+     */
+    public String[] getFieldNames ()
+    {
+        String[] names = new String[_accessors.length];
+        for (int ii = 0; ii < names.length; ii++) {
+            names[ii] = _accessors[ii].name;
+        }
+        return names;
+    }
+
     /**
      * Posts a message event on this distributed object.
      */
@@ -826,6 +862,82 @@ public class DObject
                   setOldValue(oldValue).setTransport(transport));
     }
 
+    /**
+     * Called by derived instances when the setter of an <code>int</code> attribute was called. The
+     * change is posted without boxing its values.
+     */
+    protected void requestIntChange (String name, int value, int oldValue)
+    {
+        requestIntChange(name, value, oldValue, Transport.DEFAULT);
+    }
+
+    /**
+     * Called by derived instances when the setter of an <code>int</code> attribute was called.
+     */
+    protected void requestIntChange (String name, int value, int oldValue, Transport transport)
+    {
+        postEvent(new AttributeChangedEvent(_oid, name, null).
+                  setUnboxed(Integer.TYPE, value, oldValue).setTransport(transport));
+    }
+
+    /**
+     * Called by derived instances when the setter of a <code>long</code> attribute was called. The
+     * change is posted without boxing its values.
+     */
+    protected void requestLongChange (String name, long value, long oldValue)
+    {
+        requestLongChange(name, value, oldValue, Transport.DEFAULT);
+    }
+
+    /**
+     * Called by derived instances when the setter of a <code>long</code> attribute was called.
+     */
+    protected void requestLongChange (String name, long value, long oldValue, Transport transport)
+    {
+        postEvent(new AttributeChangedEvent(_oid, name, null).
+                  setUnboxed(Long.TYPE, value, oldValue).setTransport(transport));
+    }
+
+    /**
+     * Called by derived instances when the setter of a <code>float</code> attribute was called.
+     * The change is posted without boxing its values.
+     */
+    protected void requestFloatChange (String name, float value, float oldValue)
+    {
+        requestFloatChange(name, value, oldValue, Transport.DEFAULT);
+    }
+
+    /**
+     * Called by derived instances when the setter of a <code>float</code> attribute was called.
+     */
+    protected void requestFloatChange (
+        String name, float value, float oldValue, Transport transport)
+    {
+        postEvent(new AttributeChangedEvent(_oid, name, null).
+                  setUnboxed(Float.TYPE, Float.floatToRawIntBits(value),
+                             Float.floatToRawIntBits(oldValue)).setTransport(transport));
+    }
+
+    /**
+     * Called by derived instances when the setter of a <code>boolean</code> attribute was called.
+     * The change is posted without boxing its values.
+     */
+    protected void requestBooleanChange (String name, boolean value, boolean oldValue)
+    {
+        requestBooleanChange(name, value, oldValue, Transport.DEFAULT);
+    }
+
+    /**
+     * Called by derived instances when the setter of a <code>boolean</code> attribute was called.
+     */
+    protected void requestBooleanChange (
+        String name, boolean value, boolean oldValue, Transport transport)
+    {
+        postEvent(new AttributeChangedEvent(_oid, name, null).
+                  setUnboxed(Boolean.TYPE, value ? 1 : 0, oldValue ? 1 : 0).
+                  setTransport(transport));
+    }
+
     /**
      * Called by derived instances when an element updater method was called.
      */
@@ -955,6 +1067,28 @@ public class DObject
      * IllegalArgumentException}.
      */
     protected final Accessor getAccessor (String name)
+    {
+        int index = getFieldIndex(name);
+        if (index < 0) {
+            throw new IllegalArgumentException(
+                "No such field " + getClass().getName() + "." + name);
+        }
+        return _accessors[index];
+    }
+
+    /**
+     * Returns the {@link Accessor} for the field with the specified index, or null if there is no
+     * such field.
+     */
+    protected final Accessor getAccessor (int index)
+    {
+        return (index >= 0 && index < _accessors.length) ? _accessors[index] : null;
+    }
+
+    /**
+     * Returns the index of the field with the specified name, or -1 if there is no such field.
+     */
+    protected final int getFieldIndex (String name)
     {
         int low = 0, high = _accessors.length-1;
         while (low <= high) {
@@ -966,10 +1100,10 @@ public class DObject
             } else if (cmp > 0) {
                 high = mid - 1;
             } else {
-                return midVal; // key found
+                return mid; // key found
             }
         }
-        throw new IllegalArgumentException("No such field " + getClass().getName() + "." + name);
+        return -1;
     }
 
     /**
@@ -990,6 +1124,26 @@ public class DObject
         return accs.toArray(new Accessor[accs.size()]);
     }
 
+    /**
+     * Replaces those of the supplied accessors that have the same name as one of the supplied
+     * replacements. Generated implementations of {@link #createAccessors} use this to access the
+     * fields that their class declares directly, rather than reflectively.
+     *
+     * @return the supplied array of accessors.
+     */
+    protected static Accessor[] replaceAccessors (Accessor[] accessors, Accessor... replacements)
+    {
+        for (int ii = 0; ii < accessors.length; ii++) {
+            for (Accessor replacement : replacements) {
+                if (replacement.name.equals(accessors[ii].name)) {
+                    accessors[ii] = replacement;
+                    break;
+                }
+            }
+        }
+        return accessors;
+    }
+
     /**
      * Returns the index of the identified listener, or -1 if not found.
      */
@@ -1008,6 +1162,38 @@ public class DObject
         return -1;
     }
 
+    /**
+     * The base for the accessors that are generated for the fields a class declares, which
+     * access those fields directly. See {@link #replaceAccessors}.
+     */
+    protected static abstract class FieldAccessor<T extends DObject> extends Accessor
+    {
+        public FieldAccessor (String name)
+        {
+            super(name);
+        }
+
+        /** Gets the current value of this attribute of the supplied object. */
+        public abstract Object getField (T obj);
+
+        /** Updates the current value of this attribute of the supplied object. */
+        public abstract void setField (T obj, Object value);
+
+        @Override
+        public Object get (DObject obj)
+        {
+            @SuppressWarnings("unchecked") T tobj = (T)obj;
+            return getField(tobj);
+        }
+
+        @Override
+        public void set (DObject obj, Object value)
+        {
+            @SuppressWarnings("unchecked") T tobj = (T)obj;
+            setField(tobj, value);
+        }
+    }
+
     /** Our object id. */
     protected int _oid;
 
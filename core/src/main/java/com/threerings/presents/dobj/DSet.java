@@ -25,12 +25,11 @@ import java.util.AbstractSet;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import java.io.IOException;
 
-import com.samskivert.util.ArrayUtil;
-
 import com.threerings.io.ObjectInputStream;
 import com.threerings.io.ObjectOutputStream;
 import com.threerings.io.Streamable;
@@ -51,6 +50,11 @@ import static com.threerings.presents.Log.log;
  * removal event to save network bandwidth. Lastly, the object returned by {@link Entry#getKey}
  * must be a {@link Streamable} type.
  *
+ * <p> The entries are kept sorted by key in a balanced tree whose nodes are shared between a set
+ * and its clones, each of which copies a shared node only when it modifies it. Cloning a set is
+ * thus a constant time operation, however large the set, and adding, updating or removing an
+ * entry takes time logarithmic in its size.
+ *
  * @param <E> the type of entry stored in this set.
  */
 public class DSet<E extends DSet.Entry>
@@ -193,16 +197,20 @@ public class DSet<E extends DSet.Entry>
      */
     public E get (Comparable<?> key)
     {
-        // determine where we'll be adding the new element
-        int eidx = ArrayUtil.binarySearch(
-            _entries, 0, _size, new SimpleEntry<Comparable<?>>(key), ENTRY_COMP);
-        return (eidx < 0) ? null : _entries[eidx];
+        for (Node<E> node = _root; node != null; ) {
+            int cmp = compare(key, node.entry.getKey());
+            if (cmp == 0) {
+                return node.entry;
+            }
+            node = (cmp < 0) ? node.left : node.right;
+        }
+        return null;
     }
 
     /**
      * Returns an iterator over the entries of this set. It does not support modification (nor
-     * iteration while modifications are being made to the set). It should not be kept around as it
-     * can quickly become out of date.
+     * iteration while entries are being added to or removed from the set, though they may be
+     * updated). It should not be kept around as it can quickly become out of date.
      *
      * @deprecated
      */
@@ -214,41 +222,12 @@ public class DSet<E extends DSet.Entry>
 
     /**
      * Returns an iterator over the entries of this set. It does not support modification (nor
-     * iteration while modifications are being made to the set). It should not be kept around as it
-     * can quickly become out of date.
+     * iteration while entries are being added to or removed from the set, though they may be
+     * updated). It should not be kept around as it can quickly become out of date.
      */
     public Iterator<E> iterator ()
     {
-        // the crazy sanity checks
-        if (_size < 0 || _size > _entries.length || (_size > 0 && _entries[_size-1] == null)) {
-            log.warning("DSet in a bad way", "size", _size, "entries", _entries, new Exception());
-        }
-
-        return new Iterator<E>() {
-            public boolean hasNext () {
-                checkComodification();
-                return (_index < _size);
-            }
-            public E next () {
-                checkComodification();
-                return _entries[_index++];
-            }
-            public void remove () {
-                throw new UnsupportedOperationException();
-            }
-            protected void checkComodification () {
-                if (_modCount != _expectedModCount) {
-                    throw new ConcurrentModificationException();
-                }
-                if (_ssize != _size) {
-                    log.warning("Size changed during iteration", "ssize", _ssize, "nsize", _size,
-                                "entries", _entries, new Exception());
-                }
-            }
-            protected int _index = 0;
-            protected int _ssize = _size;
-            protected int _expectedModCount = _modCount;
-        };
+        return new EntryIterator();
     }
 
     /**
@@ -295,7 +274,10 @@ public class DSet<E extends DSet.Entry>
             @SuppressWarnings("unchecked") E[] copy = (E[])new Entry[size()];
             array = copy;
         }
-        System.arraycopy(_entries, 0, array, 0, array.length);
+        int ii = 0;
+        for (Iterator<E> iter = iterator(); ii < array.length && iter.hasNext(); ) {
+            array[ii++] = iter.next();
+        }
         return array;
     }
 
@@ -319,44 +301,22 @@ public class DSet<E extends DSet.Entry>
      */
     protected boolean add (E elem)
     {
-        // determine where we'll be adding the new element
-        int eidx = ArrayUtil.binarySearch(_entries, 0, _size, elem, ENTRY_COMP);
-
         // if the element is already in the set, bail now
-        if (eidx >= 0) {
+        if (get(elem.getKey()) != null) {
             log.warning("Refusing to add duplicate entry", "entry", elem, "set", this,
                         new Exception());
             return false;
         }
 
-        // convert the index into happy positive land
-        eidx = (eidx+1)*-1;
-
-        // expand our entries array if necessary
-        int elength = _entries.length;
-        if (_size >= elength) {
-            // sanity check
-            if (elength > getWarningSize()) {
-                log.warning("Requested to expand to questionably large size", "l", elength,
-                            new Exception());
-            }
-
-            // create a new array and copy our data into it
-            @SuppressWarnings("unchecked") E[] elems = (E[])new Entry[elength*2];
-            System.arraycopy(_entries, 0, elems, 0, elength);
-            _entries = elems;
-        }
-
-        // if the entry doesn't go at the end, shift the elements down to accomodate it
-        if (eidx < _size) {
-            System.arraycopy(_entries, eidx, _entries, eidx+1, _size-eidx);
+        // sanity check (at the sizes at which we would once have expanded our storage)
+        if (_size >= getWarningSize() && (_size & (_size-1)) == 0) {
+            log.warning("Requested to expand to questionably large size", "l", _size,
+                        new Exception());
         }
 
-        // stuff the entry into the array and note that we're bigger
-        _entries[eidx] = elem;
+        _root = insert(_root, elem);
         _size++;
         _modCount++;
-
         return true;
     }
 
@@ -387,33 +347,14 @@ public class DSet<E extends DSet.Entry>
             return null;
         }
 
-        // look up this entry's position in our set
-        int eidx = ArrayUtil.binarySearch(
-            _entries, 0, _size, new SimpleEntry<Comparable<?>>(key), ENTRY_COMP);
-
-        // if we found it, remove it
-        if (eidx >= 0) {
-            // extract the old entry
-            E oldEntry = _entries[eidx];
+        // if we find it, remove it
+        E oldEntry = get(key);
+        if (oldEntry != null) {
+            _root = delete(_root, key);
             _size--;
-            if ((_entries.length > INITIAL_CAPACITY) && (_size < _entries.length/8)) {
-                // if we're using less than 1/8 of our capacity, shrink by half
-                @SuppressWarnings("unchecked") E[] newEnts = (E[])new Entry[_entries.length/2];
-                System.arraycopy(_entries, 0, newEnts, 0, eidx);
-                System.arraycopy(_entries, eidx+1, newEnts, eidx, _size-eidx);
-                _entries = newEnts;
-
-            } else {
-                // shift entries past the removed one downwards
-                System.arraycopy(_entries, eidx+1, _entries, eidx, _size-eidx);
-                _entries[_size] = null;
-            }
             _modCount++;
-            return oldEntry;
-
-        } else {
-            return null;
         }
+        return oldEntry;
     }
 
     /**
@@ -427,18 +368,13 @@ public class DSet<E extends DSet.Entry>
      */
     protected E update (E elem)
     {
-        // look up this entry's position in our set
-        int eidx = ArrayUtil.binarySearch(_entries, 0, _size, elem, ENTRY_COMP);
-
-        // if we found it, update it
-        if (eidx >= 0) {
-            E oldEntry = _entries[eidx];
-            _entries[eidx] = elem;
-            _modCount++;
-            return oldEntry;
-        } else {
-            return null;
+        // if we find it, update it
+        E oldEntry = get(elem.getKey());
+        if (oldEntry != null) {
+            _root = replace(_root, elem);
+            _updateCount++;
         }
+        return oldEntry;
     }
 
     /**
@@ -461,16 +397,17 @@ public class DSet<E extends DSet.Entry>
     }
 
     /**
-     * Generates a shallow copy of this object.
+     * Generates a shallow copy of this object. This takes constant time, as the copy shares our
+     * tree until either set is modified.
      */
     @Override
     public DSet<E> clone ()
     {
         try {
             @SuppressWarnings("unchecked") DSet<E> nset = (DSet<E>)super.clone();
-            @SuppressWarnings("unchecked") E[] copy = (E[])new Entry[_entries.length];
-            nset._entries = copy;
-            System.arraycopy(_entries, 0, nset._entries, 0, _entries.length);
+            // neither set may now modify the nodes that were ours without first copying them
+            _owner = new Object();
+            nset._owner = nset;
             nset._modCount = 0;
             return nset;
         } catch (CloneNotSupportedException cnse) {
@@ -483,12 +420,10 @@ public class DSet<E extends DSet.Entry>
     {
         StringBuilder buf = new StringBuilder("(");
         String prefix = "";
-        for (E elem : _entries) {
-            if (elem != null) {
-                buf.append(prefix);
-                prefix = ", ";
-                buf.append(elem);
-            }
+        for (E elem : this) {
+            buf.append(prefix);
+            prefix = ", ";
+            buf.append(elem);
         }
         buf.append(")");
         return buf.toString();
@@ -498,9 +433,9 @@ public class DSet<E extends DSet.Entry>
     public void writeObject (ObjectOutputStream out)
         throws IOException
     {
-        out.writeInt(_size);
-        for (int ii = 0; ii < _size; ii++) {
-            out.writeObject(_entries[ii]);
+        out.writeLength(_size);
+        for (E elem : this) {
+            out.writeObject(elem);
         }
     }
 
@@ -508,22 +443,292 @@ public class DSet<E extends DSet.Entry>
     public void readObject (ObjectInputStream in)
         throws IOException, ClassNotFoundException
     {
-        _size = in.readInt();
-        // ensure our capacity is a power of 2 (for consistency)
-        int capacity = INITIAL_CAPACITY;
-        while (capacity < _size) {
-            capacity <<= 1;
-        }
-        @SuppressWarnings("unchecked") E[] entries = (E[])new Entry[capacity];
-        _entries = entries;
+        _size = in.readLength();
+        @SuppressWarnings("unchecked") E[] entries = (E[])new Entry[_size];
         for (int ii = 0; ii < _size; ii++) {
             @SuppressWarnings("unchecked") E entry = (E)in.readObject();
-            _entries[ii] = entry;
+            entries[ii] = entry;
         }
+        // our entries were written in order, so we can build a balanced tree of them directly
+        _root = build(entries, 0, _size);
+        _modCount++;
     }
 
-    /** The entries of the set (in a sparse array). */
-    @SuppressWarnings("unchecked") protected E[] _entries = (E[])new Entry[INITIAL_CAPACITY];
+    /**
+     * Returns the supplied node, if it is ours to modify, otherwise a copy of it that is.
+     */
+    protected Node<E> edit (Node<E> node)
+    {
+        return (node.owner == _owner) ? node : new Node<E>(node, _owner);
+    }
+
+    /**
+     * Inserts the supplied entry, which must not already be present, into the supplied subtree.
+     *
+     * @return the root of the updated subtree.
+     */
+    protected Node<E> insert (Node<E> node, E elem)
+    {
+        if (node == null) {
+            return new Node<E>(elem, _owner);
+        }
+        node = edit(node);
+        if (compare(elem.getKey(), node.entry.getKey()) < 0) {
+            node.left = insert(node.left, elem);
+        } else {
+            node.right = insert(node.right, elem);
+        }
+        return balance(node);
+    }
+
+    /**
+     * Replaces the entry in the supplied subtree that has the same key as the supplied entry,
+     * which must be present.
+     *
+     * @return the root of the updated subtree.
+     */
+    protected Node<E> replace (Node<E> node, E elem)
+    {
+        node = edit(node);
+        int cmp = compare(elem.getKey(), node.entry.getKey());
+        if (cmp < 0) {
+            node.left = replace(node.left, elem);
+        } else if (cmp > 0) {
+            node.right = replace(node.right, elem);
+        } else {
+            node.entry = elem;
+        }
+        return node;
+    }
+
+    /**
+     * Deletes the entry with the supplied key, which must be present, from the supplied subtree.
+     *
+     * @return the root of the updated subtree.
+     */
+    protected Node<E> delete (Node<E> node, Comparable<?> key)
+    {
+        node = edit(node);
+        int cmp = compare(key, node.entry.getKey());
+        if (cmp < 0) {
+            node.left = delete(node.left, key);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, key);
+        } else if (node.left == null) {
+            return node.right;
+        } else if (node.right == null) {
+            return node.left;
+        } else {
+            // take the place of the least entry in our right subtree
+            Node<E> least = node.right;
+            while (least.left != null) {
+                least = least.left;
+            }
+            node.entry = least.entry;
+            node.right = delete(node.right, least.entry.getKey());
+        }
+        return balance(node);
+    }
+
+    /**
+     * Restores the balance of the supplied node (which must be ours to modify), whose subtrees
+     * differ in height by at most two, and updates its height.
+     *
+     * @return the node that takes the supplied node's place.
+     */
+    protected Node<E> balance (Node<E> node)
+    {
+        int diff = height(node.left) - height(node.right);
+        if (diff > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(edit(node.left));
+            }
+            return rotateRight(node);
+        } else if (diff < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(edit(node.right));
+            }
+            return rotateLeft(node);
+        }
+        node.updateHeight();
+        return node;
+    }
+
+    /**
+     * Rotates the supplied node (which must be ours to modify) down to the left.
+     */
+    protected Node<E> rotateLeft (Node<E> node)
+    {
+        Node<E> right = edit(node.right);
+        node.right = right.left;
+        right.left = node;
+        node.updateHeight();
+        right.updateHeight();
+        return right;
+    }
+
+    /**
+     * Rotates the supplied node (which must be ours to modify) down to the right.
+     */
+    protected Node<E> rotateRight (Node<E> node)
+    {
+        Node<E> left = edit(node.left);
+        node.left = left.right;
+        left.right = node;
+        node.updateHeight();
+        left.updateHeight();
+        return left;
+    }
+
+    /**
+     * Builds a balanced tree of the supplied sorted entries, from <code>start</code> (inclusive)
+     * to <code>end</code> (exclusive).
+     */
+    protected Node<E> build (E[] entries, int start, int end)
+    {
+        if (start >= end) {
+            return null;
+        }
+        int mid = (start + end) >>> 1;
+        Node<E> node = new Node<E>(entries[mid], _owner);
+        node.left = build(entries, start, mid);
+        node.right = build(entries, mid+1, end);
+        node.updateHeight();
+        return node;
+    }
+
+    /**
+     * Returns the height of the supplied subtree.
+     */
+    protected static int height (Node<?> node)
+    {
+        return (node == null) ? 0 : node.height;
+    }
+
+    /** A node in our tree of entries. */
+    protected static class Node<E>
+    {
+        /** The entry at this node. */
+        public E entry;
+
+        /** The subtrees of entries less than and greater than ours. */
+        public Node<E> left, right;
+
+        /** The height of the subtree rooted at this node. */
+        public int height = 1;
+
+        /** The set that may modify this node in place, or an object that stands in for no set. */
+        public final Object owner;
+
+        public Node (E entry, Object owner)
+        {
+            this.entry = entry;
+            this.owner = owner;
+        }
+
+        public Node (Node<E> other, Object owner)
+        {
+            this(other.entry, owner);
+            left = other.left;
+            right = other.right;
+            height = other.height;
+        }
+
+        public void updateHeight ()
+        {
+            height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+
+    /** Iterates over our entries in order. */
+    protected class EntryIterator
+        implements Iterator<E>
+    {
+        public EntryIterator ()
+        {
+            @SuppressWarnings("unchecked") Node<E>[] stack = new Node[height(_root)];
+            _stack = stack;
+            push(_root);
+        }
+
+        // from interface Iterator<E>
+        public boolean hasNext ()
+        {
+            checkComodification();
+            return (_depth > 0);
+        }
+
+        // from interface Iterator<E>
+        public E next ()
+        {
+            checkComodification();
+            if (_depth == 0) {
+                throw new NoSuchElementException();
+            }
+            Node<E> node = _stack[--_depth];
+            push(node.right);
+            _last = node.entry.getKey();
+            return node.entry;
+        }
+
+        // from interface Iterator<E>
+        public void remove ()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        protected void push (Node<E> node)
+        {
+            for (; node != null; node = node.left) {
+                _stack[_depth++] = node;
+            }
+        }
+
+        /**
+         * Replaces our stack with the path to the entries after the supplied key (or all of them,
+         * if it is null) in the current tree.
+         */
+        protected void seek (Comparable<?> key)
+        {
+            _depth = 0;
+            if (key == null) {
+                push(_root);
+                return;
+            }
+            for (Node<E> node = _root; node != null; ) {
+                if (compare(key, node.entry.getKey()) < 0) {
+                    _stack[_depth++] = node;
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        protected void checkComodification ()
+        {
+            if (_modCount != _expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            // an update changes no keys, but may have copied the nodes that we're holding onto
+            if (_updateCount != _expectedUpdateCount) {
+                _expectedUpdateCount = _updateCount;
+                seek(_last);
+            }
+        }
+
+        /** The nodes whose entries (and right subtrees) we have yet to visit. */
+        protected Node<E>[] _stack;
+        protected int _depth;
+        protected int _expectedModCount = _modCount;
+
+        /** The key of the last entry we returned, or null. */
+        protected Comparable<?> _last;
+        protected int _expectedUpdateCount = _updateCount;
+    }
+
+    /** The root of our tree of entries, or null. */
+    protected transient Node<E> _root;
 
     /** The number of entries in this set. */
     protected int _size;
@@ -531,8 +736,16 @@ public class DSet<E extends DSet.Entry>
     /** Used to check for concurrent modification. */
     protected transient int _modCount;
 
-    /** The default capacity of a set instance. */
-    protected static final int INITIAL_CAPACITY = 2;
+    /** Counts the entries updated in place, which iterators tolerate (unlike other changes). */
+    protected transient int _updateCount;
+
+    /** The owner of the nodes of our tree that we may modify in place (this set, initially, but
+     * a set that has been cloned can modify none of the nodes that it had). */
+    protected transient Object _owner = this;
+
+    /** The default capacity of a set instance.
+     * @deprecated sets no longer keep their entries in an array that needs sizing. */
+    @Deprecated protected static final int INITIAL_CAPACITY = 2;
 
     /** Used for lookups and to keep the set contents sorted on insertions. */
     protected static Comparator<Entry> ENTRY_COMP = new Comparator<Entry>() {
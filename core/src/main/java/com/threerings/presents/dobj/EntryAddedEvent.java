@@ -85,8 +85,9 @@ public class EntryAddedEvent<T extends DSet.Entry> extends EntryEvent<T>
     public boolean applyToObject (DObject target)
         throws ObjectAccessException
     {
+        DSet<T> set = getSet(target);
         if (!_alreadyApplied) {
-            if (!target.getSet(_name).add(_entry)) {
+            if (!set.add(_entry)) {
                 return false; // DSet will have already complained
             }
         }
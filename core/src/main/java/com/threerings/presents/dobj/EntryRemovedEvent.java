@@ -85,8 +85,8 @@ public class EntryRemovedEvent<T extends DSet.Entry> extends EntryEvent<T>
     public boolean applyToObject (DObject target)
         throws ObjectAccessException
     {
+        DSet<T> set = getSet(target);
         if (!alreadyApplied()) {
-            DSet<T> set = target.getSet(_name);
             // remove, fetch the previous value for interested callers
             _oldEntry = set.removeKey(_key);
             if (_oldEntry == null) {
@@ -87,8 +87,8 @@ public class EntryUpdatedEvent<T extends DSet.Entry> extends EntryEvent<T>
         throws ObjectAccessException
     {
         // only apply the change if we haven't already
+        DSet<T> set = getSet(target);
         if (!alreadyApplied()) {
-            DSet<T> set = target.getSet(_name);
             // fetch the previous value for interested callers
             _oldEntry = set.update(_entry);
             if (_oldEntry == null) {
@@ -21,11 +21,22 @@
 
 package com.threerings.presents.dobj;
 
+import java.io.IOException;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
 /**
  * A common parent class for all events that are associated with a name
  * (in some cases a field name, in other cases just an identifying name).
+ *
+ * <p> Events that pertain to a field of their target object note the index of that field when
+ * they are applied, and on streams that are {@link ObjectOutputStream#setFieldIndexing field
+ * indexing}, identify the field by that index rather than by name. The reader must then {@link
+ * #resolveField resolve} the index against the target object before the event is applied.
  */
 public abstract class NamedEvent extends DEvent
+    implements Cloneable
 {
     /**
      * Constructs a new named event for the specified target object with
@@ -48,6 +59,76 @@ public abstract class NamedEvent extends DEvent
         return _name;
     }
 
+    /**
+     * Returns true if this event was read from a field indexing stream with its field identified
+     * by index, in which case it must be {@link #resolveField resolved} before it is applied.
+     */
+    public boolean isIndexed ()
+    {
+        return _name == null && _fieldIndex >= 0;
+    }
+
+    /**
+     * Resolves the field index with which this event was streamed to the corresponding field of
+     * the supplied target.
+     *
+     * @param indices maps the index of each field of the sender's class to the index of the same
+     * field in the target's class (or -1 if it has no such field), or null if the two classes
+     * index their fields identically.
+     *
+     * @return true if the field was resolved, false if the target has no corresponding field.
+     */
+    public boolean resolveField (DObject target, int[] indices)
+    {
+        int index = _fieldIndex;
+        if (indices != null) {
+            index = (index < indices.length) ? indices[index] : -1;
+        }
+        Accessor acc = target.getAccessor(index);
+        if (acc == null) {
+            return false;
+        }
+        _fieldIndex = index;
+        _name = acc.name;
+        return true;
+    }
+
+    /**
+     * Writes our custom streamable fields.
+     */
+    public void writeObject (ObjectOutputStream out)
+        throws IOException
+    {
+        // the field's index (plus one) fits in a byte for all but the most outlandish of objects,
+        // and is written in place of the name; zero indicates that the name follows as usual
+        boolean indexed = out.isFieldIndexing() &&
+            _fieldIndex >= 0 && _fieldIndex < MAX_INDEXED_FIELDS;
+        if (out.isFieldIndexing()) {
+            out.writeByte(indexed ? _fieldIndex + 1 : 0);
+        }
+        NamedEvent streamed = getStreamedForm(indexed);
+        if (streamed == this) {
+            out.defaultWriteObject();
+        } else {
+            out.defaultWriteObject(streamed);
+        }
+    }
+
+    /**
+     * Reads our custom streamable fields.
+     */
+    public void readObject (ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        if (!in.isFieldIndexing()) {
+            in.defaultReadObject();
+            return;
+        }
+        int code = in.readUnsignedByte();
+        in.defaultReadObject();
+        _fieldIndex = code - 1;
+    }
+
     @Override
     protected void toString (StringBuilder buf)
     {
@@ -55,5 +136,61 @@ public abstract class NamedEvent extends DEvent
         buf.append(", name=").append(_name);
     }
 
+    /**
+     * Returns the form of this event whose fields are streamed, which is this event itself unless
+     * they must first be modified (in a copy, as the event may be streamed by several threads at
+     * once).
+     *
+     * @param indexed whether the event's field is being streamed by index, in which case the name
+     * is omitted.
+     */
+    protected NamedEvent getStreamedForm (boolean indexed)
+    {
+        if (!indexed) {
+            return this;
+        }
+        NamedEvent bare = copy();
+        bare._name = null;
+        return bare;
+    }
+
+    /**
+     * Returns a shallow copy of this event.
+     */
+    protected NamedEvent copy ()
+    {
+        try {
+            return (NamedEvent)clone();
+        } catch (CloneNotSupportedException cnse) {
+            throw new AssertionError(cnse);
+        }
+    }
+
+    /**
+     * Returns the accessor for the field of the supplied target to which this event pertains,
+     * noting its index for streaming.
+     *
+     * @exception IllegalArgumentException if the target has no such field.
+     */
+    protected Accessor getAccessor (DObject target)
+    {
+        Accessor acc = target.getAccessor(_fieldIndex);
+        if (acc == null || !acc.name.equals(_name)) {
+            if (_name == null) {
+                throw new IllegalArgumentException("Unresolved field index " + _fieldIndex);
+            }
+            acc = target.getAccessor(_name);
+            _fieldIndex = target.getFieldIndex(_name);
+        }
+        return acc;
+    }
+
     protected String _name;
+
+    /** The index of the field to which this event pertains, if it has been noted, or the index
+     * with which it was streamed, if that has yet to be resolved; otherwise -1. */
+    protected transient int _fieldIndex = -1;
+
+    /** Fields with indices at or beyond this are always streamed by name. */
+    protected static final int MAX_INDEXED_FIELDS = 255;
 }
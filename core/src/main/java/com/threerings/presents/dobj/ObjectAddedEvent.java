@@ -62,8 +62,8 @@ public class ObjectAddedEvent extends NamedEvent
     public boolean applyToObject (DObject target)
         throws ObjectAccessException
     {
+        OidList list = (OidList)getAccessor(target).get(target);
         if (!_alreadyApplied) {
-            OidList list = (OidList)target.getAttribute(_name);
             list.add(_oid);
         }
         return true;
@@ -138,6 +138,7 @@ public class AESAuthRequest extends AuthRequest
                 SecureUtil.getAESCipher(Cipher.ENCRYPT_MODE, _key).doFinal(byteOut.toByteArray());
             out.writeInt(encrypted.length);
             out.write(encrypted);
+            writeStreamOptions(out);
         } catch (GeneralSecurityException gse) {
             IOException ioe = new IOException("Failed to encrypt credentials");
             ioe.initCause(gse);
@@ -155,6 +156,7 @@ public class AESAuthRequest extends AuthRequest
         in.defaultReadObject();
         _contents = new byte[in.readInt()];
         in.read(_contents);
+        readStreamOptions(in);
     }
 
     /** Our encryption key. */
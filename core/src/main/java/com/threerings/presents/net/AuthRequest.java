@@ -25,7 +25,11 @@ import java.util.TimeZone;
 
 import java.io.IOException;
 
+import com.threerings.io.ClassDictionary;
+import com.threerings.io.CompressionDictionary;
+import com.threerings.io.FramingOutputStream;
 import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
 
 /**
  * Used to authenticate with the server.
@@ -83,6 +87,133 @@ public class AuthRequest extends UpstreamMessage
         return _bootGroups;
     }
 
+    /**
+     * Notes the version of the {@link ClassDictionary} with which this client can read the
+     * classes it is sent, or zero if it has none.
+     */
+    public void setClassDictionary (int version)
+    {
+        _classDictionary = version;
+    }
+
+    /**
+     * Returns the version of the {@link ClassDictionary} with which this client can read the
+     * classes it is sent, or zero if it has none.
+     */
+    public int getClassDictionary ()
+    {
+        return _classDictionary;
+    }
+
+    /**
+     * Notes whether this client would like to be sent integers and lengths in their compact
+     * encoding, once authenticated.
+     *
+     * @see ObjectOutputStream#setCompact
+     */
+    public void setCompactEncoding (boolean compact)
+    {
+        _compactEncoding = compact;
+    }
+
+    /**
+     * Returns true if this client would like to be sent integers and lengths in their compact
+     * encoding, once authenticated.
+     */
+    public boolean getCompactEncoding ()
+    {
+        return _compactEncoding;
+    }
+
+    /**
+     * Notes whether this client would like the strings it is sent to be mapped to codes as the
+     * server learns which are repeated, once authenticated.
+     *
+     * @see ObjectOutputStream#setAdaptiveInterning
+     */
+    public void setAdaptiveInterning (boolean adaptive)
+    {
+        _adaptiveInterning = adaptive;
+    }
+
+    /**
+     * Returns true if this client would like the strings it is sent to be mapped to codes as the
+     * server learns which are repeated, once authenticated.
+     */
+    public boolean getAdaptiveInterning ()
+    {
+        return _adaptiveInterning;
+    }
+
+    /**
+     * Notes whether this client would like the fields of the distributed objects it subscribes to
+     * to be identified by index rather than by name in the events it is sent, once authenticated.
+     *
+     * @see ObjectOutputStream#setFieldIndexing
+     */
+    public void setFieldIndexing (boolean indexing)
+    {
+        _fieldIndexing = indexing;
+    }
+
+    /**
+     * Returns true if this client would like the fields of its distributed objects to be
+     * identified by index, once authenticated.
+     */
+    public boolean getFieldIndexing ()
+    {
+        return _fieldIndexing;
+    }
+
+    /**
+     * Notes whether this client can reassemble messages that are sent to it in several chunk
+     * frames, once authenticated.
+     *
+     * @see FramingOutputStream#CHUNK_FLAG
+     */
+    public void setChunking (boolean chunking)
+    {
+        _chunking = chunking;
+    }
+
+    /**
+     * Returns true if this client can reassemble messages that are sent to it in chunks, once
+     * authenticated.
+     */
+    public boolean getChunking ()
+    {
+        return _chunking;
+    }
+
+    /**
+     * Notes whether this client would like the frames it is sent to be compressed, once
+     * authenticated, and the version of the {@link CompressionDictionary} with which it can prime
+     * their decompression (or zero if it has none).
+     */
+    public void setCompression (boolean compression, int dictionary)
+    {
+        _compression = compression;
+        _compressionDictionary = dictionary;
+    }
+
+    /**
+     * Returns true if this client would like the frames it is sent to be compressed, once
+     * authenticated.
+     */
+    public boolean getCompression ()
+    {
+        return _compression;
+    }
+
+    /**
+     * Returns the version of the {@link CompressionDictionary} with which this client can prime
+     * the decompression of its frames, or zero if it has none.
+     */
+    public int getCompressionDictionary ()
+    {
+        return _compressionDictionary;
+    }
+
     /**
      * Returns a shared secret key used for sending encrypted data to the client.
      */
@@ -98,6 +229,16 @@ public class AuthRequest extends UpstreamMessage
             ", version=" + _version + "]";
     }
 
+    /**
+     * Writes our custom streamable fields.
+     */
+    public void writeObject (ObjectOutputStream out)
+        throws IOException
+    {
+        out.defaultWriteObject();
+        writeStreamOptions(out);
+    }
+
     /**
      * Reads our custom streamable fields.
      */
@@ -106,6 +247,7 @@ public class AuthRequest extends UpstreamMessage
     {
         try {
             in.defaultReadObject();
+            readStreamOptions(in);
         } catch (IOException ioe) {
             // if we fail here because the client is old, leave ourselves with a partially
             // initialized set of credentials, which the server will generally cope with by telling
@@ -113,6 +255,50 @@ public class AuthRequest extends UpstreamMessage
         }
     }
 
+    /**
+     * Writes our class dictionary version and compact encoding, compression, adaptive interning,
+     * field indexing and chunking preferences, which follow everything else in the request so that
+     * servers that predate them can ignore them.
+     */
+    protected void writeStreamOptions (ObjectOutputStream out)
+        throws IOException
+    {
+        out.writeInt(_classDictionary);
+        out.writeBoolean(_compactEncoding);
+        out.writeBoolean(_compression);
+        out.writeInt(_compressionDictionary);
+        out.writeBoolean(_adaptiveInterning);
+        out.writeBoolean(_fieldIndexing);
+        out.writeBoolean(_chunking);
+    }
+
+    /**
+     * Reads whichever of our stream options the client sent.
+     */
+    protected void readStreamOptions (ObjectInputStream in)
+        throws IOException
+    {
+        if (in.available() > 0) {
+            _classDictionary = in.readInt();
+        }
+        if (in.available() > 0) {
+            _compactEncoding = in.readBoolean();
+        }
+        if (in.available() > 0) {
+            _compression = in.readBoolean();
+            _compressionDictionary = in.readInt();
+        }
+        if (in.available() > 0) {
+            _adaptiveInterning = in.readBoolean();
+        }
+        if (in.available() > 0) {
+            _fieldIndexing = in.readBoolean();
+        }
+        if (in.available() > 0) {
+            _chunking = in.readBoolean();
+        }
+    }
+
     /** The credentials associated with this auth request. */
     protected Credentials _creds;
 
@@ -124,4 +310,29 @@ public class AuthRequest extends UpstreamMessage
 
     /** The set of bootstrap service groups this client is interested in. */
     protected String[] _bootGroups;
+
+    /** The version of the class dictionary used by the client, or zero. This is streamed by hand,
+     * after any data added by subclasses. */
+    protected transient int _classDictionary;
+
+    /** Whether the client would like compact encoding. This is streamed by hand, after our class
+     * dictionary version. */
+    protected transient boolean _compactEncoding;
+
+    /** Whether the client would like compression, and the version of its compression dictionary.
+     * These are streamed by hand, after our compact encoding preference. */
+    protected transient boolean _compression;
+    protected transient int _compressionDictionary;
+
+    /** Whether the client would like adaptive interning. This is streamed by hand, after our
+     * compression preference. */
+    protected transient boolean _adaptiveInterning;
+
+    /** Whether the client would like field indexing. This is streamed by hand, after our adaptive
+     * interning preference. */
+    protected transient boolean _fieldIndexing;
+
+    /** Whether the client can reassemble chunked messages. This is streamed by hand, after our
+     * field indexing preference. */
+    protected transient boolean _chunking;
 }
@@ -21,6 +21,13 @@
 
 package com.threerings.presents.net;
 
+import java.io.IOException;
+
+import com.threerings.io.CompressionDictionary;
+import com.threerings.io.FramingOutputStream;
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
 /**
  * The auth response communicates authentication success or failure as
  * well as associated information via a distribted object transmitted
@@ -66,6 +73,153 @@ public class AuthResponse extends DownstreamMessage
         _data = data;
     }
 
+    /**
+     * Notes whether the server will send everything that follows this response with integers and
+     * lengths in their compact encoding.
+     *
+     * @see ObjectOutputStream#setCompact
+     */
+    public void setCompactEncoding (boolean compact)
+    {
+        _compactEncoding = compact;
+    }
+
+    /**
+     * Returns true if the server will send everything that follows this response with integers
+     * and lengths in their compact encoding.
+     */
+    public boolean getCompactEncoding ()
+    {
+        return _compactEncoding;
+    }
+
+    /**
+     * Notes whether the server will map the strings in everything that follows this response to
+     * codes as it learns which are repeated.
+     *
+     * @see ObjectOutputStream#setAdaptiveInterning
+     */
+    public void setAdaptiveInterning (boolean adaptive)
+    {
+        _adaptiveInterning = adaptive;
+    }
+
+    /**
+     * Returns true if the server will map the strings in everything that follows this response to
+     * codes as it learns which are repeated.
+     */
+    public boolean getAdaptiveInterning ()
+    {
+        return _adaptiveInterning;
+    }
+
+    /**
+     * Notes whether the server will identify distributed object fields by index in the events
+     * that follow this response.
+     *
+     * @see ObjectOutputStream#setFieldIndexing
+     */
+    public void setFieldIndexing (boolean indexing)
+    {
+        _fieldIndexing = indexing;
+    }
+
+    /**
+     * Returns true if the server will identify distributed object fields by index in the events
+     * that follow this response.
+     */
+    public boolean getFieldIndexing ()
+    {
+        return _fieldIndexing;
+    }
+
+    /**
+     * Notes whether the server may send the messages that follow this response in several chunk
+     * frames, if they are large.
+     *
+     * @see FramingOutputStream#CHUNK_FLAG
+     */
+    public void setChunking (boolean chunking)
+    {
+        _chunking = chunking;
+    }
+
+    /**
+     * Returns true if the server may send the messages that follow this response in chunks.
+     */
+    public boolean getChunking ()
+    {
+        return _chunking;
+    }
+
+    /**
+     * Notes whether the server will compress the frames that follow this response, and the
+     * version of the {@link CompressionDictionary} with which it will prime their compression (or
+     * zero if it uses none).
+     */
+    public void setCompression (boolean compression, int dictionary)
+    {
+        _compression = compression;
+        _compressionDictionary = dictionary;
+    }
+
+    /**
+     * Returns true if the server will compress the frames that follow this response.
+     */
+    public boolean getCompression ()
+    {
+        return _compression;
+    }
+
+    /**
+     * Returns the version of the {@link CompressionDictionary} with which the server will prime
+     * the compression of the frames that follow this response, or zero if it uses none.
+     */
+    public int getCompressionDictionary ()
+    {
+        return _compressionDictionary;
+    }
+
+    /**
+     * Writes our custom streamable fields.
+     */
+    public void writeObject (ObjectOutputStream out)
+        throws IOException
+    {
+        out.defaultWriteObject();
+        // our stream options follow everything else so that clients that predate them can ignore
+        // them, and are only sent to clients that asked for at least one in the first place
+        int options = (_compactEncoding ? COMPACT_ENCODING : 0) | (_compression ? COMPRESSION : 0) |
+            (_adaptiveInterning ? ADAPTIVE_INTERNING : 0) | (_fieldIndexing ? FIELD_INDEXING : 0) |
+            (_chunking ? CHUNKING : 0);
+        if (options != 0) {
+            out.writeByte(options);
+        }
+        if (_compression) {
+            out.writeInt(_compressionDictionary);
+        }
+    }
+
+    /**
+     * Reads our custom streamable fields.
+     */
+    public void readObject (ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        if (in.available() > 0) {
+            int options = in.readByte();
+            _compactEncoding = (options & COMPACT_ENCODING) != 0;
+            _adaptiveInterning = (options & ADAPTIVE_INTERNING) != 0;
+            _fieldIndexing = (options & FIELD_INDEXING) != 0;
+            _chunking = (options & CHUNKING) != 0;
+            if ((options & COMPRESSION) != 0) {
+                _compression = true;
+                _compressionDictionary = in.readInt();
+            }
+        }
+    }
+
     @Override
     public String toString ()
     {
@@ -73,4 +227,32 @@ public class AuthResponse extends DownstreamMessage
     }
 
     protected AuthResponseData _data;
+
+    /** Whether everything after this response is compactly encoded. This is streamed by hand,
+     * after any data added by subclasses. */
+    protected transient boolean _compactEncoding;
+
+    /** Whether the frames after this response are compressed, and the version of the dictionary
+     * used to do so. These are streamed by hand, along with our compact encoding flag. */
+    protected transient boolean _compression;
+    protected transient int _compressionDictionary;
+
+    /** Whether everything after this response is adaptively interned. This is streamed by hand,
+     * along with our compact encoding flag. */
+    protected transient boolean _adaptiveInterning;
+
+    /** Whether events after this response identify fields by index. This is streamed by hand,
+     * along with our compact encoding flag. */
+    protected transient boolean _fieldIndexing;
+
+    /** Whether messages after this response may be sent in chunks. This is streamed by hand,
+     * along with our compact encoding flag. */
+    protected transient boolean _chunking;
+
+    /** Stream option flags. */
+    protected static final int COMPACT_ENCODING = 1 << 0;
+    protected static final int COMPRESSION = 1 << 1;
+    protected static final int ADAPTIVE_INTERNING = 1 << 2;
+    protected static final int FIELD_INDEXING = 1 << 3;
+    protected static final int CHUNKING = 1 << 4;
 }
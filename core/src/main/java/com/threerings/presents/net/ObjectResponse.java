@@ -21,6 +21,11 @@
 
 package com.threerings.presents.net;
 
+import java.io.IOException;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
 import com.threerings.presents.dobj.DObject;
 
 /**
@@ -52,6 +57,56 @@ public class ObjectResponse<T extends DObject>
         return _dobj;
     }
 
+    /**
+     * Returns the names of the fields of the object's class on the server, in the order of their
+     * indices, if this response was read from a field indexing stream and is the first on that
+     * stream to deliver an object of its class, otherwise null.
+     */
+    public String[] getFieldNames ()
+    {
+        return _fieldNames;
+    }
+
+    /**
+     * Writes our custom streamable fields.
+     */
+    public void writeObject (ObjectOutputStream out)
+        throws IOException
+    {
+        out.defaultWriteObject();
+        // a field indexing stream describes the fields of each class of object it delivers (the
+        // first time it does so), so that the indices in the events that follow can be mapped to
+        // the client's fields
+        if (out.isFieldIndexing()) {
+            boolean describe = out.noteDescribed(_dobj.getClass());
+            out.writeBoolean(describe);
+            if (describe) {
+                String[] names = _dobj.getFieldNames();
+                out.writeLength(names.length);
+                for (String name : names) {
+                    out.writeString(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads our custom streamable fields.
+     */
+    public void readObject (ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        if (in.isFieldIndexing()) {
+            if (in.readBoolean()) {
+                _fieldNames = new String[in.readLength()];
+                for (int ii = 0; ii < _fieldNames.length; ii++) {
+                    _fieldNames[ii] = in.readString();
+                }
+            }
+        }
+    }
+
     @Override
     public String toString ()
     {
@@ -60,4 +115,7 @@ public class ObjectResponse<T extends DObject>
 
     /** The object which is associated with this response. */
     protected T _dobj;
+
+    /** The field names of our object's class on the server, if streamed. */
+    protected transient String[] _fieldNames;
 }
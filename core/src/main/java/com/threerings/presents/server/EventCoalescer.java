@@ -0,0 +1,147 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.presents.server;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.dobj.CoalescedListener;
+import com.threerings.presents.dobj.DEvent;
+import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.ElementUpdatedEvent;
+import com.threerings.presents.dobj.NamedEvent;
+
+/**
+ * Holds back the attribute and element changes dispatched on an event loop from an object's
+ * subscribers (and its {@link CoalescedListener}s) for as long as the loop goes on dispatching
+ * such changes, so that a change superseded by a later change to the same field (or element) of
+ * the same object need never be delivered. Changes are delivered in the order in which they were
+ * dispatched, and are flushed before the loop processes anything else, so nothing is reordered.
+ */
+public class EventCoalescer
+{
+    /**
+     * Returns true if the supplied unit is a change that may be held back.
+     */
+    public static boolean canCoalesce (Object unit)
+    {
+        return (unit instanceof AttributeChangedEvent) || (unit instanceof ElementUpdatedEvent);
+    }
+
+    /**
+     * Holds back the supplied change, which has been applied to its target and dispatched to the
+     * target's other listeners, dropping any pending change that it supersedes.
+     *
+     * @return true if a pending change was superseded.
+     */
+    public boolean defer (DObject target, DEvent event)
+    {
+        FieldKey key = new FieldKey(target.getOid(), ((NamedEvent)event).getName());
+        Integer pidx = _latest.put(key, _events.size());
+        boolean superseded = (pidx != null && supersedes(event, _events.get(pidx)));
+        if (superseded) {
+            _events.set(pidx, null);
+        }
+        _targets.add(target);
+        _events.add(event);
+
+        // don't hold back an unbounded number of changes
+        if (_events.size() >= MAX_PENDING) {
+            flush();
+        }
+        return superseded;
+    }
+
+    /**
+     * Delivers all of the changes that we're holding back that have not been superseded.
+     */
+    public void flush ()
+    {
+        for (int ii = 0, ll = _events.size(); ii < ll; ii++) {
+            DEvent event = _events.get(ii);
+            if (event != null) {
+                DObject target = _targets.get(ii);
+                target.notifyListeners(event, true);
+                target.notifyProxies(event);
+            }
+        }
+        _targets.clear();
+        _events.clear();
+        _latest.clear();
+    }
+
+    /**
+     * Returns true if the first change makes the second, pending change to the same field
+     * redundant: if it is the same sort of change, to the same element, sent the same way.
+     */
+    protected static boolean supersedes (DEvent event, DEvent pending)
+    {
+        if (event.getClass() != pending.getClass() ||
+                !Objects.equal(event.getTransport(), pending.getTransport())) {
+            return false;
+        }
+        return !(event instanceof ElementUpdatedEvent) ||
+            ((ElementUpdatedEvent)event).getIndex() == ((ElementUpdatedEvent)pending).getIndex();
+    }
+
+    /** Identifies a field of a particular object. */
+    protected static class FieldKey
+    {
+        public FieldKey (int oid, String name)
+        {
+            _oid = oid;
+            _name = name;
+        }
+
+        @Override public boolean equals (Object other)
+        {
+            FieldKey okey = (FieldKey)other;
+            return _oid == okey._oid && _name.equals(okey._name);
+        }
+
+        @Override public int hashCode ()
+        {
+            return _oid ^ _name.hashCode();
+        }
+
+        protected int _oid;
+        protected String _name;
+    }
+
+    /** The targets of our pending changes. */
+    protected List<DObject> _targets = Lists.newArrayList();
+
+    /** Our pending changes, in order of dispatch, with superseded changes nulled out. */
+    protected List<DEvent> _events = Lists.newArrayList();
+
+    /** The index in {@link #_events} of the latest change to each field. */
+    protected Map<FieldKey, Integer> _latest = Maps.newHashMap();
+
+    /** The most changes we'll hold back before delivering them regardless. */
+    protected static final int MAX_PENDING = 256;
+}
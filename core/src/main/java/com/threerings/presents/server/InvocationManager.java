@@ -34,6 +34,7 @@ import com.google.common.collect.Multimap;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
+import com.samskivert.util.IntIntMap;
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
 import com.samskivert.util.LRUHashMap;
@@ -181,7 +182,7 @@ public class InvocationManager
         }
 
         // register the dispatcher
-        _dispatchers.put(invCode, new Dispatcher() {
+        putDispatcher(invCode, new Dispatcher() {
             public InvocationProvider getProvider () {
                 return provider;
             }
@@ -226,7 +227,9 @@ public class InvocationManager
             _bootlists.put(group, marsh);
         }
 
-        _recentRegServices.put(Integer.valueOf(invCode), marsh.getClass().getName());
+        synchronized (_dispatchers) {
+            _recentRegServices.put(Integer.valueOf(invCode), marsh.getClass().getName());
+        }
 
         log.debug("Registered service", "code", invCode, "marsh", marsh);
         return marsh;
@@ -277,14 +280,16 @@ public class InvocationManager
             null : _standaloneClient.getInvocationDirector());
 
         // register the dispatcher
-        _dispatchers.put(invCode, dispatcher);
+        putDispatcher(invCode, dispatcher);
 
         // if it's a bootstrap service, slap it in the list
         if (group != null) {
             _bootlists.put(group, marsh);
         }
 
-        _recentRegServices.put(Integer.valueOf(invCode), marsh.getClass().getName());
+        synchronized (_dispatchers) {
+            _recentRegServices.put(Integer.valueOf(invCode), marsh.getClass().getName());
+        }
 
         log.debug("Registered service", "code", invCode, "marsh", marsh);
         return marsh;
@@ -303,7 +308,12 @@ public class InvocationManager
             return;
         }
 
-        if (_dispatchers.remove(marsh.getInvocationCode()) == null) {
+        Dispatcher disp;
+        synchronized (_dispatchers) {
+            disp = _dispatchers.remove(marsh.getInvocationCode());
+            _groups.removeOrElse(marsh.getInvocationCode(), 0);
+        }
+        if (disp == null) {
             log.warning("Requested to remove unregistered marshaller?", "marsh", marsh,
                         new Exception());
         }
@@ -330,7 +340,10 @@ public class InvocationManager
      */
     public Class<?> getDispatcherClass (int invCode)
     {
-        Object dispatcher = _dispatchers.get(invCode);
+        Object dispatcher;
+        synchronized (_dispatchers) {
+            dispatcher = _dispatchers.get(invCode);
+        }
         return (dispatcher == null) ? null : dispatcher.getClass();
     }
 
@@ -351,7 +364,8 @@ public class InvocationManager
      * appropriate invocation provider via the registered invocation dispatcher.
      */
     protected void dispatchRequest (
-        int clientOid, int invCode, int methodId, Object[] args, Transport transport)
+        final int clientOid, final int invCode, final int methodId, final Object[] args,
+        final Transport transport)
     {
         // make sure the client is still around
         ClientObject source = (ClientObject)_omgr.getObject(clientOid);
@@ -362,11 +376,29 @@ public class InvocationManager
         }
 
         // look up the dispatcher
-        Dispatcher disp = _dispatchers.get(invCode);
+        Dispatcher disp;
+        int group;
+        synchronized (_dispatchers) {
+            disp = _dispatchers.get(invCode);
+            group = _groups.getOrElse(invCode, 0);
+        }
         if (disp == null) {
+            String marsh;
+            synchronized (_dispatchers) {
+                marsh = _recentRegServices.get(Integer.valueOf(invCode));
+            }
             log.info("Received invocation request but dispatcher registration was already cleared",
-                     "code", invCode, "methId", methodId, "args", args,
-                     "marsh", _recentRegServices.get(Integer.valueOf(invCode)));
+                     "code", invCode, "methId", methodId, "args", args, "marsh", marsh);
+            return;
+        }
+
+        // if the dispatcher was registered in another affinity group, dispatch the request there
+        if (group > 0 && group != _omgr.getCurrentAffinityGroup()) {
+            _omgr.getRunQueue(group).postRunnable(new Runnable() {
+                public void run () {
+                    dispatchRequest(clientOid, invCode, methodId, args, transport);
+                }
+            });
             return;
         }
 
@@ -421,6 +453,20 @@ public class InvocationManager
         }
     }
 
+    /**
+     * Registers a dispatcher in the affinity group of the calling code.
+     */
+    protected void putDispatcher (int invCode, Dispatcher dispatcher)
+    {
+        int group = _omgr.getCurrentAffinityGroup();
+        synchronized (_dispatchers) {
+            _dispatchers.put(invCode, dispatcher);
+            if (group > 0) {
+                _groups.put(invCode, group);
+            }
+        }
+    }
+
     /**
      * Used to generate monotonically increasing provider ids.
      */
@@ -450,6 +496,9 @@ public class InvocationManager
     /** A table of invocation dispatchers each mapped by a unique code. */
     protected IntMap<Dispatcher> _dispatchers = IntMaps.newHashIntMap();
 
+    /** The affinity groups of dispatchers registered outside the main group, if any. */
+    protected IntIntMap _groups = new IntIntMap();
+
     /** Maps bootstrap group to lists of services to be provided to clients at boot time. */
     protected Multimap<String, InvocationMarshaller<?>> _bootlists = ArrayListMultimap.create();
 
@@ -26,16 +26,23 @@ import java.lang.reflect.Modifier;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 
 import com.samskivert.util.Histogram;
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
 import com.samskivert.util.Interval;
+import com.samskivert.util.LoopingThread;
 import com.samskivert.util.Queue;
+import com.samskivert.util.RunQueue;
+import com.samskivert.util.Runnables;
 import com.samskivert.util.StringUtil;
 import com.samskivert.util.Throttle;
 
@@ -65,6 +72,16 @@ import static com.threerings.presents.Log.log;
  * <p> The server object manager is meant to run on the main thread of the server application and
  * thus provides a method to be invoked by the application main thread which won't return until the
  * manager has been requested to shut down.
+ *
+ * <p> It may optionally be configured (via <code>presents.dobj.eventLoops</code>) to process events
+ * on several event loops, each with a thread of its own. Each loop owns a disjoint set of oids,
+ * those congruent to its index modulo the number of loops, and events are processed on the loop
+ * that owns their target. An object is registered on the loop of the code registering it unless
+ * an affinity group (which is to say, a loop) is specified, so a group of related objects, like a
+ * place and the objects created by its manager, can be kept together on one loop, away from the
+ * objects on other loops. The main loop, which is run by {@link #run}, is group zero. Code on one
+ * loop must not touch the objects on another except via events, which are routed to the loop that
+ * owns them, or via units posted with {@link #getRunQueue}.
  */
 @Singleton
 public class PresentsDObjectMgr
@@ -78,6 +95,10 @@ public class PresentsDObjectMgr
 
         /** The number of events dispatched during the period. */
         public int eventCount;
+
+        /** The number of changes that were superseded before delivery to subscribers during the
+         * period, if we coalesce events. */
+        public int coalescedCount;
     }
 
     /** Post instances of these if you know you're going to tie up the distributed object thread
@@ -93,19 +114,24 @@ public class PresentsDObjectMgr
      */
     @Inject public PresentsDObjectMgr (ReportManager repmgr)
     {
-        // create a dummy object to live as oid zero and use that for some internal event trickery
-        DObject dummy = new DObject();
-        dummy.setOid(DUMMY_OID);
-        _objects.put(DUMMY_OID, dummy);
+        // we start out with just the one event loop
+        _loops = new EventLoop[] { new EventLoop(0) };
 
         // register a couple of reports with the report manager
         repmgr.registerReporter(ReportManager.DEFAULT_TYPE, new ReportManager.Reporter() {
             public void appendReport (StringBuilder report, long now, long elapsed, boolean reset) {
                 report.append("* presents.PresentsDObjectMgr:\n");
                 Stats stats = getStats(reset);
-                int queueSize = _evqueue.size();
+                if (_loops.length > 1) {
+                    report.append("- Event loops: ").append(_loops.length).append("\n");
+                }
+                int queueSize = getQueueSize();
                 report.append("- Queue size: ").append(queueSize).append("\n");
                 report.append("- Max queue size: ").append(stats.maxQueueSize).append("\n");
+                if (_coalesceEvents) {
+                    report.append("- Changes coalesced: ").append(stats.coalescedCount);
+                    report.append("\n");
+                }
                 report.append("- Units executed: ").append(stats.eventCount);
                 if (elapsed != 0) {
                     report.append(" (").append(stats.eventCount/(elapsed/1000)).append("/s)\n");
@@ -118,10 +144,12 @@ public class PresentsDObjectMgr
             public void appendReport (StringBuilder report, long now, long elapsed, boolean reset) {
                 report.append("* presents.PresentsDObjectMgr:\n");
                 if (UNIT_PROF_ENABLED) {
-                    report.append("- Unit profiles: ").append(_profiles.size()).append("\n");
-                    for (Map.Entry<String, UnitProfile> entry : _profiles.entrySet()) {
-                        report.append("  ").append(entry.getKey());
-                        report.append(" ").append(entry.getValue()).append("\n");
+                    synchronized (_profiles) {
+                        report.append("- Unit profiles: ").append(_profiles.size()).append("\n");
+                        for (Map.Entry<String, UnitProfile> entry : _profiles.entrySet()) {
+                            report.append("  ").append(entry.getKey());
+                            report.append(" ").append(entry.getValue()).append("\n");
+                        }
                     }
                 } else {
                     report.append("- Unit profiles disabled.\n");
@@ -133,6 +161,107 @@ public class PresentsDObjectMgr
         registerEventHelpers();
     }
 
+    /**
+     * Configures the number of event loops on which we process events, including the main loop.
+     * This must be done before any objects are registered, which is to say when we are injected.
+     */
+    @Inject(optional=true)
+    public void setEventLoopCount (@Named("presents.dobj.eventLoops") int count)
+    {
+        if (_dobjThread != null || _loops[0].getObjectCount() > 1) {
+            throw new IllegalStateException("Event loops must be configured before use.");
+        }
+        EventLoop[] loops = new EventLoop[Math.max(count, 1)];
+        for (int ii = 0; ii < loops.length; ii++) {
+            loops[ii] = new EventLoop(ii);
+        }
+        _loops = loops;
+    }
+
+    /**
+     * Returns the number of event loops on which we process events.
+     */
+    public int getEventLoopCount ()
+    {
+        return _loops.length;
+    }
+
+    /**
+     * Picks the affinity group (the event loop) in which to register a new group of related
+     * objects, such as a place. Groups are handed out in turn from the loops other than the main
+     * loop, if there are any.
+     */
+    public int assignAffinityGroup ()
+    {
+        int count = _loops.length;
+        if (count == 1) {
+            return 0;
+        }
+        return 1 + (_nextGroup.getAndIncrement() & Integer.MAX_VALUE) % (count-1);
+    }
+
+    /**
+     * Returns the affinity group of the object with the specified oid, which is the index of the
+     * event loop on which its events are processed.
+     */
+    public int getAffinityGroup (int oid)
+    {
+        return getLoop(oid).getIndex();
+    }
+
+    /**
+     * Returns the affinity group of the calling code: that of the event loop on which it is
+     * running, or zero if it is not running on an event loop.
+     */
+    public int getCurrentAffinityGroup ()
+    {
+        return getCurrentLoop().getIndex();
+    }
+
+    /**
+     * Returns the run queue on which units may be posted to run on the event loop of the specified
+     * affinity group.
+     */
+    public RunQueue getRunQueue (int group)
+    {
+        // with but the one loop, that loop's queue is our own
+        return (_loops.length == 1) ? this : _loops[group];
+    }
+
+    /**
+     * Runs the supplied action immediately, on the calling thread, as if it were running on the
+     * event loop of the specified affinity group: the loop is held off from processing units until
+     * the action completes, and objects registered by the action are registered in the group.
+     * This allows code on the main loop to set up objects on another loop before the loop can see
+     * them. It may not be called from loops other than the main loop, lest two loops wait on one
+     * another.
+     */
+    public void runInGroup (int group, Runnable action)
+    {
+        EventLoop loop = _loops[group], current = _currentLoop.get();
+        if (loop == getCurrentLoop()) {
+            action.run();
+            return;
+        }
+        if (current != null && current != _loops[0]) {
+            throw new IllegalStateException(
+                "Only the main event loop may run code in other groups.");
+        }
+
+        loop.lock();
+        _currentLoop.set(loop);
+        try {
+            action.run();
+        } finally {
+            if (current == null) {
+                _currentLoop.remove();
+            } else {
+                _currentLoop.set(current);
+            }
+            loop.unlock();
+        }
+    }
+
     /**
      * Returns the id to be assigned to the next event posted to the event queue.
      *
@@ -155,9 +284,11 @@ public class PresentsDObjectMgr
         _defaultController = controller;
 
         // switch all objects from the old default (null, usually) to the new default.
-        for (DObject obj : _objects.values()) {
-            if (oldDefault == obj.getAccessController()) {
-                obj.setAccessController(controller);
+        for (EventLoop loop : _loops) {
+            for (DObject obj : loop.getObjects()) {
+                if (oldDefault == obj.getAccessController()) {
+                    obj.setAccessController(controller);
+                }
             }
         }
     }
@@ -175,7 +306,8 @@ public class PresentsDObjectMgr
         registerObject(object);
         // and note a proxy reference for the object which we'll use to forward events back to its
         // originating manager after converting them back to the original oid
-        _proxies.put(object.getOid(), new ProxyReference(origObjectId, omgr));
+        getLoop(object.getOid()).putProxy(
+            object.getOid(), new ProxyReference(origObjectId, omgr));
         // TEMP: report what we're doing as we're seeing funny business
         log.info("Registered proxy object", "type", object.getClass().getName(),
                  "remoid", origObjectId, "locoid", object.getOid());
@@ -188,10 +320,11 @@ public class PresentsDObjectMgr
      */
     public void clearProxyObject (int origObjectId, DObject object)
     {
-        if (_proxies.remove(object.getOid()) == null) {
+        EventLoop loop = getLoop(object.getOid());
+        if (loop.removeProxy(object.getOid()) == null) {
             log.warning("Missing proxy mapping for cleared proxy", "ooid", origObjectId);
         }
-        _objects.remove(object.getOid());
+        loop.removeObject(object.getOid());
         // TEMP: report what we're doing as we're seeing funny business
         log.info("Clearing proxy object", "type", object.getClass().getName(),
                  "remoid", origObjectId, "locoid", object.getOid());
@@ -226,9 +359,9 @@ public class PresentsDObjectMgr
                         new Exception());
         }
 
-        // assign the event's id and append it to the queue
+        // assign the event's id and append it to the queue of the loop that owns its target
         event.eventId = getNextEventId(true);
-        _evqueue.append(event);
+        postUnit(getLoop(event.getTargetOid()), event);
     }
 
     // from interface DObjectManager
@@ -242,25 +375,31 @@ public class PresentsDObjectMgr
 
     // from interface RootDObjectManager
     public <T extends DObject> T registerObject (T object)
+    {
+        return registerObject(object, getCurrentAffinityGroup());
+    }
+
+    /**
+     * Registers the supplied object in the specified affinity group, which is to say that its
+     * events will be processed on that group's event loop.
+     *
+     * @see #registerObject(DObject)
+     */
+    public <T extends DObject> T registerObject (T object, int group)
     {
         if (_dobjThread != null && !isDispatchThread()) {
             log.warning("Registering DObject on non-dobject thread",
                         "class", object.getClass().getName(), new Exception());
         }
 
-        int oid = getNextOid();
-
-        // initialize this object
-        object.setOid(oid);
-        object.setManager(this);
-
         // set the default access controller if a controller hasn't already been specified
         if (object.getAccessController() == null) {
             object.setAccessController(_defaultController);
         }
 
-        // insert it into the table
-        _objects.put(oid, object);
+        // assign it an oid, insert it into the table and initialize it
+        int oid = _loops[group].register(object);
+        object.setManager(this);
 
 //         log.info("Registered object", "obj", object);
 
@@ -270,7 +409,7 @@ public class PresentsDObjectMgr
     // from interface RootDObjectManager
     public void destroyObject (int oid)
     {
-        if (oid == DUMMY_OID) {
+        if (isDummyOid(oid)) {
             log.warning("Denying request to destroy the dummy object!", new Exception());
             return;
         }
@@ -281,7 +420,8 @@ public class PresentsDObjectMgr
     // from interface RootDObjectManager
     public Interval newInterval (final Runnable action)
     {
-        return new Interval(this) {
+        // the interval runs on the loop of the code that created it
+        return new Interval(getRunQueue(getCurrentAffinityGroup())) {
             @Override public void expired () {
                 action.run();
             }
@@ -303,7 +443,7 @@ public class PresentsDObjectMgr
      */
     public DObject getObject (int oid)
     {
-        return _objects.get(oid);
+        return getLoop(oid).getObject(oid);
     }
 
     /**
@@ -316,17 +456,34 @@ public class PresentsDObjectMgr
      */
     public Stats getStats (boolean snapshot)
     {
-        if (snapshot) {
-            _recent = _current;
-            _current = new Stats();
-            _current.maxQueueSize = _evqueue.size();
+        if (_loops.length == 1) {
+            return _loops[0].getStats(snapshot);
         }
-        return _recent;
+        // sum up the stats of all of our loops
+        Stats stats = new Stats();
+        for (EventLoop loop : _loops) {
+            Stats lstats = loop.getStats(snapshot);
+            stats.maxQueueSize = Math.max(stats.maxQueueSize, lstats.maxQueueSize);
+            stats.eventCount += lstats.eventCount;
+            stats.coalescedCount += lstats.coalescedCount;
+        }
+        return stats;
     }
 
     // from Executor
     public void execute (Runnable command)
     {
+        // results from units that were posted to the invoker from a secondary loop go back there
+        if (_loops.length > 1) {
+            EventLoop origin;
+            synchronized (_origins) {
+                origin = _origins.remove(command);
+            }
+            if (origin != null) {
+                postUnit(origin, command);
+                return;
+            }
+        }
         postRunnable(command);
     }
 
@@ -345,8 +502,8 @@ public class PresentsDObjectMgr
                         new Exception());
         }
 
-        // just append it to the queue
-        _evqueue.append(unit);
+        // just append it to the queue of the calling loop
+        postUnit(getCurrentLoop(), unit);
     }
 
     /**
@@ -356,9 +513,18 @@ public class PresentsDObjectMgr
      *
      * From interface RunQueue
      */
-    public synchronized boolean isDispatchThread ()
+    public boolean isDispatchThread ()
     {
-        return Thread.currentThread() == _dobjThread;
+        return _currentLoop.get() != null;
+    }
+
+    /**
+     * Returns true if the calling thread is processing events for the object with the specified
+     * oid.
+     */
+    public boolean isDispatchThread (int oid)
+    {
+        return _currentLoop.get() == getLoop(oid);
     }
 
     /**
@@ -368,13 +534,26 @@ public class PresentsDObjectMgr
      * initialization are considered safe and only after the distributed object manager is started
      * (and the event thread is established) will we require it.
      */
-    public synchronized void requireEventThread ()
+    public void requireEventThread ()
     {
         if (_dobjThread != null && !isDispatchThread()) {
             throw new IllegalStateException("This method must be called on the dobj event thread.");
         }
     }
 
+    /**
+     * Ensures that the calling thread is processing events for the object with the specified oid,
+     * throwing an {@link IllegalStateException} if it is not. As with {@link
+     * #requireEventThread()}, all calls succeed before the manager is started.
+     */
+    public void requireEventThread (int oid)
+    {
+        if (_dobjThread != null && !isDispatchThread(oid)) {
+            throw new IllegalStateException(
+                "This method must be called on the event thread of object " + oid + ".");
+        }
+    }
+
     /**
      * Ensures that the calling thread <em>is not</em> the distributed object event dispatch
      * thread, throwing an {@link IllegalStateException} if it is.
@@ -396,15 +575,33 @@ public class PresentsDObjectMgr
         log.info("DOMGR running.");
 
         // make a note of the thread that's processing events
-        synchronized (this) {
-            _dobjThread = Thread.currentThread();
+        EventLoop main = _loops[0];
+        _dobjThread = Thread.currentThread();
+        _currentLoop.set(main);
+
+        // start up the threads for our other loops, if we have any
+        EventLoopThread[] threads = new EventLoopThread[_loops.length-1];
+        for (int ii = 0; ii < threads.length; ii++) {
+            threads[ii] = new EventLoopThread(_loops[ii+1]);
+            threads[ii].start();
         }
 
         while (isRunning()) {
             // pop the next unit off the queue and process it
-            processUnit(_evqueue.get());
+            main.process(main.take());
+        }
+
+        // wait for our other loops to notice that we've stopped, so that none is still running
+        // once we return
+        for (EventLoopThread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                log.warning("Interrupted waiting for event loop to exit", "loop", thread._loop);
+            }
         }
 
+        _currentLoop.remove();
         log.info("DOMGR exited.");
     }
 
@@ -418,6 +615,12 @@ public class PresentsDObjectMgr
         postRunnable(new Runnable() {
             public void run () {
                 _running = false;
+                // wake up our other loops so that they notice
+                for (EventLoop loop : _loops) {
+                    if (loop != getCurrentLoop()) {
+                        postUnit(loop, Runnables.NOOP);
+                    }
+                }
             }
         });
     }
@@ -443,8 +646,10 @@ public class PresentsDObjectMgr
      */
     public void dumpUnitProfiles ()
     {
-        for (Map.Entry<String, UnitProfile> entry : _profiles.entrySet()) {
-            log.info("P: " + entry.getKey() + " => " + entry.getValue());
+        synchronized (_profiles) {
+            for (Map.Entry<String, UnitProfile> entry : _profiles.entrySet()) {
+                log.info("P: " + entry.getKey() + " => " + entry.getValue());
+            }
         }
     }
 
@@ -453,7 +658,9 @@ public class PresentsDObjectMgr
      */
     public void clearUnitProfiles ()
     {
-        _profiles.clear();
+        synchronized (_profiles) {
+            _profiles.clear();
+        }
     }
 
     /**
@@ -466,7 +673,7 @@ public class PresentsDObjectMgr
     {
         int oid = target.getOid();
 
-        if (oid == DUMMY_OID) {
+        if (isDummyOid(oid)) {
             log.warning("Denying attempt to destroy dummy object!", new Exception());
             return false;
         }
@@ -474,7 +681,7 @@ public class PresentsDObjectMgr
 //         log.info("Removing destroyed object from table", "oid", oid);
 
         // remove the object from the table
-        _objects.remove(oid);
+        getLoop(oid).removeObject(oid);
 
         // deactivate the object
         target.setManager(null);
@@ -486,7 +693,10 @@ public class PresentsDObjectMgr
         }
 
         // deal with any remaining oid lists that reference this object
-        Reference[] refs = _refs.remove(oid);
+        Reference[] refs;
+        synchronized (_refs) {
+            refs = _refs.remove(oid);
+        }
         if (refs != null) {
             for (Reference ref : refs) {
                 // skip empty spots
@@ -494,7 +704,7 @@ public class PresentsDObjectMgr
                     continue;
                 }
 
-                DObject reffer = _objects.get(ref.reffingOid);
+                DObject reffer = getObject(ref.reffingOid);
 
                 // ensure that the referencing object is still around
                 if (reffer != null) {
@@ -551,15 +761,41 @@ public class PresentsDObjectMgr
         int oid = oae.getOid();
 
         // ensure that the target object exists
-        if (!_objects.containsKey(oid)) {
+        if (getObject(oid) == null) {
             log.info("Rejecting object added event of non-existent object",
                      "refferOid", target.getOid(), "reffedOid", oid);
             return false;
         }
 
+        synchronized (_refs) {
+            return addReference(new Reference(target.getOid(), oae.getName(), oid));
+        }
+    }
+
+    /**
+     * Called as a helper for <code>ObjectRemovedEvent</code> events. It updates the object/oid
+     * list tracking structures.
+     *
+     * @return true if the event should be dispatched, false if it should be aborted.
+     */
+    public boolean objectRemoved (DEvent event, DObject target)
+    {
+        ObjectRemovedEvent ore = (ObjectRemovedEvent)event;
+        synchronized (_refs) {
+            return removeReference(target.getOid(), ore.getName(), ore.getOid());
+        }
+    }
+
+    /**
+     * Tracks the supplied oid list reference. The caller must hold the lock on the reference
+     * table.
+     */
+    protected boolean addReference (Reference ref)
+    {
         // get the reference vector for the referenced object. we use bare arrays rather than
         // something like an array list to conserve memory. there will be many objects and
         // references
+        int oid = ref.reffedOid;
         Reference[] refs = _refs.get(oid);
         if (refs == null) {
             refs = new Reference[DEFREFVEC_SIZE];
@@ -567,7 +803,6 @@ public class PresentsDObjectMgr
         }
 
         // determine where to add the reference
-        Reference ref = new Reference(target.getOid(), oae.getName(), oid);
         int rpos = -1;
         for (int ii = 0; ii < refs.length; ii++) {
             if (ref.equals(refs[ii])) {
@@ -594,18 +829,10 @@ public class PresentsDObjectMgr
     }
 
     /**
-     * Called as a helper for <code>ObjectRemovedEvent</code> events. It updates the object/oid
-     * list tracking structures.
-     *
-     * @return true if the event should be dispatched, false if it should be aborted.
+     * Stops tracking an oid list reference. The caller must hold the lock on the reference table.
      */
-    public boolean objectRemoved (DEvent event, DObject target)
+    protected boolean removeReference (int toid, String field, int oid)
     {
-        ObjectRemovedEvent ore = (ObjectRemovedEvent)event;
-        String field = ore.getName();
-        int toid = target.getOid();
-        int oid = ore.getOid();
-
 //        log.info("Processing object removed", "from", toid, "roid", toid);
 
         // get the reference vector for the referenced object
@@ -641,7 +868,24 @@ public class PresentsDObjectMgr
      */
     public boolean queueIsEmpty ()
     {
-        return !_evqueue.hasElements();
+        for (EventLoop loop : _loops) {
+            if (loop.getQueueSize() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the total number of units waiting in the queues of our event loops.
+     */
+    public int getQueueSize ()
+    {
+        int size = 0;
+        for (EventLoop loop : _loops) {
+            size += loop.getQueueSize();
+        }
+        return size;
     }
 
     /**
@@ -661,9 +905,13 @@ public class PresentsDObjectMgr
         long start = System.nanoTime();
 
         // keep track of the largest queue size we've seen
-        int queueSize = _evqueue.size();
-        if (queueSize > _current.maxQueueSize) {
-            _current.maxQueueSize = queueSize;
+        EventLoop loop = getCurrentLoop();
+        loop.noteQueueSize();
+
+        // deliver any changes we're holding back before processing anything else
+        EventCoalescer coalescer = loop.getCoalescer();
+        if (coalescer != null && !EventCoalescer.canCoalesce(unit)) {
+            coalescer.flush();
         }
 
         try {
@@ -675,7 +923,7 @@ public class PresentsDObjectMgr
                 DEvent event = (DEvent)unit;
 
                 // if this event is on a proxied object, forward it to the owning manager
-                ProxyReference proxy = _proxies.get(event.getTargetOid());
+                ProxyReference proxy = loop.getProxy(event.getTargetOid());
                 if (proxy != null) {
                     // rewrite the oid into the originating manager's id space
                     event.setTargetOid(proxy.origObjectId);
@@ -697,6 +945,11 @@ public class PresentsDObjectMgr
             log.warning("Execution unit failed", "unit", unit, t);
         }
 
+        // and deliver them once we've run out of things to process
+        if (coalescer != null && loop.getQueueSize() == 0) {
+            coalescer.flush();
+        }
+
         // compute the elapsed time in microseconds
         long elapsed = (System.nanoTime() - start)/1000;
 
@@ -707,7 +960,7 @@ public class PresentsDObjectMgr
         }
 
         // periodically sample and record the time spent processing a unit
-        if (UNIT_PROF_ENABLED && _eventCount % _unitProfInterval == 0) {
+        if (UNIT_PROF_ENABLED && loop.getEventCount() % _unitProfInterval == 0) {
             String cname;
             // do some jiggery pokery to get more fine grained profiling details on certain
             // "popular" unit types
@@ -722,11 +975,13 @@ public class PresentsDObjectMgr
             } else {
                 cname = StringUtil.shortClassName(unit);
             }
-            UnitProfile uprof = _profiles.get(cname);
-            if (uprof == null) {
-                _profiles.put(cname, uprof = new UnitProfile());
+            synchronized (_profiles) {
+                UnitProfile uprof = _profiles.get(cname);
+                if (uprof == null) {
+                    _profiles.put(cname, uprof = new UnitProfile());
+                }
+                uprof.record(elapsed);
             }
-            uprof.record(elapsed);
         }
     }
 
@@ -739,7 +994,7 @@ public class PresentsDObjectMgr
         int ecount = events.size();
 
         // look up the target object
-        DObject target = _objects.get(event.getTargetOid());
+        DObject target = getObject(event.getTargetOid());
         if (target == null) {
             log.debug("Compound event target no longer exists", "event", event);
             return;
@@ -769,7 +1024,7 @@ public class PresentsDObjectMgr
     protected void processEvent (DEvent event)
     {
         // look up the target object
-        DObject target = _objects.get(event.getTargetOid());
+        DObject target = getObject(event.getTargetOid());
         if (target == null) {
             log.debug("Event target no longer exists", "event", event);
             return;
@@ -781,9 +1036,19 @@ public class PresentsDObjectMgr
             return;
         }
 
-        if (dispatchEvent(event, target)) {
-            // unless requested not to, notify any proxies
-            target.notifyProxies(event);
+        // if we're coalescing events, hold back changes from proxies and coalesced listeners
+        EventLoop loop = getCurrentLoop();
+        EventCoalescer coalescer = loop.getCoalescer();
+        boolean coalesce = (coalescer != null && EventCoalescer.canCoalesce(event));
+        if (dispatchEvent(event, target, coalesce)) {
+            if (coalesce) {
+                if (coalescer.defer(target, event)) {
+                    loop.noteCoalesced();
+                }
+            } else {
+                // unless requested not to, notify any proxies
+                target.notifyProxies(event);
+            }
         }
     }
 
@@ -794,6 +1059,15 @@ public class PresentsDObjectMgr
      * @return the value returned by {@link DEvent#applyToObject}.
      */
     protected boolean dispatchEvent (DEvent event, DObject target)
+    {
+        return dispatchEvent(event, target, false);
+    }
+
+    /**
+     * Dispatches an event, notifying either all of the target's listeners or, if the event is
+     * being coalesced, only those that don't want coalesced notifications.
+     */
+    protected boolean dispatchEvent (DEvent event, DObject target, boolean coalesce)
     {
         boolean notify = true; // assume always notify
         try {
@@ -812,7 +1086,11 @@ public class PresentsDObjectMgr
             // if the event returns false from applyToObject, this means it's a silent event and we
             // shouldn't notify the listeners
             if (notify) {
-                target.notifyListeners(event);
+                if (coalesce) {
+                    target.notifyListeners(event, false);
+                } else {
+                    target.notifyListeners(event);
+                }
             }
 
         } catch (VirtualMachineError e) {
@@ -823,8 +1101,7 @@ public class PresentsDObjectMgr
         }
 
         // track the number of events dispatched
-        ++_eventCount;
-        ++_current.eventCount;
+        getCurrentLoop().noteEvent();
         return true;
     }
 
@@ -847,15 +1124,16 @@ public class PresentsDObjectMgr
     protected void clearReference (DObject reffer, String field, int reffedOid)
     {
         // look up the reference vector for the referenced object
-        Reference[] refs = _refs.get(reffedOid);
         Reference ref = null;
-
-        if (refs != null) {
-            for (int ii = 0; ii < refs.length; ii++) {
-                if (refs[ii].equals(reffer.getOid(), field)) {
-                    ref = refs[ii];
-                    refs[ii] = null;
-                    break;
+        synchronized (_refs) {
+            Reference[] refs = _refs.get(reffedOid);
+            if (refs != null) {
+                for (int ii = 0; ii < refs.length; ii++) {
+                    if (refs[ii].equals(reffer.getOid(), field)) {
+                        ref = refs[ii];
+                        refs[ii] = null;
+                        break;
+                    }
                 }
             }
         }
@@ -865,7 +1143,7 @@ public class PresentsDObjectMgr
         // the subsequent destruction of the referring object will attempt to clear the reference
         // to the referred object which no longer exists; so we don't complain about non- existent
         // references if the referree is already destroyed
-        if (ref == null && _objects.containsKey(reffedOid)) {
+        if (ref == null && getObject(reffedOid) != null) {
             log.warning("Requested to clear out non-existent reference",
                         "refferOid", reffer.getOid(), "field", field, "reffedOid", reffedOid);
 
@@ -874,14 +1152,68 @@ public class PresentsDObjectMgr
         }
     }
 
-    protected int getNextOid ()
+    /**
+     * Returns the event loop that owns the object with the specified oid.
+     */
+    protected EventLoop getLoop (int oid)
+    {
+        EventLoop[] loops = _loops;
+        return (loops.length == 1) ? loops[0] : loops[(oid & Integer.MAX_VALUE) % loops.length];
+    }
+
+    /**
+     * Returns the event loop on which the calling code is running, or the main loop if it is not
+     * running on a loop.
+     */
+    protected EventLoop getCurrentLoop ()
     {
-        // look for the next unused oid. in theory if we had two billion objects, this would loop
-        // infinitely, but the world will come to an end long before we have two billion objects
-        do {
-            _nextOid = (_nextOid + 1) % Integer.MAX_VALUE;
-        } while (_objects.containsKey(_nextOid));
-        return _nextOid;
+        if (_loops.length == 1) {
+            return _loops[0];
+        }
+        EventLoop loop = _currentLoop.get();
+        return (loop == null) ? _loops[0] : loop;
+    }
+
+    /**
+     * Returns true if the supplied oid belongs to one of our loops' dummy objects.
+     */
+    protected boolean isDummyOid (int oid)
+    {
+        return oid >= DUMMY_OID && oid < DUMMY_OID + _loops.length;
+    }
+
+    /**
+     * Appends a unit (an event or a runnable) to the queue of the specified loop.
+     */
+    protected void postUnit (EventLoop loop, Object unit)
+    {
+        loop.append(unit);
+    }
+
+    /**
+     * Notes the event loop of the code posting the supplied invoker unit so that its result can be
+     * delivered back to that loop.
+     */
+    protected void noteOrigin (Runnable unit)
+    {
+        EventLoop loop = _currentLoop.get();
+        if (loop != null && loop.getIndex() != 0) {
+            synchronized (_origins) {
+                _origins.put(unit, loop);
+            }
+        }
+    }
+
+    /**
+     * Clears the noted origin of an invoker unit, if its result was not delivered.
+     */
+    protected void clearOrigin (Runnable unit)
+    {
+        if (_loops.length > 1) {
+            synchronized (_origins) {
+                _origins.remove(unit);
+            }
+        }
     }
 
     /**
@@ -936,7 +1268,8 @@ public class PresentsDObjectMgr
 
         public AccessObjectEvent (int oid, Subscriber<T> target, int action)
         {
-            super(DUMMY_OID); // target the bogus object
+            // target the bogus object of the loop that owns the object
+            super(DUMMY_OID + getLoop(oid).getIndex());
             _oid = oid;
             _target = target;
             _action = action;
@@ -960,7 +1293,7 @@ public class PresentsDObjectMgr
             }
 
             // look up the target object
-            @SuppressWarnings("unchecked") T obj = (T)_objects.get(_oid);
+            @SuppressWarnings("unchecked") T obj = (T)getObject(_oid);
 
             // if we're unsubscribing, take care of that and get on out
             if (_action == UNSUBSCRIBE) {
@@ -999,6 +1332,274 @@ public class PresentsDObjectMgr
         protected int _action;
     }
 
+    /**
+     * One of the loops on which we process events, along with the objects that it owns.
+     */
+    protected class EventLoop
+        implements RunQueue
+    {
+        public EventLoop (int index)
+        {
+            _index = index;
+            _nextOid = DUMMY_OID + index;
+
+            // create a dummy object to live as the loop's first oid and use that for some internal
+            // event trickery
+            DObject dummy = new DObject();
+            dummy.setOid(_nextOid);
+            _objects.put(_nextOid, dummy);
+        }
+
+        public int getIndex ()
+        {
+            return _index;
+        }
+
+        public DObject getObject (int oid)
+        {
+            synchronized (_objects) {
+                return _objects.get(oid);
+            }
+        }
+
+        public List<DObject> getObjects ()
+        {
+            synchronized (_objects) {
+                return Lists.newArrayList(_objects.values());
+            }
+        }
+
+        public int getObjectCount ()
+        {
+            synchronized (_objects) {
+                return _objects.size();
+            }
+        }
+
+        /**
+         * Assigns the supplied object an oid owned by this loop and adds it to our table.
+         */
+        public int register (DObject object)
+        {
+            synchronized (_objects) {
+                // look for the next unused oid. in theory if we had two billion objects, this
+                // would loop infinitely, but the world will come to an end long before we have two
+                // billion objects
+                int step = _loops.length, limit = (Integer.MAX_VALUE / step) * step;
+                do {
+                    _nextOid = (_nextOid + step) % limit;
+                } while (_objects.containsKey(_nextOid));
+                object.setOid(_nextOid);
+                _objects.put(_nextOid, object);
+                return _nextOid;
+            }
+        }
+
+        public void removeObject (int oid)
+        {
+            synchronized (_objects) {
+                _objects.remove(oid);
+            }
+        }
+
+        public ProxyReference getProxy (int oid)
+        {
+            // we avoid locking in the common case where there are no proxies
+            if (_proxies.size() == 0) {
+                return null;
+            }
+            synchronized (_proxies) {
+                return _proxies.get(oid);
+            }
+        }
+
+        public void putProxy (int oid, ProxyReference proxy)
+        {
+            synchronized (_proxies) {
+                _proxies.put(oid, proxy);
+            }
+        }
+
+        public ProxyReference removeProxy (int oid)
+        {
+            synchronized (_proxies) {
+                return _proxies.remove(oid);
+            }
+        }
+
+        public void append (Object unit)
+        {
+            _queue.append(unit);
+        }
+
+        public Object take ()
+        {
+            return _queue.get();
+        }
+
+        public int getQueueSize ()
+        {
+            return _queue.size();
+        }
+
+        /**
+         * Processes a unit taken from our queue, holding off anyone running code in our group
+         * while we do so.
+         */
+        public void process (Object unit)
+        {
+            if (_loops.length == 1) {
+                processUnit(unit);
+                return;
+            }
+            _lock.lock();
+            try {
+                processUnit(unit);
+            } finally {
+                _lock.unlock();
+            }
+        }
+
+        public void lock ()
+        {
+            _lock.lock();
+        }
+
+        public void unlock ()
+        {
+            _lock.unlock();
+        }
+
+        public long getEventCount ()
+        {
+            return _eventCount;
+        }
+
+        public void noteQueueSize ()
+        {
+            int queueSize = _queue.size();
+            if (queueSize > _current.maxQueueSize) {
+                _current.maxQueueSize = queueSize;
+            }
+        }
+
+        public void noteEvent ()
+        {
+            ++_eventCount;
+            ++_current.eventCount;
+        }
+
+        public void noteCoalesced ()
+        {
+            ++_current.coalescedCount;
+        }
+
+        /**
+         * Returns the coalescer for the changes dispatched on this loop, or null if we don't
+         * coalesce events.
+         */
+        public EventCoalescer getCoalescer ()
+        {
+            if (_coalescer == null && _coalesceEvents) {
+                _coalescer = new EventCoalescer();
+            }
+            return _coalescer;
+        }
+
+        public Stats getStats (boolean snapshot)
+        {
+            if (snapshot) {
+                _recent = _current;
+                _current = new Stats();
+                _current.maxQueueSize = _queue.size();
+            }
+            return _recent;
+        }
+
+        // from interface RunQueue
+        public void postRunnable (Runnable unit)
+        {
+            postUnit(this, unit);
+        }
+
+        // from interface RunQueue
+        public boolean isDispatchThread ()
+        {
+            return _currentLoop.get() == this;
+        }
+
+        // from interface RunQueue
+        public boolean isRunning ()
+        {
+            return PresentsDObjectMgr.this.isRunning();
+        }
+
+        @Override
+        public String toString ()
+        {
+            return "EventLoop" + _index;
+        }
+
+        /** Our index in the loops array, and thus our affinity group. */
+        protected final int _index;
+
+        /** The queue via which our events are processed. */
+        protected Queue<Object> _queue = new Queue<Object>();
+
+        /** Held while processing a unit, or while running code in our group on another thread. */
+        protected ReentrantLock _lock = new ReentrantLock();
+
+        /** The distributed objects owned by this loop. */
+        protected IntMap<DObject> _objects = IntMaps.newHashIntMap();
+
+        /** Maintains proxy information for any proxied distributed objects owned by this loop. */
+        protected IntMap<ProxyReference> _proxies = IntMaps.newHashIntMap();
+
+        /** Used to assign a unique oid to each distributed object. */
+        protected int _nextOid;
+
+        /** Used to track the number of events dispatched over time. */
+        protected long _eventCount;
+
+        /** Used to track runtime statistics. */
+        protected Stats _recent = new Stats(), _current = _recent;
+
+        /** Holds back changes dispatched on this loop, if we coalesce events. */
+        protected EventCoalescer _coalescer;
+    }
+
+    /**
+     * Processes the events of one of our secondary loops.
+     */
+    protected class EventLoopThread extends LoopingThread
+    {
+        public EventLoopThread (EventLoop loop)
+        {
+            super("PresentsDObjectMgr." + loop);
+            _loop = loop;
+        }
+
+        @Override // from LoopingThread
+        public boolean isRunning ()
+        {
+            return PresentsDObjectMgr.this.isRunning();
+        }
+
+        @Override // from LoopingThread
+        protected void willStart ()
+        {
+            _currentLoop.set(_loop);
+        }
+
+        @Override // from LoopingThread
+        protected void iterate ()
+        {
+            _loop.process(_loop.take());
+        }
+
+        protected EventLoop _loop;
+    }
+
     /**
      * Used to track references of objects in oid lists.
      */
@@ -1081,17 +1682,17 @@ public class PresentsDObjectMgr
     /** A flag indicating that the event dispatcher is still running. */
     protected boolean _running = true;
 
-    /** The event queue via which all events are processed. */
-    protected Queue<Object> _evqueue = new Queue<Object>();
+    /** The loops on which we process events, the main loop first. */
+    protected EventLoop[] _loops;
 
-    /** The managed distributed objects table. */
-    protected IntMap<DObject> _objects = IntMaps.newHashIntMap();
+    /** The loop on which the current thread is processing events, if any. */
+    protected ThreadLocal<EventLoop> _currentLoop = new ThreadLocal<EventLoop>();
 
-    /** Used to assign a unique oid to each distributed object. */
-    protected int _nextOid = 0;
+    /** Used to assign affinity groups in turn. */
+    protected AtomicInteger _nextGroup = new AtomicInteger();
 
-    /** Used to track the number of events dispatched over time. */
-    protected long _eventCount = 0;
+    /** The loops from which outstanding invoker units were posted. */
+    protected Map<Runnable, EventLoop> _origins = Maps.newIdentityHashMap();
 
     /** Track fatal errors so that we can stick a fork in ourselves if things get too far out of
      * hand. More than 30 fatal errors in the span of a minute and we throw in the towel. */
@@ -1103,12 +1704,9 @@ public class PresentsDObjectMgr
     /** The default access controller to use when creating distributed objects. */
     protected AccessController _defaultController;
 
-    /** Maintains proxy information for any proxied distributed objects. */
-    protected IntMap<ProxyReference> _proxies = IntMaps.newHashIntMap();
-
     /** keeps Track of which thread is executing the event loop so that other services can enforce
      * restrictions on code that should or should not be called from the event dispatch thread. */
-    protected Thread _dobjThread;
+    protected volatile Thread _dobjThread;
 
     /** A monotonically increasing counter used to assign an id to all dispatched events. */
     protected long _nextEventId = 1;
@@ -1116,15 +1714,17 @@ public class PresentsDObjectMgr
     /** Used to profile our events and runnable units. */
     protected Map<String, UnitProfile> _profiles = Maps.newHashMap();
 
-    /** Used to track runtime statistics. */
-    protected Stats _recent = new Stats(), _current = _recent;
-
     /** Maps event classes to helpers that perform additional processing for particular events. */
     protected Map<Class<?>, EventHelper> _helpers = Maps.newHashMap();
 
     /** Used to resolve unit names when profiling. Injected by the invmgr when it's created. */
     protected InvocationManager _invmgr;
 
+    /** Whether to drop changes superseded within a run of changes before they are delivered to
+     * subscribers. See {@link EventCoalescer}. */
+    @Inject(optional=true) @Named("presents.dobj.coalesceEvents")
+    protected boolean _coalesceEvents;
+
     /** The frequency at which we take a profiling sample. */
     protected int _unitProfInterval = 100;
 
@@ -1136,7 +1736,7 @@ public class PresentsDObjectMgr
 
     /**
      * The oid of the DObject created during object manager startup that isn't actually
-     * distributed.
+     * distributed. Each event loop has such an object, the loop's index added to this oid.
      */
     protected static final int DUMMY_OID = 0;
 }
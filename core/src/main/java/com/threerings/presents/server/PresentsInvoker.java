@@ -68,6 +68,14 @@ public class PresentsInvoker extends ReportingInvoker
         postUnit(new EmptyingUnit(onEmpty));
     }
 
+    @Override // from Invoker
+    public void postUnit (Unit unit)
+    {
+        // note the event loop posting the unit so that its result goes back to that loop
+        _omgr.noteOrigin(unit);
+        super.postUnit(unit);
+    }
+
     @Override // from Invoker, Lifecycle.ShutdownComponent
     public void shutdown ()
     {
@@ -84,6 +92,14 @@ public class PresentsInvoker extends ReportingInvoker
             }});
     }
 
+    @Override // from Invoker
+    protected void didInvokeUnit (Unit unit, long start)
+    {
+        super.didInvokeUnit(unit, start);
+        // if the unit had no result to deliver, we no longer need to know where it came from
+        _omgr.clearOrigin(unit);
+    }
+
     @Override // from Invoker
     protected void didShutdown ()
     {
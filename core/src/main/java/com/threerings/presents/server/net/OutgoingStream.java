@@ -0,0 +1,281 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.presents.server.net;
+
+import java.util.LinkedList;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.samskivert.util.Tuple;
+
+import com.threerings.io.ClassDictionary;
+import com.threerings.io.FrameCompressor;
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.presents.net.Message;
+
+/**
+ * Holds the object output stream onto which a client's outgoing messages are encoded, along with
+ * the messages waiting to be encoded. The stream is stateful (it maps classes and interned strings
+ * to codes as it goes), so its messages are encoded strictly in order and by one thread at a
+ * time, though not always the same thread. A connection that inherits another's streams shares
+ * its outgoing stream.
+ */
+public class OutgoingStream
+{
+    /** Encodes messages onto an outgoing stream. */
+    public static interface Encoder
+    {
+        /**
+         * Encodes the supplied message, which was posted to the supplied connection.
+         */
+        void encode (PresentsConnection conn, Message msg);
+    }
+
+    /**
+     * Returns the object output stream for this outgoing stream, directing its output to the
+     * supplied target. This must only be called by the thread that is encoding our messages.
+     */
+    public ObjectOutputStream getObjectOutputStream (OutputStream target)
+    {
+        _sink.target = target;
+        if (_oout == null) {
+            _oout = new ObjectOutputStream(_sink);
+        }
+        _oout.setClassDictionary(_dictionary);
+        _oout.setAdaptiveInterning(_adaptiveInterning);
+        return _oout;
+    }
+
+    /**
+     * Configures the dictionary of well-known classes that our client shares with us, which is
+     * used for all messages encoded after this call (and for datagrams).
+     */
+    public void setClassDictionary (ClassDictionary dictionary)
+    {
+        _dictionary = dictionary;
+    }
+
+    /**
+     * Returns the dictionary of well-known classes that our client shares with us, or null.
+     */
+    public ClassDictionary getClassDictionary ()
+    {
+        return _dictionary;
+    }
+
+    /**
+     * Configures whether the messages encoded after this call (and datagrams) are adaptively
+     * interned.
+     *
+     * @see ObjectOutputStream#setAdaptiveInterning
+     */
+    public void setAdaptiveInterning (boolean adaptive)
+    {
+        _adaptiveInterning = adaptive;
+    }
+
+    /**
+     * Returns true if our messages are adaptively interned.
+     */
+    public boolean getAdaptiveInterning ()
+    {
+        return _adaptiveInterning;
+    }
+
+    /**
+     * Returns true if our client can reassemble messages that are sent in chunks. This must only
+     * be called by the thread that is encoding our messages.
+     */
+    public boolean getChunking ()
+    {
+        return _chunking;
+    }
+
+    /**
+     * Configures whether messages encoded after this call may be sent in chunks. This must only
+     * be called by the thread that is encoding our messages, right after it encodes the message
+     * that tells our client to expect them.
+     */
+    public void setChunking (boolean chunking)
+    {
+        _chunking = chunking;
+    }
+
+    /**
+     * Returns the compressor with which our frames are compressed, or null. This must only be
+     * called by the thread that is encoding our messages.
+     */
+    public FrameCompressor getCompressor ()
+    {
+        return _compressor;
+    }
+
+    /**
+     * Configures the compressor with which frames encoded after this call are compressed. This
+     * must only be called by the thread that is encoding our messages, right after it encodes the
+     * message that tells our client to expect compressed frames.
+     */
+    public void setCompressor (FrameCompressor compressor)
+    {
+        _compressor = compressor;
+    }
+
+    /**
+     * Queues up a message to be encoded by an encoder thread.
+     *
+     * @return true if the caller must hand this stream to an encoder thread, false if a thread is
+     * already lined up to encode it.
+     */
+    public synchronized boolean post (PresentsConnection conn, Message msg)
+    {
+        _pending.add(Tuple.newTuple(conn, msg));
+        if (_scheduled || _draining) {
+            return false;
+        }
+        _scheduled = true;
+        return true;
+    }
+
+    /**
+     * Queues up a message and then encodes it, and anything queued before it, on the calling
+     * thread. If another thread is in the middle of encoding our messages, we wait for it to
+     * finish.
+     */
+    public void postAndDrain (PresentsConnection conn, Message msg, Encoder encoder)
+    {
+        synchronized (this) {
+            _pending.add(Tuple.newTuple(conn, msg));
+            while (_draining) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    // keep waiting, we can't encode concurrently with the other thread
+                }
+            }
+            _draining = true;
+        }
+        drainClaimed(encoder);
+    }
+
+    /**
+     * Encodes all of our queued messages on the calling thread, unless another thread is already
+     * doing so (in which case it will take care of them). This is called by the encoder thread to
+     * which we were handed.
+     */
+    public void drain (Encoder encoder)
+    {
+        synchronized (this) {
+            _scheduled = false;
+            if (_draining) {
+                return;
+            }
+            _draining = true;
+        }
+        drainClaimed(encoder);
+    }
+
+    /**
+     * Returns the number of messages waiting to be encoded.
+     */
+    public synchronized int getPendingCount ()
+    {
+        return _pending.size();
+    }
+
+    /**
+     * Encodes queued messages until there are none left, once we've claimed the right to do so.
+     */
+    protected void drainClaimed (Encoder encoder)
+    {
+        while (true) {
+            Tuple<PresentsConnection, Message> next;
+            synchronized (this) {
+                next = _pending.poll();
+                if (next == null) {
+                    _draining = false;
+                    notifyAll();
+                    return;
+                }
+            }
+            encoder.encode(next.left, next.right);
+        }
+    }
+
+    /** Passes data written to our object output stream along to the current encoder's buffer. */
+    protected static class Sink extends OutputStream
+    {
+        public OutputStream target;
+
+        @Override public void write (int b)
+            throws IOException
+        {
+            target.write(b);
+        }
+
+        @Override public void write (byte[] b, int off, int len)
+            throws IOException
+        {
+            target.write(b, off, len);
+        }
+
+        @Override public void flush ()
+            throws IOException
+        {
+            target.flush();
+        }
+    }
+
+    /** The object output stream used to encode our messages, created lazily. */
+    protected ObjectOutputStream _oout;
+
+    /** The class dictionary used by our object output stream, set by the authenticating thread
+     * and used by the encoding threads. */
+    protected volatile ClassDictionary _dictionary;
+
+    /** Whether our object output stream is adaptive, set by the encoding threads and read by the
+     * connection manager thread when it sets up datagrams. */
+    protected volatile boolean _adaptiveInterning;
+
+    /** Compresses our frames, or null. Like our object output stream, this is only used by the
+     * thread that is encoding our messages. */
+    protected FrameCompressor _compressor;
+
+    /** Whether large messages may be sent in chunks. Like our compressor, this is only used by the
+     * thread that is encoding our messages. */
+    protected boolean _chunking;
+
+    /** The target of our object output stream. */
+    protected Sink _sink = new Sink();
+
+    /** Messages waiting to be encoded, along with the connection to which each was posted. */
+    protected LinkedList<Tuple<PresentsConnection, Message>> _pending =
+        new LinkedList<Tuple<PresentsConnection, Message>>();
+
+    /** Whether we've been handed to an encoder thread that has yet to get to us. */
+    protected boolean _scheduled;
+
+    /** Whether a thread is currently encoding our messages. */
+    protected boolean _draining;
+}
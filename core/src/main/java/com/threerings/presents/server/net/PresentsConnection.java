@@ -21,6 +21,7 @@
 
 package com.threerings.presents.server.net;
 
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -173,7 +174,9 @@ public class PresentsConnection extends Connection
                 log.warning("Missing MD5 algorithm.");
                 return;
             }
-            _sequencer = _pcmgr.createDatagramSequencer();
+            _datagramOut = new ByteArrayOutputStream();
+            _sequencer = _pcmgr.createDatagramSequencer(
+                _datagramOut, _ostream.getClassDictionary(), _ostream.getAdaptiveInterning());
         }
 
         // verify the hash
@@ -194,12 +197,19 @@ public class PresentsConnection extends Connection
 
         // read the contents through the sequencer
         try {
-            Message msg = _sequencer.readDatagram();
+            final Message msg = _sequencer.readDatagram();
             if (msg == null) {
                 return; // received out of order
             }
             msg.received = when;
-            _handler.handleMessage(msg);
+
+            // datagrams arrive on the conmgr thread, but our messages must all be handled on the
+            // thread that reads our stream
+            _pcmgr.invokeOnReactor(this, new Runnable() {
+                public void run () {
+                    _handler.handleMessage(msg);
+                }
+            });
 
         } catch (ClassNotFoundException cnfe) {
             log.warning("Error reading datagram", "error", cnfe);
@@ -288,33 +298,29 @@ public class PresentsConnection extends Connection
     {
         _fin = other._fin;
         _oin = other._oin;
-        _oout = other._oout;
+        _ostream = other._ostream;
         if (_loader != null) {
             _oin.setClassLoader(_loader);
         }
     }
 
     /**
-     * Returns the object output stream associated with this connection (creating it if
-     * necessary). This should only be used by the connection manager.
+     * Returns the outgoing stream onto which our messages are encoded. This should only be used
+     * by the connection manager.
      */
-    protected ObjectOutputStream getObjectOutputStream (FramingOutputStream fout)
+    protected OutgoingStream getOutgoingStream ()
     {
-        // we're lazy about creating our output stream because we may be inheriting it from our
-        // authing connection and we don't want to unnecessarily create it in that case
-        if (_oout == null) {
-            _oout = new ObjectOutputStream(fout);
-        }
-        return _oout;
+        return _ostream;
     }
 
     /**
-     * Sets the object output stream used by this connection. This should only be called by the
-     * connection manager.
+     * Returns the object output stream associated with this connection (creating it if
+     * necessary), directing its output to the supplied framer. This should only be used by the
+     * connection manager, on the thread that is currently encoding our messages.
      */
-    protected void setObjectOutputStream (ObjectOutputStream oout)
+    protected ObjectOutputStream getObjectOutputStream (FramingOutputStream fout)
     {
-        _oout = oout;
+        return _ostream.getObjectOutputStream(fout);
     }
 
     /**
@@ -326,17 +332,30 @@ public class PresentsConnection extends Connection
         return _sequencer;
     }
 
+    /**
+     * Returns the buffer into which our datagram sequencer writes outgoing datagrams.  This should
+     * only be called by the connection manager.
+     */
+    protected ByteArrayOutputStream getDatagramOutput ()
+    {
+        return _datagramOut;
+    }
+
     protected FramedInputStream _fin;
     protected ObjectInputStream _oin;
-    protected ObjectOutputStream _oout;
+
+    /** Our outgoing messages are encoded onto this (on an encoder thread) rather than directly
+     * onto an object output stream, so that they stay in order. */
+    protected OutgoingStream _ostream = new OutgoingStream();
 
     protected InetSocketAddress _datagramAddress;
     protected DatagramChannel _datagramChannel;
     protected byte[] _datagramSecret;
-    protected boolean _transmitDatagrams;
+    protected volatile boolean _transmitDatagrams;
 
     protected MessageDigest _digest;
-    protected DatagramSequencer _sequencer;
+    protected volatile DatagramSequencer _sequencer;
+    protected ByteArrayOutputStream _datagramOut;
 
     protected MessageHandler _handler;
     protected ClassLoader _loader;
@@ -22,6 +22,9 @@
 package com.threerings.presents.server.net;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -33,17 +36,27 @@ import java.nio.channels.SocketChannel;
 
 import java.security.PrivateKey;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 
 import com.samskivert.util.Invoker;
 import com.samskivert.util.Lifecycle;
+import com.samskivert.util.LoopingThread;
 import com.samskivert.util.Queue;
 import com.samskivert.util.ResultListener;
+import com.samskivert.util.StringUtil;
 import com.samskivert.util.Tuple;
 
 import com.threerings.io.ByteBufferInputStream;
+import com.threerings.io.ClassDictionary;
+import com.threerings.io.CompressionDictionary;
+import com.threerings.io.EncodedObject;
+import com.threerings.io.FrameCompressor;
+import com.threerings.io.FramedInputStream;
 import com.threerings.io.FramingOutputStream;
 import com.threerings.io.ObjectOutputStream;
 import com.threerings.io.UnreliableObjectInputStream;
@@ -52,10 +65,26 @@ import com.threerings.io.UnreliableObjectOutputStream;
 import com.threerings.presents.annotation.AuthInvoker;
 import com.threerings.presents.client.Client;
 import com.threerings.presents.data.PresentsConMgrStats;
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.dobj.CompoundEvent;
+import com.threerings.presents.dobj.DEvent;
+import com.threerings.presents.dobj.ElementUpdatedEvent;
+import com.threerings.presents.dobj.EntryRemovedEvent;
+import com.threerings.presents.dobj.ObjectAddedEvent;
+import com.threerings.presents.dobj.ObjectRemovedEvent;
+import com.threerings.presents.net.AuthRequest;
+import com.threerings.presents.net.AuthResponse;
+import com.threerings.presents.net.BootstrapNotification;
+import com.threerings.presents.net.CompoundDownstreamMessage;
+import com.threerings.presents.net.DownstreamMessage;
+import com.threerings.presents.net.EventNotification;
+import com.threerings.presents.net.FailureResponse;
 import com.threerings.presents.net.Message;
 import com.threerings.presents.net.PingRequest;
 import com.threerings.presents.net.PongResponse;
 import com.threerings.presents.net.Transport;
+import com.threerings.presents.net.UnsubscribeResponse;
+import com.threerings.presents.net.UpdateThrottleMessage;
 import com.threerings.presents.server.Authenticator;
 import com.threerings.presents.server.ChainedAuthenticator;
 import com.threerings.presents.server.ClientManager;
@@ -67,7 +96,9 @@ import com.threerings.presents.util.SecureUtil;
 
 import com.threerings.nio.conman.Connection;
 import com.threerings.nio.conman.ConnectionManager;
+import com.threerings.nio.conman.Frame;
 import com.threerings.nio.conman.NetEventHandler;
+import com.threerings.nio.conman.WriteStats;
 
 import static com.threerings.presents.Log.log;
 
@@ -82,14 +113,24 @@ public class PresentsConnectionManager extends ConnectionManager
     {
         super(cycle, LATENCY_GRACE + PingRequest.PING_INTERVAL);
         repmgr.registerReporter(this);
-        _stats = new PresentsConMgrStats();
     }
 
     @Override
-    public synchronized PresentsConMgrStats getStats ()
+    public PresentsConMgrStats getStats ()
     {
-        ((PresentsConMgrStats)_stats).authQueueSize = _authq.size();
-        return ((PresentsConMgrStats)super.getStats());
+        PresentsConMgrStats stats = (PresentsConMgrStats)super.getStats();
+        stats.authQueueSize = _authq.size();
+        stats.encodeQueueSize = _encodeq.size();
+        stats.sharedEncodes = _sharedEncodes.get();
+        stats.compressedBytesIn = _compressedBytesIn.get();
+        stats.compressedBytesOut = _compressedBytesOut.get();
+        return stats;
+    }
+
+    @Override
+    protected PresentsConMgrStats createStats ()
+    {
+        return new PresentsConMgrStats();
     }
 
     // from interface ReportManager.Reporter
@@ -104,6 +145,16 @@ public class PresentsConnectionManager extends ConnectionManager
         long bytesOut = stats.bytesOut - _lastStats.bytesOut;
         long msgsIn = stats.msgsIn - _lastStats.msgsIn;
         long msgsOut = stats.msgsOut - _lastStats.msgsOut;
+        long writesSaved = stats.writesSaved - _lastStats.writesSaved;
+        long sharedEncodes = stats.sharedEncodes - _lastStats.sharedEncodes;
+        long compressedIn = stats.compressedBytesIn - _lastStats.compressedBytesIn;
+        long compressedOut = stats.compressedBytesOut - _lastStats.compressedBytesOut;
+        long overflowDrops = stats.overflowDrops - _lastStats.overflowDrops;
+        int overflowPauses = stats.overflowPauses - _lastStats.overflowPauses;
+        int overflowDisconnects = stats.overflowDisconnects - _lastStats.overflowDisconnects;
+        long[] writeLatency = WriteStats.diff(stats.writeLatency, _lastStats.writeLatency);
+        long[] writeSizes = WriteStats.diff(stats.writeSizes, _lastStats.writeSizes);
+        long[] overflowDwell = WriteStats.diff(stats.overflowDwell, _lastStats.overflowDwell);
         if (reset) {
             _lastStats = stats;
         }
@@ -115,7 +166,10 @@ public class PresentsConnectionManager extends ConnectionManager
         report.append("* presents.net.ConnectionManager:\n");
         report.append("- Network connections: ");
         report.append(stats.connectionCount).append(" connections, ");
-        report.append(stats.handlerCount).append(" handlers\n");
+        report.append(stats.handlerCount).append(" handlers, ");
+        report.append(stats.encodeQueueSize).append(" awaiting encoding, ");
+        report.append(stats.framesInUse).append(" frames in use, ");
+        report.append(stats.frameSlabBytes / 1024).append("k frame slabs\n");
         report.append("- Network activity: ");
         report.append(eventCount).append(" events, ");
         report.append(connects).append(" connects, ");
@@ -134,7 +188,25 @@ public class PresentsConnectionManager extends ConnectionManager
         report.append(msgsOut*1000/sinceLast).append(" mps, ");
         long avgOut = (msgsOut == 0) ? 0 : (bytesOut/msgsOut);
         report.append(avgOut).append(" avg size, ");
-        report.append(bytesOut*1000/sinceLast).append(" bps\n");
+        report.append(bytesOut*1000/sinceLast).append(" bps, ");
+        report.append(writesSaved).append(" writes saved, ");
+        report.append(sharedEncodes).append(" shared encodes, ");
+        report.append(compressedIn).append(" bytes compressed to ");
+        report.append(compressedOut).append("\n");
+        report.append("- Network overflow: ");
+        report.append(stats.overflowBytes).append(" bytes, ");
+        report.append(overflowDrops).append(" drops, ");
+        report.append(overflowPauses).append(" pauses, ");
+        report.append(overflowDisconnects).append(" disconnects\n");
+        report.append("- Network write latency: ");
+        int width = WriteStats.LATENCY_BUCKET;
+        report.append(WriteStats.percentile(writeLatency, width, 0.5)).append("ms median, ");
+        report.append(WriteStats.percentile(writeLatency, width, 0.99)).append("ms 99th, ");
+        report.append(StringUtil.toString(writeLatency)).append("\n");
+        report.append("- Network write sizes: ");
+        report.append(StringUtil.toString(writeSizes)).append("\n");
+        report.append("- Network overflow dwell: ");
+        report.append(StringUtil.toString(overflowDwell)).append("\n");
     }
 
     /**
@@ -224,7 +296,9 @@ public class PresentsConnectionManager extends ConnectionManager
      * <em>Note:</em> this method is called as a result of a call to
      * {@link PresentsConnection#postMessage} which happens when forwarding an event to a client
      * and at the completion of authentication, both of which <em>must</em> happen only on the
-     * distributed object thread.
+     * distributed object thread. Messages that are known to reference nothing that the poster
+     * might go on to modify are handed off to be encoded by one of our encoder threads, others are
+     * encoded right away (see {@link #canEncodeLater}).
      */
     protected void postMessage (PresentsConnection conn, Message msg)
     {
@@ -246,6 +320,133 @@ public class PresentsConnectionManager extends ConnectionManager
             // let it through though as we don't want to break things unnecessarily
         }
 
+        // a client that asked for compact encoding learns that it's getting it from the response to
+        // its auth request (a secure response is sent before that request arrives), and likewise
+        // compression, which is primed with our dictionary only if the client has the same one
+        if (msg instanceof AuthResponse && conn instanceof AuthingConnection) {
+            AuthRequest areq = ((AuthingConnection)conn).getAuthRequest();
+            AuthResponse rsp = (AuthResponse)msg;
+            rsp.setCompactEncoding(_compactEncoding && areq != null && areq.getCompactEncoding());
+            rsp.setAdaptiveInterning(
+                _adaptiveInterning && areq != null && areq.getAdaptiveInterning());
+            rsp.setFieldIndexing(_fieldIndexing && areq != null && areq.getFieldIndexing());
+            rsp.setChunking(_chunkSize > 0 && areq != null && areq.getChunking());
+            if (_compression && areq != null && areq.getCompression()) {
+                int version = (_compressionDictionary == null) ?
+                    0 : _compressionDictionary.getVersion();
+                if (areq.getCompressionDictionary() != version) {
+                    version = 0;
+                }
+                rsp.setCompression(true, version);
+            }
+        }
+
+        enqueueMessage(conn, msg);
+    }
+
+    /**
+     * Queues a message up on its connection's outgoing stream, to be encoded (and queued up for
+     * delivery) after any messages posted before it.
+     */
+    protected void enqueueMessage (PresentsConnection conn, Message msg)
+    {
+        // messages for a connection must be encoded in order, so if this one has to be encoded
+        // right now, so does anything that's waiting to be encoded ahead of it
+        OutgoingStream ostream = conn.getOutgoingStream();
+        if (_encoderCount <= 0 || !canEncodeLater(msg)) {
+            ostream.postAndDrain(conn, msg, _dobjEncoder);
+        } else if (ostream.post(conn, msg)) {
+            _encodeq.append(ostream);
+        }
+    }
+
+    @Override
+    protected void postAsyncClose (Connection conn)
+    {
+        // the messages posted before the close may still be waiting to be encoded, so the close
+        // waits its turn on the outgoing stream, see encodeMessage()
+        if (conn instanceof PresentsConnection) {
+            enqueueMessage((PresentsConnection)conn, ASYNC_CLOSE_MESSAGE);
+        } else {
+            super.postAsyncClose(conn);
+        }
+    }
+
+    /**
+     * Returns true if the supplied message may be encoded on an encoder thread at some point after
+     * it was posted. Code running on the distributed object thread is free to go on modifying
+     * whatever it passed along in a message (distributed objects, set entries, arrays handed to
+     * setters, invocation response arguments), so only messages of types that are known to hold
+     * nothing mutable are encoded later. Everything else is encoded immediately.
+     */
+    protected boolean canEncodeLater (Message msg)
+    {
+        Class<?> mclass = msg.getClass();
+        if (mclass == EventNotification.class) {
+            return canEncodeLater(((EventNotification)msg).getEvent());
+        }
+        if (mclass == CompoundDownstreamMessage.class) {
+            for (DownstreamMessage cmsg : ((CompoundDownstreamMessage)msg).msgs) {
+                if (!canEncodeLater(cmsg)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return (mclass == PongResponse.class || mclass == UpdateThrottleMessage.class ||
+                mclass == FailureResponse.class || mclass == UnsubscribeResponse.class);
+    }
+
+    /**
+     * Returns true if the supplied event may be encoded at some point after it was posted, which
+     * is the case for the standard events whose values are immutable.
+     */
+    protected boolean canEncodeLater (DEvent event)
+    {
+        Class<?> eclass = event.getClass();
+        if (eclass == AttributeChangedEvent.class) {
+            return isImmutable(((AttributeChangedEvent)event).getValue());
+        }
+        if (eclass == ElementUpdatedEvent.class) {
+            return isImmutable(((ElementUpdatedEvent)event).getValue());
+        }
+        if (eclass == EntryRemovedEvent.class) {
+            return isImmutable(((EntryRemovedEvent<?>)event).getKey());
+        }
+        if (eclass == CompoundEvent.class) {
+            for (DEvent cevent : ((CompoundEvent)event).getEvents()) {
+                if (!canEncodeLater(cevent)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return (eclass == ObjectAddedEvent.class || eclass == ObjectRemovedEvent.class);
+    }
+
+    /**
+     * Returns true if the supplied value is of a type whose instances can't be modified.
+     */
+    protected static boolean isImmutable (Object value)
+    {
+        return (value == null || IMMUTABLE_TYPES.contains(value.getClass()) ||
+                value instanceof Enum<?>);
+    }
+
+    /**
+     * Encodes a message and queues it up for delivery. This is called on whichever thread is
+     * encoding the messages for the connection in question, which has exclusive use of the
+     * supplied framer.
+     */
+    protected void encodeMessage (PresentsConnection conn, Message msg, FramingOutputStream framer)
+    {
+        // everything posted before an async close has now been queued up for delivery, so the
+        // close itself can follow it
+        if (msg == ASYNC_CLOSE_MESSAGE) {
+            super.postAsyncClose(conn);
+            return;
+        }
+
         try {
             // send it as a datagram if hinted and possible (pongs must be sent as part of the
             // negotation process)
@@ -255,24 +456,56 @@ public class PresentsConnectionManager extends ConnectionManager
                 return;
             }
 
-            // note the actual transport
+            // note the actual transport (but remember if the sender would have been happy with
+            // less, in which case the message can be dropped if the client gets backed up)
+            boolean droppable = !msg.getTransport().isReliable();
             msg.noteActualTransport(Transport.RELIABLE_ORDERED);
 
-            _framer.resetFrame();
-
-            // flatten this message using the connection's output stream
-            ObjectOutputStream oout = conn.getObjectOutputStream(_framer);
-            oout.writeObject(msg);
+            framer.resetFrame();
+
+            // flatten this message using the connection's output stream (noting whether it
+            // introduces class or intern mappings, or class descriptions, on which subsequent
+            // messages will depend), unless it has already been encoded for another connection
+            // and we can reuse that
+            ObjectOutputStream oout = conn.getObjectOutputStream(framer);
+            int mappings = oout.getMappingCount();
+            EncodedObject encoded = getSharedEncoding(msg, oout);
+            if (encoded != null && encoded.writeTo(oout)) {
+                _sharedEncodes.incrementAndGet();
+            } else {
+                oout.writeObject(msg);
+            }
             oout.flush();
 
-            // now extract that data into a byte array
-            ByteBuffer buffer = _framer.frameAndReturnBuffer();
-            byte[] data = new byte[buffer.limit()];
-            buffer.get(data);
-            // log.info("Flattened " + msg + " into " + data.length + " bytes.");
+            boolean barrier = (oout.getMappingCount() != mappings);
+            int priority = getPriority(msg);
+
+            // compress the frame if the client asked us to, unless it's too small to be worth it
+            // or might not be delivered in the order it was encoded (each frame is compressed in
+            // the context of those compressed before it, so the client must see them in order)
+            ByteBuffer data = framer.frameAndReturnBuffer();
+            FrameCompressor compressor = conn.getOutgoingStream().getCompressor();
+            if (compressor != null && !droppable && priority == Frame.NORMAL_PRIORITY &&
+                    data.remaining() >= _minCompressedSize) {
+                _compressedBytesIn.addAndGet(data.remaining());
+                data = compressor.compressFrame(data);
+                _compressedBytesOut.addAndGet(data.remaining());
+            }
+
+            // everything after an auth response that promises compact encoding, adaptive interning
+            // or compression is encoded accordingly
+            if (msg instanceof AuthResponse) {
+                noteStreamOptions(conn, (AuthResponse)msg, oout);
+            }
 
-            // and slap both on the queue
-            _outq.append(Tuple.<Connection, byte[]>newTuple(conn, data));
+            // now copy that data into a pooled frame (or frames) and slap it on the queue
+            if (conn.getOutgoingStream().getChunking() && data.remaining() > _chunkSize) {
+                postChunks(conn, data, barrier);
+            } else {
+                Frame frame = _framePool.copyOf(data);
+                postMessage(conn, frame.setDroppable(droppable).setBarrier(barrier).setPriority(
+                                priority));
+            }
 
         } catch (Exception e) {
             log.warning("Failure flattening message", "conn", conn, "msg", msg, e);
@@ -280,21 +513,120 @@ public class PresentsConnectionManager extends ConnectionManager
     }
 
     /**
-     * Helper function for {@link #postMessage}; handles posting the message as a datagram.
+     * Configures the encoding of the supplied connection's subsequent messages per the options
+     * promised to it by the auth response that was just encoded.
+     */
+    protected void noteStreamOptions (
+        PresentsConnection conn, AuthResponse rsp, ObjectOutputStream oout)
+    {
+        if (rsp.getCompactEncoding()) {
+            oout.setCompact(true);
+        }
+        if (rsp.getAdaptiveInterning()) {
+            conn.getOutgoingStream().setAdaptiveInterning(true);
+        }
+        if (rsp.getFieldIndexing()) {
+            oout.setFieldIndexing(true);
+        }
+        if (rsp.getChunking()) {
+            conn.getOutgoingStream().setChunking(true);
+        }
+        if (rsp.getCompression()) {
+            conn.getOutgoingStream().setCompressor(new FrameCompressor(
+                (rsp.getCompressionDictionary() == 0) ? null : _compressionDictionary));
+        }
+    }
+
+    /**
+     * Returns the encoding of the supplied message that is shared by all of the connections to
+     * which it is being sent, or null if it must be encoded specifically for the connection at
+     * hand. An event is delivered to each of its subscribers in its own {@link EventNotification},
+     * so we encode the first of these the usual way, and the rest (if any) from a single shared
+     * encoding (one for each combination of the stream options that affect encoding).
+     */
+    protected EncodedObject getSharedEncoding (Message msg, ObjectOutputStream oout)
+    {
+        if (!_shareEncodings || !(msg instanceof EventNotification)) {
+            return null;
+        }
+        EventNotification notification = (EventNotification)msg;
+        SharedEvent shared = _sharedEvents.get(notification.getEvent());
+        if (shared == null) {
+            shared = _sharedEvents.putIfAbsent(
+                notification.getEvent(), new SharedEvent(notification));
+            if (shared == null) {
+                return null; // we're the first
+            }
+        }
+        return shared.getEncoding(
+            notification, oout.isCompact(), oout.isAdaptiveInterning(), oout.isFieldIndexing());
+    }
+
+    /**
+     * Splits a framed message that is larger than our chunk size into chunk frames, which are
+     * reassembled by the client's {@link FramedInputStream}. Higher priority frames may then be
+     * sent between the chunks rather than waiting for the whole message to go out.
+     *
+     * <p> The client reassembles one message at a time, so the chunks of one message must never
+     * be interleaved with those of another. The chunks of every message are therefore sent with
+     * normal priority (whatever the priority of the message), so that they never pass one another,
+     * and only messages sent in a single frame can jump ahead of them.
+     */
+    protected void postChunks (PresentsConnection conn, ByteBuffer data, boolean barrier)
+    {
+        int header = FramingOutputStream.HEADER_SIZE;
+        int payload = Math.max(_chunkSize, MIN_CHUNK_SIZE) - header;
+        int end = data.limit();
+        // every chunk of a compressed message is flagged as such
+        int flags = data.getInt(data.position()) & FramingOutputStream.COMPRESSED_FLAG;
+        for (int pos = header; pos < end; pos += payload) {
+            int length = Math.min(payload, end - pos);
+            // each chunk's header overwrites the end of the previous chunk, which has already
+            // been copied into its frame
+            data.limit(pos + length);
+            data.position(pos - header);
+            data.putInt(pos - header, FramingOutputStream.chunkHeader(
+                            header + length, pos + length == end) | flags);
+            // dropping some of a message's chunks would leave the client unable to reassemble
+            // it, so chunks are never droppable
+            postMessage(conn, _framePool.copyOf(data).setBarrier(barrier).setPriority(
+                            Frame.NORMAL_PRIORITY));
+        }
+    }
+
+    /**
+     * Returns the priority with which the supplied message should be delivered. Control messages,
+     * and messages whose senders don't care in what order they arrive, may be sent ahead of any
+     * bulk traffic queued up for their connection. Invocation responses stay in line, as their
+     * recipients rely on having seen the object modifications that preceded them.
+     */
+    protected int getPriority (Message msg)
+    {
+        if (msg instanceof PongResponse || msg instanceof UpdateThrottleMessage ||
+                msg instanceof BootstrapNotification) {
+            return Frame.HIGH_PRIORITY;
+        }
+        Transport transport = msg.getTransport();
+        return (transport.isReliable() && !transport.isOrdered()) ?
+            Frame.HIGH_PRIORITY : Frame.NORMAL_PRIORITY;
+    }
+
+    /**
+     * Helper function for {@link #encodeMessage}; handles posting the message as a datagram.
      *
      * @return true if the datagram was successfully posted, false if it was too big.
      */
     protected boolean postDatagram (PresentsConnection conn, Message msg)
         throws Exception
     {
-        _flattener.reset();
-
         // flatten the message using the connection's sequencer
         DatagramSequencer sequencer = conn.getDatagramSequencer();
+        ByteArrayOutputStream flattener = conn.getDatagramOutput();
+        flattener.reset();
         sequencer.writeDatagram(msg);
 
         // if the message is too big, we must fall back to sending it through the stream channel
-        if (_flattener.size() > Client.MAX_DATAGRAM_SIZE) {
+        if (flattener.size() > Client.MAX_DATAGRAM_SIZE) {
             return false;
         }
 
@@ -302,22 +634,28 @@ public class PresentsConnectionManager extends ConnectionManager
         msg.noteActualTransport(Transport.UNRELIABLE_UNORDERED);
 
         // extract as a byte array
-        byte[] data = _flattener.toByteArray();
+        byte[] data = flattener.toByteArray();
 
-        // slap it on the queue
+        // slap it on the queue and make sure the conmgr thread sees it promptly
         _dataq.append(Tuple.newTuple(conn, data));
+        wakeup();
 
         return true;
     }
 
     /**
-     * Creates a datagram sequencer for use by a {@link Connection}.
+     * Creates a datagram sequencer for use by a {@link Connection}, which will write its outgoing
+     * datagrams to the supplied buffer using the supplied class dictionary (if not null), and
+     * adaptively interned if so requested.
      */
-    protected DatagramSequencer createDatagramSequencer ()
+    protected DatagramSequencer createDatagramSequencer (
+        ByteArrayOutputStream flattener, ClassDictionary dictionary, boolean adaptive)
     {
+        UnreliableObjectOutputStream uout = new UnreliableObjectOutputStream(flattener);
+        uout.setClassDictionary(dictionary);
+        uout.setAdaptiveInterning(adaptive);
         return new DatagramSequencer(
-            new UnreliableObjectInputStream(new ByteBufferInputStream(_databuf)),
-            new UnreliableObjectOutputStream(_flattener));
+            new UnreliableObjectInputStream(new ByteBufferInputStream(_databuf)), uout);
     }
 
     /**
@@ -355,7 +693,7 @@ public class PresentsConnectionManager extends ConnectionManager
         final SocketChannel sockchan = conn.getChannel();
         try {
             // register our channel with the selector (if this fails, we abandon ship immediately)
-            conn.selkey = sockchan.register(_selector, SelectionKey.OP_CONNECT);
+            conn.selkey = sockchan.register(_primary.selector, SelectionKey.OP_CONNECT);
 
             // start our connection process (now if we fail we need to clean things up)
             NetEventHandler handler;
@@ -369,7 +707,7 @@ public class PresentsConnectionManager extends ConnectionManager
                 // finish the connection process and then wire things up fully
                 handler = new OutgoingConnectionHandler(conn);
             }
-            _handlers.put(conn.selkey, handler);
+            _primary.addHandler(conn.selkey, handler);
 
         } catch (IOException ioe) {
             log.warning("Failed to initiate connection for " + sockchan + ".", ioe);
@@ -377,6 +715,18 @@ public class PresentsConnectionManager extends ConnectionManager
         }
     }
 
+    @Override // from LoopingThread
+    protected void willStart ()
+    {
+        super.willStart();
+
+        for (int ii = 0; ii < _encoderCount; ii++) {
+            EncoderThread thread = new EncoderThread(ii);
+            _encoderThreads.add(thread);
+            thread.start();
+        }
+    }
+
     @Override // from LoopingThread
     protected void iterate ()
     {
@@ -389,6 +739,33 @@ public class PresentsConnectionManager extends ConnectionManager
         }
     }
 
+    @Override // from LoopingThread
+    protected void didShutdown ()
+    {
+        // the distributed object manager is done by now, so let our encoders work through what
+        // they have and then exit
+        for (EncoderThread thread : _encoderThreads) {
+            thread.shutdown();
+        }
+        for (EncoderThread thread : _encoderThreads) {
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                log.warning("Interrupted waiting for encoder to exit", "encoder", thread);
+            }
+        }
+
+        // then encode anything that they left behind ourselves
+        OutgoingStream ostream;
+        while ((ostream = _encodeq.getNonBlocking()) != null) {
+            if (ostream != SHUTDOWN_STREAM) {
+                ostream.drain(_dobjEncoder);
+            }
+        }
+
+        super.didShutdown();
+    }
+
     @Override // from LoopingThread
     public boolean isRunning ()
     {
@@ -435,6 +812,13 @@ public class PresentsConnectionManager extends ConnectionManager
      */
     protected void authenticateConnection (AuthingConnection conn)
     {
+        // if the client has our class dictionary, we can stop sending it the names of the classes
+        // therein (the client would have recognized their codes from the start)
+        if (_classDictionary != null &&
+                conn.getAuthRequest().getClassDictionary() == _classDictionary.getVersion()) {
+            conn.getOutgoingStream().setClassDictionary(_classDictionary);
+        }
+
         Authenticator author = _author;
         for (ChainedAuthenticator cauthor : _authors) {
             if (cauthor.shouldHandleConnection(conn)) {
@@ -473,30 +857,16 @@ public class PresentsConnectionManager extends ConnectionManager
             try {
                 // construct a new running connection to handle this connections network traffic
                 // from here on out
-                PresentsConnection rconn = new PresentsConnection();
+                final PresentsConnection rconn = new PresentsConnection();
                 rconn.init(this, conn.getChannel(), iterStamp);
-                rconn.selkey = conn.selkey;
-
-                // we need to keep using the same object input and output streams from the
-                // beginning of the session because they have context that needs to be preserved
-                rconn.inheritStreams(conn);
 
-                // replace the mapping in the handlers table from the old conn with the new one
-                _handlers.put(rconn.selkey, rconn);
-
-                // add a mapping for the connection id and set the datagram secret
-                _connections.put(rconn.getConnectionId(), rconn);
-                rconn.setDatagramSecret(conn.getAuthRequest().getCredentials().getDatagramSecret());
-
-                // transfer any overflow queue for that connection
-                OverflowQueue oflowHandler = _oflowqs.remove(conn);
-                if (oflowHandler != null) {
-                    _oflowqs.put(rconn, oflowHandler);
-                }
-
-                // and let the client manager know about our new connection
-                _clmgr.connectionEstablished(rconn, conn.getAuthName(), conn.getAuthRequest(),
-                                             conn.getAuthResponse());
+                // the rest has to happen on the thread that does this connection's I/O
+                final AuthingConnection aconn = conn;
+                invokeOnReactor(conn, new Runnable() {
+                    public void run () {
+                        establishConnection(aconn, rconn);
+                    }
+                });
 
             } catch (IOException ioe) {
                 log.warning("Failure upgrading authing connection to running.", ioe);
@@ -504,6 +874,29 @@ public class PresentsConnectionManager extends ConnectionManager
         }
     }
 
+    /**
+     * Replaces an authing connection with its running counterpart. This is called on the thread of
+     * the reactor that manages the connection.
+     */
+    protected void establishConnection (AuthingConnection conn, PresentsConnection rconn)
+    {
+        // we need to keep using the same object input and output streams from the beginning of
+        // the session because they have context that needs to be preserved
+        rconn.inheritStreams(conn);
+
+        // replace the mapping in the handlers table from the old conn with the new one and
+        // transfer any overflow queue for that connection
+        replaceConnection(conn, rconn);
+
+        // add a mapping for the connection id and set the datagram secret
+        _connections.put(rconn.getConnectionId(), rconn);
+        rconn.setDatagramSecret(conn.getAuthRequest().getCredentials().getDatagramSecret());
+
+        // and let the client manager know about our new connection
+        _clmgr.connectionEstablished(rconn, conn.getAuthName(), conn.getAuthRequest(),
+                                     conn.getAuthResponse());
+    }
+
     @Override
     protected void sendOutgoingMessages (long iterStamp)
     {
@@ -552,8 +945,8 @@ public class PresentsConnectionManager extends ConnectionManager
             try {
                 if (sockchan.finishConnect()) {
                     // great, we're ready to roll, wire up the connection
-                    _conn.selkey = sockchan.register(_selector, SelectionKey.OP_READ);
-                    _handlers.put(_conn.selkey, _conn);
+                    _conn.selkey = sockchan.register(_primary.selector, SelectionKey.OP_READ);
+                    _primary.addHandler(_conn.selkey, _conn);
                     log.info("Outgoing connection ready", "conn", _conn);
                 }
             } catch (IOException ioe) {
@@ -575,14 +968,96 @@ public class PresentsConnectionManager extends ConnectionManager
 
         protected void handleError (IOException ioe)
         {
-            _handlers.remove(_conn.selkey);
-            _oflowqs.remove(_conn);
+            _primary.removeHandler(_conn.selkey);
+            OverflowQueue oqueue = _primary.oflowqs.remove(_conn);
+            if (oqueue != null) {
+                oqueue.release();
+            }
             _conn.connectFailure(ioe);
         }
 
         protected final Connection _conn;
     }
 
+    /** Encodes messages for the connections it is handed, in the order in which they were
+     * posted. */
+    protected class EncoderThread extends LoopingThread
+        implements OutgoingStream.Encoder
+    {
+        public EncoderThread (int index)
+        {
+            super("PresentsConnectionManager.Encoder-" + index);
+            setDaemon(true);
+        }
+
+        // from interface OutgoingStream.Encoder
+        public void encode (PresentsConnection conn, Message msg)
+        {
+            encodeMessage(conn, msg, _framer);
+        }
+
+        @Override
+        protected void iterate ()
+        {
+            OutgoingStream ostream = _encodeq.get();
+            if (ostream != SHUTDOWN_STREAM) {
+                ostream.drain(this);
+            }
+        }
+
+        @Override
+        protected void kick ()
+        {
+            _encodeq.append(SHUTDOWN_STREAM);
+        }
+
+        @Override
+        protected void handleIterateFailure (Exception e)
+        {
+            log.warning("Encoder failure", "encoder", getName(), e);
+        }
+
+        /** Our very own framer, as we encode concurrently with the other encoders. */
+        protected FramingOutputStream _framer = new FramingOutputStream();
+    }
+
+    /** Tracks the encoding of an event that is being delivered to many connections. */
+    protected static class SharedEvent
+    {
+        public SharedEvent (EventNotification first)
+        {
+            _messageId = first.messageId;
+        }
+
+        /**
+         * Returns the shared encoding of the supplied notification for streams that are (or are
+         * not) compact, adaptive and field indexing, encoding it if this is the first time it is
+         * needed, or null if it can't be shared.
+         */
+        public synchronized EncodedObject getEncoding (
+            EventNotification notification, boolean compact, boolean adaptive, boolean indexing)
+        {
+            // notifications are only ever sent with a message id of -1, but just in case
+            if (notification.messageId != _messageId) {
+                return null;
+            }
+            int idx = (compact ? 1 : 0) | (adaptive ? 2 : 0) | (indexing ? 4 : 0);
+            if (_encoded[idx] == null && !_failed[idx]) {
+                try {
+                    _encoded[idx] = new EncodedObject(notification, compact, adaptive, indexing);
+                } catch (Exception e) {
+                    // we'll log the failure when the notification is encoded the usual way
+                    _failed[idx] = true;
+                }
+            }
+            return _encoded[idx];
+        }
+
+        protected short _messageId;
+        protected EncodedObject[] _encoded = new EncodedObject[8];
+        protected boolean[] _failed = new boolean[8];
+    }
+
     /** Handles client authentication. The base authenticator is injected but optional services
      * like the PeerManager may replace this authenticator with one that intercepts certain types
      * of authentication and then passes normal authentications through. */
@@ -596,8 +1071,83 @@ public class PresentsConnectionManager extends ConnectionManager
     /** failed (idled out) outgoing connections that need to be cleaned up */
     protected Queue<OutgoingConnectionHandler> _outfailq = Queue.newQueue();
 
-    protected FramingOutputStream _framer = new FramingOutputStream();
-    protected ByteArrayOutputStream _flattener = new ByteArrayOutputStream();
+    /** The number of threads used to encode outgoing messages, or zero to encode them on the
+     * distributed object thread as they are posted. */
+    @Inject(optional=true) @Named("presents.net.encoderCount")
+    protected int _encoderCount = 2;
+
+    /** Messages larger than this many bytes (once framed) are sent to clients that can reassemble
+     * them as a series of chunk frames of at most this size, or zero to send all messages in a
+     * single frame. */
+    @Inject(optional=true) @Named("presents.net.chunkSize")
+    protected int _chunkSize = 64 * 1024;
+
+    /** Whether or not to encode events that are sent to many connections only once. */
+    @Inject(optional=true) @Named("presents.net.shareEncodings")
+    protected boolean _shareEncodings = true;
+
+    /** Whether or not to send integers and lengths in their compact encoding to clients that ask
+     * for it. */
+    @Inject(optional=true) @Named("presents.net.compactEncoding")
+    protected boolean _compactEncoding = true;
+
+    /** Whether or not to adaptively intern the strings sent to clients that ask for it. */
+    @Inject(optional=true) @Named("presents.net.adaptiveInterning")
+    protected boolean _adaptiveInterning = true;
+
+    /** Whether or not to identify the fields named by events by index for clients that ask for
+     * it. */
+    @Inject(optional=true) @Named("presents.net.fieldIndexing")
+    protected boolean _fieldIndexing = true;
+
+    /** Whether or not to compress the frames sent to clients that ask for it. */
+    @Inject(optional=true) @Named("presents.net.compression")
+    protected boolean _compression = true;
+
+    /** Frames smaller than this many bytes are never compressed. */
+    @Inject(optional=true) @Named("presents.net.minCompressedSize")
+    protected int _minCompressedSize = 64;
+
+    /** The events currently being encoded for delivery to their subscribers. These are weakly
+     * referenced, so they go away once each subscriber's notification has been encoded. */
+    protected ConcurrentMap<DEvent, SharedEvent> _sharedEvents =
+        new MapMaker().weakKeys().makeMap();
+
+    /** The number of messages written from a shared encoding since the server started up. */
+    protected AtomicLong _sharedEncodes = new AtomicLong();
+
+    /** The number of bytes in frames that we've compressed since the server started up, before
+     * and after compression. */
+    protected AtomicLong _compressedBytesIn = new AtomicLong();
+    protected AtomicLong _compressedBytesOut = new AtomicLong();
+
+    /** The dictionary of well-known classes that we use with clients that have the same one, or
+     * null. */
+    @Inject(optional=true) protected ClassDictionary _classDictionary;
+
+    /** The dictionary with which we prime the compression of frames sent to clients that have
+     * the same one, or null. */
+    @Inject(optional=true) protected CompressionDictionary _compressionDictionary;
+
+    /** Our encoder threads. */
+    protected List<EncoderThread> _encoderThreads = Lists.newArrayList();
+
+    /** Outgoing streams with messages waiting to be encoded by one of our encoder threads. */
+    protected Queue<OutgoingStream> _encodeq = Queue.newQueue();
+
+    /** Encodes messages on the distributed object threads, when they can't wait. */
+    protected OutgoingStream.Encoder _dobjEncoder = new OutgoingStream.Encoder() {
+        public void encode (PresentsConnection conn, Message msg) {
+            encodeMessage(conn, msg, _framer.get());
+        }
+    };
+
+    /** Used by {@link #_dobjEncoder}, which may be called by any of our event loops at once. */
+    protected ThreadLocal<FramingOutputStream> _framer = new ThreadLocal<FramingOutputStream>() {
+        @Override protected FramingOutputStream initialValue () {
+            return new FramingOutputStream();
+        }
+    };
 
     // some dependencies
     @Inject @AuthInvoker protected Invoker _authInvoker;
@@ -609,4 +1159,18 @@ public class PresentsConnectionManager extends ConnectionManager
 
     protected Queue<Tuple<PresentsConnection, byte[]>> _dataq = Queue.newQueue();
     protected ByteBuffer _databuf = ByteBuffer.allocateDirect(Client.MAX_DATAGRAM_SIZE);
+
+    /** The smallest chunks into which we'll split large messages. */
+    protected static final int MIN_CHUNK_SIZE = 1024;
+
+    /** The types of values that can't be modified once they are posted in an event. */
+    protected static final Set<Class<?>> IMMUTABLE_TYPES = ImmutableSet.<Class<?>>of(
+        String.class, Boolean.class, Byte.class, Character.class, Short.class, Integer.class,
+        Long.class, Float.class, Double.class);
+
+    /** Stands in for an async close request on a connection's outgoing stream. */
+    protected static final Message ASYNC_CLOSE_MESSAGE = new Message() {};
+
+    /** Wakes up an encoder thread so that it notices that it has been shut down. */
+    protected static final OutgoingStream SHUTDOWN_STREAM = new OutgoingStream();
 }
@@ -59,10 +59,8 @@ public class StreamableArrayIntSet extends ArrayIntSet
     public void writeObject (ObjectOutputStream out)
         throws IOException
     {
-        out.writeInt(_size);
-        for (int ii = 0; ii < _size; ii++) {
-            out.writeInt(_values[ii]);
-        }
+        out.writeLength(_size);
+        out.writeCompactInts(_values, 0, _size);
     }
 
     /**
@@ -71,10 +69,8 @@ public class StreamableArrayIntSet extends ArrayIntSet
     public void readObject (ObjectInputStream in)
         throws IOException, ClassNotFoundException
     {
-        _size = in.readInt();
+        _size = in.readLength();
         _values = new int[Math.max(_size, DEFAULT_CAPACITY)];
-        for (int ii = 0; ii < _size; ii++) {
-            _values[ii] = in.readInt();
-        }
+        in.readCompactInts(_values, 0, _size);
     }
 }
@@ -57,7 +57,7 @@ public class StreamableArrayList<E> extends ArrayList<E>
         throws IOException
     {
         int ecount = size();
-        out.writeInt(ecount);
+        out.writeLength(ecount);
         for (int ii = 0; ii < ecount; ii++) {
             out.writeObject(get(ii));
         }
@@ -69,7 +69,7 @@ public class StreamableArrayList<E> extends ArrayList<E>
     public void readObject (ObjectInputStream in)
         throws IOException, ClassNotFoundException
     {
-        int ecount = in.readInt();
+        int ecount = in.readLength();
         ensureCapacity(ecount);
         for (int ii = 0; ii < ecount; ii++) {
             @SuppressWarnings("unchecked") E elem = (E)in.readObject();
@@ -19,19 +19,36 @@
 // License along with this library; if not, write to the Free Software
 // Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
 
+
 package com.threerings.util;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
 import java.io.IOException;
 
+import com.google.common.base.Objects;
+
+import com.samskivert.util.AbstractIntSet;
 import com.samskivert.util.HashIntMap;
+import com.samskivert.util.IntMap;
+import com.samskivert.util.IntSet;
+import com.samskivert.util.Interator;
 
 import com.threerings.io.ObjectInputStream;
 import com.threerings.io.ObjectOutputStream;
 import com.threerings.io.Streamable;
 
 /**
- * A {@link HashIntMap} extension that can be streamed. The keys and values in the map must also
- * be of streamable types.
+ * A {@link HashIntMap} that can be streamed. The values in the map must also be of streamable
+ * types. Rather than the chained records of its superclass, it keeps its entries in
+ * open-addressed arrays of primitive keys and of values, so it allocates nothing per entry, and
+ * it is streamed as an array of keys followed by the values.
  *
  * @see Streamable
  * @param <V> the type of value stored in this map.
@@ -40,19 +57,205 @@ public class StreamableHashIntMap<V> extends HashIntMap<V>
     implements Streamable
 {
     /**
-     * Constructs an empty hash int map with the specified number of hash buckets.
+     * Constructs an empty hash int map with room for the specified number of entries. The load
+     * factor is ignored.
      */
     public StreamableHashIntMap (int buckets, float loadFactor)
     {
-        super(buckets, loadFactor);
+        super(1, loadFactor); // our superclass's buckets go unused
+        createTable(getCapacity(buckets));
     }
 
     /**
-     * Constructs an empty hash int map with the default number of hash buckets.
+     * Constructs an empty hash int map with the default capacity.
      */
     public StreamableHashIntMap ()
     {
-        super();
+        this(DEFAULT_BUCKETS, DEFAULT_LOAD_FACTOR);
+    }
+
+    @Override
+    public int size ()
+    {
+        return _count;
+    }
+
+    @Override
+    public boolean containsKey (Object key)
+    {
+        return (key instanceof Integer) && containsKey(((Integer)key).intValue());
+    }
+
+    @Override
+    public boolean containsKey (int key)
+    {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue (Object value)
+    {
+        for (int ii = 0; ii < _states.length; ii++) {
+            if (_states[ii] == FULL && Objects.equal(_values[ii], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V get (Object key)
+    {
+        return (key instanceof Integer) ? get(((Integer)key).intValue()) : null;
+    }
+
+    @Override
+    public V get (int key)
+    {
+        int idx = find(key);
+        return (idx >= 0) ? valueAt(idx) : null;
+    }
+
+    @Override
+    public V put (Integer key, V value)
+    {
+        return put(key.intValue(), value);
+    }
+
+    @Override
+    public V put (int key, V value)
+    {
+        int idx = find(key);
+        if (idx >= 0) {
+            V ovalue = valueAt(idx);
+            _values[idx] = value;
+            return ovalue;
+        }
+        insert(key, value, idx);
+        return null;
+    }
+
+    @Override
+    public V remove (Object key)
+    {
+        return (key instanceof Integer) ? remove(((Integer)key).intValue()) : null;
+    }
+
+    @Override
+    public V remove (int key)
+    {
+        int idx = find(key);
+        if (idx < 0) {
+            return null;
+        }
+        V value = valueAt(idx);
+        removeAt(idx);
+        return value;
+    }
+
+    @Override
+    public void putAll (IntMap<V> map)
+    {
+        ensureCapacity(_count + map.size());
+        for (IntEntry<V> entry : map.intEntrySet()) {
+            put(entry.getIntKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void clear ()
+    {
+        Arrays.fill(_states, FREE);
+        Arrays.fill(_values, null);
+        _count = _removed = 0;
+        _modCount++;
+    }
+
+    @Override
+    public void ensureCapacity (int minCapacity)
+    {
+        int capacity = getCapacity(minCapacity);
+        if (capacity > _keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, V>> entrySet ()
+    {
+        return new AbstractSet<Map.Entry<Integer, V>>() {
+            @Override public int size () {
+                return _count;
+            }
+            @Override public Iterator<Map.Entry<Integer, V>> iterator () {
+                return new EntryIterator<Map.Entry<Integer, V>>();
+            }
+        };
+    }
+
+    @Override
+    public Set<IntEntry<V>> intEntrySet ()
+    {
+        return new AbstractSet<IntEntry<V>>() {
+            @Override public int size () {
+                return _count;
+            }
+            @Override public Iterator<IntEntry<V>> iterator () {
+                return new EntryIterator<IntEntry<V>>();
+            }
+        };
+    }
+
+    @Override
+    public IntSet intKeySet ()
+    {
+        return new AbstractIntSet() {
+            public Interator interator () {
+                return keys();
+            }
+            @Override public int size () {
+                return _count;
+            }
+            @Override public boolean contains (int key) {
+                return containsKey(key);
+            }
+            @Override public boolean remove (int key) {
+                int idx = find(key);
+                if (idx < 0) {
+                    return false;
+                }
+                removeAt(idx);
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public Set<Integer> keySet ()
+    {
+        return intKeySet();
+    }
+
+    @Override
+    public Interator keys ()
+    {
+        return new KeyIterator();
+    }
+
+    @Override
+    public Iterator<V> elements ()
+    {
+        return new ValueIterator();
+    }
+
+    @Override
+    public StreamableHashIntMap<V> clone ()
+    {
+        StreamableHashIntMap<V> copy = (StreamableHashIntMap<V>)super.clone();
+        copy._keys = _keys.clone();
+        copy._values = _values.clone();
+        copy._states = _states.clone();
+        return copy;
     }
 
     /**
@@ -61,11 +264,18 @@ public class StreamableHashIntMap<V> extends HashIntMap<V>
     public void writeObject (ObjectOutputStream out)
         throws IOException
     {
-        int ecount = size();
-        out.writeInt(ecount);
-        for (IntEntry<V> entry : intEntrySet()) {
-            out.writeInt(entry.getIntKey());
-            out.writeObject(entry.getValue());
+        out.writeLength(_count);
+        int[] keys = new int[_count];
+        for (int ii = 0, idx = 0; idx < _count; ii++) {
+            if (_states[ii] == FULL) {
+                keys[idx++] = _keys[ii];
+            }
+        }
+        out.writeCompactInts(keys, 0, keys.length);
+        for (int ii = 0; ii < _states.length; ii++) {
+            if (_states[ii] == FULL) {
+                out.writeObject(_values[ii]);
+            }
         }
     }
 
@@ -75,12 +285,274 @@ public class StreamableHashIntMap<V> extends HashIntMap<V>
     public void readObject (ObjectInputStream in)
         throws IOException, ClassNotFoundException
     {
-        int ecount = in.readInt();
+        int ecount = in.readLength();
+        int[] keys = new int[ecount];
+        in.readCompactInts(keys);
+        clear();
         ensureCapacity(ecount);
         for (int ii = 0; ii < ecount; ii++) {
-            int key = in.readInt();
             @SuppressWarnings("unchecked") V value = (V)in.readObject();
-            put(key, value);
+            put(keys[ii], value);
         }
     }
+
+    /**
+     * Returns the value at the specified index.
+     */
+    @SuppressWarnings("unchecked")
+    protected V valueAt (int idx)
+    {
+        return (V)_values[idx];
+    }
+
+    /**
+     * Returns the index of the supplied key's entry if it has one, otherwise a negative value
+     * from which {@link #insert} determines where to put it.
+     */
+    protected int find (int key)
+    {
+        int mask = _keys.length - 1, removed = -1;
+        for (int idx = hash(key) & mask; ; idx = (idx + 1) & mask) {
+            byte state = _states[idx];
+            if (state == FREE) {
+                return -1 - ((removed < 0) ? idx : removed);
+            } else if (state == FULL) {
+                if (_keys[idx] == key) {
+                    return idx;
+                }
+            } else if (removed < 0) {
+                removed = idx;
+            }
+        }
+    }
+
+    /**
+     * Adds an entry for a key that {@link #find} did not find.
+     */
+    protected void insert (int key, V value, int found)
+    {
+        int idx = -1 - found;
+        if (_states[idx] == REMOVED) {
+            _removed--;
+        } else if (_count + _removed + 1 > getLimit(_keys.length)) {
+            // make more room, or just clear out our removed entries
+            rehash(getCapacity(_count + 1));
+            idx = -1 - find(key);
+        }
+        _keys[idx] = key;
+        _values[idx] = value;
+        _states[idx] = FULL;
+        _count++;
+        _modCount++;
+    }
+
+    /**
+     * Removes the entry at the specified index.
+     */
+    protected void removeAt (int idx)
+    {
+        _values[idx] = null;
+        _states[idx] = REMOVED;
+        _count--;
+        _removed++;
+        _modCount++;
+    }
+
+    /**
+     * Creates our arrays with the specified capacity.
+     */
+    protected void createTable (int capacity)
+    {
+        _keys = new int[capacity];
+        _values = new Object[capacity];
+        _states = new byte[capacity];
+        _count = _removed = 0;
+    }
+
+    /**
+     * Moves our entries into new arrays of the specified capacity.
+     */
+    protected void rehash (int capacity)
+    {
+        int[] okeys = _keys;
+        Object[] ovalues = _values;
+        byte[] ostates = _states;
+        createTable(capacity);
+        for (int ii = 0; ii < okeys.length; ii++) {
+            if (ostates[ii] == FULL) {
+                int idx = -1 - find(okeys[ii]);
+                _keys[idx] = okeys[ii];
+                _values[idx] = ovalues[ii];
+                _states[idx] = FULL;
+                _count++;
+            }
+        }
+        _modCount++;
+    }
+
+    /** Iterates over the indices of our entries. */
+    protected abstract class Cursor
+    {
+        public boolean hasNext () {
+            checkMods();
+            for (; _next < _states.length; _next++) {
+                if (_states[_next] == FULL) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void remove () {
+            checkMods();
+            if (_last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(_last);
+            _last = -1;
+            _expectedMods = _modCount;
+        }
+
+        /** Returns the index of the next entry. */
+        protected int advance () {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return (_last = _next++);
+        }
+
+        protected void checkMods () {
+            if (_modCount != _expectedMods) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        protected int _next, _last = -1, _expectedMods = _modCount;
+    }
+
+    /** Iterates over our keys. */
+    protected class KeyIterator extends Cursor
+        implements Interator
+    {
+        public int nextInt () {
+            return _keys[advance()];
+        }
+
+        public Integer next () {
+            return nextInt();
+        }
+    }
+
+    /** Iterates over our values. */
+    protected class ValueIterator extends Cursor
+        implements Iterator<V>
+    {
+        public V next () {
+            return valueAt(advance());
+        }
+    }
+
+    /** Iterates over our entries, as either sort of entry. */
+    protected class EntryIterator<E extends Map.Entry<Integer, V>> extends Cursor
+        implements Iterator<E>
+    {
+        @SuppressWarnings("unchecked")
+        public E next () {
+            return (E)new Entry(advance());
+        }
+    }
+
+    /** Provides access to one of our entries. */
+    protected class Entry
+        implements IntEntry<V>
+    {
+        public Entry (int idx) {
+            _idx = idx;
+        }
+
+        public int getIntKey () {
+            return _keys[_idx];
+        }
+
+        public Integer getKey () {
+            return _keys[_idx];
+        }
+
+        public V getValue () {
+            return valueAt(_idx);
+        }
+
+        public V setValue (V value) {
+            V ovalue = valueAt(_idx);
+            _values[_idx] = value;
+            return ovalue;
+        }
+
+        @Override public boolean equals (Object other) {
+            if (!(other instanceof Map.Entry<?, ?>)) {
+                return false;
+            }
+            Map.Entry<?, ?> oentry = (Map.Entry<?, ?>)other;
+            return getKey().equals(oentry.getKey()) && Objects.equal(getValue(), oentry.getValue());
+        }
+
+        @Override public int hashCode () {
+            V value = getValue();
+            return getIntKey() ^ ((value == null) ? 0 : value.hashCode());
+        }
+
+        @Override public String toString () {
+            return getIntKey() + "=" + getValue();
+        }
+
+        protected int _idx;
+    }
+
+    /**
+     * Returns the capacity of the arrays needed to hold the specified number of entries.
+     */
+    protected static int getCapacity (int entries)
+    {
+        int capacity = MIN_CAPACITY;
+        while (getLimit(capacity) < entries) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Returns the number of slots in arrays of the specified capacity that may be occupied (by
+     * current or removed entries) before the arrays must be rehashed.
+     */
+    protected static int getLimit (int capacity)
+    {
+        return capacity - (capacity >> 2);
+    }
+
+    /**
+     * Scrambles a key so that sequential keys don't cluster in our arrays.
+     */
+    protected static int hash (int key)
+    {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /** Our keys and values, and the state of each slot in our arrays. Our superclass's size and
+     * buckets go unused. */
+    protected int[] _keys;
+    protected Object[] _values;
+    protected byte[] _states;
+
+    /** The number of entries in our map, and the number of slots that hold removed entries. */
+    protected int _count, _removed;
+
+    /** Incremented whenever our entries are added or removed, so that iterators can detect it. */
+    protected int _modCount;
+
+    /** The states of the slots in our arrays. */
+    protected static final byte FREE = 0, FULL = 1, REMOVED = 2;
+
+    /** The smallest capacity of our arrays. */
+    protected static final int MIN_CAPACITY = 4;
 }
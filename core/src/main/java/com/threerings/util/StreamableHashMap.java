@@ -92,7 +92,7 @@ public class StreamableHashMap<K, V> extends HashMap<K, V>
         throws IOException
     {
         int ecount = size();
-        out.writeInt(ecount);
+        out.writeLength(ecount);
         for (Map.Entry<K, V> entry : entrySet()) {
             out.writeObject(entry.getKey());
             out.writeObject(entry.getValue());
@@ -105,7 +105,7 @@ public class StreamableHashMap<K, V> extends HashMap<K, V>
     public void readObject (ObjectInputStream in)
         throws IOException, ClassNotFoundException
     {
-        int ecount = in.readInt();
+        int ecount = in.readLength();
         for (int ii = 0; ii < ecount; ii++) {
             @SuppressWarnings("unchecked") K key = (K)in.readObject();
             @SuppressWarnings("unchecked") V value = (V)in.readObject();
@@ -69,7 +69,7 @@ public class StreamableHashSet<E> extends HashSet<E>
     public void writeObject (ObjectOutputStream out)
         throws IOException
     {
-        out.writeInt(size());
+        out.writeLength(size());
         for (E value : this) {
             out.writeObject(value);
         }
@@ -81,7 +81,7 @@ public class StreamableHashSet<E> extends HashSet<E>
     public void readObject (ObjectInputStream in)
         throws IOException, ClassNotFoundException
     {
-        int ecount = in.readInt();
+        int ecount = in.readLength();
         for (int ii = 0; ii < ecount; ii++) {
             @SuppressWarnings("unchecked") E value = (E)in.readObject();
             add(value);
@@ -19,19 +19,31 @@
 // License along with this library; if not, write to the Free Software
 // Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
 
+
 package com.threerings.util;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
 import java.io.IOException;
 
+import com.samskivert.util.AbstractIntSet;
 import com.samskivert.util.IntIntMap;
+import com.samskivert.util.IntSet;
+import com.samskivert.util.Interator;
 
 import com.threerings.io.ObjectInputStream;
 import com.threerings.io.ObjectOutputStream;
 import com.threerings.io.Streamable;
 
 /**
- * A {@link IntIntMap} extension that can be streamed. The keys and
- * values in the map must also be of streamable types.
+ * An {@link IntIntMap} that can be streamed. Rather than the chained records of its superclass,
+ * it keeps its entries in open-addressed arrays of primitive keys and values, so it allocates
+ * nothing per entry, and it is streamed as an array of keys followed by an array of values.
  *
  * @see Streamable
  */
@@ -39,21 +51,190 @@ public class StreamableIntIntMap extends IntIntMap
     implements Streamable
 {
     /**
-     * Constructs an empty int int map with the specified number of
-     * buckets.
+     * Constructs an empty int int map with room for the specified number of entries.
      */
     public StreamableIntIntMap (int buckets)
     {
-        super(buckets);
+        super(1); // our superclass's buckets go unused
+        createTable(getCapacity(buckets));
     }
 
     /**
-     * Constructs an empty hash int map with the default number of hash
-     * buckets.
+     * Constructs an empty int int map with the default capacity.
      */
     public StreamableIntIntMap ()
     {
-        super();
+        this(DEFAULT_BUCKETS);
+    }
+
+    @Override
+    public boolean isEmpty ()
+    {
+        return _count == 0;
+    }
+
+    @Override
+    public int size ()
+    {
+        return _count;
+    }
+
+    @Override
+    public void put (int key, int value)
+    {
+        int idx = find(key);
+        if (idx >= 0) {
+            _values[idx] = value;
+        } else {
+            insert(key, value, idx);
+        }
+    }
+
+    @Override
+    public int get (int key)
+    {
+        return getOrElse(key, -1);
+    }
+
+    @Override
+    public int getOrElse (int key, int defval)
+    {
+        int idx = find(key);
+        return (idx >= 0) ? _values[idx] : defval;
+    }
+
+    @Override
+    public int increment (int key, int amount)
+    {
+        int idx = find(key);
+        if (idx >= 0) {
+            return (_values[idx] += amount);
+        }
+        insert(key, amount, idx);
+        return amount;
+    }
+
+    /**
+     * @deprecated use {@link #containsKey(int)}. This is only here because our superclass would
+     * look for the key in its own (empty) records.
+     */
+    @Override @Deprecated
+    public boolean contains (int key)
+    {
+        return containsKey(key);
+    }
+
+    @Override
+    public boolean containsKey (int key)
+    {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public int remove (int key)
+    {
+        return removeOrElse(key, -1);
+    }
+
+    @Override
+    public int removeOrElse (int key, int defval)
+    {
+        int idx = find(key);
+        if (idx < 0) {
+            return defval;
+        }
+        int value = _values[idx];
+        removeAt(idx);
+        return value;
+    }
+
+    @Override
+    public void clear ()
+    {
+        Arrays.fill(_states, FREE);
+        _count = _removed = 0;
+        _modCount++;
+    }
+
+    @Override
+    public void ensureCapacity (int minCapacity)
+    {
+        int capacity = getCapacity(minCapacity);
+        if (capacity > _keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    @Override
+    public Interator keys ()
+    {
+        return new IntCursor() {
+            public int nextInt () {
+                return _keys[advance()];
+            }
+        };
+    }
+
+    @Override
+    public IntSet keySet ()
+    {
+        return new AbstractIntSet() {
+            public Interator interator () {
+                return keys();
+            }
+            @Override public int size () {
+                return _count;
+            }
+            @Override public boolean contains (int key) {
+                return containsKey(key);
+            }
+            @Override public boolean remove (int key) {
+                int idx = find(key);
+                if (idx < 0) {
+                    return false;
+                }
+                removeAt(idx);
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public Interator values ()
+    {
+        return new IntCursor() {
+            public int nextInt () {
+                return _values[advance()];
+            }
+        };
+    }
+
+    @Override
+    public Set<IntIntEntry> entrySet ()
+    {
+        return new AbstractSet<IntIntEntry>() {
+            @Override public int size () {
+                return _count;
+            }
+            @Override public Iterator<IntIntEntry> iterator () {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    @Override
+    public String toString ()
+    {
+        int[] keys = getKeys();
+        Arrays.sort(keys);
+        StringBuilder buf = new StringBuilder("[");
+        for (int ii = 0; ii < keys.length; ii++) {
+            if (ii > 0) {
+                buf.append(", ");
+            }
+            buf.append(keys[ii]).append("->").append(get(keys[ii]));
+        }
+        return buf.append("]").toString();
     }
 
     /**
@@ -62,12 +243,11 @@ public class StreamableIntIntMap extends IntIntMap
     public void writeObject (ObjectOutputStream out)
         throws IOException
     {
-        int ecount = size();
-        out.writeInt(ecount);
-        for (IntIntEntry entry : entrySet()) {
-            out.writeInt(entry.getIntKey());
-            out.writeInt(entry.getIntValue());
-        }
+        out.writeLength(_count);
+        int[] keys = toIntArray(true);
+        out.writeCompactInts(keys, 0, keys.length);
+        int[] values = toIntArray(false);
+        out.writeCompactInts(values, 0, values.length);
     }
 
     /**
@@ -76,11 +256,235 @@ public class StreamableIntIntMap extends IntIntMap
     public void readObject (ObjectInputStream in)
         throws IOException, ClassNotFoundException
     {
-        int ecount = in.readInt();
+        int ecount = in.readLength();
+        int[] keys = new int[ecount], values = new int[ecount];
+        in.readCompactInts(keys);
+        in.readCompactInts(values);
+        clear();
         ensureCapacity(ecount);
         for (int ii = 0; ii < ecount; ii++) {
-            int key = in.readInt();
-            put(key, in.readInt());
+            put(keys[ii], values[ii]);
+        }
+    }
+
+    @Override
+    protected int[] toIntArray (boolean keys)
+    {
+        int[] source = keys ? _keys : _values, values = new int[_count];
+        for (int ii = 0, idx = 0; idx < _count; ii++) {
+            if (_states[ii] == FULL) {
+                values[idx++] = source[ii];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the index of the supplied key's entry if it has one, otherwise a negative value
+     * from which {@link #insert} determines where to put it.
+     */
+    protected int find (int key)
+    {
+        int mask = _keys.length - 1, removed = -1;
+        for (int idx = hash(key) & mask; ; idx = (idx + 1) & mask) {
+            byte state = _states[idx];
+            if (state == FREE) {
+                return -1 - ((removed < 0) ? idx : removed);
+            } else if (state == FULL) {
+                if (_keys[idx] == key) {
+                    return idx;
+                }
+            } else if (removed < 0) {
+                removed = idx;
+            }
+        }
+    }
+
+    /**
+     * Adds an entry for a key that {@link #find} did not find.
+     */
+    protected void insert (int key, int value, int found)
+    {
+        int idx = -1 - found;
+        if (_states[idx] == REMOVED) {
+            _removed--;
+        } else if (_count + _removed + 1 > getLimit(_keys.length)) {
+            // make more room, or just clear out our removed entries
+            rehash(getCapacity(_count + 1));
+            idx = -1 - find(key);
+        }
+        _keys[idx] = key;
+        _values[idx] = value;
+        _states[idx] = FULL;
+        _count++;
+        _modCount++;
+    }
+
+    /**
+     * Removes the entry at the specified index.
+     */
+    protected void removeAt (int idx)
+    {
+        _states[idx] = REMOVED;
+        _count--;
+        _removed++;
+        _modCount++;
+    }
+
+    /**
+     * Creates our arrays with the specified capacity.
+     */
+    protected void createTable (int capacity)
+    {
+        _keys = new int[capacity];
+        _values = new int[capacity];
+        _states = new byte[capacity];
+        _count = _removed = 0;
+    }
+
+    /**
+     * Moves our entries into new arrays of the specified capacity.
+     */
+    protected void rehash (int capacity)
+    {
+        int[] okeys = _keys, ovalues = _values;
+        byte[] ostates = _states;
+        createTable(capacity);
+        for (int ii = 0; ii < okeys.length; ii++) {
+            if (ostates[ii] == FULL) {
+                int idx = -1 - find(okeys[ii]);
+                _keys[idx] = okeys[ii];
+                _values[idx] = ovalues[ii];
+                _states[idx] = FULL;
+                _count++;
+            }
+        }
+        _modCount++;
+    }
+
+    /** Iterates over the indices of our entries. */
+    protected abstract class Cursor
+    {
+        public boolean hasNext () {
+            checkMods();
+            for (; _next < _states.length; _next++) {
+                if (_states[_next] == FULL) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void remove () {
+            checkMods();
+            if (_last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(_last);
+            _last = -1;
+            _expectedMods = _modCount;
+        }
+
+        /** Returns the index of the next entry. */
+        protected int advance () {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return (_last = _next++);
+        }
+
+        protected void checkMods () {
+            if (_modCount != _expectedMods) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        protected int _next, _last = -1, _expectedMods = _modCount;
+    }
+
+    /** Iterates over our keys or values. */
+    protected abstract class IntCursor extends Cursor
+        implements Interator
+    {
+        public Integer next () {
+            return nextInt();
         }
     }
+
+    /** Iterates over our entries. */
+    protected class EntryIterator extends Cursor
+        implements Iterator<IntIntEntry>
+    {
+        public IntIntEntry next () {
+            final int idx = advance();
+            return new IntIntEntry() {
+                public int getIntKey () {
+                    return _keys[idx];
+                }
+                public Integer getKey () {
+                    return _keys[idx];
+                }
+                public int getIntValue () {
+                    return _values[idx];
+                }
+                public Integer getValue () {
+                    return _values[idx];
+                }
+                public int setIntValue (int value) {
+                    int ovalue = _values[idx];
+                    _values[idx] = value;
+                    return ovalue;
+                }
+                public Integer setValue (Integer value) {
+                    return setIntValue(value);
+                }
+                @Override public String toString () {
+                    return _keys[idx] + "->" + _values[idx];
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns the capacity of the arrays needed to hold the specified number of entries.
+     */
+    protected static int getCapacity (int entries)
+    {
+        int capacity = MIN_CAPACITY;
+        while (getLimit(capacity) < entries) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Returns the number of slots in arrays of the specified capacity that may be occupied (by
+     * current or removed entries) before the arrays must be rehashed.
+     */
+    protected static int getLimit (int capacity)
+    {
+        return capacity - (capacity >> 2);
+    }
+
+    /**
+     * Scrambles a key so that sequential keys don't cluster in our arrays.
+     */
+    protected static int hash (int key)
+    {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /** Our keys and values, and the state of each slot in our arrays. */
+    protected int[] _keys, _values;
+    protected byte[] _states;
+
+    /** The number of entries in our map, and the number of slots that hold removed entries. */
+    protected int _count, _removed;
+
+    /** The states of the slots in our arrays. */
+    protected static final byte FREE = 0, FULL = 1, REMOVED = 2;
+
+    /** The smallest capacity of our arrays. */
+    protected static final int MIN_CAPACITY = 4;
 }
@@ -0,0 +1,132 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests adaptive interning.
+ */
+public class AdaptiveInterningTest
+{
+    public static class Chat extends SimpleStreamableObject
+    {
+        public String speaker;
+        public String bundle;
+        public String message;
+    }
+
+    @Test public void testLearning ()
+        throws Exception
+    {
+        List<Object> chats = Lists.newArrayList();
+        for (int ii = 0; ii < 100; ii++) {
+            chats.add(createChat("speaker" + (ii % 5), "chat", "message " + ii));
+        }
+
+        // the repeated strings should be learned, and everything should come out as it went in
+        int plain = write(chats, false).length;
+        byte[] data = write(chats, true);
+        assertTrue(plain + " vs. " + data.length, data.length < plain * 3/4);
+        assertEquals(chats.toString(), read(data).toString());
+    }
+
+    @Test public void testForgetting ()
+        throws Exception
+    {
+        // write more repeated strings than can be learned at once, so that codes are reused
+        List<Object> chats = Lists.newArrayList();
+        int count = ObjectOutputStream.MAX_LEARNED_STRINGS * 3;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int ii = 0; ii < count; ii++) {
+                chats.add(createChat("speaker" + ii, "chat", null));
+                chats.add(createChat("speaker" + ii, "chat", null));
+            }
+        }
+        assertEquals(chats.toString(), read(write(chats, true)).toString());
+    }
+
+    @Test public void testEncodedObject ()
+        throws Exception
+    {
+        // a shared encoding is written just as the stream would have written it
+        Chat chat = createChat("speaker", "chat", "hello");
+        EncodedObject encoded = new EncodedObject(chat, false, true);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.setAdaptiveInterning(true);
+        assertFalse(new EncodedObject(chat).writeTo(oout));
+        oout.writeObject(chat);
+        for (int ii = 0; ii < 3; ii++) {
+            assertTrue(encoded.writeTo(oout));
+        }
+        oout.flush();
+
+        ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()));
+        oin.setAdaptiveInterning(true);
+        for (int ii = 0; ii < 4; ii++) {
+            assertEquals(chat.toString(), oin.readObject().toString());
+        }
+    }
+
+    protected static Chat createChat (String speaker, String bundle, String message)
+    {
+        Chat chat = new Chat();
+        chat.speaker = speaker;
+        chat.bundle = bundle;
+        chat.message = message;
+        return chat;
+    }
+
+    protected static byte[] write (List<Object> objects, boolean adaptive)
+        throws Exception
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.setAdaptiveInterning(adaptive);
+        for (Object object : objects) {
+            oout.writeObject(object);
+        }
+        oout.flush();
+        return bout.toByteArray();
+    }
+
+    protected static List<Object> read (byte[] data)
+        throws Exception
+    {
+        ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(data));
+        oin.setAdaptiveInterning(true);
+        List<Object> objects = Lists.newArrayList();
+        while (oin.available() > 0) {
+            objects.add(oin.readObject());
+        }
+        return objects;
+    }
+}
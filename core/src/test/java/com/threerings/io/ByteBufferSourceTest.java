@@ -0,0 +1,102 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests reading from a {@link ByteBufferSource}.
+ */
+public class ByteBufferSourceTest
+{
+    public static class Arrays extends SimpleStreamableObject
+    {
+        public int id;
+        public long stamp;
+        public short[] shorts = { 1, -2, Short.MAX_VALUE };
+        public char[] chars = { 'a', '\u263A' };
+        public int[] ints = { 3, -4, Integer.MIN_VALUE };
+        public long[] longs = { 5L, Long.MAX_VALUE };
+        public float[] floats = { 0.5f, -1f };
+        public double[] doubles = { Math.PI, Double.MIN_VALUE };
+    }
+
+    @Test public void testFixed ()
+        throws Exception
+    {
+        testRead(false);
+    }
+
+    @Test public void testCompact ()
+        throws Exception
+    {
+        testRead(true);
+    }
+
+    @Test(expected=EOFException.class) public void testShortBuffer ()
+        throws Exception
+    {
+        // when the buffer runs out mid-value, we get the same error as from any other stream
+        ByteBuffer buf = ByteBuffer.wrap(new byte[] { 0, 0, 1 });
+        new ObjectInputStream(new ByteBufferInputStream(buf)).readCompactInt();
+    }
+
+    protected void testRead (boolean compact)
+        throws Exception
+    {
+        Arrays arrays = new Arrays();
+        arrays.id = 42;
+        arrays.stamp = -1L;
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.setCompact(compact);
+        oout.writeObject(arrays);
+        oout.writeCompactInt(7); // leaves fewer bytes in the buffer than a varint might take
+        oout.flush();
+        byte[] data = bout.toByteArray();
+
+        Arrays viaStream = (Arrays)read(new ByteArrayInputStream(data), compact);
+        Arrays viaBuffer = (Arrays)read(new ByteBufferInputStream(ByteBuffer.wrap(data)), compact);
+        assertEquals(arrays.toString(), viaStream.toString());
+        assertEquals(arrays.toString(), viaBuffer.toString());
+    }
+
+    protected Object read (InputStream source, boolean compact)
+        throws Exception
+    {
+        ObjectInputStream oin = new ObjectInputStream(source);
+        oin.setCompact(compact);
+        Object value = oin.readObject();
+        assertEquals(7, oin.readCompactInt());
+        assertEquals(0, oin.available());
+        return value;
+    }
+}
@@ -0,0 +1,97 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link ClassDictionary}.
+ */
+public class ClassDictionaryTest
+{
+    public static class Known extends SimpleStreamableObject
+    {
+        public List<Object> values;
+    }
+
+    public static class Unknown extends SimpleStreamableObject
+    {
+        public int value;
+    }
+
+    @Test public void testStreaming ()
+        throws Exception
+    {
+        ClassDictionary dict = ClassDictionary.load(new ByteArrayInputStream((
+            "# well-known classes\n" + Known.class.getName() + "\n\n" +
+            List.class.getName() + "\n" + String.class.getName() + "\n").getBytes("UTF-8")));
+        assertEquals(3, dict.size());
+        assertEquals(ClassDictionary.FIRST_CODE + 1, dict.getCode(List.class.getName()));
+        assertEquals(String.class.getName(),
+                     dict.getClassName((short)(ClassDictionary.FIRST_CODE + 2)));
+
+        Known known = new Known();
+        Unknown unknown = new Unknown();
+        unknown.value = 42;
+        known.values = Lists.<Object>newArrayList("string", unknown, "another");
+
+        // none of the dictionary's class names are sent
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.setClassDictionary(dict);
+        oout.writeObject(known);
+        oout.writeObject(known);
+        oout.flush();
+        String data = new String(bout.toByteArray(), "ISO-8859-1");
+        assertEquals(-1, data.indexOf(Known.class.getName()));
+        assertEquals(-1, data.indexOf(String.class.getName()));
+        assertTrue(data.indexOf(Unknown.class.getName()) >= 0);
+        assertEquals(1, oout.getMappingCount());
+
+        // and a reader with the same dictionary reads everything back
+        ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()));
+        oin.setClassDictionary(dict);
+        for (int ii = 0; ii < 2; ii++) {
+            Known read = (Known)oin.readObject();
+            assertEquals(3, read.values.size());
+            assertEquals("another", read.values.get(2));
+            assertEquals(42, ((Unknown)read.values.get(1)).value);
+        }
+    }
+
+    @Test public void testVersion ()
+    {
+        List<String> names = Lists.newArrayList("a.B", "a.C");
+        assertEquals(new ClassDictionary(names).getVersion(),
+                     new ClassDictionary(Lists.newArrayList(names)).getVersion());
+        assertFalse(new ClassDictionary(names).getVersion() ==
+                    new ClassDictionary(Lists.reverse(names)).getVersion());
+        assertFalse(0 == new ClassDictionary(Lists.<String>newArrayList()).getVersion());
+    }
+}
@@ -0,0 +1,131 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the compact encoding of integers, longs and lengths.
+ */
+public class CompactEncodingTest
+{
+    public static class Widget extends SimpleStreamableObject
+    {
+        public int id;
+        public long stamp;
+        public int[] values;
+        public long[] stamps;
+        public List<Integer> counts;
+    }
+
+    @Test public void testExtremes ()
+        throws Exception
+    {
+        int[] ints = { 0, 1, -1, 63, -64, 64, -65, 8191, -8192, Integer.MAX_VALUE,
+                       Integer.MIN_VALUE };
+        long[] longs = { 0L, 1L, -1L, Integer.MAX_VALUE + 1L, Long.MAX_VALUE, Long.MIN_VALUE };
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.setCompact(true);
+        for (int value : ints) {
+            oout.writeCompactInt(value);
+        }
+        for (long value : longs) {
+            oout.writeCompactLong(value);
+        }
+        oout.writeLength(0);
+        oout.writeLength(Integer.MAX_VALUE);
+        oout.flush();
+
+        ObjectInputStream oin = createInput(bout);
+        for (int value : ints) {
+            assertEquals(value, oin.readCompactInt());
+        }
+        for (long value : longs) {
+            assertEquals(value, oin.readCompactLong());
+        }
+        assertEquals(0, oin.readLength());
+        assertEquals(Integer.MAX_VALUE, oin.readLength());
+        assertEquals(0, oin.available());
+    }
+
+    @Test public void testSmallValues ()
+        throws Exception
+    {
+        // small values take one byte each, whatever their sign
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.setCompact(true);
+        oout.writeCompactInt(-64);
+        oout.writeCompactLong(63);
+        oout.writeLength(127);
+        oout.flush();
+        assertEquals(3, bout.size());
+    }
+
+    @Test public void testObjects ()
+        throws Exception
+    {
+        Widget widget = new Widget();
+        widget.id = 42;
+        widget.stamp = -7L;
+        widget.values = new int[] { 1, -2, 300, Integer.MIN_VALUE };
+        widget.stamps = new long[] { 5L, Long.MAX_VALUE };
+        widget.counts = Lists.newArrayList(1, 2, 3);
+
+        ByteArrayOutputStream fixed = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(fixed);
+        oout.writeObject(widget);
+        oout.flush();
+
+        ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        oout = new ObjectOutputStream(compact);
+        oout.setCompact(true);
+        oout.writeObject(widget);
+        oout.flush();
+        assertTrue(compact.size() < fixed.size());
+
+        ObjectInputStream oin = createInput(compact);
+        Widget read = (Widget)oin.readObject();
+        assertEquals(widget.id, read.id);
+        assertEquals(widget.stamp, read.stamp);
+        assertArrayEquals(widget.values, read.values);
+        assertArrayEquals(widget.stamps, read.stamps);
+        assertEquals(widget.counts, read.counts);
+    }
+
+    protected static ObjectInputStream createInput (ByteArrayOutputStream bout)
+    {
+        ObjectInputStream oin = new ObjectInputStream(
+            new ByteArrayInputStream(bout.toByteArray()));
+        oin.setCompact(true);
+        return oin;
+    }
+}
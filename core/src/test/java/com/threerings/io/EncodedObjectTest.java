@@ -0,0 +1,97 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link EncodedObject}.
+ */
+public class EncodedObjectTest
+{
+    public static class Inner extends SimpleStreamableObject
+    {
+        @Intern public String kind;
+        public Object value;
+    }
+
+    public static class Outer extends SimpleStreamableObject
+    {
+        public int id;
+        @Intern public String name;
+        public Inner inner;
+        public List<Inner> inners;
+        public Object nothing;
+    }
+
+    @Test public void testWriteTo ()
+        throws Exception
+    {
+        Outer outer = new Outer();
+        outer.id = 42;
+        outer.name = "outer";
+        outer.inner = createInner("one", 1);
+        outer.inners = Lists.newArrayList(createInner("two", "two"), createInner("one", 3L));
+        EncodedObject encoded = new EncodedObject(outer);
+
+        // a stream that has yet to see some of the object's classes can't use the encoding
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.writeObject(createInner("one", null));
+        int size = bout.size();
+        assertFalse(encoded.writeTo(oout));
+        assertEquals(size, bout.size());
+
+        // but once it has seen them, the encoding is just what the stream would have written
+        oout.writeObject(outer);
+        oout.flush();
+        size = bout.size();
+        oout.writeObject(outer);
+        oout.flush();
+        byte[] expect = slice(bout.toByteArray(), size);
+        size = bout.size();
+        assertTrue(encoded.writeTo(oout));
+        oout.flush();
+        assertArrayEquals(expect, slice(bout.toByteArray(), size));
+    }
+
+    protected static Inner createInner (String kind, Object value)
+    {
+        Inner inner = new Inner();
+        inner.kind = kind;
+        inner.value = value;
+        return inner;
+    }
+
+    protected static byte[] slice (byte[] data, int from)
+    {
+        byte[] slice = new byte[data.length - from];
+        System.arraycopy(data, from, slice, 0, slice.length);
+        return slice;
+    }
+}
@@ -0,0 +1,181 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.io;
+
+import java.util.List;
+import java.util.Random;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the compression of frames.
+ */
+public class FrameCompressionTest
+{
+    @Test public void testRoundTrip ()
+        throws IOException
+    {
+        testRoundTrip(null);
+    }
+
+    @Test public void testDictionary ()
+        throws IOException
+    {
+        List<byte[]> samples = Lists.newArrayList();
+        for (int ii = 0; ii < 50; ii++) {
+            samples.add(makeMessage(ii));
+        }
+        CompressionDictionary dict = CompressionDictionary.train(samples, 1024);
+        assertTrue(dict.size() > 0 && dict.size() <= 1024);
+        testRoundTrip(dict);
+
+        // a small message should compress much better with a dictionary than without
+        byte[] message = makeMessage(99);
+        int plain = frame(new FrameCompressor(null), message).remaining();
+        int primed = frame(new FrameCompressor(dict), message).remaining();
+        assertTrue(plain + " vs. " + primed, primed < plain/2);
+
+        // and the dictionary should survive the trip through its stream
+        CompressionDictionary loaded = CompressionDictionary.load(
+            new ByteArrayInputStream(dict.getData()));
+        assertEquals(dict.getVersion(), loaded.getVersion());
+    }
+
+    @Test(expected=IOException.class) public void testMissingDecompressor ()
+        throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        Channels.newChannel(bout).write(frame(new FrameCompressor(null), makeMessage(0)));
+        new FramedInputStream().readFrame(toChannel(bout));
+    }
+
+    protected void testRoundTrip (CompressionDictionary dict)
+        throws IOException
+    {
+        FrameCompressor compressor = new FrameCompressor(dict);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        WritableByteChannel out = Channels.newChannel(bout);
+
+        // compress a bunch of messages, and send some uncompressed messages (which don't enter
+        // into the compression of the rest) among them, along with a message that overflows the
+        // compression window and a compressed message in chunks
+        List<byte[]> messages = Lists.newArrayList();
+        for (int ii = 0; ii < 20; ii++) {
+            messages.add(makeMessage(ii));
+        }
+        byte[] random = new byte[3*FrameCodec.WINDOW_SIZE];
+        new Random(42).nextBytes(random);
+        messages.add(random);
+        messages.add(makeMessage(20));
+        int raw = 0, compressed = 0;
+        for (int ii = 0; ii < messages.size(); ii++) {
+            byte[] message = messages.get(ii);
+            raw += message.length;
+            if (ii % 5 == 4) {
+                out.write(frame(null, message));
+            } else if (ii == 10) {
+                ByteBuffer frame = frame(compressor, message);
+                compressed += frame.remaining();
+                writeChunks(out, frame);
+            } else {
+                ByteBuffer frame = frame(compressor, message);
+                compressed += frame.remaining();
+                out.write(frame);
+            }
+        }
+        assertTrue(raw + " vs. " + compressed, compressed < raw);
+
+        // make sure we read back what we sent
+        FramedInputStream fin = new FramedInputStream();
+        fin.setDecompressor(new FrameDecompressor(dict));
+        DataInputStream din = new DataInputStream(fin);
+        ReadableByteChannel in = toChannel(bout);
+        for (byte[] message : messages) {
+            while (!fin.readFrame(in)) {}
+            byte[] data = new byte[message.length];
+            din.readFully(data);
+            assertArrayEquals(message, data);
+            assertEquals(-1, fin.read());
+        }
+    }
+
+    protected ByteBuffer frame (FrameCompressor compressor, byte[] message)
+        throws IOException
+    {
+        FramingOutputStream fout = new FramingOutputStream();
+        fout.write(message);
+        ByteBuffer frame = fout.frameAndReturnBuffer();
+        return (compressor == null) ? frame : compressor.compressFrame(frame);
+    }
+
+    protected void writeChunks (WritableByteChannel out, ByteBuffer frame)
+        throws IOException
+    {
+        int flags = frame.getInt(0) & FramingOutputStream.COMPRESSED_FLAG;
+        int total = frame.limit(), size = (total - 4) / 2;
+        for (int ii = 0; ii < 2; ii++) {
+            int end = (ii == 1) ? total : (4 + size);
+            frame.limit(end).position(4 + ii*size);
+            ByteBuffer chunk = ByteBuffer.allocate(4 + frame.remaining());
+            chunk.putInt(FramingOutputStream.chunkHeader(chunk.capacity(), ii == 1) | flags);
+            chunk.put(frame).flip();
+            out.write(chunk);
+        }
+    }
+
+    protected ReadableByteChannel toChannel (ByteArrayOutputStream bout)
+    {
+        return Channels.newChannel(new ByteArrayInputStream(bout.toByteArray()));
+    }
+
+    /**
+     * Makes a message resembling an update to a distributed object.
+     */
+    protected byte[] makeMessage (int seed)
+        throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bout);
+        dout.writeShort(-3);
+        dout.writeUTF("com.threerings.presents.dobj.AttributeChangedEvent");
+        dout.writeInt(1000 + seed);
+        dout.writeUTF("playerName");
+        dout.writeUTF("Player " + seed);
+        dout.writeLong(1234567890L * seed);
+        return bout.toByteArray();
+    }
+}
@@ -25,6 +25,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.Pipe;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
@@ -59,8 +60,28 @@ public class FrameTest extends TestCase
         out.write(fout.frameAndReturnBuffer());
         fout.resetFrame();
 
+        // frame a big message that we'll send in chunks
+        for (int ii = 0; ii < 100; ii++) {
+            dout.writeUTF(STRING3);
+        }
+        ByteBuffer big = fout.frameAndReturnBuffer();
+        ByteBuffer chunks = ByteBuffer.allocate(big.remaining() + 3*4);
+        int total = big.limit(), size = (total - 4) / 3;
+        for (int ii = 0; ii < 3; ii++) {
+            int end = (ii == 2) ? total : (4 + (ii+1)*size);
+            big.limit(end).position(4 + ii*size);
+            chunks.putInt(FramingOutputStream.chunkHeader(4 + big.remaining(), ii == 2));
+            chunks.put(big);
+        }
+        chunks.flip();
+        fout.resetFrame();
+
+        // send the first chunk, then a normal frame, then the rest of the chunks
         dout.writeUTF(STRING7);
-        out.write(fout.frameAndReturnBuffer());
+        ByteBuffer small = fout.frameAndReturnBuffer();
+        out.write((ByteBuffer)chunks.duplicate().limit(4 + size));
+        out.write(small);
+        out.write((ByteBuffer)chunks.position(4 + size));
         fout.resetFrame();
     }
 
@@ -84,10 +105,17 @@ public class FrameTest extends TestCase
         assertTrue("string6", STRING6.equals(din.readUTF()));
         assertTrue("hit eof", fin.read() == -1);
 
-        // read the third frame
-        fin.readFrame(in);
+        // read the third frame, which overtook the chunked message
+        while (!fin.readFrame(in)) {}
         assertTrue("string7", STRING7.equals(din.readUTF()));
         assertTrue("hit eof", fin.read() == -1);
+
+        // and then the reassembled message
+        while (!fin.readFrame(in)) {}
+        for (int ii = 0; ii < 100; ii++) {
+            assertTrue("chunked", STRING3.equals(din.readUTF()));
+        }
+        assertTrue("hit eof", fin.read() == -1);
     }
 
     @Override
@@ -100,6 +128,7 @@ public class FrameTest extends TestCase
 
         } catch (IOException ioe) {
             ioe.printStackTrace(System.err);
+            fail("i/o error " + ioe);
         }
     }
 
@@ -0,0 +1,141 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the use of {@link GeneratedStreamer}s.
+ */
+public class GeneratedStreamerTest
+{
+    /** Streamed by <code>GeneratedStreamerTest$Sample_Streamer</code>. */
+    public static class Sample implements Streamable
+    {
+        public int count;
+        public long stamp;
+        public String name;
+        @Intern public String kind;
+        public Date when;
+        public int[] values;
+        public List<String> tags;
+        public Object payload;
+    }
+
+    /** Has a streamer generated before {@link #title} was added to the class. */
+    public static class Stale implements Streamable
+    {
+        public int count;
+        public String name;
+        public String title;
+    }
+
+    /** Has a streamer generated when {@link #values} was an <code>int[]</code>. */
+    public static class Retyped implements Streamable
+    {
+        public int count;
+        public Object values;
+    }
+
+    /** Has a streamer generated before {@link #kind} was interned. */
+    public static class Reinterned implements Streamable
+    {
+        public int count;
+        @Intern public String kind;
+    }
+
+    @Test
+    public void testGeneratedStreamerFound ()
+        throws IOException
+    {
+        assertTrue(Streamer.getStreamer(Sample.class) instanceof GeneratedStreamer);
+    }
+
+    @Test
+    public void testStaleStreamerIgnored ()
+        throws IOException
+    {
+        assertFalse(Streamer.getStreamer(Stale.class) instanceof GeneratedStreamer);
+    }
+
+    @Test
+    public void testChangedStreamerIgnored ()
+        throws IOException
+    {
+        // these have the same field names as when their streamers were generated, but are
+        // streamed differently
+        assertFalse(Streamer.getStreamer(Retyped.class) instanceof GeneratedStreamer);
+        assertFalse(Streamer.getStreamer(Reinterned.class) instanceof GeneratedStreamer);
+    }
+
+    @Test
+    public void testStreamerNames ()
+    {
+        assertFalse(Streamer.getGeneratedStreamerName("a.Foo$Bar").equals(
+                        Streamer.getGeneratedStreamerName("a.Foo_Bar")));
+        assertEquals(0x8fa56b1c39a4194fL, Streamer.getSchemaHash(Sample.class));
+    }
+
+    @Test
+    public void testMatchesReflection ()
+        throws IOException, ClassNotFoundException
+    {
+        Sample sample = new Sample();
+        sample.count = 42;
+        sample.stamp = -1L;
+        sample.name = "sample";
+        sample.kind = "kind";
+        sample.when = new Date(1234567890L);
+        sample.values = new int[] { 1, 2, 3 };
+        sample.tags = Lists.newArrayList("one", "two");
+        sample.payload = new Stale();
+
+        Streamer generated = Streamer.getStreamer(Sample.class);
+        Streamer reflective = new Streamer.ClassStreamer(Sample.class);
+        byte[] data = write(generated, sample);
+        assertArrayEquals(write(reflective, sample), data);
+
+        Sample read = (Sample)generated.createObject(null);
+        ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(data));
+        generated.readObject(read, oin, true);
+        assertArrayEquals(data, write(reflective, read));
+    }
+
+    protected static byte[] write (Streamer streamer, Object object)
+        throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        streamer.writeObject(object, oout, true);
+        oout.flush();
+        return bout.toByteArray();
+    }
+}
@@ -24,6 +24,7 @@ package com.threerings.io;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -37,6 +38,7 @@ import java.util.Set;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import com.google.common.base.Defaults;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -44,6 +46,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+import com.samskivert.util.ClassUtil;
 import com.samskivert.util.StringUtil;
 import com.samskivert.util.Tuple;
 
@@ -403,6 +406,48 @@ public class StreamableTest
         assertEquals(w, unflatten(WIRE_DATA));
     }
 
+    @Test
+    public void testDirectFieldAccess ()
+        throws Exception
+    {
+        List<Field> fields = Lists.newArrayList();
+        ClassUtil.getFields(Widget.class, fields);
+        Widget w = new Widget();
+        for (Field field : fields) {
+            FieldMarshaller direct = FieldMarshaller.getFieldMarshaller(field);
+            FieldMarshaller reflective;
+            FieldMarshaller._directAccess = false;
+            try {
+                reflective = FieldMarshaller.getFieldMarshaller(field);
+            } finally {
+                FieldMarshaller._directAccess = true;
+            }
+            if (field.getType().isPrimitive()) {
+                assertTrue(field.getName(), direct instanceof UnsafeFieldMarshaller);
+            }
+
+            // the direct marshaller must write exactly what the reflective one does
+            byte[] data = writeField(reflective, field, w);
+            assertEquals(field.getName(), StringUtil.hexlate(data),
+                         StringUtil.hexlate(writeField(direct, field, w)));
+
+            // and read back exactly what was written
+            Widget copy = new Widget();
+            field.set(copy, Defaults.defaultValue(field.getType()));
+            direct.readField(field, copy, new ObjectInputStream(new ByteArrayInputStream(data)));
+            assertTrue(field.getName(), Arrays.deepEquals(
+                           new Object[] { field.get(w) }, new Object[] { field.get(copy) }));
+        }
+    }
+
+    protected static byte[] writeField (FieldMarshaller fm, Field field, Object source)
+        throws Exception
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        fm.writeField(field, source, new ObjectOutputStream(bout));
+        return bout.toByteArray();
+    }
+
     protected void printWireData (Object o)
         throws IOException
     {
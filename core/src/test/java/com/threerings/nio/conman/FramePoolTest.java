@@ -0,0 +1,111 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.nio.conman;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link FramePool}.
+ */
+public class FramePoolTest
+{
+    @Test public void testRecycle ()
+    {
+        FramePool pool = new FramePool();
+        Frame frame = pool.copyOf(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        assertEquals(3, frame.size());
+        assertEquals(1, pool.getFramesInUse());
+        assertTrue(pool.getSlabBytes() > 0);
+
+        // each view has its own position
+        ByteBuffer view = frame.buffer();
+        assertEquals(1, view.get());
+        assertEquals(1, frame.buffer().get());
+
+        // a retained frame goes back to the pool only once all references are released
+        ByteBuffer chunk = frame._data;
+        frame.retain();
+        frame.release();
+        assertEquals(1, pool.getFramesInUse());
+        frame.release();
+        assertEquals(0, pool.getFramesInUse());
+
+        // and its chunk is handed out again, with the new contents
+        Frame next = pool.copyOf(ByteBuffer.wrap(new byte[] { 4, 5 }));
+        assertSame(chunk, next._data);
+        assertEquals(2, next.size());
+        assertEquals(4, next.buffer().get());
+        next.release();
+    }
+
+    @Test public void testSizeClasses ()
+    {
+        FramePool pool = new FramePool();
+        Frame small = pool.copyOf(ByteBuffer.allocate(100));
+        Frame medium = pool.copyOf(ByteBuffer.allocate(1000));
+        assertEquals(FramePool.MIN_CHUNK_SIZE, small._data.capacity());
+        assertEquals(FramePool.MIN_CHUNK_SIZE * 4, medium._data.capacity());
+        assertTrue(small._data.isDirect());
+
+        // frames too big for the pool are neither direct nor counted
+        Frame big = pool.copyOf(ByteBuffer.allocate(FramePool.MAX_CHUNK_SIZE + 1));
+        assertFalse(big._data.isDirect());
+        assertEquals(2, pool.getFramesInUse());
+
+        small.release();
+        medium.release();
+        big.release();
+        assertEquals(0, pool.getFramesInUse());
+    }
+
+    @Test public void testSlabBytes ()
+    {
+        // take one more of the largest frames than the pool will keep free
+        FramePool pool = new FramePool();
+        int size = FramePool.MAX_CHUNK_SIZE, count = FramePool.MAX_FREE_BYTES / size + 1;
+        Frame[] frames = new Frame[count];
+        for (int ii = 0; ii < count; ii++) {
+            frames[ii] = pool.copyOf(ByteBuffer.allocate(size));
+        }
+        assertEquals((long)count * size, pool.getSlabBytes());
+
+        // the chunk that isn't kept once they're all released is no longer counted
+        for (Frame frame : frames) {
+            frame.release();
+        }
+        assertEquals((long)(count - 1) * size, pool.getSlabBytes());
+    }
+
+    @Test public void testLeakTracking ()
+    {
+        FramePool pool = new FramePool();
+        pool.setTrackLeaks(true);
+        Frame frame = pool.copyOf(ByteBuffer.allocate(10));
+        assertEquals(1, pool.reportLeaks(-1));
+        frame.release();
+        assertEquals(0, pool.reportLeaks(-1));
+    }
+}
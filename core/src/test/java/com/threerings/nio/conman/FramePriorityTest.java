@@ -0,0 +1,69 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.nio.conman;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ordering of queued frames by priority.
+ */
+public class FramePriorityTest
+{
+    @Test public void testInsert ()
+    {
+        Frame b1 = frame(Frame.NORMAL_PRIORITY, false), b2 = frame(Frame.NORMAL_PRIORITY, false);
+        Frame h1 = frame(Frame.HIGH_PRIORITY, false), h2 = frame(Frame.HIGH_PRIORITY, false);
+        Frame barrier = frame(Frame.NORMAL_PRIORITY, true);
+        Frame hbarrier = frame(Frame.HIGH_PRIORITY, true);
+
+        List<Frame> frames = Lists.newArrayList();
+        assertEquals(0, ConnectionManager.insertFrame(frames, b1));
+        assertEquals(1, ConnectionManager.insertFrame(frames, b2));
+        // high priority frames pass normal ones, but not each other
+        assertEquals(0, ConnectionManager.insertFrame(frames, h1));
+        assertEquals(1, ConnectionManager.insertFrame(frames, h2));
+        assertEquals(Lists.newArrayList(h1, h2, b1, b2), frames);
+
+        // nothing passes a barrier, and a barrier passes nothing
+        frames.clear();
+        ConnectionManager.insertFrame(frames, b1);
+        ConnectionManager.insertFrame(frames, barrier);
+        ConnectionManager.insertFrame(frames, b2);
+        assertEquals(2, ConnectionManager.insertFrame(frames, h1));
+        assertEquals(4, ConnectionManager.insertFrame(frames, hbarrier));
+        assertEquals(Lists.newArrayList(b1, barrier, h1, b2, hbarrier), frames);
+
+        // and barriers are never dropped
+        assertFalse(barrier.setDroppable(true).isDroppable());
+    }
+
+    protected static Frame frame (int priority, boolean barrier)
+    {
+        return Frame.wrap(new byte[0]).setPriority(priority).setBarrier(barrier);
+    }
+}
@@ -0,0 +1,163 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.nio.conman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.samskivert.util.Lifecycle;
+
+/**
+ * Tests that messages queued up for a connection are gathered into fewer writes and still arrive
+ * intact and in order, even when the client falls behind and they spill into an overflow queue.
+ * Also checks that their pooled frames are all returned once written, that their write
+ * latencies are tracked, and that messages of any size are written.
+ */
+public class GatheringWriteTest
+{
+    @Test public void testGatheredWrites ()
+        throws Exception
+    {
+        WakeupTest.TestConnectionManager cmgr =
+            new WakeupTest.TestConnectionManager(new Lifecycle());
+        ServerSocketChannelAcceptor acceptor =
+            new ServerSocketChannelAcceptor("localhost", new int[] { 0 }, cmgr);
+        assertTrue(acceptor.bind());
+        int port = acceptor._ssockets.get(0).socket().getLocalPort();
+        cmgr.start();
+
+        SocketChannel client = SocketChannel.open(new InetSocketAddress("localhost", port));
+        try {
+            Connection conn = cmgr.awaitConnection();
+
+            // queue up far more than the socket buffers will hold without reading any of it
+            for (int ii = 0; ii < MESSAGES; ii++) {
+                cmgr.postMessage(conn, cmgr._framePool.copyOf(ByteBuffer.wrap(makeMessage(ii))));
+            }
+
+            ByteBuffer buf = ByteBuffer.allocate(MESSAGE_SIZE);
+            for (int ii = 0; ii < MESSAGES; ii++) {
+                buf.clear();
+                while (buf.hasRemaining()) {
+                    if (client.read(buf) < 0) {
+                        throw new EOFException();
+                    }
+                }
+                buf.flip();
+                assertEquals(ii, buf.getInt());
+            }
+
+            ConMgrStats stats = cmgr.getStats();
+            assertTrue("Expected gathered writes: " + stats, stats.writesSaved > 0);
+
+            // every frame should make it back to the pool once it has been written (the last
+            // may be released just after the client has read it)
+            for (int ii = 0; ii < 100 && cmgr.getStats().framesInUse > 0; ii++) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, cmgr.getStats().framesInUse);
+
+            // and each of them should have had its latency noted, both for the connection and in
+            // the manager's summary
+            assertEquals(MESSAGES, count(conn.getWriteStats().latency));
+            assertEquals(MESSAGES, count(cmgr.getStats().writeLatency));
+
+        } finally {
+            client.close();
+            acceptor.shutdown();
+            cmgr.shutdown();
+        }
+    }
+
+    @Test public void testLargeMessage ()
+        throws Exception
+    {
+        WakeupTest.TestConnectionManager cmgr =
+            new WakeupTest.TestConnectionManager(new Lifecycle());
+        ServerSocketChannelAcceptor acceptor =
+            new ServerSocketChannelAcceptor("localhost", new int[] { 0 }, cmgr);
+        assertTrue(acceptor.bind());
+        int port = acceptor._ssockets.get(0).socket().getLocalPort();
+        cmgr.start();
+
+        SocketChannel client = SocketChannel.open(new InetSocketAddress("localhost", port));
+        try {
+            Connection conn = cmgr.awaitConnection();
+
+            // a message of several megabytes is delivered whole, as is the one after it
+            ByteBuffer large = ByteBuffer.allocate(LARGE_SIZE);
+            for (int ii = 0; large.hasRemaining(); ii++) {
+                large.put((byte)ii);
+            }
+            large.flip();
+            cmgr.postMessage(conn, cmgr._framePool.copyOf(large));
+            cmgr.postMessage(conn, cmgr._framePool.copyOf(ByteBuffer.wrap(makeMessage(1))));
+
+            ByteBuffer buf = ByteBuffer.allocate(LARGE_SIZE + MESSAGE_SIZE);
+            while (buf.hasRemaining()) {
+                if (client.read(buf) < 0) {
+                    throw new EOFException();
+                }
+            }
+            buf.flip();
+            for (int ii = 0; ii < LARGE_SIZE; ii++) {
+                assertEquals((byte)ii, buf.get());
+            }
+            assertEquals(1, buf.getInt());
+
+        } finally {
+            client.close();
+            acceptor.shutdown();
+            cmgr.shutdown();
+        }
+    }
+
+    protected static long count (long[] buckets)
+    {
+        long count = 0;
+        for (long bucket : buckets) {
+            count += bucket;
+        }
+        return count;
+    }
+
+    protected static byte[] makeMessage (int seq)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(MESSAGE_SIZE);
+        buf.putInt(seq);
+        while (buf.hasRemaining()) {
+            buf.put((byte)seq);
+        }
+        return buf.array();
+    }
+
+    protected static final int MESSAGES = 500;
+    protected static final int MESSAGE_SIZE = 8 * 1024;
+    protected static final int LARGE_SIZE = 3 * 1024 * 1024;
+}
@@ -0,0 +1,208 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.nio.conman;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.samskivert.util.Lifecycle;
+
+/**
+ * Tests the enforcement of overflow queue limits on a client that isn't reading its messages.
+ */
+public class OverflowPolicyTest
+{
+    @Test public void testDropUnreliable ()
+        throws Exception
+    {
+        ConMgrStats stats = flood(OverflowPolicy.DEFAULT, true, 5);
+        assertTrue("Expected drops: " + stats, stats.overflowDrops > 0);
+        assertEquals(0, stats.overflowDisconnects);
+    }
+
+    @Test public void testDisconnect ()
+        throws Exception
+    {
+        ConMgrStats stats = flood(OverflowPolicy.DISCONNECT, false, 5);
+        assertEquals(1, stats.overflowDisconnects);
+        assertEquals(0, stats.overflowDrops);
+    }
+
+    @Test public void testHopeless ()
+        throws Exception
+    {
+        // the standard policies give up on a connection that is over twice its limits
+        ConMgrStats stats = flood(OverflowPolicy.DEFAULT, false, 12);
+        assertEquals(1, stats.overflowDisconnects);
+
+        // but a policy may choose otherwise (this one only acts once the queue is hopeless)
+        stats = flood(new OverflowPolicy() {
+            public Action overflowed (
+                Connection conn, long bytes, long age, int droppable, boolean hopeless) {
+                return hopeless ? Action.DROP_UNRELIABLE : Action.NONE;
+            }
+        }, true, 12);
+        assertTrue("Expected drops: " + stats, stats.overflowDrops > 0);
+        assertEquals(0, stats.overflowDisconnects);
+    }
+
+    @Test public void testAge ()
+        throws Exception
+    {
+        // messages that waited to be written before the queue overflowed count that wait
+        ConnectionManager cmgr = new WakeupTest.TestConnectionManager(new Lifecycle());
+        long now = System.currentTimeMillis();
+        Frame first = Frame.wrap(new byte[16]), second = Frame.wrap(new byte[16]);
+        first.setQueued(now - 5000);
+        second.setQueued(now - 3000);
+        ConnectionManager.OverflowQueue oq =
+            cmgr.new OverflowQueue(null, first, first.buffer());
+        oq.append(second, now);
+        assertTrue("Expected age of five seconds: " + oq.getAge(now), oq.getAge(now) >= 5000);
+        oq.release();
+    }
+
+    @Test public void testHold ()
+        throws Exception
+    {
+        // messages held back from a paused connection go on its queue in order when it resumes
+        ConnectionManager cmgr = new WakeupTest.TestConnectionManager(new Lifecycle());
+        long now = System.currentTimeMillis();
+        Frame first = Frame.wrap(new byte[16]), second = Frame.wrap(new byte[32]);
+        Frame third = Frame.wrap(new byte[64]);
+        second.setQueued(now - 3000);
+        ConnectionManager.OverflowQueue oq =
+            cmgr.new OverflowQueue(null, first, first.buffer());
+        oq.hold(second, now);
+        oq.hold(third, now);
+        assertEquals(0, oq.size());
+        assertEquals(16, oq.getBytes());
+        assertEquals(96, oq.getHeldBytes());
+        assertTrue("Expected held age of three seconds: " + oq.getHeldAge(now),
+                   oq.getHeldAge(now) >= 3000);
+
+        oq.releaseHeld();
+        assertEquals(2, oq.size());
+        assertSame(second, oq.get(0));
+        assertSame(third, oq.get(1));
+        assertEquals(112, oq.getBytes());
+        assertEquals(0, oq.getHeldBytes());
+        assertEquals(0, oq.getHeldAge(now));
+        oq.release();
+    }
+
+    @Test public void testHeldLimit ()
+        throws Exception
+    {
+        // a paused connection is disconnected once the messages held back from it are over the
+        // limits, even if its policy would sooner keep it paused
+        ConMgrStats stats = flood(new OverflowPolicy() {
+            public Action overflowed (
+                Connection conn, long bytes, long age, int droppable, boolean hopeless) {
+                return conn.isOutputPaused() ? Action.NONE : Action.PAUSE;
+            }
+        }, false, 5, 6);
+        assertTrue("Expected a pause: " + stats, stats.overflowPauses > 0);
+        assertEquals(1, stats.overflowDisconnects);
+    }
+
+    /**
+     * Sends the specified number of quarters of the overflow limit to a client that reads nothing
+     * and waits for the policy to kick in.
+     */
+    protected ConMgrStats flood (OverflowPolicy policy, boolean droppable, int quarters)
+        throws Exception
+    {
+        return flood(policy, droppable, quarters, 0);
+    }
+
+    /**
+     * Floods a client as above and, if <code>held</code> is non-zero, waits for the connection
+     * to be paused and then sends that many more quarters of the overflow limit.
+     */
+    protected ConMgrStats flood (
+        OverflowPolicy policy, boolean droppable, int quarters, int held)
+        throws Exception
+    {
+        WakeupTest.TestConnectionManager cmgr =
+            new WakeupTest.TestConnectionManager(new Lifecycle());
+        cmgr._overflowPolicy = policy;
+        cmgr._overflowByteLimit = LIMIT;
+        ServerSocketChannelAcceptor acceptor =
+            new ServerSocketChannelAcceptor("localhost", new int[] { 0 }, cmgr);
+        assertTrue(acceptor.bind());
+        int port = acceptor._ssockets.get(0).socket().getLocalPort();
+        cmgr.start();
+
+        SocketChannel client = SocketChannel.open();
+        client.socket().setReceiveBufferSize(4096);
+        client.connect(new InetSocketAddress("localhost", port));
+        try {
+            Connection conn = cmgr.awaitConnection();
+            conn.getChannel().socket().setSendBufferSize(4096);
+
+            post(cmgr, conn, droppable, quarters);
+            if (held > 0) {
+                for (int ii = 0; ii < 100 && !conn.isOutputPaused(); ii++) {
+                    Thread.sleep(50);
+                }
+                post(cmgr, conn, droppable, held);
+            }
+
+            ConMgrStats stats = cmgr.getStats();
+            for (int ii = 0; ii < 100; ii++) {
+                stats = cmgr.getStats();
+                if (stats.overflowDrops > 0 || stats.overflowDisconnects > 0) {
+                    break;
+                }
+                Thread.sleep(50);
+            }
+            return stats;
+
+        } finally {
+            try {
+                client.close();
+            } catch (IOException ioe) {
+                // no problem
+            }
+            acceptor.shutdown();
+            cmgr.shutdown();
+        }
+    }
+
+    protected void post (ConnectionManager cmgr, Connection conn, boolean droppable, int quarters)
+    {
+        for (int ii = 0; ii < LIMIT / 4 * quarters / MESSAGE_SIZE; ii++) {
+            ByteBuffer msg = ByteBuffer.allocate(MESSAGE_SIZE);
+            cmgr.postMessage(conn, cmgr._framePool.copyOf(msg).setDroppable(droppable));
+        }
+    }
+
+    protected static final int LIMIT = 1024 * 1024;
+    protected static final int MESSAGE_SIZE = 8 * 1024;
+}
@@ -0,0 +1,151 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.nio.conman;
+
+import java.util.List;
+import java.util.Set;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.samskivert.util.Lifecycle;
+
+/**
+ * Tests that connections are spread across multiple reactors and that each does its I/O on the
+ * thread of the reactor to which it was assigned.
+ */
+public class ReactorTest
+{
+    @Test public void testRoundRobin ()
+        throws Exception
+    {
+        TestConnectionManager cmgr = new TestConnectionManager(new Lifecycle(), REACTORS);
+        ServerSocketChannelAcceptor acceptor =
+            new ServerSocketChannelAcceptor("localhost", new int[] { 0 }, cmgr);
+        assertTrue(acceptor.bind());
+        int port = acceptor._ssockets.get(0).socket().getLocalPort();
+        cmgr.start();
+
+        List<SocketChannel> clients = Lists.newArrayList();
+        try {
+            for (int ii = 0; ii < REACTORS * 2; ii++) {
+                clients.add(SocketChannel.open(new InetSocketAddress("localhost", port)));
+            }
+            List<TestConnection> conns = cmgr.awaitConnections(clients.size());
+
+            // poke each connection and have it echo back the name of the thread that read it
+            Set<ConnectionManager.Reactor> reactors = Sets.newHashSet();
+            for (int ii = 0; ii < clients.size(); ii++) {
+                TestConnection conn = conns.get(ii);
+                reactors.add(conn._reactor);
+                String expect = (conn._reactor == cmgr._primary) ?
+                    "ConnectionManager" : ("ConnectionManager." + conn._reactor);
+                clients.get(ii).write(ByteBuffer.wrap(new byte[] { 1 }));
+                assertEquals(expect, readName(clients.get(ii)));
+            }
+            assertEquals(REACTORS, reactors.size());
+            assertEquals(clients.size(), cmgr.getStats().handlerCount - 1);
+
+        } finally {
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+            acceptor.shutdown();
+            cmgr.shutdown();
+        }
+    }
+
+    protected static String readName (SocketChannel client)
+        throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        do {
+            if (client.read(buf) < 0) {
+                throw new EOFException();
+            }
+        } while (buf.position() == 0 || buf.get(buf.position() - 1) != '\n');
+        return new String(buf.array(), 0, buf.position() - 1, "UTF-8");
+    }
+
+    protected static class TestConnection extends Connection
+    {
+        public int handleEvent (long when)
+        {
+            try {
+                if (_channel.read(ByteBuffer.allocate(1)) < 0) {
+                    _cmgr.closeConnection(this);
+                    return 0;
+                }
+                String name = Thread.currentThread().getName() + "\n";
+                _cmgr.postMessage(this, name.getBytes("UTF-8"));
+                return 1;
+            } catch (IOException ioe) {
+                networkFailure(ioe);
+                return 0;
+            }
+        }
+    }
+
+    protected static class TestConnectionManager extends ConnectionManager
+    {
+        public TestConnectionManager (Lifecycle cycle, int reactors)
+            throws IOException
+        {
+            super(cycle, 60 * 1000L);
+            _reactorCount = reactors;
+        }
+
+        public synchronized List<TestConnection> awaitConnections (int count)
+            throws InterruptedException
+        {
+            while (_conns.size() < count) {
+                wait();
+            }
+            return _conns;
+        }
+
+        @Override
+        protected void handleAcceptedSocket (SocketChannel channel)
+        {
+            TestConnection conn = new TestConnection();
+            handleAcceptedSocket(channel, conn);
+            synchronized (this) {
+                _conns.add(conn);
+                notifyAll();
+            }
+        }
+
+        protected List<TestConnection> _conns = Lists.newArrayList();
+    }
+
+    protected static final int REACTORS = 3;
+}
@@ -0,0 +1,69 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.nio.conman;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link TimingWheel}.
+ */
+public class TimingWheelTest
+{
+    @Test public void testExpire ()
+    {
+        TimingWheel<String> wheel = new TimingWheel<String>(10, 8);
+        wheel.schedule("past", 5);
+        wheel.schedule("soon", 1005);
+        wheel.schedule("later", 1200); // more than a revolution out
+        wheel.schedule("cancelled", 1010);
+        assertTrue(wheel.cancel("cancelled"));
+        assertFalse(wheel.cancel("cancelled"));
+
+        // the first expiry sweeps the whole wheel, so nothing already due is missed
+        List<String> due = Lists.newArrayList();
+        wheel.expire(1000, due);
+        assertEquals(Lists.newArrayList("past"), due);
+
+        due.clear();
+        wheel.expire(1010, due);
+        assertEquals(Lists.newArrayList("soon"), due);
+
+        // rescheduling moves an item, and items scheduled in the past come due on the next expiry
+        wheel.schedule("later", 1100);
+        wheel.schedule("late", 900);
+        due.clear();
+        wheel.expire(1020, due);
+        assertEquals(Lists.newArrayList("late"), due);
+
+        // skipping ahead more than a revolution still finds everything
+        due.clear();
+        wheel.expire(5000, due);
+        assertEquals(Lists.newArrayList("later"), due);
+        assertEquals(0, wheel.size());
+    }
+}
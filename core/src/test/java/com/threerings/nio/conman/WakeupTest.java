@@ -0,0 +1,179 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.nio.conman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.samskivert.util.Lifecycle;
+
+/**
+ * Tests that posting messages to the connection manager wakes up the thread that writes them,
+ * and that a burst of posts made before that thread gets around to draining its queues wakes it
+ * only once. Likewise for closing connections.
+ */
+public class WakeupTest
+{
+    @Test public void testCoalescedWakeups ()
+        throws Exception
+    {
+        TestConnectionManager cmgr = new TestConnectionManager(new Lifecycle());
+        ServerSocketChannelAcceptor acceptor =
+            new ServerSocketChannelAcceptor("localhost", new int[] { 0 }, cmgr);
+        assertTrue(acceptor.bind());
+        int port = acceptor._ssockets.get(0).socket().getLocalPort();
+        cmgr.start();
+
+        SocketChannel client = SocketChannel.open(new InetSocketAddress("localhost", port));
+        try {
+            Connection conn = cmgr.awaitConnection();
+
+            // a lone post wakes the reactor, which delivers the message
+            cmgr.postMessage(conn, MESSAGE);
+            readMessage(client);
+            assertTrue(cmgr.getStats().wakeups > 0);
+
+            // hold the reactor up so that it can't drain its queues while we post a burst
+            final CountDownLatch running = new CountDownLatch(1), release = new CountDownLatch(1);
+            conn._reactor.invoke(new Runnable() {
+                public void run () {
+                    running.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ie) {
+                        throw new RuntimeException(ie);
+                    }
+                }
+            });
+            running.await();
+
+            // the posts in the burst share a single wakeup (or none, if the one that delivered
+            // our blocking action has yet to be acted upon)
+            long wakeups = cmgr.getStats().wakeups;
+            for (int ii = 0; ii < BURST; ii++) {
+                cmgr.postMessage(conn, MESSAGE);
+            }
+            assertTrue(cmgr.getStats().wakeups - wakeups <= 1);
+
+            // and every one of them is delivered once the reactor is free to do so
+            release.countDown();
+            for (int ii = 0; ii < BURST; ii++) {
+                readMessage(client);
+            }
+
+        } finally {
+            client.close();
+            acceptor.shutdown();
+            cmgr.shutdown();
+        }
+    }
+
+    @Test public void testCloseWakeup ()
+        throws Exception
+    {
+        TestConnectionManager cmgr = new TestConnectionManager(new Lifecycle());
+        ServerSocketChannelAcceptor acceptor =
+            new ServerSocketChannelAcceptor("localhost", new int[] { 0 }, cmgr);
+        assertTrue(acceptor.bind());
+        int port = acceptor._ssockets.get(0).socket().getLocalPort();
+        cmgr.start();
+
+        SocketChannel client = SocketChannel.open(new InetSocketAddress("localhost", port));
+        try {
+            Connection conn = cmgr.awaitConnection();
+
+            // a close wakes the reactor up, rather than waiting for its select to time out
+            long wakeups = cmgr.getStats().wakeups;
+            cmgr.closeConnection(conn);
+            assertTrue(cmgr.getStats().wakeups > wakeups);
+            client.configureBlocking(false);
+            ByteBuffer buf = ByteBuffer.allocate(1);
+            long deadline = System.currentTimeMillis() + 10 * 1000L;
+            while (client.read(buf) >= 0) {
+                assertTrue("Connection not closed", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+
+        } finally {
+            client.close();
+            acceptor.shutdown();
+            cmgr.shutdown();
+        }
+    }
+
+    protected static void readMessage (SocketChannel client)
+        throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(MESSAGE.length);
+        while (buf.hasRemaining()) {
+            if (client.read(buf) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    protected static class TestConnectionManager extends ConnectionManager
+    {
+        public TestConnectionManager (Lifecycle cycle)
+            throws IOException
+        {
+            super(cycle, 60 * 1000L);
+        }
+
+        public synchronized Connection awaitConnection ()
+            throws InterruptedException
+        {
+            while (_conn == null) {
+                wait();
+            }
+            return _conn;
+        }
+
+        @Override
+        protected void handleAcceptedSocket (SocketChannel channel)
+        {
+            Connection conn = new Connection() {
+                public int handleEvent (long when) {
+                    return 0;
+                }
+            };
+            handleAcceptedSocket(channel, conn);
+            synchronized (this) {
+                _conn = conn;
+                notifyAll();
+            }
+        }
+
+        protected Connection _conn;
+    }
+
+    protected static final int BURST = 100;
+
+    protected static final byte[] MESSAGE = new byte[] { 0, 0, 0, 8, 1, 2, 3, 4 };
+}
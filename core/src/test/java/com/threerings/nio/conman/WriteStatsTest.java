@@ -0,0 +1,72 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.nio.conman;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the bucketing and summarizing of {@link WriteStats}.
+ */
+public class WriteStatsTest
+{
+    @Test public void testBuckets ()
+    {
+        WriteStats stats = new WriteStats();
+        stats.noteLatency(-5); // clock skew lands in the first bucket
+        stats.noteLatency(WriteStats.LATENCY_BUCKET - 1);
+        stats.noteLatency(WriteStats.LATENCY_BUCKET);
+        stats.noteLatency(Long.MAX_VALUE); // and anything huge in the last
+        assertEquals(2, stats.latency[0]);
+        assertEquals(1, stats.latency[1]);
+        assertEquals(1, stats.latency[WriteStats.BUCKETS - 1]);
+
+        stats.noteWrite(WriteStats.SIZE_BUCKET * 3 + 1);
+        assertEquals(1, stats.sizes[3]);
+        stats.noteDwell(WriteStats.DWELL_BUCKET * 2);
+        assertEquals(1, stats.dwell[2]);
+    }
+
+    @Test public void testPercentile ()
+    {
+        long[] buckets = new long[WriteStats.BUCKETS];
+        assertEquals(0, WriteStats.percentile(buckets, 10, 0.5));
+        buckets[0] = 90;
+        buckets[4] = 9;
+        buckets[9] = 1;
+        assertEquals(10, WriteStats.percentile(buckets, 10, 0.5));
+        assertEquals(10, WriteStats.percentile(buckets, 10, 0.9));
+        assertEquals(50, WriteStats.percentile(buckets, 10, 0.99));
+        assertEquals(100, WriteStats.percentile(buckets, 10, 1.0));
+    }
+
+    @Test public void testSumAndDiff ()
+    {
+        long[] one = { 1, 2, 3 }, two = { 4, 5, 6 };
+        long[] sum = WriteStats.sum(WriteStats.sum(null, one), two);
+        assertArrayEquals(new long[] { 5, 7, 9 }, sum);
+        assertArrayEquals(two, WriteStats.diff(sum, one));
+        assertArrayEquals(sum, WriteStats.diff(sum, null));
+        assertArrayEquals(new long[] { 1, 2, 3 }, one); // inputs are left alone
+    }
+}
@@ -83,8 +83,8 @@ public class TestObject extends DObject
     public void setFoo (int value)
     {
         int ovalue = this.foo;
-        requestAttributeChange(
-            FOO, Integer.valueOf(value), Integer.valueOf(ovalue));
+        requestIntChange(
+            FOO, value, ovalue);
         this.foo = value;
     }
 
@@ -213,5 +213,65 @@ public class TestObject extends DObject
             LONGS, value, ovalue);
         this.longs = value;
     }
+
+    /**
+     * Creates accessors that read and write the fields declared by this class directly, rather
+     * than reflectively.
+     */
+    @Override
+    @Generated(value={"com.threerings.presents.tools.GenDObjectTask"})
+    protected com.threerings.presents.dobj.Accessor[] createAccessors ()
+    {
+        return replaceAccessors(super.createAccessors(),
+            new FieldAccessor<TestObject>(FOO) {
+                @Override public Object getField (TestObject obj) {
+                    return Integer.valueOf(obj.foo);
+                }
+                @Override public void setField (TestObject obj, Object value) {
+                    obj.foo = ((Integer)value).intValue();
+                }
+            },
+            new FieldAccessor<TestObject>(BAR) {
+                @Override public Object getField (TestObject obj) {
+                    return obj.bar;
+                }
+                @Override public void setField (TestObject obj, Object value) {
+                    obj.bar = (String)value;
+                }
+            },
+            new FieldAccessor<TestObject>(INTS) {
+                @Override public Object getField (TestObject obj) {
+                    return obj.ints;
+                }
+                @Override public void setField (TestObject obj, Object value) {
+                    obj.ints = (int[])value;
+                }
+            },
+            new FieldAccessor<TestObject>(STRINGS) {
+                @Override public Object getField (TestObject obj) {
+                    return obj.strings;
+                }
+                @Override public void setField (TestObject obj, Object value) {
+                    obj.strings = (String[])value;
+                }
+            },
+            new FieldAccessor<TestObject>(LIST) {
+                @Override public Object getField (TestObject obj) {
+                    return obj.list;
+                }
+                @Override public void setField (TestObject obj, Object value) {
+                    obj.list = (OidList)value;
+                }
+            },
+            new FieldAccessor<TestObject>(LONGS) {
+                @Override public Object getField (TestObject obj) {
+                    return obj.longs;
+                }
+                @SuppressWarnings("unchecked")
+                @Override public void setField (TestObject obj, Object value) {
+                    obj.longs = (ArrayList<Long>)value;
+                }
+            });
+    }
     // AUTO-GENERATED: METHODS END
 }
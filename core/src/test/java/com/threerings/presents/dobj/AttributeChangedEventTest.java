@@ -0,0 +1,85 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.presents.dobj;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.presents.data.TestObject;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests unboxed attribute changes and generated field accessors.
+ */
+public class AttributeChangedEventTest
+{
+    @Test public void testGeneratedAccessors ()
+    {
+        TestObject obj = new TestObject();
+        for (String name : obj.getFieldNames()) {
+            assertTrue(name, obj.getAccessor(name) instanceof DObject.FieldAccessor<?>);
+        }
+        obj.setAttribute(TestObject.FOO, 7);
+        obj.setAttribute(TestObject.BAR, "bar");
+        assertEquals(7, obj.foo);
+        assertEquals(7, obj.getAttribute(TestObject.FOO));
+        assertEquals("bar", obj.getAttribute(TestObject.BAR));
+    }
+
+    @Test public void testUnboxed ()
+        throws Exception
+    {
+        AttributeChangedEvent event = new AttributeChangedEvent(0, TestObject.FOO, null).
+            setUnboxed(Integer.TYPE, 5, 3);
+        assertTrue(event.alreadyApplied());
+        assertEquals(5, event.getIntValue());
+        assertEquals(5, event.getValue());
+        assertEquals(3, event.getOldValue());
+
+        AttributeChangedEvent fevent = new AttributeChangedEvent(0, TestObject.FOO, null).
+            setUnboxed(Float.TYPE, Float.floatToRawIntBits(1.5f), 0);
+        assertEquals(1.5f, fevent.getFloatValue(), 0f);
+        assertEquals(1.5f, fevent.getValue());
+
+        // the event is streamed just as a boxed one would be
+        for (boolean indexing : new boolean[] { false, true }) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            ObjectOutputStream oout = new ObjectOutputStream(bout);
+            oout.setFieldIndexing(indexing);
+            oout.writeObject(event);
+            oout.flush();
+            ObjectInputStream oin = new ObjectInputStream(
+                new ByteArrayInputStream(bout.toByteArray()));
+            oin.setFieldIndexing(indexing);
+            AttributeChangedEvent revent = (AttributeChangedEvent)oin.readObject();
+            assertFalse(revent.alreadyApplied());
+            assertEquals(5, revent.getValue());
+            assertEquals(5, revent.getIntValue());
+        }
+        assertNull(event._value);
+    }
+}
@@ -22,6 +22,8 @@
 package com.threerings.presents.dobj;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -73,6 +75,60 @@ public class DSetTest extends TestCase
         assertTrue(set.remove(new TestEntry(32)));
         assertFalse(set.remove(new TestEntry(32)));
         assertTrue(set.add(new TestEntry(32)));
+
+        // mutating a clone must leave the original untouched, and vice versa
+        DSet<TestEntry> copy = set.clone();
+        assertTrue(copy.remove(new TestEntry(15)));
+        assertTrue(copy.add(new TestEntry(1)));
+        assertTrue(set.add(new TestEntry(40)));
+        assertNotNull(set.get(15));
+        assertNull(set.get(1));
+        assertNull(copy.get(40));
+        assertEquals("(3, 7, 9, 15, 29, 32, 40)", set.toString());
+        assertEquals("(1, 3, 7, 9, 29, 32)", copy.toString());
+
+        // exercise rebalancing with a larger set, cloning along the way
+        DSet<TestEntry> big = new DSet<TestEntry>();
+        for (int ii = 0; ii < 1000; ii++) {
+            assertTrue(big.add(new TestEntry((ii * 7919) % 1000)));
+            if (ii % 100 == 0) {
+                big = big.clone();
+            }
+        }
+        for (int ii = 0; ii < 1000; ii += 3) {
+            assertNotNull(big.removeKey(ii));
+        }
+        int expected = 1, count = 0;
+        for (TestEntry entry : big) {
+            assertEquals(expected, entry.getKey());
+            expected += (expected % 3 == 2) ? 2 : 1;
+            count++;
+        }
+        assertEquals(big.size(), count);
+        assertEquals(666, count);
+
+        // entries may be updated while iterating, even where their nodes are shared with a clone,
+        // and the updates to those not yet visited are seen when they are
+        DSet<TestEntry> shared = big.clone();
+        Map<Comparable<?>, TestEntry> updated = new HashMap<Comparable<?>, TestEntry>();
+        count = 0;
+        for (TestEntry entry : big) {
+            if (updated.containsKey(entry.getKey())) {
+                assertSame(updated.get(entry.getKey()), entry);
+            }
+            assertNotNull(big.update(new TestEntry((Integer)entry.getKey())));
+            int next = (Integer)entry.getKey() + 1;
+            if (big.get(next) != null) {
+                TestEntry fresh = new TestEntry(next);
+                assertNotNull(big.update(fresh));
+                updated.put(fresh.getKey(), fresh);
+            }
+            count++;
+        }
+        assertEquals(666, count);
+        for (TestEntry entry : shared) {
+            assertNotSame(updated.get(entry.getKey()), entry);
+        }
     }
 
     public static Test suite ()
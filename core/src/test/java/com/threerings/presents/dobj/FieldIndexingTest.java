@@ -0,0 +1,144 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.presents.dobj;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.presents.data.TestObject;
+import com.threerings.presents.net.ObjectResponse;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the identification of event fields by index.
+ */
+public class FieldIndexingTest
+{
+    @Test public void testIndexedEvent ()
+        throws Exception
+    {
+        // applying an event notes the index of its field, which is then streamed in its place
+        TestObject sobj = new TestObject();
+        AttributeChangedEvent event = new AttributeChangedEvent(
+            sobj.getOid(), TestObject.BAR, "a fairly long value");
+        event.applyToObject(sobj);
+        byte[] plain = write(event, false);
+        byte[] indexed = write(event, true);
+        assertTrue(plain.length + " vs. " + indexed.length, indexed.length < plain.length);
+        assertEquals(TestObject.BAR, event.getName());
+
+        // a plain stream still delivers the name
+        AttributeChangedEvent pevent = (AttributeChangedEvent)read(plain, false);
+        assertFalse(pevent.isIndexed());
+        assertEquals(TestObject.BAR, pevent.getName());
+
+        // an indexed one must be resolved before it is applied
+        TestObject cobj = new TestObject();
+        AttributeChangedEvent ievent = (AttributeChangedEvent)read(indexed, true);
+        assertTrue(ievent.isIndexed());
+        assertNull(ievent.getName());
+        assertTrue(ievent.resolveField(cobj, null));
+        assertEquals(TestObject.BAR, ievent.getName());
+        ievent.applyToObject(cobj);
+        assertEquals("a fairly long value", cobj.bar);
+    }
+
+    @Test public void testMappedIndex ()
+        throws Exception
+    {
+        // the sender's index is mapped to the receiver's, and unknown fields fail to resolve
+        TestObject sobj = new TestObject();
+        ObjectAddedEvent event = new ObjectAddedEvent(sobj.getOid(), TestObject.LIST, 42);
+        event.applyToObject(sobj);
+        int index = sobj.getFieldIndex(TestObject.LIST);
+
+        TestObject cobj = new TestObject();
+        int[] indices = new int[index+1];
+        indices[index] = cobj.getFieldIndex(TestObject.LIST);
+        NamedEvent ievent = (NamedEvent)read(write(event, true), true);
+        assertTrue(ievent.resolveField(cobj, indices));
+        ievent.applyToObject(cobj);
+        assertTrue(cobj.list.contains(42));
+
+        indices[index] = -1;
+        ievent = (NamedEvent)read(write(event, true), true);
+        assertFalse(ievent.resolveField(cobj, indices));
+    }
+
+    @Test public void testDescription ()
+        throws Exception
+    {
+        // a class's fields are described only with the first object of that class
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.setFieldIndexing(true);
+        oout.writeObject(new ObjectResponse<TestObject>(new TestObject()));
+        oout.writeObject(new ObjectResponse<TestObject>(new TestObject()));
+        oout.flush();
+
+        ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()));
+        oin.setFieldIndexing(true);
+        ObjectResponse<?> first = (ObjectResponse<?>)oin.readObject();
+        ObjectResponse<?> second = (ObjectResponse<?>)oin.readObject();
+        assertArrayEquals(new TestObject().getFieldNames(), first.getFieldNames());
+        assertNull(second.getFieldNames());
+    }
+
+    @Test public void testDescriptionIsMapping ()
+        throws Exception
+    {
+        // a description is state on which later messages depend, like a class mapping, so that
+        // the message that carries it is kept ahead of them
+        ObjectOutputStream oout = new ObjectOutputStream(new ByteArrayOutputStream());
+        oout.writeObject(new ObjectResponse<TestObject>(new TestObject()));
+        oout.setFieldIndexing(true);
+        int mappings = oout.getMappingCount();
+        oout.writeObject(new ObjectResponse<TestObject>(new TestObject()));
+        assertEquals(mappings + 1, oout.getMappingCount());
+        oout.writeObject(new ObjectResponse<TestObject>(new TestObject()));
+        assertEquals(mappings + 1, oout.getMappingCount());
+    }
+
+    protected static byte[] write (Object object, boolean indexing)
+        throws Exception
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.setFieldIndexing(indexing);
+        oout.writeObject(object);
+        oout.flush();
+        return bout.toByteArray();
+    }
+
+    protected static Object read (byte[] data, boolean indexing)
+        throws Exception
+    {
+        ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(data));
+        oin.setFieldIndexing(indexing);
+        return oin.readObject();
+    }
+}
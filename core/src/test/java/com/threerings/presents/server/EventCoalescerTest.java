@@ -0,0 +1,119 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.presents.server;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.name.Names;
+
+import com.threerings.presents.data.TestObject;
+import com.threerings.presents.dobj.AttributeChangeListener;
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.dobj.CoalescedListener;
+import com.threerings.presents.dobj.ElementUpdateListener;
+import com.threerings.presents.dobj.ElementUpdatedEvent;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the coalescing of superseded changes.
+ */
+public class EventCoalescerTest extends PresentsTestBase
+{
+    @Test public void testCoalescing ()
+    {
+        _injector = Guice.createInjector(new PresentsServer.PresentsModule(), new AbstractModule() {
+            @Override protected void configure () {
+                bindConstant().annotatedWith(Names.named("presents.dobj.coalesceEvents")).to(true);
+            }
+        });
+        final PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+
+        final TestObject obj = omgr.registerObject(new TestObject());
+        obj.addListener(new Recorder(_all));
+        obj.addListener(new CoalescedRecorder(_coalesced));
+
+        obj.setFoo(1);
+        obj.setFoo(2);
+        obj.setIntsAt(1, 0);
+        obj.setIntsAt(2, 1);
+        obj.setIntsAt(3, 1);
+        obj.setBar("one");
+        obj.setFoo(3);
+        obj.setBar("two");
+
+        omgr.postRunnable(new Runnable() {
+            public void run () {
+                omgr.harshShutdown();
+            }
+        });
+        omgr.run();
+
+        // plain listeners hear every change
+        assertEquals(Lists.newArrayList("foo=1", "foo=2", "ints[0]=1", "ints[1]=2", "ints[1]=3",
+                                        "bar=one", "foo=3", "bar=two"), _all);
+        // coalesced listeners hear only the changes that survived
+        assertEquals(Lists.newArrayList("ints[0]=1", "ints[1]=3", "foo=3", "bar=two"), _coalesced);
+        assertEquals(4, omgr.getStats(true).coalescedCount);
+    }
+
+    protected static class Recorder
+        implements AttributeChangeListener, ElementUpdateListener
+    {
+        public Recorder (List<String> changes)
+        {
+            _changes = changes;
+        }
+
+        // from interface AttributeChangeListener
+        public void attributeChanged (AttributeChangedEvent event)
+        {
+            _changes.add(event.getName() + "=" + event.getValue());
+        }
+
+        // from interface ElementUpdateListener
+        public void elementUpdated (ElementUpdatedEvent event)
+        {
+            _changes.add(event.getName() + "[" + event.getIndex() + "]=" + event.getValue());
+        }
+
+        protected List<String> _changes;
+    }
+
+    protected static class CoalescedRecorder extends Recorder
+        implements CoalescedListener
+    {
+        public CoalescedRecorder (List<String> changes)
+        {
+            super(changes);
+        }
+    }
+
+    protected List<String> _all = Lists.newArrayList();
+    protected List<String> _coalesced = Lists.newArrayList();
+}
@@ -0,0 +1,111 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.presents.server;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.name.Names;
+
+import com.threerings.presents.data.TestObject;
+import com.threerings.presents.dobj.AttributeChangeListener;
+import com.threerings.presents.dobj.AttributeChangedEvent;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the processing of events on several event loops.
+ */
+public class EventLoopTest extends PresentsTestBase
+{
+    @Test public void testLoops ()
+    {
+        _injector = Guice.createInjector(new PresentsServer.PresentsModule(), new AbstractModule() {
+            @Override protected void configure () {
+                bindConstant().annotatedWith(Names.named("presents.dobj.eventLoops")).to(LOOPS);
+            }
+        });
+        final PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+        assertEquals(LOOPS, omgr.getEventLoopCount());
+
+        // groups are handed out from the secondary loops
+        assertEquals(1, omgr.assignAffinityGroup());
+        assertEquals(2, omgr.assignAffinityGroup());
+        assertEquals(1, omgr.assignAffinityGroup());
+
+        // register an object in each group, the last by running code in its group
+        final TestObject[] objs = new TestObject[LOOPS];
+        for (int ii = 0; ii < LOOPS-1; ii++) {
+            objs[ii] = omgr.registerObject(new TestObject(), ii);
+        }
+        omgr.runInGroup(LOOPS-1, new Runnable() {
+            public void run () {
+                assertEquals(LOOPS-1, omgr.getCurrentAffinityGroup());
+                objs[LOOPS-1] = omgr.registerObject(new TestObject());
+            }
+        });
+        assertEquals(0, omgr.getCurrentAffinityGroup());
+
+        for (int ii = 0; ii < LOOPS; ii++) {
+            final int group = ii;
+            final TestObject obj = objs[ii];
+            assertEquals(group, obj.getOid() % LOOPS);
+            assertEquals(group, omgr.getAffinityGroup(obj.getOid()));
+            obj.addListener(new AttributeChangeListener() {
+                public void attributeChanged (AttributeChangedEvent event) {
+                    // we should be processing the event on the loop that owns the object
+                    assertTrue(omgr.isDispatchThread(obj.getOid()));
+                    assertEquals(group, omgr.getCurrentAffinityGroup());
+                    noteEvent(omgr, group);
+                }
+            });
+            obj.setFoo(ii);
+        }
+
+        omgr.run();
+
+        // the main loop is run by this thread and each other loop has a thread of its own
+        assertEquals(LOOPS, _threads.size());
+        assertSame(Thread.currentThread(), _threads.get(0));
+        for (int ii = 1; ii < LOOPS; ii++) {
+            assertNotSame(Thread.currentThread(), _threads.get(ii));
+        }
+        assertTrue(omgr.queueIsEmpty());
+    }
+
+    protected synchronized void noteEvent (PresentsDObjectMgr omgr, int group)
+    {
+        _threads.put(group, Thread.currentThread());
+        if (_threads.size() == LOOPS) {
+            omgr.harshShutdown();
+        }
+    }
+
+    protected Map<Integer, Thread> _threads = Maps.newHashMap();
+
+    protected static final int LOOPS = 3;
+}
@@ -0,0 +1,130 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.presents.server.net;
+
+import java.util.List;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+
+import org.junit.Test;
+
+import com.samskivert.util.Lifecycle;
+
+import com.threerings.io.FramedInputStream;
+import com.threerings.io.FramingOutputStream;
+import com.threerings.nio.conman.Connection;
+import com.threerings.nio.conman.Frame;
+import com.threerings.presents.server.PresentsTestBase;
+import com.threerings.presents.server.ReportManager;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that messages sent in chunks arrive intact when other frames, including the chunks of
+ * other messages, are queued up while they are being sent.
+ */
+public class ChunkingTest extends PresentsTestBase
+{
+    @Test public void testInterleaving ()
+        throws IOException
+    {
+        QueueingConnectionManager conmgr = getInstance(QueueingConnectionManager.class);
+        conmgr._chunkSize = 1024;
+
+        // queue up a big message and send its first couple of chunks on their way
+        conmgr.postChunks(null, frame("first", COUNT), false);
+        int chunks = conmgr.queue.size();
+        assertTrue(chunks > 4);
+        Pipe pipe = Pipe.open();
+        for (int ii = 0; ii < 2; ii++) {
+            pipe.sink().write(conmgr.queue.remove(0).buffer());
+        }
+
+        // a high priority frame jumps ahead of the rest of its chunks, but the chunks of another
+        // big message wait for them
+        ByteBuffer urgent = frame("urgent", 1);
+        conmgr.postMessage(null, Frame.wrap(bytes(urgent)).setPriority(Frame.HIGH_PRIORITY));
+        conmgr.postChunks(null, frame("second", COUNT), false);
+        for (Frame frame : conmgr.queue) {
+            pipe.sink().write(frame.buffer());
+        }
+
+        FramedInputStream fin = new FramedInputStream();
+        DataInputStream din = new DataInputStream(fin);
+        while (!fin.readFrame(pipe.source())) {}
+        assertEquals("urgent", din.readUTF());
+        assertEquals(-1, fin.read());
+        for (String message : new String[] { "first", "second" }) {
+            while (!fin.readFrame(pipe.source())) {}
+            for (int ii = 0; ii < COUNT; ii++) {
+                assertEquals(message, din.readUTF());
+            }
+            assertEquals(-1, fin.read());
+        }
+    }
+
+    /** Queues up frames as the connection manager would for a connection, but sends nothing. */
+    protected static class QueueingConnectionManager extends PresentsConnectionManager
+    {
+        public List<Frame> queue = Lists.newArrayList();
+
+        @Inject public QueueingConnectionManager (Lifecycle cycle, ReportManager repmgr)
+            throws IOException
+        {
+            super(cycle, repmgr);
+        }
+
+        @Override
+        protected void postMessage (Connection conn, Frame frame)
+        {
+            insertFrame(queue, frame);
+        }
+    }
+
+    protected static ByteBuffer frame (String message, int count)
+        throws IOException
+    {
+        FramingOutputStream fout = new FramingOutputStream();
+        DataOutputStream dout = new DataOutputStream(fout);
+        for (int ii = 0; ii < count; ii++) {
+            dout.writeUTF(message);
+        }
+        return fout.frameAndReturnBuffer();
+    }
+
+    protected static byte[] bytes (ByteBuffer buffer)
+    {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    /** The number of times each big message repeats its string. */
+    protected static final int COUNT = 1000;
+}
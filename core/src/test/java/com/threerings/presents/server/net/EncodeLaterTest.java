@@ -0,0 +1,79 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.presents.server.net;
+
+import org.junit.Test;
+
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.dobj.CompoundEvent;
+import com.threerings.presents.dobj.DEvent;
+import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.DSet;
+import com.threerings.presents.dobj.EntryRemovedEvent;
+import com.threerings.presents.dobj.MessageEvent;
+import com.threerings.presents.net.CompoundDownstreamMessage;
+import com.threerings.presents.net.EventNotification;
+import com.threerings.presents.net.UnsubscribeResponse;
+import com.threerings.presents.server.PresentsDObjectMgr;
+import com.threerings.presents.server.PresentsTestBase;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests which messages are left to be encoded after they are posted.
+ */
+public class EncodeLaterTest extends PresentsTestBase
+{
+    @Test public void testCanEncodeLater ()
+    {
+        PresentsConnectionManager conmgr = getInstance(PresentsConnectionManager.class);
+        assertTrue(conmgr.canEncodeLater(new UnsubscribeResponse(1)));
+
+        // events whose values can't change may wait, others can't
+        assertTrue(conmgr.canEncodeLater(notify(new AttributeChangedEvent(1, "foo", 5))));
+        assertTrue(conmgr.canEncodeLater(notify(new AttributeChangedEvent(1, "foo", "bar"))));
+        assertTrue(conmgr.canEncodeLater(notify(new EntryRemovedEvent<DSet.Entry>(1, "foo", 5))));
+        assertFalse(conmgr.canEncodeLater(
+                        notify(new AttributeChangedEvent(1, "foo", new int[] { 5 }))));
+        assertFalse(conmgr.canEncodeLater(
+                        notify(new MessageEvent(1, "foo", new Object[] { "bar" }))));
+
+        // a compound event or message can wait only if all of its parts can
+        CompoundEvent cevent =
+            new CompoundEvent(new DObject(), getInstance(PresentsDObjectMgr.class));
+        cevent.postEvent(new AttributeChangedEvent(1, "foo", 5));
+        assertTrue(conmgr.canEncodeLater(notify(cevent)));
+        cevent.postEvent(new MessageEvent(1, "foo", new Object[0]));
+        assertFalse(conmgr.canEncodeLater(notify(cevent)));
+
+        CompoundDownstreamMessage cmsg = new CompoundDownstreamMessage();
+        cmsg.msgs.add(new UnsubscribeResponse(1));
+        assertTrue(conmgr.canEncodeLater(cmsg));
+        cmsg.msgs.add(notify(new MessageEvent(1, "foo", new Object[0])));
+        assertFalse(conmgr.canEncodeLater(cmsg));
+    }
+
+    protected static EventNotification notify (DEvent event)
+    {
+        return new EventNotification(event);
+    }
+}
@@ -0,0 +1,91 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.presents.server.net;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.presents.net.Message;
+import com.threerings.presents.net.PingRequest;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link OutgoingStream}.
+ */
+public class OutgoingStreamTest
+{
+    @Test public void testOrdering ()
+        throws Exception
+    {
+        final OutgoingStream ostream = new OutgoingStream();
+        final List<Message> encoded = Lists.newArrayList();
+        final OutgoingStream.Encoder encoder = new OutgoingStream.Encoder() {
+            public void encode (PresentsConnection conn, Message msg) {
+                encoded.add(msg);
+            }
+        };
+
+        // the first post hands the stream off, the rest ride along
+        List<Message> posted = Lists.newArrayList();
+        for (int ii = 0; ii < 3; ii++) {
+            posted.add(new PingRequest());
+            assertEquals(ii == 0, ostream.post(null, posted.get(ii)));
+        }
+
+        // a message that can't wait takes everything ahead of it along with it
+        posted.add(new PingRequest());
+        ostream.postAndDrain(null, posted.get(3), encoder);
+        assertEquals(posted, encoded);
+        assertEquals(0, ostream.getPendingCount());
+
+        // so the encoder thread that was handed the stream finds nothing to do, and the next post
+        // hands it off again
+        ostream.drain(encoder);
+        assertEquals(4, encoded.size());
+        posted.add(new PingRequest());
+        assertTrue(ostream.post(null, posted.get(4)));
+
+        // concurrent drains never encode out of order
+        for (int ii = 0; ii < 1000; ii++) {
+            posted.add(new PingRequest());
+            ostream.post(null, posted.get(posted.size()-1));
+        }
+        Thread[] threads = new Thread[4];
+        for (int ii = 0; ii < threads.length; ii++) {
+            threads[ii] = new Thread() {
+                @Override public void run () {
+                    ostream.drain(encoder);
+                }
+            };
+            threads[ii].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        ostream.drain(encoder);
+        assertEquals(posted, encoded);
+    }
+}
@@ -0,0 +1,134 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.Maps;
+
+import com.samskivert.util.Interator;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the open-addressed streamable int maps.
+ */
+public class StreamableIntMapTest
+{
+    @Test public void testHashIntMap ()
+        throws Exception
+    {
+        // mirror random puts and removes in a regular map
+        StreamableHashIntMap<String> map = new StreamableHashIntMap<String>();
+        Map<Integer, String> expect = Maps.newHashMap();
+        Random rand = new Random(42);
+        for (int ii = 0; ii < 10000; ii++) {
+            int key = rand.nextInt(500) - 250;
+            if (rand.nextInt(3) == 0) {
+                assertEquals(expect.remove(key), map.remove(key));
+            } else {
+                assertEquals(expect.put(key, "v" + ii), map.put(key, "v" + ii));
+            }
+        }
+        assertEquals(expect, map);
+        assertEquals(expect.keySet(), map.keySet());
+        assertNull(map.get("notakey"));
+
+        // removing through an iterator works, and we come through streaming intact
+        for (Iterator<String> it = map.elements(); it.hasNext(); ) {
+            if (it.next().endsWith("7")) {
+                it.remove();
+            }
+        }
+        for (Iterator<String> it = expect.values().iterator(); it.hasNext(); ) {
+            if (it.next().endsWith("7")) {
+                it.remove();
+            }
+        }
+        assertEquals(expect, map);
+        assertEquals(expect, roundTrip(map));
+        assertEquals(expect, map.clone());
+    }
+
+    @Test public void testIntIntMap ()
+        throws Exception
+    {
+        StreamableIntIntMap map = new StreamableIntIntMap();
+        Map<Integer, Integer> expect = Maps.newHashMap();
+        Random rand = new Random(42);
+        for (int ii = 0; ii < 10000; ii++) {
+            int key = rand.nextInt(500) - 250;
+            if (rand.nextInt(3) == 0) {
+                Integer ovalue = expect.remove(key);
+                assertEquals((ovalue == null) ? -1 : ovalue, map.remove(key));
+            } else {
+                expect.put(key, ii);
+                map.put(key, ii);
+            }
+        }
+        assertEquals(expect.size(), map.size());
+        for (Map.Entry<Integer, Integer> entry : expect.entrySet()) {
+            assertEquals((int)entry.getValue(), map.get(entry.getKey()));
+        }
+        assertEquals(-1, map.get(1000));
+
+        // removing through an iterator works, and we come through streaming intact
+        for (Interator it = map.keys(); it.hasNext(); ) {
+            int key = it.nextInt();
+            if (key % 2 == 0) {
+                it.remove();
+                expect.remove(key);
+            }
+        }
+        assertEquals(expect.size(), map.size());
+        assertEquals(map.toString(), roundTrip(map).toString());
+    }
+
+    @Test public void testArrayIntSet ()
+        throws Exception
+    {
+        StreamableArrayIntSet set = new StreamableArrayIntSet(new int[] { 5, -3, 100000, 0 });
+        assertEquals(set, roundTrip(set));
+        assertEquals(new StreamableArrayIntSet(), roundTrip(new StreamableArrayIntSet()));
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static <T> T roundTrip (T object)
+        throws Exception
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.writeObject(object);
+        oout.flush();
+        return (T)new ObjectInputStream(
+            new ByteArrayInputStream(bout.toByteArray())).readObject();
+    }
+}
@@ -0,0 +1,109 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.presents.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.Set;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+
+import com.google.common.collect.Sets;
+
+import com.threerings.io.BasicStreamers;
+import com.threerings.io.ClassDictionary;
+import com.threerings.io.Streamable;
+
+/**
+ * Generates a {@link ClassDictionary} listing every concrete {@link Streamable} class (nested
+ * classes included) in the supplied source files, along with the types handled by the basic
+ * streamers. The dictionary is sorted by class name, so it only changes (and changes version)
+ * when classes are added or removed.
+ */
+public class GenClassDictionaryTask extends GenTask
+{
+    /**
+     * Configures the file to which the dictionary is written.
+     */
+    public void setDestfile (File destfile)
+    {
+        _destfile = destfile;
+    }
+
+    @Override
+    public void execute ()
+    {
+        if (_destfile == null) {
+            throw new BuildException("Missing 'destfile' attribute.");
+        }
+
+        // collect the streamable classes from our source files
+        super.execute();
+
+        // add the basic types, which are mapped like any other class
+        for (Class<?> clazz : BasicStreamers.BSTREAMERS.keySet()) {
+            _names.add(clazz.getName());
+        }
+        if (_names.size() > ClassDictionary.MAX_SIZE) {
+            throw new BuildException("Too many classes for a dictionary [count=" + _names.size() +
+                                     ", max=" + ClassDictionary.MAX_SIZE + "]");
+        }
+
+        StringBuilder buf = new StringBuilder();
+        buf.append("# Generated by ").append(getClass().getName()).append(", do not edit.");
+        buf.append(EOL);
+        for (String name : _names) {
+            buf.append(name).append(EOL);
+        }
+        try {
+            writeFile(_destfile.getPath(), buf.toString());
+        } catch (IOException ioe) {
+            throw new BuildException(ioe);
+        }
+        if (_checking && !_modifiedPaths.isEmpty()) {
+            throw new BuildException("Generation would produce changes!");
+        }
+    }
+
+    @Override
+    protected void processClass (File source, Class<?> sclass)
+    {
+        for (Class<?> nested : sclass.getDeclaredClasses()) {
+            processClass(source, nested);
+        }
+        int mods = sclass.getModifiers();
+        if (!Streamable.class.isAssignableFrom(sclass) || sclass.isInterface() ||
+            (Modifier.isAbstract(mods) && !sclass.isEnum())) {
+            return;
+        }
+        log("Adding " + sclass.getName() + " to dictionary", Project.MSG_VERBOSE);
+        _names.add(sclass.getName());
+    }
+
+    /** The file to which we write our dictionary. */
+    protected File _destfile;
+
+    /** The names of the classes in our dictionary, in order. */
+    protected Set<String> _names = Sets.newTreeSet();
+}
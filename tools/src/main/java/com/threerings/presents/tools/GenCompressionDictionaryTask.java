@@ -0,0 +1,124 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+
+package com.threerings.presents.tools;
+
+import java.util.List;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.FileSet;
+
+import com.google.common.collect.Lists;
+
+import com.samskivert.io.StreamUtil;
+
+import com.threerings.io.CompressionDictionary;
+
+/**
+ * Trains a {@link CompressionDictionary} from captures of the framed data sent to clients (see
+ * {@link CompressionDictionary#readFrames}).
+ */
+public class GenCompressionDictionaryTask extends Task
+{
+    /**
+     * Adds a nested &lt;fileset&gt; element which enumerates captured traffic.
+     */
+    public void addFileset (FileSet set)
+    {
+        _filesets.add(set);
+    }
+
+    /**
+     * Configures the file to which the dictionary is written.
+     */
+    public void setDestfile (File destfile)
+    {
+        _destfile = destfile;
+    }
+
+    /**
+     * Configures the maximum size of the dictionary, in bytes.
+     */
+    public void setSize (int size)
+    {
+        _size = size;
+    }
+
+    @Override
+    public void execute ()
+    {
+        if (_destfile == null) {
+            throw new BuildException("Missing 'destfile' attribute.");
+        }
+
+        List<byte[]> samples = Lists.newArrayList();
+        for (FileSet fs : _filesets) {
+            DirectoryScanner ds = fs.getDirectoryScanner(getProject());
+            File fromDir = fs.getDir(getProject());
+            for (String file : ds.getIncludedFiles()) {
+                InputStream in = null;
+                try {
+                    in = new BufferedInputStream(new FileInputStream(new File(fromDir, file)));
+                    samples.addAll(CompressionDictionary.readFrames(in));
+                } catch (IOException ioe) {
+                    throw new BuildException("Failed to read capture " + file, ioe);
+                } finally {
+                    StreamUtil.close(in);
+                }
+            }
+        }
+        if (samples.isEmpty()) {
+            throw new BuildException("No frames from which to train a dictionary.");
+        }
+
+        CompressionDictionary dictionary = CompressionDictionary.train(samples, _size);
+        log("Trained " + dictionary + " from " + samples.size() + " frames");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(_destfile);
+            out.write(dictionary.getData());
+        } catch (IOException ioe) {
+            throw new BuildException("Failed to write dictionary " + _destfile, ioe);
+        } finally {
+            StreamUtil.close(out);
+        }
+    }
+
+    /** The captured traffic from which we train our dictionary. */
+    protected List<FileSet> _filesets = Lists.newArrayList();
+
+    /** The file to which we write our dictionary. */
+    protected File _destfile;
+
+    /** The maximum size of our dictionary. */
+    protected int _size = 16 * 1024;
+}
@@ -28,8 +28,10 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.samskivert.util.StringUtil;
 import com.threerings.presents.annotation.TransportHint;
@@ -84,6 +86,7 @@ public class GenDObjectTask extends GenTask
         // generate our fields section and our methods section
         StringBuilder fsection = new StringBuilder();
         StringBuilder msection = new StringBuilder();
+        List<Map<String, Object>> accessors = Lists.newArrayList();
         for (int ii = 0; ii < flist.size(); ii++) {
             Field f = flist.get(ii);
             Class<?> ftype = f.getType();
@@ -100,6 +103,11 @@ public class GenDObjectTask extends GenTask
             data.put("capfield", StringUtil.unStudlyName(fname).toUpperCase());
             data.put("upfield", StringUtil.capitalize(fname));
 
+            // changes to int, long, float and boolean fields are posted without boxing
+            String unboxed = UNBOXED_TYPES.get(ftype);
+            data.put("have_unboxed", unboxed != null);
+            data.put("unboxed", unboxed);
+
             // determine the type of transport
             TransportHint hint = f.getAnnotation(TransportHint.class);
             if (hint == null) {
@@ -159,6 +167,24 @@ public class GenDObjectTask extends GenTask
             }
             fsection.append(mergeTemplate(NAME_TMPL, data));
             msection.append(mergeTemplate(BASE_TMPL + tname, data));
+
+            // each field gets an accessor that reads and writes it directly
+            Map<String, Object> adata = new HashMap<String, Object>();
+            Type gtype = f.getGenericType();
+            adata.put("class", oclass.getSimpleName());
+            adata.put("field", fname);
+            adata.put("capfield", data.get("capfield"));
+            adata.put("get", GenUtil.boxArgument(ftype, "obj." + fname));
+            adata.put("set", ftype.isPrimitive() ? GenUtil.unboxArgument(ftype, "value") :
+                      (ftype.equals(Object.class) ? "value" : "(" + data.get("type") + ")value"));
+            adata.put("unchecked", !(gtype instanceof Class<?>));
+            adata.put("sep", (ii == flist.size() - 1) ? ");" : ",");
+            accessors.add(adata);
+        }
+        if (!accessors.isEmpty()) {
+            msection.append(EOL);
+            msection.append(mergeTemplate(ACCESSORS_TMPL, "accessors", accessors,
+                "generated", GenUtil.getGeneratedAnnotation(getClass(), 4, false)));
         }
 
         // now bolt everything back together into a class declaration
@@ -183,4 +209,12 @@ public class GenDObjectTask extends GenTask
 
     /** Specifies the path to the name code template. */
     protected static final String NAME_TMPL = BASE_TMPL + "name.tmpl";
+
+    /** Specifies the path to the accessors code template. */
+    protected static final String ACCESSORS_TMPL = BASE_TMPL + "accessors.tmpl";
+
+    /** The field types whose changes are posted unboxed, mapped to the name that identifies them
+     * in the {@link DObject} methods that post them. */
+    protected static final Map<Class<?>, String> UNBOXED_TYPES = ImmutableMap.<Class<?>, String>of(
+        Integer.TYPE, "Int", Long.TYPE, "Long", Float.TYPE, "Float", Boolean.TYPE, "Boolean");
 }
@@ -0,0 +1,333 @@
+//
+// $Id$
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2012 Three Rings Design, Inc., All Rights Reserved
+// http://code.google.com/p/narya/
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation; either version 2.1 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+
+package com.threerings.presents.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Generated;
+
+import org.apache.tools.ant.Project;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.samskivert.util.StringUtil;
+
+import com.threerings.io.BasicStreamers;
+import com.threerings.io.GeneratedStreamer;
+import com.threerings.io.Intern;
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+import com.threerings.io.Streamable;
+import com.threerings.io.Streamer;
+
+/**
+ * Generates a {@link GeneratedStreamer} for each {@link Streamable} class (and each streamable
+ * class nested therein) in the supplied source files, which streams the class without reflection.
+ * A class is skipped, and left to the reflective streamer, if it cannot be streamed by code in
+ * its own package: for example if it has private or final streamed fields, or no zero-argument
+ * constructor.
+ */
+public class GenStreamerTask extends GenTask
+{
+    /**
+     * Configures the directory under which the generated streamers are written. If this is not
+     * set, they are written alongside the source files from which they were generated.
+     */
+    public void setDestdir (File destdir)
+    {
+        _destdir = destdir;
+    }
+
+    @Override
+    protected void processClass (File source, Class<?> sclass)
+        throws Exception
+    {
+        for (Class<?> nested : sclass.getDeclaredClasses()) {
+            processClass(source, nested);
+        }
+        if (!Streamable.class.isAssignableFrom(sclass)) {
+            return;
+        }
+
+        String why = getIneligibility(sclass);
+        if (why != null) {
+            log("Not generating streamer for " + sclass.getName() + ": " + why,
+                Project.MSG_VERBOSE);
+            return;
+        }
+
+        String pkg = sclass.getPackage().getName();
+        List<StreamedField> fields = Lists.newArrayList();
+        Map<String, BasicField> basics = Maps.newTreeMap();
+        boolean unchecked = false;
+        for (Field field : Streamer.getStreamedFields(sclass)) {
+            StreamedField sfield = createField(pkg, field, basics);
+            if (sfield == null) {
+                log("Not generating streamer for " + sclass.getName() + ": field '" +
+                    field.getName() + "' cannot be streamed from generated code",
+                    Project.MSG_VERBOSE);
+                return;
+            }
+            fields.add(sfield);
+            unchecked |= (field.getGenericType() != field.getType());
+        }
+
+        // wrap the schema hash and the names of our fields into our constructor's argument list
+        String target = getLocalName(sclass);
+        List<String> cargs = Lists.newArrayList();
+        cargs.add("0x" + Long.toHexString(Streamer.getSchemaHash(sclass)) + "L");
+        for (StreamedField field : fields) {
+            cargs.add("\"" + field.name + "\"");
+        }
+        StringBuilder args = new StringBuilder(target).append(".class");
+        int col = CTOR_INDENT + args.length();
+        for (String arg : cargs) {
+            if (col + arg.length() + 3 > MAX_LINE_LENGTH) {
+                args.append(",\n").append(StringUtil.fill(' ', CTOR_INDENT));
+                col = CTOR_INDENT;
+            } else {
+                args.append(", ");
+                col += 2;
+            }
+            args.append(arg);
+            col += arg.length();
+        }
+
+        ImportSet imports = new ImportSet();
+        imports.add(IOException.class);
+        imports.add(Generated.class);
+        imports.add(GeneratedStreamer.class);
+        imports.add(ObjectInputStream.class);
+        imports.add(ObjectOutputStream.class);
+        if (!basics.isEmpty()) {
+            imports.add(Streamer.class);
+        }
+        imports.removeSamePackage(pkg);
+
+        String name = Streamer.getGeneratedStreamerName(sclass.getName()).substring(
+            pkg.length() + 1);
+        File dir = (_destdir == null) ? source.getParentFile() :
+            new File(_destdir, pkg.replace('.', File.separatorChar));
+        writeTemplate(STREAMER_TMPL, new File(dir, name + ".java").getPath(),
+            "package", pkg,
+            "importGroups", imports.toGroups(),
+            "generated", GenUtil.getGeneratedAnnotation(
+                getClass(), 0, false, "Derived from " + source.getName() + "."),
+            "name", name,
+            "target", target,
+            "ctorArgs", args.toString(),
+            "writer", hasMethod(sclass, "writeObject", ObjectOutputStream.class),
+            "reader", hasMethod(sclass, "readObject", ObjectInputStream.class),
+            "unchecked", unchecked,
+            "fields", fields,
+            "basics", basics.values());
+    }
+
+    /**
+     * Returns the reason that we cannot generate a streamer for the supplied class, or null if we
+     * can.
+     */
+    protected String getIneligibility (Class<?> sclass)
+    {
+        int mods = sclass.getModifiers();
+        if (sclass.isInterface() || Modifier.isAbstract(mods) || sclass.isEnum()) {
+            return "not a concrete class";
+        }
+        if (sclass.isAnonymousClass() || sclass.isLocalClass() ||
+            (sclass.getEnclosingClass() != null && !Modifier.isStatic(mods))) {
+            return "not a top-level or static nested class";
+        }
+        String pkg = sclass.getPackage().getName();
+        if (!isAccessible(sclass, pkg)) {
+            return "not accessible";
+        }
+        try {
+            if (Modifier.isPrivate(sclass.getDeclaredConstructor().getModifiers())) {
+                return "private zero-argument constructor";
+            }
+        } catch (NoSuchMethodException nsme) {
+            return "no zero-argument constructor";
+        }
+        return null;
+    }
+
+    /**
+     * Creates the code that streams the supplied field, or returns null if it can't be streamed
+     * from a class in the supplied package. This must stream exactly as does the marshaller that
+     * {@link com.threerings.io.FieldMarshaller#getFieldMarshaller} would use for the field.
+     */
+    protected StreamedField createField (String pkg, Field field, Map<String, BasicField> basics)
+    {
+        int mods = field.getModifiers();
+        Class<?> ftype = field.getType();
+        if (Modifier.isFinal(mods) || Modifier.isPrivate(mods) || !(Modifier.isPublic(mods) ||
+            field.getDeclaringClass().getPackage().getName().equals(pkg)) ||
+            !isAccessible(ftype, pkg)) {
+            return null;
+        }
+
+        String ref = "obj." + field.getName();
+        if (ftype.isPrimitive()) {
+            String type = StringUtil.capitalize(ftype.getName());
+            if (ftype == Integer.TYPE || ftype == Long.TYPE) {
+                type = "Compact" + type; // as with FieldMarshaller
+            }
+            return new StreamedField(field.getName(), "out.write" + type + "(" + ref + ");",
+                                     ref + " = in.read" + type + "();");
+        }
+        if (ftype == String.class && field.isAnnotationPresent(Intern.class)) {
+            return new StreamedField(field.getName(), "out.writeIntern(" + ref + ");",
+                                     ref + " = in.readIntern();");
+        }
+        if (ftype == Date.class) {
+            return new StreamedField(field.getName(), "out.writeLong(" + ref + ".getTime());",
+                                     ref + " = new java.util.Date(in.readLong());");
+        }
+
+        // fields of collection implementation types are streamed as their interface type
+        Class<?> btype = ftype;
+        Class<?> collClass = Streamer.getCollectionClass(ftype);
+        if (!BasicStreamers.BSTREAMERS.containsKey(btype) && collClass != null) {
+            btype = collClass;
+        }
+        if (ftype != Object.class && ftype != Streamable.class &&
+            BasicStreamers.BSTREAMERS.containsKey(btype)) {
+            String tname = getTypeName(btype);
+            BasicField basic = basics.get(tname);
+            if (basic == null) {
+                String constant = tname.substring(tname.lastIndexOf('.') + 1);
+                constant = StringUtil.unStudlyName(constant.replace("[]", "Array")).toUpperCase();
+                basics.put(tname, basic = new BasicField(constant + "_STREAMER", tname));
+            }
+            return new StreamedField(
+                field.getName(), "writeBasic(" + basic.constant + ", " + ref + ", out);",
+                ref + " = (" + getTypeName(ftype) + ")readBasic(" + basic.constant + ", in);");
+        }
+
+        if (ftype == Object.class || ftype.isInterface() || Streamer.isStreamable(ftype)) {
+            String cast = (ftype == Object.class) ? "" : ("(" + getTypeName(ftype) + ")");
+            return new StreamedField(field.getName(), "out.writeObject(" + ref + ");",
+                                     ref + " = " + cast + "in.readObject();");
+        }
+        return null; // the reflective streamer will complain about this one
+    }
+
+    /**
+     * Returns true if the supplied class (or the component type of an array class) can be named
+     * by code in the supplied package.
+     */
+    protected static boolean isAccessible (Class<?> clazz, String pkg)
+    {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        for (Class<?> cc = clazz; cc != null && !cc.isPrimitive(); cc = cc.getEnclosingClass()) {
+            int mods = cc.getModifiers();
+            if (Modifier.isPrivate(mods) || cc.getCanonicalName() == null ||
+                (!Modifier.isPublic(mods) && !cc.getPackage().getName().equals(pkg))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the name by which the supplied class is referenced in generated code.
+     */
+    protected static String getTypeName (Class<?> clazz)
+    {
+        String name = clazz.getCanonicalName();
+        return name.startsWith("java.lang.") && name.indexOf('.', 10) == -1 ?
+            name.substring(10) : name;
+    }
+
+    /**
+     * Returns the name of the supplied class relative to its package.
+     */
+    protected static String getLocalName (Class<?> clazz)
+    {
+        return clazz.getCanonicalName().substring(clazz.getPackage().getName().length() + 1);
+    }
+
+    /**
+     * Returns true if the supplied class has a public method with the specified name and single
+     * argument, as the streamer looks for custom <code>readObject</code> and
+     * <code>writeObject</code> methods.
+     */
+    protected static boolean hasMethod (Class<?> clazz, String name, Class<?> arg)
+    {
+        try {
+            clazz.getMethod(name, arg);
+            return true;
+        } catch (NoSuchMethodException nsme) {
+            return false;
+        }
+    }
+
+    /** The code that streams a single field. */
+    protected static class StreamedField
+    {
+        public final String name;
+        public final String write;
+        public final String read;
+
+        public StreamedField (String name, String write, String read)
+        {
+            this.name = name;
+            this.write = write;
+            this.read = read;
+        }
+    }
+
+    /** A basic streamer used by one or more fields. */
+    protected static class BasicField
+    {
+        public final String constant;
+        public final String type;
+
+        public BasicField (String constant, String type)
+        {
+            this.constant = constant;
+            this.type = type;
+        }
+    }
+
+    /** The directory under which we write our streamers, or null. */
+    protected File _destdir;
+
+    /** The indentation of the continued lines of our constructor's arguments. */
+    protected static final int CTOR_INDENT = 14;
+
+    /** The maximum length of a line of generated code. */
+    protected static final int MAX_LINE_LENGTH = 100;
+
+    /** Specifies the path to the streamer template. */
+    protected static final String STREAMER_TMPL =
+        "com/threerings/presents/tools/streamer.tmpl";
+}